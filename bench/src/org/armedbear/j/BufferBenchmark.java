@@ -0,0 +1,90 @@
+/*
+ * BufferBenchmark.java
+ *
+ * Copyright (C) 2026 Kevin Krouse
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.armedbear.j;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Converting between the buffer and its text: getText() and getPosition(),
+// with the caches they keep both valid and invalidated by an edit.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class BufferBenchmark
+{
+    @Param({"2000", "50000"})
+    public int lines;
+
+    private Buffer buffer;
+    private int[] offsets;
+    private int next;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        buffer = Fixtures.javaBuffer(Fixtures.javaSource(lines));
+        final int length = buffer.getText().length();
+        Random random = new Random(lines);
+        offsets = new int[1024];
+        for (int i = 0; i < offsets.length; i++)
+            offsets[i] = random.nextInt(length);
+    }
+
+    private int nextOffset()
+    {
+        return offsets[next++ & (offsets.length - 1)];
+    }
+
+    @Benchmark
+    public String getText()
+    {
+        buffer.incrementModCount();
+        return buffer.getText();
+    }
+
+    @Benchmark
+    public Position getPosition()
+    {
+        return buffer.getPosition(nextOffset());
+    }
+
+    @Benchmark
+    public Position getPositionAfterEdit()
+    {
+        buffer.incrementModCount();
+        return buffer.getPosition(nextOffset());
+    }
+}
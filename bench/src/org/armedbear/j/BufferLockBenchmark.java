@@ -0,0 +1,116 @@
+/*
+ * BufferLockBenchmark.java
+ *
+ * Copyright (C) 2026 Kevin Krouse
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.armedbear.j;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Group;
+import org.openjdk.jmh.annotations.GroupThreads;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+// Readers walking the lines of a buffer (as painting and parsing do) while
+// another thread edits it, all of them using the buffer's ReadWriteLock.
+// Readers pause between reads, as painting does; with no pause the lock,
+// which lets a reader in whenever another one is active, starves the writer
+// completely.
+@State(Scope.Group)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BufferLockBenchmark
+{
+    private static final int LINE_COUNT = 200;
+
+    // Work done between reads, outside the lock.
+    private static final long READER_PAUSE = 1000;
+
+    private ReadWriteLock lock;
+    private Line firstLine;
+    private Line editLine;
+    private int edits;
+
+    @Setup
+    public void setUp()
+    {
+        lock = new ReadWriteLock();
+        Line prev = null;
+        for (int i = 0; i < LINE_COUNT; i++) {
+            Line line = new TextLine("    private static final int LINE_" + i + " = " + i + ";");
+            if (prev != null)
+                line.insertAfter(prev);
+            else
+                firstLine = line;
+            prev = line;
+        }
+        editLine = firstLine;
+        for (int i = 0; i < LINE_COUNT / 2; i++)
+            editLine = editLine.next();
+    }
+
+    private int readLines()
+    {
+        int length = 0;
+        for (Line line = firstLine; line != null; line = line.next())
+            length += line.getText().length();
+        return length;
+    }
+
+    @Benchmark
+    @Group("locked")
+    @GroupThreads(3)
+    public int reader() throws InterruptedException
+    {
+        Blackhole.consumeCPU(READER_PAUSE);
+        lock.lockRead();
+        try {
+            return readLines();
+        }
+        finally {
+            lock.unlockRead();
+        }
+    }
+
+    @Benchmark
+    @Group("locked")
+    @GroupThreads(1)
+    public void writer() throws InterruptedException
+    {
+        lock.lockWrite();
+        try {
+            editLine.setText((++edits & 1) == 0 ? "    int x;" : "    int xy;");
+        }
+        finally {
+            lock.unlockWrite();
+        }
+    }
+}
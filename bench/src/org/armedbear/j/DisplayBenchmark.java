@@ -0,0 +1,78 @@
+/*
+ * DisplayBenchmark.java
+ *
+ * Copyright (C) 2026 Kevin Krouse
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.armedbear.j;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Building the text and format arrays for a screenful of lines, the way the
+// display does before it draws them.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class DisplayBenchmark
+{
+    private static final int COLUMNS = 160;
+
+    // Horizontal scroll.
+    @Param({"0", "40"})
+    public int shift;
+
+    private Formatter formatter;
+    private Line topLine;
+    private final char[] textArray = new char[COLUMNS];
+    private final int[] formatArray = new int[COLUMNS];
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        Buffer buffer = Fixtures.javaBuffer(Fixtures.javaSource(2000));
+        formatter = buffer.getFormatter();
+        topLine = buffer.getLine(1000);
+    }
+
+    @Benchmark
+    public int formatScreen()
+    {
+        int totalChars = 0;
+        Line line = topLine;
+        for (int i = 0; i < JavaFormatterBenchmark.SCREEN_LINES && line != null; i++) {
+            totalChars += Display.formatSegments(formatter.formatLine(line), shift,
+                                                 COLUMNS, textArray, formatArray);
+            line = line.next();
+        }
+        return totalChars;
+    }
+}
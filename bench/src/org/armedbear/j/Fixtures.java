@@ -0,0 +1,416 @@
+/*
+ * Fixtures.java
+ *
+ * Copyright (C) 2026 Kevin Krouse
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.armedbear.j;
+
+import java.io.BufferedWriter;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Date;
+import java.util.Locale;
+import java.util.Random;
+import java.util.TimeZone;
+import java.util.stream.Stream;
+
+import org.armedbear.j.mode.java.JavaMode;
+
+/**
+ * Generated files for the benchmarks.
+ *
+ * The files are written to a temporary directory that is removed when the
+ * benchmark's JVM exits. Their contents depend only on the arguments, so
+ * runs are comparable.
+ */
+public final class Fixtures
+{
+    private static final String[] VERBS = {
+        "get", "set", "find", "update", "create", "remove", "insert", "parse",
+        "format", "load", "save", "check", "compute", "append", "reset"
+    };
+
+    private static final String[] NOUNS = {
+        "Buffer", "Line", "Position", "Region", "Mode", "Display", "Editor",
+        "Frame", "Tag", "Entry", "Message", "Folder", "Session", "Token",
+        "Column", "Offset", "Property", "Command", "Marker", "Selection"
+    };
+
+    private static final String[] TYPES = {
+        "int", "long", "boolean", "String", "Line", "Position", "List<String>"
+    };
+
+    private static final String[] NAMES = {
+        "Peter Graves", "Kevin Krouse", "Mike Rozak", "Alex Smith",
+        "Jordan Lee", "Sam Taylor", "Chris Morgan", "Pat Kim", "Robin Chen",
+        "Casey Jones", "Jamie Park", "Taylor Reed"
+    };
+
+    private static final String[] SUBJECTS = {
+        "Problem with incremental search", "Patch: faster tag lookup",
+        "Crash when reloading a large file", "Question about key mappings",
+        "Proposal: new theme format", "Build fails on Windows",
+        "Mail mode ignores X-J-Status", "Display glitch with long lines",
+        "Release notes for the next version", "Undo after replace all"
+    };
+
+    private static final String[] WORDS = {
+        "the", "buffer", "is", "a", "line", "when", "we", "should", "editor",
+        "file", "and", "it", "to", "of", "display", "patch", "fix", "mode",
+        "search", "tag", "this", "that", "with", "for", "on", "not", "in"
+    };
+
+    private static File directory;
+
+    private Fixtures()
+    {
+    }
+
+    /**
+     * Returns the directory the fixtures are written to. The first call
+     * also initializes Directories with a home directory inside it, so
+     * that code that keeps its files under ~/.j can run.
+     */
+    public static synchronized File getDirectory() throws IOException
+    {
+        if (directory == null) {
+            final Path path = Files.createTempDirectory("jbench");
+            Runtime.getRuntime().addShutdownHook(new Thread() {
+                public void run()
+                {
+                    delete(path);
+                }
+            });
+            directory = File.getInstance(path.toString());
+            File home = File.getInstance(directory, "home");
+            home.mkdirs();
+            Directories.initialize(home);
+        }
+        return directory;
+    }
+
+    private static void delete(Path path)
+    {
+        try (Stream<Path> stream = Files.walk(path)) {
+            stream.sorted(Comparator.reverseOrder())
+                .forEach(p -> p.toFile().delete());
+        }
+        catch (IOException e) {
+            // Best effort.
+        }
+    }
+
+    /**
+     * Writes a Java source file of about the given number of lines.
+     *
+     * @param name  the file name, without ".java"
+     * @param lines the number of lines
+     * @param seed  the seed for the generator
+     */
+    public static File javaSource(File dir, String name, int lines, long seed)
+        throws IOException
+    {
+        File file = File.getInstance(dir, name + ".java");
+        try (Writer out = writer(file)) {
+            writeJavaSource(out, name, lines, new Random(seed));
+        }
+        return file;
+    }
+
+    // A Java source file in its own directory.
+    public static File javaSource(int lines) throws IOException
+    {
+        File dir = File.getInstance(getDirectory(), "java" + lines);
+        dir.mkdirs();
+        File file = File.getInstance(dir, "Generated.java");
+        if (file.isFile())
+            return file;
+        return javaSource(dir, "Generated", lines, lines);
+    }
+
+    // A directory of Java source files.
+    public static File javaSourceDirectory(int files, int linesPerFile)
+        throws IOException
+    {
+        File dir = File.getInstance(getDirectory(),
+                                    "src" + files + "x" + linesPerFile);
+        if (dir.isDirectory())
+            return dir;
+        dir.mkdirs();
+        for (int i = 0; i < files; i++)
+            javaSource(dir, NOUNS[i % NOUNS.length] + i, linesPerFile, i);
+        return dir;
+    }
+
+    private static Writer writer(File file) throws IOException
+    {
+        return new BufferedWriter(new OutputStreamWriter(
+            new FileOutputStream(file.canonicalPath()), StandardCharsets.UTF_8));
+    }
+
+    private static String methodName(Random random)
+    {
+        return VERBS[random.nextInt(VERBS.length)] +
+            NOUNS[random.nextInt(NOUNS.length)];
+    }
+
+    private static void writeJavaSource(Writer out, String className,
+        int lines, Random random) throws IOException
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append("/*\n");
+        sb.append(" * ").append(className).append(".java\n");
+        sb.append(" *\n");
+        sb.append(" * Copyright (C) 2026 Nobody\n");
+        sb.append(" *\n");
+        sb.append(" * This file is generated for benchmarks.\n");
+        sb.append(" */\n\n");
+        sb.append("package org.example.generated;\n\n");
+        sb.append("import java.util.ArrayList;\n");
+        sb.append("import java.util.HashMap;\n");
+        sb.append("import java.util.List;\n\n");
+        sb.append("/**\n * A generated class.\n */\n");
+        sb.append("public class ").append(className).append(" implements Runnable\n{\n");
+        for (int i = 0; i < 8; i++) {
+            sb.append("    private static final int CONSTANT_").append(i)
+                .append(" = ").append(random.nextInt(1000)).append(";\n");
+        }
+        sb.append("    private final HashMap<String, Integer> map = new HashMap<String, Integer>();\n");
+        sb.append("    private String name = \"").append(className).append("\";\n\n");
+        int count = 0;
+        for (int i = 0; i < sb.length(); i++)
+            if (sb.charAt(i) == '\n')
+                ++count;
+        out.write(sb.toString());
+        int methodNumber = 0;
+        while (count < lines - 2) {
+            sb.setLength(0);
+            final String method = methodName(random) + methodNumber++;
+            final String type = TYPES[random.nextInt(TYPES.length)];
+            sb.append("    /**\n");
+            sb.append("     * Does something with the ").append(type)
+                .append(" named <code>s</code>.\n");
+            sb.append("     *\n");
+            sb.append("     * @param s   the string\n");
+            sb.append("     * @param n   the count\n");
+            sb.append("     */\n");
+            sb.append("    public int ").append(method).append("(String s, int n)\n");
+            sb.append("    {\n");
+            sb.append("        // Start with the constant.\n");
+            sb.append("        int total = CONSTANT_").append(random.nextInt(8)).append(";\n");
+            final int statements = 2 + random.nextInt(6);
+            for (int j = 0; j < statements; j++) {
+                switch (random.nextInt(4)) {
+                    case 0:
+                        sb.append("        for (int i = 0; i < n; i++) {\n");
+                        sb.append("            if (s.length() > i && s.charAt(i) == '")
+                            .append((char) ('a' + random.nextInt(26))).append("')\n");
+                        sb.append("                total += i * ").append(random.nextInt(100)).append(";\n");
+                        sb.append("            else\n");
+                        sb.append("                total -= map.size(); /* unlikely */\n");
+                        sb.append("        }\n");
+                        break;
+                    case 1:
+                        sb.append("        String message = \"value of ").append(method)
+                            .append(": \" + total + \" (\" + name + \")\";\n");
+                        sb.append("        map.put(message, Integer.valueOf(total));\n");
+                        break;
+                    case 2:
+                        sb.append("        List<String> list = new ArrayList<String>();\n");
+                        sb.append("        list.add(s.substring(0, Math.min(n, s.length())));\n");
+                        sb.append("        total += list.size();\n");
+                        break;
+                    default:
+                        sb.append("        if (total > ").append(random.nextInt(500))
+                            .append(" && !s.isEmpty()) {\n");
+                        sb.append("            // Too big.\n");
+                        sb.append("            total = total % ").append(1 + random.nextInt(50)).append(";\n");
+                        sb.append("        }\n");
+                        break;
+                }
+            }
+            sb.append("        return total;\n");
+            sb.append("    }\n\n");
+            for (int i = 0; i < sb.length(); i++)
+                if (sb.charAt(i) == '\n')
+                    ++count;
+            out.write(sb.toString());
+        }
+        out.write("    public void run()\n    {\n    }\n}\n");
+    }
+
+    /**
+     * Writes an mbox file. About a third of the messages start a thread;
+     * the others are replies to one of the recent messages.
+     */
+    public static File mbox(int messages) throws IOException
+    {
+        File file = File.getInstance(getDirectory(), "mbox" + messages);
+        if (file.isFile())
+            return file;
+        Random random = new Random(messages);
+        SimpleDateFormat fromFormat =
+            new SimpleDateFormat("EEE MMM d HH:mm:ss yyyy", Locale.US);
+        SimpleDateFormat dateFormat =
+            new SimpleDateFormat("EEE, d MMM yyyy HH:mm:ss Z", Locale.US);
+        fromFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        dateFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
+        long time = 1700000000000L;
+        ArrayList<String> messageIds = new ArrayList<String>();
+        ArrayList<String> references = new ArrayList<String>();
+        ArrayList<String> subjects = new ArrayList<String>();
+        try (Writer out = writer(file)) {
+            StringBuilder sb = new StringBuilder();
+            for (int i = 0; i < messages; i++) {
+                sb.setLength(0);
+                time += random.nextInt(3600000);
+                final Date date = new Date(time);
+                final String name = NAMES[random.nextInt(NAMES.length)];
+                final String address =
+                    name.toLowerCase(Locale.US).replace(' ', '.') + "@example.com";
+                final String messageId = "<" + i + "." + time + "@example.com>";
+                String subject;
+                String refs = null;
+                String inReplyTo = null;
+                if (i == 0 || random.nextInt(3) == 0) {
+                    subject = SUBJECTS[random.nextInt(SUBJECTS.length)];
+                } else {
+                    final int parent =
+                        Math.max(0, i - 1 - random.nextInt(Math.min(i, 200)));
+                    inReplyTo = messageIds.get(parent);
+                    refs = references.get(parent);
+                    refs = refs == null ? inReplyTo : refs + " " + inReplyTo;
+                    subject = subjects.get(parent);
+                    if (!subject.startsWith("Re: "))
+                        subject = "Re: " + subject;
+                }
+                messageIds.add(messageId);
+                references.add(refs);
+                subjects.add(subject);
+
+                sb.append("From ").append(address).append(' ')
+                    .append(fromFormat.format(date)).append('\n');
+                sb.append("Return-Path: <").append(address).append(">\n");
+                sb.append("Received: from mail.example.com (mail.example.com [192.0.2.")
+                    .append(random.nextInt(255)).append("])\n");
+                sb.append("\tby mx.example.org with ESMTP id ")
+                    .append(Long.toHexString(random.nextLong())).append(";\n");
+                sb.append("\t").append(dateFormat.format(date)).append('\n');
+                sb.append("From: \"").append(name).append("\" <").append(address).append(">\n");
+                sb.append("To: j-devel@example.org\n");
+                if (random.nextInt(4) == 0)
+                    sb.append("Cc: \"").append(NAMES[random.nextInt(NAMES.length)])
+                        .append("\" <list@example.org>\n");
+                sb.append("Subject: ").append(subject).append('\n');
+                sb.append("Date: ").append(dateFormat.format(date)).append('\n');
+                sb.append("Message-ID: ").append(messageId).append('\n');
+                if (inReplyTo != null)
+                    sb.append("In-Reply-To: ").append(inReplyTo).append('\n');
+                if (refs != null)
+                    sb.append("References: ").append(refs).append('\n');
+                sb.append("MIME-Version: 1.0\n");
+                sb.append("Content-Type: text/plain; charset=us-ascii\n");
+                sb.append("X-Mailer: J\n");
+                sb.append("X-J-Status: ").append(random.nextInt(4)).append('\n');
+                sb.append('\n');
+                if (inReplyTo != null) {
+                    sb.append("On ").append(dateFormat.format(date))
+                        .append(", someone wrote:\n");
+                    for (int j = random.nextInt(6); j-- > 0;)
+                        sb.append("> ").append(sentence(random)).append('\n');
+                    sb.append('\n');
+                }
+                for (int j = 3 + random.nextInt(30); j-- > 0;)
+                    sb.append(sentence(random)).append('\n');
+                sb.append("\n-- \n").append(name).append("\n\n");
+                out.write(sb.toString());
+            }
+        }
+        return file;
+    }
+
+    /**
+     * Writes an HTML page laid out like generated API documentation: an
+     * index table with an anchor and a description for each entry, broken
+     * up now and then by a heading and a preformatted example.
+     */
+    public static File html(int entries) throws IOException
+    {
+        File file = File.getInstance(getDirectory(), "api" + entries + ".html");
+        if (file.isFile())
+            return file;
+        Random random = new Random(entries);
+        try (Writer out = writer(file)) {
+            StringBuilder sb = new StringBuilder();
+            out.write("<html>\n<head>\n<title>All Methods</title>\n");
+            out.write("<meta http-equiv=\"Content-Type\" content=\"text/html; charset=utf-8\">\n");
+            out.write("</head>\n<body>\n<h1>All Methods</h1>\n<table>\n");
+            for (int i = 0; i < entries; i++) {
+                sb.setLength(0);
+                final String name = methodName(random);
+                sb.append("<tr><td width=\"30%\"><a name=\"").append(name).append(i)
+                    .append("\"></a><code><b><a href=\"#").append(name).append(i)
+                    .append("\">").append(name).append("</a></b>(")
+                    .append(TYPES[random.nextInt(TYPES.length)])
+                    .append(")</code></td>\n<td>");
+                for (int j = 1 + random.nextInt(3); j-- > 0;)
+                    sb.append(sentence(random)).append(' ');
+                sb.append("Returns &lt;null&gt; if there isn&#39;t one.</td></tr>\n");
+                if (i % 100 == 99) {
+                    sb.append("</table>\n<h2>").append(NOUNS[random.nextInt(NOUNS.length)])
+                        .append("</h2>\n<pre>\n    ").append(name).append("(x);\n")
+                        .append("    if (x &amp;&amp; y)\n\treturn;\n</pre>\n<table>\n");
+                }
+                out.write(sb.toString());
+            }
+            out.write("</table>\n</body>\n</html>\n");
+        }
+        return file;
+    }
+
+    private static String sentence(Random random)
+    {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 5 + random.nextInt(10); i-- > 0;) {
+            if (sb.length() > 0)
+                sb.append(' ');
+            sb.append(WORDS[random.nextInt(WORDS.length)]);
+        }
+        sb.setCharAt(0, Character.toUpperCase(sb.charAt(0)));
+        sb.append('.');
+        return sb.toString();
+    }
+
+    // Returns a parsed buffer in Java mode holding the contents of file.
+    public static Buffer javaBuffer(File file)
+    {
+        Buffer buffer = new Buffer(file);
+        buffer.setMode(JavaMode.getMode());
+        buffer.loadFile(file);
+        buffer.getFormatter().parseBuffer();
+        return buffer;
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * JavaFormatterBenchmark.java
+ *
+ * Copyright (C) 2026 Kevin Krouse
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.armedbear.j;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+// Parsing a Java buffer, from scratch and after a one-line edit, and
+// formatting a screenful of its lines.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class JavaFormatterBenchmark
+{
+    static final int SCREEN_LINES = 60;
+
+    @Param({"2000", "50000"})
+    public int lines;
+
+    private Buffer buffer;
+    private Formatter formatter;
+    private Line middleLine;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        buffer = Fixtures.javaBuffer(Fixtures.javaSource(lines));
+        formatter = buffer.getFormatter();
+        middleLine = buffer.getLine(lines / 2);
+    }
+
+    @Benchmark
+    public boolean parseBuffer()
+    {
+        buffer.setNeedsParsing(true);
+        return formatter.parseBuffer();
+    }
+
+    @Benchmark
+    public boolean parseChangedLine()
+    {
+        buffer.setChangedLines(middleLine, middleLine);
+        buffer.invalidate();
+        return formatter.parseBuffer();
+    }
+
+    @Benchmark
+    public void formatLine(Blackhole bh)
+    {
+        Line line = middleLine;
+        for (int i = 0; i < SCREEN_LINES && line != null; i++) {
+            bh.consume(formatter.formatLine(line));
+            line = line.next();
+        }
+    }
+}
@@ -0,0 +1,103 @@
+/*
+ * SearchBenchmark.java
+ *
+ * Copyright (C) 2026 Kevin Krouse
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.armedbear.j;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Finding every match in a buffer, and scanning a buffer for a string that
+// isn't there.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class SearchBenchmark
+{
+    @Param({"50000"})
+    public int lines;
+
+    @Param({"false", "true"})
+    public boolean ignoreCase;
+
+    private Buffer buffer;
+    private Search string;
+    private Search missing;
+    private Search regExp;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        buffer = Fixtures.javaBuffer(Fixtures.javaSource(lines));
+        string = new Search("total", ignoreCase, false);
+        missing = new Search("notInTheBuffer", ignoreCase, false);
+        regExp = new Search("get[A-Z][a-z]+[0-9]+\\(", ignoreCase, false);
+        regExp.setRegularExpression(true);
+        regExp.setREFromPattern();
+    }
+
+    private Position start()
+    {
+        return new Position(buffer.getFirstLine(), 0);
+    }
+
+    @Benchmark
+    public int findString()
+    {
+        int count = 0;
+        Position pos = start();
+        while ((pos = string.findString(buffer, pos)) != null) {
+            ++count;
+            pos = new Position(pos.getLine(), pos.getOffset() + 1);
+        }
+        return count;
+    }
+
+    @Benchmark
+    public Position findMissingString()
+    {
+        return missing.findString(buffer, start());
+    }
+
+    @Benchmark
+    public int findRegExp()
+    {
+        int count = 0;
+        Position pos = start();
+        while ((pos = regExp.findRegExp(buffer, pos)) != null) {
+            ++count;
+            pos = new Position(pos.getLine(), pos.getOffset() + 1);
+        }
+        return count;
+    }
+}
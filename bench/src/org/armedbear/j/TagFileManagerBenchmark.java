@@ -0,0 +1,107 @@
+/*
+ * TagFileManagerBenchmark.java
+ *
+ * Copyright (C) 2026 Kevin Krouse
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.armedbear.j;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.armedbear.j.mode.java.JavaMode;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Tagging a directory of Java files, and looking up tags in it.
+@State(Scope.Benchmark)
+@BenchmarkMode(org.openjdk.jmh.annotations.Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class TagFileManagerBenchmark
+{
+    @Param({"50", "500"})
+    public int files;
+
+    private static final String[] NAMES = {
+        "getBuffer", "findTag", "updateLine", "run", "parseEntry", "noSuchMethod"
+    };
+
+    private TagFileManager manager;
+    private File dir;
+    private Mode mode;
+    private File[] sources;
+    private int next;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        dir = Fixtures.javaSourceDirectory(files, 400);
+        mode = JavaMode.getMode();
+        manager = new TagFileManager();
+        manager.makeTagFile(dir, mode);
+        String[] names = dir.list();
+        sources = new File[names.length];
+        for (int i = 0; i < names.length; i++)
+            sources[i] = File.getInstance(dir, names[i]);
+    }
+
+    private void touch(File file)
+    {
+        java.io.File f = new java.io.File(file.canonicalPath());
+        f.setLastModified(f.lastModified() + 1000);
+    }
+
+    // Re-tags the directory after one of its files has changed.
+    @Benchmark
+    public TagIndex retagOneFile()
+    {
+        touch(sources[next++ % sources.length]);
+        manager.makeTagFile(dir, mode);
+        return manager.getIndex(dir, mode);
+    }
+
+    // Re-tags the directory after all of its files have changed.
+    @Benchmark
+    public TagIndex retagAllFiles()
+    {
+        for (File file : sources)
+            touch(file);
+        manager.makeTagFile(dir, mode);
+        return manager.getIndex(dir, mode);
+    }
+
+    @Benchmark
+    public List<GlobalTag> findTag()
+    {
+        final String name = NAMES[next++ % NAMES.length];
+        TagIndex index = manager.getIndex(dir, mode);
+        List<GlobalTag> tags = index.findByMethodNamePrefix(name, false);
+        tags.addAll(index.findByName(name, true));
+        return tags;
+    }
+}
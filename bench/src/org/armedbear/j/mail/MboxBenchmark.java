@@ -0,0 +1,95 @@
+/*
+ * MboxBenchmark.java
+ *
+ * Copyright (C) 2026 Kevin Krouse
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.armedbear.j.mail;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.armedbear.j.File;
+import org.armedbear.j.Fixtures;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Reading the messages of an mbox file, by parsing the file itself and
+// from its summary.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class MboxBenchmark
+{
+    @Param({"1000", "10000"})
+    public int messages;
+
+    private File file;
+    private File summaryFile;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        file = Fixtures.mbox(messages);
+        summaryFile = File.getInstance(file.canonicalPath() + ".summary");
+        // The summary is only used if it's newer than the mailbox.
+        java.io.File f = new java.io.File(file.canonicalPath());
+        f.setLastModified(f.lastModified() - 60000);
+    }
+
+    static List<MailboxEntry> getEntries(File file)
+    {
+        // Forget the entries of the last run.
+        Mbox.cleanup();
+        Mbox mbox = Mbox.getInstance(file);
+        if (!mbox.lock())
+            throw new IllegalStateException("mbox is locked");
+        try {
+            return mbox.getEntries(null);
+        }
+        finally {
+            mbox.unlock();
+        }
+    }
+
+    @Benchmark
+    public List<MailboxEntry> read()
+    {
+        summaryFile.delete();
+        return getEntries(file);
+    }
+
+    @Benchmark
+    public List<MailboxEntry> readSummary()
+    {
+        if (!summaryFile.isFile())
+            getEntries(file);
+        return getEntries(file);
+    }
+}
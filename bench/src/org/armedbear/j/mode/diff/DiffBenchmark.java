@@ -0,0 +1,104 @@
+/*
+ * DiffBenchmark.java
+ *
+ * Copyright (C) 2026 Kevin Krouse
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.armedbear.j.mode.diff;
+
+import java.io.InputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.armedbear.j.Buffer;
+import org.armedbear.j.File;
+import org.armedbear.j.Fixtures;
+import org.armedbear.j.Line;
+import org.armedbear.j.MappedText;
+import org.armedbear.j.util.Utilities;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Comparing a modified buffer with its file, in process and the way it used
+// to be done, by writing the buffer to a temporary file and running GNU diff.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class DiffBenchmark
+{
+    @Param({"10000", "100000"})
+    public int lines;
+
+    // Every changeInterval-th line is changed.
+    @Param({"1000", "10"})
+    public int changeInterval;
+
+    private File file;
+    private Buffer buffer;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        file = Fixtures.javaSource(lines);
+        buffer = Fixtures.javaBuffer(file);
+        int i = 0;
+        for (Line line = buffer.getFirstLine(); line != null; line = line.next()) {
+            if (++i % changeInterval == 0)
+                line.setText(line.getText() + " // Changed.");
+        }
+    }
+
+    @Benchmark
+    public String inProcess()
+    {
+        MappedText text = MappedText.map(file, buffer.getSaveEncoding());
+        Diff diff = Diff.compare(text, buffer);
+        return diff.toUnifiedString("a", "b");
+    }
+
+    @Benchmark
+    public String gnuDiff() throws Exception
+    {
+        File tempFile = Utilities.getTempFile(file.getParentFile());
+        try {
+            buffer.writeFile(tempFile);
+            Process process =
+                new ProcessBuilder("diff", "-u", file.canonicalPath(),
+                                   tempFile.canonicalPath()).start();
+            String output;
+            try (InputStream in = process.getInputStream()) {
+                output = new String(in.readAllBytes(), buffer.getSaveEncoding());
+            }
+            process.waitFor();
+            return output;
+        }
+        finally {
+            tempFile.delete();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * WebLoaderBenchmark.java
+ *
+ * Copyright (C) 2026 Kevin Krouse
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.armedbear.j.mode.web;
+
+import java.util.concurrent.TimeUnit;
+
+import org.armedbear.j.File;
+import org.armedbear.j.Fixtures;
+import org.armedbear.j.Line;
+import org.armedbear.j.LineSequence;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Rendering an HTML page of generated API documentation: the whole page,
+// all of it in batches, and only as far as the first batch, which is when
+// a web buffer can first show something.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = "-Djava.awt.headless=true")
+public class WebLoaderBenchmark
+{
+    // About 2.5 and 25 MB.
+    @Param({"10000", "100000"})
+    public int entries;
+
+    private File file;
+
+    @Setup
+    public void setUp() throws Exception
+    {
+        file = Fixtures.html(entries);
+    }
+
+    @Benchmark
+    public LineSequence load()
+    {
+        return new WebLoader(file).load();
+    }
+
+    @Benchmark
+    public int loadInBatches()
+    {
+        final int[] count = new int[1];
+        WebLoader loader = new WebLoader(file);
+        loader.setListener(new WebLoader.Listener() {
+            public void linesLoaded(Line first, Line last)
+            {
+                ++count[0];
+            }
+        });
+        loader.load();
+        return count[0];
+    }
+
+    @Benchmark
+    public Line firstBatch()
+    {
+        final Line[] first = new Line[1];
+        final WebLoader loader = new WebLoader(file);
+        loader.setListener(new WebLoader.Listener() {
+            public void linesLoaded(Line firstLine, Line lastLine)
+            {
+                if (first[0] == null) {
+                    first[0] = firstLine;
+                    loader.cancel();
+                }
+            }
+        });
+        loader.load();
+        return first[0];
+    }
+}
@@ -0,0 +1,4 @@
+package org.armedbear.j.jmh_generated;
+public class BufferBenchmark_jmhType extends BufferBenchmark_jmhType_B3 {
+}
+
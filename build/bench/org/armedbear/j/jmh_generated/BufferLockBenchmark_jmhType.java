@@ -0,0 +1,4 @@
+package org.armedbear.j.jmh_generated;
+public class BufferLockBenchmark_jmhType extends BufferLockBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package org.armedbear.j.jmh_generated;
+public class DisplayBenchmark_jmhType extends DisplayBenchmark_jmhType_B3 {
+}
+
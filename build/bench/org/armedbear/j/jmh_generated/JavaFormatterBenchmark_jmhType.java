@@ -0,0 +1,4 @@
+package org.armedbear.j.jmh_generated;
+public class JavaFormatterBenchmark_jmhType extends JavaFormatterBenchmark_jmhType_B3 {
+}
+
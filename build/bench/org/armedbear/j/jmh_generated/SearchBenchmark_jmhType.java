@@ -0,0 +1,4 @@
+package org.armedbear.j.jmh_generated;
+public class SearchBenchmark_jmhType extends SearchBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package org.armedbear.j.jmh_generated;
+public class SystemBufferBenchmark_jmhType extends SystemBufferBenchmark_jmhType_B3 {
+}
+
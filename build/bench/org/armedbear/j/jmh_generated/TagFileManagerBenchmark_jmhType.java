@@ -0,0 +1,4 @@
+package org.armedbear.j.jmh_generated;
+public class TagFileManagerBenchmark_jmhType extends TagFileManagerBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package org.armedbear.j.mail.jmh_generated;
+public class MboxBenchmark_jmhType extends MboxBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package org.armedbear.j.mail.jmh_generated;
+public class SortByThreadBenchmark_jmhType extends SortByThreadBenchmark_jmhType_B3 {
+}
+
@@ -0,0 +1,4 @@
+package org.armedbear.j.mode.diff.jmh_generated;
+public class DiffBenchmark_jmhType extends DiffBenchmark_jmhType_B3 {
+}
+
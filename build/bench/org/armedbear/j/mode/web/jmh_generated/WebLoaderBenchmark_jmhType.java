@@ -0,0 +1,4 @@
+package org.armedbear.j.mode.web.jmh_generated;
+public class WebLoaderBenchmark_jmhType extends WebLoaderBenchmark_jmhType_B3 {
+}
+
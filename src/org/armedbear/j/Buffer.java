@@ -63,6 +63,17 @@ public class Buffer extends SystemBuffer
 
     private boolean needsParsing;
 
+    // Lines changed since the last call to Formatter.parseBuffer(). If
+    // parseAll is true, the whole buffer needs to be parsed.
+    private boolean parseAll = true;
+    private Line firstDirtyLine;
+    private Line lastDirtyLine;
+
+    // Lines changed by the edit in progress, recorded by setChangedLines()
+    // and picked up by the next call to modified().
+    private Line firstChangedLine;
+    private Line lastChangedLine;
+
     boolean needsRenumbering;
 
     public final boolean needsRenumbering()
@@ -379,6 +390,20 @@ public class Buffer extends SystemBuffer
         initialized = b;
     }
 
+    // Called on a background thread to read the start of the file before
+    // the buffer is activated. Compressed files are left to initialize().
+    public synchronized void detectFileType()
+    {
+        if (initialized || fileType != FILETYPE_UNKNOWN || cache != null)
+            return;
+        final File file = getFile();
+        if (file == null || !file.isLocal())
+            return;
+        final int type = Utilities.getFileType(file);
+        if (type != FILETYPE_GZIP)
+            fileType = type;
+    }
+
     public synchronized void initialize()
     {
         Debug.assertTrue(!initialized);
@@ -774,12 +799,14 @@ public class Buffer extends SystemBuffer
             modCount = count;
             srText = null;
         }
+        invalidateLineIndex();
     }
 
     public final synchronized void incrementModCount()
     {
         ++modCount;
         srText = null;
+        invalidateLineIndex();
     }
 
     public final void setModCountWhenLastSaved(int count)
@@ -846,7 +873,7 @@ public class Buffer extends SystemBuffer
             setModeFromFilename(newName);
             if (mode != oldMode) {
                 // Mode has changed.
-                needsParsing = true;
+                setNeedsParsing(true);
 
                 // Make sure we parse the buffer before we display it.
                 if (formatter != null)
@@ -977,7 +1004,8 @@ public class Buffer extends SystemBuffer
                 mode.loadFile(this, toBeLoaded);
             else {
                 final String encoding = toBeLoaded.getEncoding();
-                load(toBeLoaded.getInputStream(), encoding);
+                if (!loadMapped(toBeLoaded, encoding))
+                    load(toBeLoaded.getInputStream(), encoding);
                 if (encoding != null)
                     saveProperties(); // Remember encoding for next time.
             }
@@ -1914,7 +1942,7 @@ public class Buffer extends SystemBuffer
     public void removeTrailingWhitespace()
     {
         boolean bufferChanged = false;
-        CompoundEdit compoundEdit = null;
+        UndoLineChanges undoLineChanges = null;
         try {
             lockWrite();
         }
@@ -1937,10 +1965,10 @@ public class Buffer extends SystemBuffer
                 if (length != originalLength) {
                     if (!bufferChanged) {
                         // First change.
-                        compoundEdit = new CompoundEdit();
+                        undoLineChanges = new UndoLineChanges(this);
                         bufferChanged = true;
                     }
-                    compoundEdit.addEdit(new UndoLineEdit(this, line));
+                    undoLineChanges.add(line);
                     line.setText(text.substring(0, length));
                 }
             }
@@ -1950,10 +1978,8 @@ public class Buffer extends SystemBuffer
         finally {
             unlockWrite();
         }
-        if (compoundEdit != null && undoManager != null) {
-            compoundEdit.end();
-            undoManager.addEdit(compoundEdit);
-        }
+        if (undoLineChanges != null && undoManager != null)
+            undoManager.addEdit(undoLineChanges);
         if (bufferChanged) {
             for (EditorIterator it = new EditorIterator(); it.hasNext();) {
                 Editor ed = it.next();
@@ -2122,6 +2148,9 @@ public class Buffer extends SystemBuffer
 
     public void invalidate()
     {
+        addDirtyLines(firstChangedLine, lastChangedLine);
+        firstChangedLine = null;
+        lastChangedLine = null;
         needsParsing = true;
         maxColsValid = false;
         setTags(null);
@@ -2185,6 +2214,54 @@ public class Buffer extends SystemBuffer
     public final void setNeedsParsing(boolean b)
     {
         needsParsing = b;
+        parseAll = b;
+        firstDirtyLine = null;
+        lastDirtyLine = null;
+    }
+
+    /**
+     * Records the range of lines changed by an edit, so the next
+     * <code>Formatter.parseBuffer()</code> can resume at the first changed
+     * line instead of re-parsing the whole buffer.
+     *
+     * Must be called before <code>modified()</code>. If <code>modified()</code>
+     * is called without it, the whole buffer is re-parsed.
+     *
+     * @param first     the first changed line
+     * @param last      the last changed line (may be the same as first)
+     */
+    public final void setChangedLines(Line first, Line last)
+    {
+        firstChangedLine = first;
+        lastChangedLine = last;
+    }
+
+    // Returns null if the whole buffer needs to be parsed.
+    public final Line getFirstDirtyLine()
+    {
+        return parseAll ? null : firstDirtyLine;
+    }
+
+    public final Line getLastDirtyLine()
+    {
+        return parseAll ? null : lastDirtyLine;
+    }
+
+    private void addDirtyLines(Line first, Line last)
+    {
+        if (parseAll)
+            return;
+        if (first == null || last == null) {
+            parseAll = true;
+        } else if (firstDirtyLine == null) {
+            firstDirtyLine = first;
+            lastDirtyLine = last;
+        } else if ((first != firstDirtyLine && first != lastDirtyLine) ||
+                   (last != firstDirtyLine && last != lastDirtyLine)) {
+            // Edits in more than one place. We can't order the lines
+            // cheaply (they may not be numbered yet), so parse everything.
+            parseAll = true;
+        }
     }
 
     public boolean isModified()
@@ -2194,15 +2271,7 @@ public class Buffer extends SystemBuffer
 
     public Line getLine(int lineNumber)
     {
-        if (lineNumber < 0)
-            return null;
-        int n = 0;
-        Line line = getFirstLine();
-        while (line != null && n != lineNumber) {
-            line = line.next();
-            ++n;
-        }
-        return line;
+        return getLineIndex().getLine(lineNumber);
     }
 
     /**
@@ -2217,60 +2286,35 @@ public class Buffer extends SystemBuffer
     {
         if (offset < 0)
             offset = 0;
-        Line line = getFirstLine();
-        while (line != null && line.originalLineNumber() != lineNumber)
-            line = line.next();
+        final LineIndex index = getLineIndex();
+        Line line = index.findOriginal(lineNumber);
         if (line != null)
             return new Position(line, Math.min(offset, line.length()));
-        if (line == null) {
-            // We didn't find the exact line we were looking for. Find the
-            // line with the next highest original line number.
-            line = getFirstLine();
-            while (line != null && line.originalLineNumber() < lineNumber)
-                line = line.next();
-        }
+        // We didn't find the exact line we were looking for. Find the line
+        // with the next highest original line number.
+        line = index.findOriginalAtOrAfter(lineNumber);
         if (line != null)
             return new Position(line, 0);
         return getEnd();
     }
 
     // Convert position into absolute character offset from start of buffer.
+    // Returns -1 if the line isn't in the buffer, or if the offset is too
+    // big for an int.
     public int getAbsoluteOffset(Position pos)
     {
-        Line targetLine = pos.getLine();
-        int offset = 0;
-        Line line = getFirstLine();
-        while (line != null && line != targetLine) {
-            offset += line.length() + 1;
-            line = line.next();
-        }
-        if (line == null)
+        long offset = getLineIndex().getAbsoluteOffset(pos.getLine());
+        if (offset < 0)
             return -1; // Line not in buffer.
-        else
-            return offset + pos.getOffset();
+        offset += pos.getOffset();
+        return offset <= Integer.MAX_VALUE ? (int) offset : -1;
     }
 
     // Convert absolute character offset from start of buffer into position.
+    // Returns null if goal is beyond the end of the buffer.
     public Position getPosition(int goal)
     {
-        int offset = 0;
-        Line line = getFirstLine();
-        while (line != null) {
-            // Line separator always counts as 1.
-            offset += line.length() + 1;
-            if (offset >= goal) {
-                if (offset == goal)
-                    line = line.next();
-                break;
-            }
-            line = line.next();
-        }
-        if (line == null)
-            return null; // We hit the end of the buffer without reaching our goal.
-        if (offset == goal)
-            return new Position(line, 0);
-        offset -= line.length() + 1;
-        return new Position(line, goal - offset);
+        return getLineIndex().getPosition(goal);
     }
 
     private UndoManager undoManager;
@@ -2325,6 +2369,8 @@ public class Buffer extends SystemBuffer
                 renumber();
             try {
                 undoManager.undo();
+                // Undo doesn't go through modified().
+                addDirtyLines(null, null);
             }
             catch (CannotUndoException e) {
                 Editor.currentEditor().status("Nothing to undo");
@@ -2344,6 +2390,7 @@ public class Buffer extends SystemBuffer
                 renumber();
             try {
                 undoManager.redo();
+                addDirtyLines(null, null);
             }
             catch (CannotRedoException e) {
                 Editor.currentEditor().status("Nothing to redo");
@@ -2454,6 +2501,7 @@ public class Buffer extends SystemBuffer
             sb.append(text.substring(pos.getOffset()));
             pos.getLine().setText(sb.toString());
             pos.skip(length);
+            setChangedLines(pos.getLine(), pos.getLine());
             modified();
         }
     }
@@ -2477,6 +2525,7 @@ public class Buffer extends SystemBuffer
             }
             newLine.setNext(line);
             line.setPrevious(newLine);
+            setChangedLines(newLine, line);
         } else if (offset == line.length()) {
             final Line newLine = new TextLine("");
             newLine.setNew(true);
@@ -2495,6 +2544,7 @@ public class Buffer extends SystemBuffer
             if (nextLine != null)
                 nextLine.setPrevious(newLine);
             pos.moveTo(newLine, 0);
+            setChangedLines(line, newLine);
         } else {
             final String head = line.substring(0, offset);
             final String tail = line.substring(offset);
@@ -2510,12 +2560,81 @@ public class Buffer extends SystemBuffer
             if (nextLine != null)
                 nextLine.setPrevious(newLine);
             pos.moveTo(newLine, 0);
+            setChangedLines(line, newLine);
         }
         needsRenumbering = true;
         modified();
         repaint();
     }
 
+    /**
+     * Returns the last line of the buffer. Output is usually appended to the
+     * line that was last the last time, so that line is checked before
+     * walking the list of lines.
+     *
+     * @param hint      the line that is probably the last line, or null
+     * @return          the last line, or null if the buffer is empty
+     */
+    protected final Line findLastLine(Line hint)
+    {
+        if (hint != null && hint.next() == null && !needsRenumbering &&
+            hint.lineNumber() == lineCount - 1) {
+            final Line prev = hint.previous();
+            if (prev != null ? prev.next() == hint : hint == getFirstLine())
+                return hint;
+        }
+        final Position end = getEnd();
+        return end != null ? end.getLine() : null;
+    }
+
+    /**
+     * Appends text to the end of the buffer, as <code>insertString()</code>
+     * would at the end of the last line, but without renumbering the whole
+     * buffer: the new lines are numbered as they are added. The caller must
+     * hold the write lock.
+     *
+     * @param last      the last line of the buffer
+     * @param s         the text
+     * @return          the new last line of the buffer
+     */
+    protected final Line appendOutput(Line last, String s)
+    {
+        Debug.assertTrue(last.next() == null);
+        if (needsRenumbering)
+            renumber();
+        final Line first = last;
+        final int limit = s.length();
+        int begin = 0;
+        for (int i = 0; i <= limit; i++) {
+            final char c = i < limit ? s.charAt(i) : 0;
+            if (i < limit && c != '\r' && c != '\n')
+                continue;
+            if (i > begin) {
+                if (last.length() > 0)
+                    last.setText(last.getText().concat(s.substring(begin, i)));
+                else
+                    last.setText(s.substring(begin, i));
+            }
+            if (i == limit)
+                break;
+            if (c == '\r' && i + 1 < limit && s.charAt(i + 1) == '\n')
+                ++i;
+            final Line newLine = new TextLine("");
+            newLine.setNew(true);
+            // Assume that the line flags should carry over to the new line.
+            newLine.setFlags(last.flags());
+            newLine.setPrevious(last);
+            last.setNext(newLine);
+            newLine.setLineNumber(lineCount++);
+            ++visibleLineCount;
+            last = newLine;
+            begin = i + 1;
+        }
+        setChangedLines(first, last);
+        modified();
+        return last;
+    }
+
     // Repaint all windows displaying this buffer.
     public final void repaint()
     {
@@ -2677,21 +2796,36 @@ public class Buffer extends SystemBuffer
         folded = false;
         lineCount = 0;
         visibleLineCount = 0;
+        // The index is built again when it's next needed.
+        invalidateLineIndex();
+        Line last = null;
         for (Line line = getFirstLine(); line != null; line = line.next()) {
             line.setLineNumber(lineCount++);
             if (line.isHidden())
                 folded = true;
             else
                 ++visibleLineCount;
+            last = line;
         }
+        setLastLine(last);
         needsRenumbering = false;
     }
 
+    // A line that has been deleted may still look like the last line if the
+    // lines before it were deleted too, but it keeps its old line number.
+    protected boolean isLastLine(Line line)
+    {
+        return !needsRenumbering && line.lineNumber() == lineCount - 1 &&
+            super.isLastLine(line);
+    }
+
     protected void renumberOriginal()
     {
         folded = false;
         lineCount = 0;
         visibleLineCount = 0;
+        invalidateLineIndex();
+        Line last = null;
         for (Line line = getFirstLine(); line != null; line = line.next()) {
             line.setOriginalLineNumber(lineCount);
             line.setLineNumber(lineCount++);
@@ -2699,16 +2833,21 @@ public class Buffer extends SystemBuffer
                 folded = true;
             else
                 ++visibleLineCount;
+            last = line;
         }
+        setLastLine(last);
         needsRenumbering = false;
     }
 
+    // Once the buffer has grown a quarter past the limit, trims it back to
+    // the limit, so the cost of renumbering what's left is spread over many
+    // lines of output.
     protected void enforceOutputLimit(Property property)
     {
         Debug.assertTrue(property != null);
         final int outputLimit =
             Editor.preferences().getIntegerProperty(property);
-        if (outputLimit == 0 || lineCount <= outputLimit)
+        if (outputLimit == 0 || lineCount <= outputLimit + outputLimit / 4)
             return;
         try {
             lockWrite();
@@ -20,7 +20,6 @@
 
 package org.armedbear.j;
 
-import org.armedbear.j.util.Tuple2;
 import org.armedbear.j.util.Utilities;
 
 import java.io.BufferedReader;
@@ -32,136 +31,556 @@ import java.io.OutputStream;
 import java.io.OutputStreamWriter;
 import java.net.HttpURLConnection;
 import java.net.URL;
-import java.util.Vector;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 
+/**
+ * Documents fetched over HTTP, kept in ~/.j/cache from one session to the
+ * next.
+ *
+ * Each document is stored in a file named for a hash of its URL, along with
+ * the validators (ETag and Last-Modified) the server sent with it, so a
+ * later visit can ask the server whether it has changed instead of fetching
+ * it again. The index is kept in least recently used order and saved in the
+ * catalog file on exit. When the documents take up more than httpCacheSize
+ * megabytes, the least recently used ones are removed.
+ */
 public final class Cache
 {
-    private static final File cacheDir =
-        File.getInstance(Directories.getEditorDirectory(), "cache");
+    private static final String CATALOG = "catalog";
+
+    public static final class Entry
+    {
+        private final String netPath;
+        private final String etag;
+        private final String lastModified;
+        private final String contentType;
+        private final long size;
+
+        private Entry(String netPath, String etag, String lastModified,
+            String contentType, long size)
+        {
+            this.netPath = netPath;
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.contentType = contentType;
+            this.size = size;
+        }
+
+        public final String getETag()
+        {
+            return etag;
+        }
+
+        public final String getLastModified()
+        {
+            return lastModified;
+        }
+
+        public final String getContentType()
+        {
+            return contentType;
+        }
+
+        public final long getSize()
+        {
+            return size;
+        }
+    }
 
     private static Cache cache;
 
-    private File catalogFile;
-    private Vector<Tuple2<String, String>> catalog;
+    private final File dir;
+    private final File catalogFile;
+    private final long maxSize; // Bytes.
+
+    // Keyed by URL, least recently used first.
+    private final LinkedHashMap<String, Entry> index =
+        new LinkedHashMap<String, Entry>(64, 0.75f, true);
+
+    private long size; // Bytes.
+    private boolean dirty;
 
-    private Cache()
+    private int lookups;
+    private int hits;
+    private int revalidations;
+    private int stores;
+    private int evictions;
+    private long bytesServed;
+
+    Cache(File dir, long maxSize)
     {
+        this.dir = dir;
+        this.maxSize = maxSize;
+        catalogFile = File.getInstance(dir, CATALOG);
     }
 
-    public static Cache getCache()
+    // Returns null if the cache is disabled.
+    public static synchronized Cache getCache()
     {
         if (cache == null) {
-            cache = new Cache();
-            if (!cache.initialize())
-                cache = null;
+            final long maxSize = getMaxSize();
+            if (maxSize <= 0)
+                return null;
+            Cache c = new Cache(getCacheDirectory(), maxSize);
+            if (c.initialize())
+                cache = c;
         }
         return cache;
     }
 
-    // Currently this just deletes everything in the cache directory.
-    // Called from Editor.maybeExit.
-    public static void cleanup()
+    private static File getCacheDirectory()
     {
-        if (cacheDir.isDirectory()) {
-            String[] files = cacheDir.list();
-            for (int i = files.length-1; i >= 0; i--) {
-                File file = File.getInstance(cacheDir, files[i]);
-                file.delete();
+        return File.getInstance(Directories.getEditorDirectory(), "cache");
+    }
+
+    private static long getMaxSize()
+    {
+        return Editor.preferences().getIntegerProperty(Property.HTTP_CACHE_SIZE)
+            * 1024L * 1024L;
+    }
+
+    // Saves the catalog, or deletes everything in the cache directory if
+    // the cache is disabled. Called from Editor.maybeExit.
+    public static synchronized void cleanup()
+    {
+        if (cache != null) {
+            cache.saveCatalog();
+        } else if (getMaxSize() <= 0) {
+            File dir = getCacheDirectory();
+            if (dir.isDirectory()) {
+                String[] files = dir.list();
+                for (int i = files.length-1; i >= 0; i--)
+                    File.getInstance(dir, files[i]).delete();
             }
         }
     }
 
-    private boolean initialize()
+    boolean initialize()
     {
-        if (!cacheDir.isDirectory())
-            cacheDir.mkdirs();
-        if (!cacheDir.isDirectory())
+        if (!dir.isDirectory())
+            dir.mkdirs();
+        if (!dir.isDirectory())
             return false;
-        catalogFile = File.getInstance(cacheDir, "catalog");
-        catalog = loadCatalog();
+        loadCatalog();
+        // Anything else is a partial download, or was cached by an older
+        // version without validators.
+        HashSet<String> names = new HashSet<String>();
+        for (Entry entry : index.values())
+            names.add(getName(entry.netPath));
+        String[] files = dir.list();
+        if (files != null) {
+            for (int i = 0; i < files.length; i++) {
+                if (!files[i].equals(CATALOG) && !names.contains(files[i]))
+                    File.getInstance(dir, files[i]).delete();
+            }
+        }
+        evict(maxSize);
         return true;
     }
 
-    public File get(String netPath)
+    /**
+     * Returns the cached copy of a document without asking the server if
+     * it has changed, or null if there isn't one.
+     */
+    public synchronized File get(String netPath)
     {
-        for (int i = catalog.size()-1; i >= 0; i--) {
-            Tuple2<String, String> pair = catalog.get(i);
-            if (pair.second.equals(netPath))
-                return File.getInstance(cacheDir, pair.first);
+        ++lookups;
+        Entry entry = lookup(netPath);
+        if (entry == null)
+            return null;
+        ++hits;
+        bytesServed += entry.size;
+        return getFile(entry);
+    }
+
+    /**
+     * Returns the index entry for a document, with the validators to send
+     * in a conditional request for it, or null if it isn't cached.
+     */
+    public synchronized Entry getEntry(String netPath)
+    {
+        ++lookups;
+        return lookup(netPath);
+    }
+
+    private Entry lookup(String netPath)
+    {
+        Entry entry = index.get(netPath);
+        if (entry != null) {
+            if (getFile(entry).isFile()) {
+                // The order has changed.
+                dirty = true;
+            } else {
+                remove(entry);
+                entry = null;
+            }
         }
-        return null;
+        return entry;
     }
 
+    /**
+     * Copies the cached copy of a document to dest, once the server has said
+     * it hasn't changed. Returns false if it has been removed from the cache
+     * in the meantime.
+     */
+    public boolean copyTo(Entry entry, File dest)
+    {
+        try {
+            copy(getFile(entry), dest);
+        }
+        catch (IOException e) {
+            Log.debug(e);
+            dest.delete();
+            synchronized (this) {
+                if (index.get(entry.netPath) == entry)
+                    remove(entry);
+            }
+            return false;
+        }
+        synchronized (this) {
+            ++hits;
+            ++revalidations;
+            bytesServed += entry.size;
+        }
+        return true;
+    }
+
+    /**
+     * Adds a copy of a document fetched with a 200 response to the cache,
+     * unless the response has no validator or forbids storing it. Returns
+     * true if the document was added.
+     */
+    public boolean store(String netPath, File source, Headers headers)
+    {
+        final String etag = headers.getValue(Headers.ETAG);
+        final String lastModified = headers.getValue(Headers.LAST_MODIFIED);
+        if (etag == null && lastModified == null)
+            return false;
+        final String cacheControl = headers.getValue(Headers.CACHE_CONTROL);
+        if (cacheControl != null &&
+            cacheControl.toLowerCase().indexOf("no-store") >= 0)
+            return false;
+        if (source.length() > maxSize)
+            return false;
+        File temp = Utilities.getTempFile(dir);
+        try {
+            copy(source, temp);
+        }
+        catch (IOException e) {
+            Log.error(e);
+            temp.delete();
+            return false;
+        }
+        return add(netPath, temp, etag, lastModified,
+            headers.getValue(Headers.CONTENT_TYPE)) != null;
+    }
+
+    /**
+     * Fetches a document and adds it to the cache. If it's already cached,
+     * the server is asked whether it has changed, and the cached copy is
+     * returned if it hasn't.
+     */
     public File put(String netPath)
     {
-        File file = null;
+        Entry entry;
+        synchronized (this) {
+            entry = lookup(netPath);
+        }
+        File temp = null;
         try {
             URL url = new URL(netPath);
             HttpURLConnection connection =
                 (HttpURLConnection) url.openConnection();
-            InputStream in = connection.getInputStream();
-            if (in != null) {
-                file = Utilities.getTempFile(cacheDir);
-                OutputStream out = file.getOutputStream();
-                byte[] buf = new byte[4096];
-                int bytesRead;
-                while ((bytesRead = in.read(buf)) > 0)
-                    out.write(buf, 0, bytesRead);
-                out.close();
-                in.close();
+            if (entry != null) {
+                if (entry.etag != null)
+                    connection.setRequestProperty("If-None-Match", entry.etag);
+                if (entry.lastModified != null)
+                    connection.setRequestProperty("If-Modified-Since",
+                        entry.lastModified);
+            }
+            int responseCode = connection.getResponseCode();
+            if (responseCode == HttpURLConnection.HTTP_NOT_MODIFIED &&
+                entry != null) {
+                connection.disconnect();
+                synchronized (this) {
+                    ++hits;
+                    ++revalidations;
+                    bytesServed += entry.size;
+                }
+                return getFile(entry);
+            }
+            if (responseCode != HttpURLConnection.HTTP_OK) {
+                Log.error("Cache.put " + netPath + " " + responseCode);
+                connection.disconnect();
+                return null;
             }
+            InputStream in = connection.getInputStream();
+            temp = Utilities.getTempFile(dir);
+            OutputStream out = temp.getOutputStream();
+            byte[] buf = new byte[16384];
+            int bytesRead;
+            while ((bytesRead = in.read(buf)) > 0)
+                out.write(buf, 0, bytesRead);
+            out.close();
+            in.close();
+            return add(netPath, temp, connection.getHeaderField("ETag"),
+                connection.getHeaderField("Last-Modified"),
+                connection.getContentType());
         }
         catch (IOException e) {
             Log.error(e);
-            if (file != null && file.exists())
-                file.delete();
-            file = null;
+            if (temp != null && temp.exists())
+                temp.delete();
+            return null;
         }
-        if (file != null) {
-            catalog.add(new Tuple2<String, String>(file.getName(), netPath));
-            saveCatalog();
+    }
+
+    // Moves temp, a file in the cache directory, into place as the cached
+    // copy of netPath.
+    private synchronized File add(String netPath, File temp, String etag,
+        String lastModified, String contentType)
+    {
+        final long length = temp.length();
+        if (length > maxSize) {
+            temp.delete();
+            return null;
+        }
+        Entry old = index.get(netPath);
+        if (old != null)
+            remove(old);
+        Entry entry =
+            new Entry(netPath, etag, lastModified, contentType, length);
+        File file = getFile(entry);
+        file.delete();
+        if (!temp.renameTo(file)) {
+            temp.delete();
+            return null;
         }
+        index.put(netPath, entry);
+        size += length;
+        ++stores;
+        dirty = true;
+        evict(maxSize);
         return file;
     }
 
-    private Vector<Tuple2<String, String>> loadCatalog()
+    private void remove(Entry entry)
     {
-        Vector<Tuple2<String, String>> v = new Vector<Tuple2<String, String>>();
-        if (catalogFile.exists()) {
+        index.remove(entry.netPath);
+        size -= entry.size;
+        getFile(entry).delete();
+        dirty = true;
+    }
+
+    // Removes the least recently used documents until the rest take up no
+    // more than limit bytes.
+    private void evict(long limit)
+    {
+        Iterator<Entry> it = index.values().iterator();
+        while (size > limit && it.hasNext()) {
+            Entry entry = it.next();
+            it.remove();
+            size -= entry.size;
+            getFile(entry).delete();
+            ++evictions;
+            dirty = true;
+        }
+    }
+
+    private File getFile(Entry entry)
+    {
+        return File.getInstance(dir, getName(entry.netPath));
+    }
+
+    private static String getName(String netPath)
+    {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-1");
+            byte[] digest = md.digest(netPath.getBytes(StandardCharsets.UTF_8));
+            StringBuilder sb = new StringBuilder(digest.length * 2);
+            for (int i = 0; i < digest.length; i++) {
+                sb.append(Character.forDigit((digest[i] >> 4) & 0xf, 16));
+                sb.append(Character.forDigit(digest[i] & 0xf, 16));
+            }
+            return sb.toString();
+        }
+        catch (NoSuchAlgorithmException e) {
+            // Every Java platform has SHA-1.
+            throw new Error(e);
+        }
+    }
+
+    private static void copy(File source, File dest) throws IOException
+    {
+        InputStream in = source.getInputStream();
+        try {
+            OutputStream out = dest.getOutputStream();
             try {
-                BufferedReader reader = new BufferedReader(
-                    new InputStreamReader(catalogFile.getInputStream()));
-                String s;
-                while ((s = reader.readLine()) != null) {
-                    int index = s.indexOf(' ');
-                    if (index >= 0)
-                        v.add(new Tuple2<String, String>(s.substring(0, index), s.substring(index+1)));
-                }
+                byte[] buf = new byte[16384];
+                int bytesRead;
+                while ((bytesRead = in.read(buf)) > 0)
+                    out.write(buf, 0, bytesRead);
             }
-            catch (IOException e) {
-                Log.error(e);
+            finally {
+                out.close();
+            }
+        }
+        finally {
+            in.close();
+        }
+    }
+
+    // One line per document, least recently used first:
+    // size, ETag, Last-Modified, content type and URL, separated by tabs.
+    private void loadCatalog()
+    {
+        if (!catalogFile.isFile())
+            return;
+        try {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(
+                catalogFile.getInputStream(), StandardCharsets.UTF_8));
+            String s;
+            while ((s = reader.readLine()) != null) {
+                String[] fields = s.split("\t", -1);
+                if (fields.length != 5)
+                    continue; // Written by an older version.
+                long length;
+                try {
+                    length = Long.parseLong(fields[0]);
+                }
+                catch (NumberFormatException e) {
+                    continue;
+                }
+                Entry entry = new Entry(fields[4], nullIfEmpty(fields[1]),
+                    nullIfEmpty(fields[2]), nullIfEmpty(fields[3]), length);
+                // Skip documents that were removed or replaced after the
+                // catalog was saved.
+                File file = getFile(entry);
+                if (!file.isFile() || file.length() != length)
+                    continue;
+                Entry old = index.put(entry.netPath, entry);
+                if (old != null)
+                    size -= old.size;
+                size += length;
             }
+            reader.close();
+        }
+        catch (IOException e) {
+            Log.error(e);
         }
-        return v;
     }
 
-    private void saveCatalog()
+    synchronized void saveCatalog()
     {
+        if (!dirty)
+            return;
+        File temp = Utilities.getTempFile(dir);
         try {
-            BufferedWriter writer = new BufferedWriter(
-                new OutputStreamWriter(catalogFile.getOutputStream()));
-            for (int i = 0; i < catalog.size(); i++) {
-                Tuple2<String, String> pair = catalog.get(i);
-                writer.write(pair.first);
-                writer.write(' ');
-                writer.write(pair.second);
+            BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(
+                temp.getOutputStream(), StandardCharsets.UTF_8));
+            for (Entry entry : index.values()) {
+                writer.write(String.valueOf(entry.size));
+                writer.write('\t');
+                writer.write(field(entry.etag));
+                writer.write('\t');
+                writer.write(field(entry.lastModified));
+                writer.write('\t');
+                writer.write(field(entry.contentType));
+                writer.write('\t');
+                writer.write(field(entry.netPath));
                 writer.newLine();
             }
-            writer.flush();
             writer.close();
+            catalogFile.delete();
+            if (temp.renameTo(catalogFile))
+                dirty = false;
+            else
+                temp.delete();
         }
         catch (IOException e) {
             Log.error(e);
+            temp.delete();
         }
     }
+
+    private static String field(String s)
+    {
+        if (s == null)
+            return "";
+        return s.replace('\t', ' ').replace('\r', ' ').replace('\n', ' ');
+    }
+
+    private static String nullIfEmpty(String s)
+    {
+        return s.length() > 0 ? s : null;
+    }
+
+    synchronized int getCount()
+    {
+        return index.size();
+    }
+
+    synchronized long getSize()
+    {
+        return size;
+    }
+
+    synchronized int getHits()
+    {
+        return hits;
+    }
+
+    synchronized int getRevalidations()
+    {
+        return revalidations;
+    }
+
+    synchronized int getEvictions()
+    {
+        return evictions;
+    }
+
+    public synchronized String getReport()
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Documents: ");
+        sb.append(index.size());
+        sb.append("  Size: ");
+        sb.append(size / 1024);
+        sb.append(" of ");
+        sb.append(maxSize / 1024);
+        sb.append(" KB\n\nLookups: ");
+        sb.append(lookups);
+        sb.append("\nHits: ");
+        sb.append(hits);
+        sb.append(" (");
+        sb.append(revalidations);
+        sb.append(" revalidated)");
+        if (lookups > 0) {
+            sb.append("  Hit rate: ");
+            sb.append(hits * 100 / lookups);
+            sb.append('%');
+        }
+        sb.append("\nServed from cache: ");
+        sb.append(bytesServed / 1024);
+        sb.append(" KB\nStored: ");
+        sb.append(stores);
+        sb.append("  Evicted: ");
+        sb.append(evictions);
+        return sb.toString();
+    }
+
+    public static void httpCacheStatistics()
+    {
+        final Editor editor = Editor.currentEditor();
+        Cache c = getCache();
+        String report =
+            c != null ? c.getReport() : "The HTTP cache is disabled.";
+        MessageDialog.showMessageDialog(editor, report, "HTTP Cache");
+    }
 }
@@ -20,9 +20,8 @@
 
 package org.armedbear.j;
 
+import org.armedbear.j.mode.diff.Diff;
 import org.armedbear.j.mode.diff.DiffOutputBuffer;
-import java.lang.StringBuilder;
-import org.armedbear.j.util.Utilities;
 
 import javax.swing.undo.CompoundEdit;
 
@@ -246,49 +245,51 @@ public final class ChangeMarks implements Constants
         final Editor editor = Editor.currentEditor();
         final Buffer buffer = editor.getBuffer();
         final File file = buffer.getFile();
-        if (file == null || file.isRemote())
+        if (file == null || file.isRemote() || !file.isFile())
             return;
-        final File tempFile = Utilities.getTempFile();
-        if (tempFile == null)
+        // Compare the saved file with the text of the buffer directly.
+        MappedText text = MappedText.map(file, buffer.getSaveEncoding());
+        if (text == null)
             return;
-        if (buffer.writeFile(tempFile)) {
-            StringBuilder sb = new StringBuilder("diff -u ");
-            sb.append(Utilities.maybeQuote(file.canonicalPath()));
-            sb.append(' ');
-            sb.append(Utilities.maybeQuote(tempFile.canonicalPath()));
-            final String cmd = sb.toString();
-            ShellCommand shellCommand = new ShellCommand(cmd);
-            shellCommand.run();
-            // Kill existing diff output buffer if any for same parent buffer.
-            for (BufferIterator it = new BufferIterator(); it.hasNext();) {
-                Buffer b = it.next();
-                if (b instanceof DiffOutputBuffer) {
-                    if (((DiffOutputBuffer)b).getParentBuffer() == buffer) {
-                        if (((DiffOutputBuffer)b).getVCType() == 0) {
-                            b.kill();
-                            break; // There should be one at most.
-                        }
+        final Diff diff;
+        try {
+            buffer.lockRead();
+        }
+        catch (InterruptedException e) {
+            Log.error(e);
+            return;
+        }
+        try {
+            diff = Diff.compare(text, buffer);
+        }
+        finally {
+            buffer.unlockRead();
+        }
+        // Kill existing diff output buffer if any for same parent buffer.
+        for (BufferIterator it = new BufferIterator(); it.hasNext();) {
+            Buffer b = it.next();
+            if (b instanceof DiffOutputBuffer) {
+                if (((DiffOutputBuffer)b).getParentBuffer() == buffer) {
+                    if (((DiffOutputBuffer)b).getVCType() == 0) {
+                        b.kill();
+                        break; // There should be one at most.
                     }
                 }
             }
-            String output = shellCommand.getOutput();
-            if (output.length() == 0) {
-                MessageDialog.showMessageDialog(editor, "No changes",
-                    buffer.getFile().getName());
-            } else {
-                DiffOutputBuffer outputBuffer =
-                    new DiffOutputBuffer(buffer, output, 0);
-                sb.setLength(0);
-                sb.append("diff -ub ");
-                sb.append(file.getName());
-                sb.append(' ');
-                sb.append(tempFile.canonicalPath());
-                outputBuffer.setTitle(sb.toString());
-                editor.makeNext(outputBuffer);
-                editor.activateInOtherWindow(outputBuffer);
-            }
         }
-        if (tempFile.isFile())
-            tempFile.delete();
+        if (!diff.hasChanges()) {
+            MessageDialog.showMessageDialog(editor, "No changes",
+                buffer.getFile().getName());
+        } else {
+            final String path = file.canonicalPath();
+            String output =
+                diff.toUnifiedString(Diff.getHeader(path, file.lastModified()),
+                    Diff.getHeader(path, System.currentTimeMillis()));
+            DiffOutputBuffer outputBuffer =
+                new DiffOutputBuffer(buffer, output, 0);
+            outputBuffer.setTitle("diff -u " + file.getName());
+            editor.makeNext(outputBuffer);
+            editor.activateInOtherWindow(outputBuffer);
+        }
     }
 }
@@ -20,7 +20,11 @@
 
 package org.armedbear.j;
 
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 
 public final class Command
 {
@@ -28,7 +32,17 @@ public final class Command
     private final String methodName;
 
     private String className;
-    private Method method;
+
+    // The method, bound the first time the command is run, with and without
+    // a String argument. Static methods are adapted to take (and ignore) an
+    // Editor, so every command is invoked the same way.
+    private MethodHandle handle;
+    private MethodHandle stringHandle;
+
+    private static final MethodType TYPE =
+        MethodType.methodType(void.class, Editor.class);
+    private static final MethodType STRING_TYPE =
+        MethodType.methodType(void.class, Editor.class, String.class);
 
     public Command(String name, String className, String methodName)
     {
@@ -88,13 +102,42 @@ public final class Command
         return methodName;
     }
 
-    public final Method getMethod()
+    /**
+     * Returns a method handle of type <code>(Editor)void</code> for the
+     * command, or <code>(Editor, String)void</code> if the command takes a
+     * parameter.
+     */
+    public final synchronized MethodHandle getHandle(boolean hasParameter)
+        throws ClassNotFoundException, NoSuchMethodException,
+               IllegalAccessException
     {
-        return method;
+        if (hasParameter) {
+            if (stringHandle == null)
+                stringHandle = bind(true);
+            return stringHandle;
+        }
+        if (handle == null)
+            handle = bind(false);
+        return handle;
     }
 
-    public final void setMethod(Method method)
+    private MethodHandle bind(boolean hasParameter)
+        throws ClassNotFoundException, NoSuchMethodException,
+               IllegalAccessException
     {
-        this.method = method;
+        final Class<?> c;
+        if (className == null)
+            c = Editor.class;
+        else
+            c = Class.forName("org.armedbear.j." + className);
+        final Method method;
+        if (hasParameter)
+            method = c.getMethod(methodName, String.class);
+        else
+            method = c.getMethod(methodName);
+        MethodHandle mh = MethodHandles.publicLookup().unreflect(method);
+        if (Modifier.isStatic(method.getModifiers()))
+            mh = MethodHandles.dropArguments(mh, 0, Editor.class);
+        return mh.asType(hasParameter ? STRING_TYPE : TYPE);
     }
 }
@@ -30,7 +30,6 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStreamWriter;
 import javax.swing.Icon;
-import javax.swing.SwingUtilities;
 import javax.swing.undo.CompoundEdit;
 
 public class CommandInterpreterBuffer extends Buffer
@@ -46,6 +45,19 @@ public class CommandInterpreterBuffer extends Buffer
 
     private Position posEndOfOutput;
 
+    // The last line of the buffer after the most recent output.
+    private Line lastOutputLine;
+
+    protected final OutputQueue outputQueue = new OutputQueue() {
+        public void output(String s, boolean stderr)
+        {
+            if (stderr)
+                stdErrOutput(s);
+            else
+                stdOutOutput(s);
+        }
+    };
+
     protected CommandInterpreterBuffer()
     {
         super();
@@ -379,13 +391,15 @@ public class CommandInterpreterBuffer extends Buffer
             return;
         }
         try {
-            Position pos = getEnd();
-            if (pos != null) {
-                insertString(pos, s);
-                if (needsRenumbering())
-                    renumber();
+            if (needsRenumbering())
+                renumber();
+            Line last = findLastLine(lastOutputLine);
+            if (last != null) {
+                lastOutputLine = appendOutput(last, s);
                 enforceOutputLimit(Property.SHELL_OUTPUT_LIMIT);
-                setEndOfOutput(pos.copy());
+                lastOutputLine = findLastLine(lastOutputLine);
+                setEndOfOutput(new Position(lastOutputLine,
+                    lastOutputLine.length()));
             } else {
                 setText(s);
                 setEndOfOutput(getEnd().copy());
@@ -437,17 +451,19 @@ public class CommandInterpreterBuffer extends Buffer
         return s;
     }
 
+    // Called on the reader thread.
     protected void stdOutUpdate(final String s)
     {
-        Runnable r = new Runnable() {
-            public void run()
-            {
-                appendString(s);
-                updateDisplayInAllFrames();
-                resetUndo();
-            }
-        };
-        SwingUtilities.invokeLater(r);
+        outputQueue.put(s, false);
+    }
+
+    // Called on the event dispatch thread with the output that has arrived
+    // since the last frame.
+    protected void stdOutOutput(String s)
+    {
+        appendString(s);
+        updateDisplayInAllFrames();
+        resetUndo();
     }
 
     protected String stdErrFilter(String s)
@@ -455,17 +471,19 @@ public class CommandInterpreterBuffer extends Buffer
         return s;
     }
 
+    // Called on the reader thread.
     protected void stdErrUpdate(final String s)
     {
-        Runnable r = new Runnable() {
-            public void run()
-            {
-                appendString(s);
-                updateDisplayInAllFrames();
-                resetUndo();
-            }
-        };
-        SwingUtilities.invokeLater(r);
+        outputQueue.put(s, true);
+    }
+
+    // Called on the event dispatch thread with the output that has arrived
+    // since the last frame.
+    protected void stdErrOutput(String s)
+    {
+        appendString(s);
+        updateDisplayInAllFrames();
+        resetUndo();
     }
 
     private String removeEcho(String s) {
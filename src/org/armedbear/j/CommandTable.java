@@ -290,6 +290,7 @@ public class CommandTable
             addCommand("htmlInsertMatchingEndTag", "mode.html.HtmlMode");
             addCommand("htmlInsertTag", "mode.html.HtmlMode");
             addCommand("htmlStartTag", "mode.html.HtmlMode");
+            addCommand("httpCacheStatistics", "Cache");
             addCommand("httpShowHeaders", "HttpLoadProcess");
             addCommand("hyperspec", "mode.lisp.LispMode");
             addCommand("iList", "IList");
@@ -306,6 +307,7 @@ public class CommandTable
             addCommand("jumpToOffset", "JumpCommands");
             addCommand("jumpToTag", "mode.list.ListTagsMode");
             addCommand("jumpToTagAndKillList", "mode.list.ListTagsMode");
+            addCommand("keyLatency", "KeyLatency");
             addCommand("killCompilation", "mode.compilation.CompilationBuffer");
             addCommand("lisp", "mode.lisp.LispShellBuffer");
             addCommand("listFiles", "FindInFiles");
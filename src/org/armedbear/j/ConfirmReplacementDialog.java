@@ -148,7 +148,8 @@ public final class ConfirmReplacementDialog extends AbstractDialog
         // Replace all the rest.
         Position pos;
         while ((pos = replacement.find(editor.getBuffer(), editor.getDot())) != null) {
-            editor.addUndo(SimpleEdit.MOVE);
+            if (replacement.isMultilinePattern())
+                editor.addUndo(SimpleEdit.MOVE);
             editor.getDot().moveTo(pos);
             if (replacement.restrictToSelection()) {
                 final Region region = replacement.getRegion();
@@ -162,7 +163,7 @@ public final class ConfirmReplacementDialog extends AbstractDialog
             }
             if (replacement.isMultilinePattern())
                 editor.markFoundPattern(replacement);
-            replacement.replaceOccurrence();
+            replacement.replaceOccurrence(false);
         }
         editor.addUndo(SimpleEdit.MOVE);
         editor.getDot().moveTo(saved);
@@ -144,10 +144,16 @@ public final class Dispatcher implements Constants, KeyListener, MouseListener,
 
         switch (e.getID()) {
             case KeyEvent.KEY_PRESSED:
+                KeyLatency.keystroke();
                 handled = dispatchKeyPressed((KeyEvent)e);
+                if (!handled)
+                    KeyLatency.cancel();
                 break;
             case KeyEvent.KEY_TYPED:
+                KeyLatency.keystroke();
                 handled = dispatchKeyTyped((KeyEvent)e);
+                if (!handled)
+                    KeyLatency.cancel();
                 break;
             case KeyEvent.KEY_RELEASED:
                 break;
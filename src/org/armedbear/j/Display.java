@@ -38,7 +38,9 @@ import java.awt.event.ActionListener;
 import java.awt.event.FocusEvent;
 import java.awt.event.FocusListener;
 import java.awt.event.MouseEvent;
+import java.awt.font.FontRenderContext;
 import java.awt.font.GlyphVector;
+import java.util.Arrays;
 import java.util.HashMap;
 import javax.swing.JComponent;
 import javax.swing.SwingUtilities;
@@ -74,6 +76,13 @@ public final class Display extends JComponent implements Constants,
 
     private final HashMap<Line, Line> changedLines = new HashMap<Line, Line>();
 
+    // Enough for the lines on a tall screen, and the lines above and below
+    // them when scrolling back and forth.
+    private static final int RENDER_CACHE_SIZE = 1024;
+
+    private final LineRenderCache renderCache =
+        new LineRenderCache(RENDER_CACHE_SIZE);
+
     private final Editor editor;
 
     private Line topLine;
@@ -197,6 +206,7 @@ public final class Display extends JComponent implements Constants,
     {
         // Explicitly set this to null here. We might be resetting the display.
         paintLineImage = null;
+        renderCache.clear();
 
         // Allocate text and format arrays big enough to handle full screen
         // width for narrowest character in font, plus some slack (runs of
@@ -328,8 +338,11 @@ public final class Display extends JComponent implements Constants,
             repaint();
             return;
         }
-        if (changedLines.isEmpty())
+        if (changedLines.isEmpty()) {
+            // Nothing to paint.
+            KeyLatency.painted();
             return;
+        }
         final Buffer buffer = editor.getBuffer();
         initializePaint();
         try {
@@ -340,32 +353,38 @@ public final class Display extends JComponent implements Constants,
             return;
         }
         try {
-            Graphics2D g2d = (Graphics2D) getGraphics();
-            if (g2d != null) {
-                Line line = topLine;
-                int y = - pixelsAboveTopLine;
-                final int limit = getHeight();
-                while (line != null && y < limit) {
-                    if (changedLines.containsKey(line))
-                        paintLine(line, g2d, y);
-                    y += line.getHeight();
-                    line = line.nextVisible();
-                }
-                if (y < limit) {
-                    g2d.setColor(editor.getFormatter().getBackgroundColor());
-                    final int height = limit - y;
-                    g2d.fillRect(0, y, getWidth(), height);
-                    if (showLineNumbers)
-                        drawGutterBorder(g2d, y, height);
-                    drawVerticalRule(g2d, y, height);
-                }
-                drawCaret(g2d);
-            }
+            paintChangedLines();
         }
         finally {
             buffer.unlockRead();
         }
         changedLines.clear();
+        KeyLatency.painted();
+    }
+
+    private void paintChangedLines()
+    {
+        Graphics2D g2d = (Graphics2D) getGraphics();
+        if (g2d != null) {
+            Line line = topLine;
+            int y = - pixelsAboveTopLine;
+            final int limit = getHeight();
+            while (line != null && y < limit) {
+                if (changedLines.containsKey(line))
+                    paintLine(line, g2d, y);
+                y += line.getHeight();
+                line = line.nextVisible();
+            }
+            if (y < limit) {
+                g2d.setColor(editor.getFormatter().getBackgroundColor());
+                final int height = limit - y;
+                g2d.fillRect(0, y, getWidth(), height);
+                if (showLineNumbers)
+                    drawGutterBorder(g2d, y, height);
+                drawVerticalRule(g2d, y, height);
+            }
+            drawCaret(g2d);
+        }
     }
 
     // Set caret column to be where dot is.
@@ -659,9 +678,34 @@ public final class Display extends JComponent implements Constants,
 
     private int formatLine(final Line line, final int begin, final int maxCols)
     {
-        // Avoid getfield overhead.
-        final int[] fa = formatArray;
-        final char[] ta = textArray;
+        return formatSegments(editor.getFormatter().formatLine(line), begin,
+                              maxCols, textArray, formatArray);
+    }
+
+    // Like formatLine(line, shift, maxCols), but uses the render cache.
+    private LineRenderCache.Entry formatLineCached(final Line line,
+        final int maxCols)
+    {
+        renderCache.setContext(editor.getFormatter(), shift, maxCols,
+                               editor.getBuffer().getTabWidth(),
+                               Editor.tabsAreVisible());
+        LineRenderCache.Entry entry = renderCache.get(line);
+        if (entry != null) {
+            entry.copyTo(textArray, formatArray);
+            return entry;
+        }
+        final String text = line.getText();
+        final int flags = line.flags();
+        final int totalChars = formatLine(line, shift, maxCols);
+        return renderCache.put(line, text, flags, textArray, formatArray,
+                               totalChars);
+    }
+
+    // Copies the text and formats of the segments of a line, starting at
+    // column begin, into ta and fa. Returns the number of characters copied.
+    static int formatSegments(final LineSegmentList segmentList,
+        final int begin, final int maxCols, final char[] ta, final int[] fa)
+    {
         final int taLength = ta.length;
         Debug.assertTrue(taLength == fa.length);
         for (int i = taLength; i-- > 0;) {
@@ -669,7 +713,6 @@ public final class Display extends JComponent implements Constants,
             fa[i] = 0;
         }
         final int limit = Math.min(maxCols, taLength);
-        final LineSegmentList segmentList = editor.getFormatter().formatLine(line);
         int segmentStart = 0;
         int totalChars = 0;
         final int size = segmentList.size();
@@ -760,7 +803,7 @@ public final class Display extends JComponent implements Constants,
             backgroundColor = editor.getFormatter().getBackgroundColor();
         drawBackgroundForLine(paintLineGraphics, backgroundColor, line, 0);
 
-        int totalChars = formatLine(line, shift, maxCols);
+        LineRenderCache.Entry entry = formatLineCached(line, maxCols);
 
         if (editor.getMark() != null) {
             // Selection.
@@ -779,7 +822,7 @@ public final class Display extends JComponent implements Constants,
         if (showLineNumbers && editor.getDot() != null)
             drawGutterBorder(paintLineGraphics, 0, line.getHeight());
         drawVerticalRule(paintLineGraphics, 0, line.getHeight());
-        drawText(paintLineGraphics, textArray, totalChars, formatArray, 0);
+        drawText(paintLineGraphics, entry, 0);
         changedLines.remove(line);
 
         g.drawImage(paintLineImage, 0, y, null);
@@ -892,37 +935,19 @@ public final class Display extends JComponent implements Constants,
         return width;
     }
 
-    private void drawText(Graphics2D g2d, char[] textArray, int length,
-        int[] formatArray, int y)
+    private void drawText(Graphics2D g2d, LineRenderCache.Entry entry, int y)
     {
-        int i = 0;
+        final FontRenderContext frc = g2d.getFontRenderContext();
+        if (entry.glyphs == null || !frc.equals(entry.frc))
+            layOutText(entry, frc);
         double x = gutterWidth;
         final Formatter formatter = editor.getFormatter();
-        while (i < length) {
-            int format = formatArray[i];
-            int start = i;
-            while (formatArray[i] == format && i < length)
-                ++i;
+        for (int i = 0; i < entry.runCount; i++) {
+            final int format = entry.formats[entry.runStarts[i]];
+            final GlyphVector gv = entry.glyphs[i];
+            final double width = entry.widths[i];
             g2d.setColor(formatter.getColor(format));
-            int style = formatter.getStyle(format);
-            Font font;
-            switch (style) {
-                case Font.BOLD:
-                    font = boldFont;
-                    break;
-                case Font.ITALIC:
-                    font = italicFont;
-                    break;
-                case Font.PLAIN:
-                default:
-                    font = plainFont;
-                    break;
-            }
-            char[] chars = new char[i - start];
-            System.arraycopy(textArray, start, chars, 0, i - start);
-            GlyphVector gv = font.createGlyphVector(g2d.getFontRenderContext(), chars);
-            final double width = gv.getLogicalBounds().getWidth();
-            if (style == Font.BOLD) {
+            if (formatter.getStyle(format) == Font.BOLD) {
                 if (boldFont == plainFont) {
                     if (underlineBold)
                         g2d.drawLine((int)x, y + charAscent + 1, (int)(x + width), y + charAscent + 1);
@@ -938,6 +963,54 @@ public final class Display extends JComponent implements Constants,
         }
     }
 
+    // Splits the text of an entry into runs with the same format and lays
+    // out the glyphs for each run.
+    private void layOutText(LineRenderCache.Entry entry, FontRenderContext frc)
+    {
+        final char[] chars = entry.chars;
+        final int[] formats = entry.formats;
+        final int length = entry.length;
+        int runCount = 0;
+        for (int i = 0; i < length; i++) {
+            if (i == 0 || formats[i] != formats[i - 1])
+                ++runCount;
+        }
+        final int[] runStarts = new int[runCount];
+        final GlyphVector[] glyphs = new GlyphVector[runCount];
+        final double[] widths = new double[runCount];
+        final Formatter formatter = editor.getFormatter();
+        int i = 0;
+        for (int run = 0; run < runCount; run++) {
+            final int format = formats[i];
+            final int start = i;
+            while (i < length && formats[i] == format)
+                ++i;
+            Font font;
+            switch (formatter.getStyle(format)) {
+                case Font.BOLD:
+                    font = boldFont;
+                    break;
+                case Font.ITALIC:
+                    font = italicFont;
+                    break;
+                case Font.PLAIN:
+                default:
+                    font = plainFont;
+                    break;
+            }
+            final GlyphVector gv =
+                font.createGlyphVector(frc, Arrays.copyOfRange(chars, start, i));
+            runStarts[run] = start;
+            glyphs[run] = gv;
+            widths[run] = gv.getLogicalBounds().getWidth();
+        }
+        entry.runStarts = runStarts;
+        entry.glyphs = glyphs;
+        entry.widths = widths;
+        entry.runCount = runCount;
+        entry.frc = frc;
+    }
+
     private int measureLine(Graphics2D g2d, char[] textArray, int length, int[] formatArray)
     {
         if (length == 0)
@@ -991,14 +1064,20 @@ public final class Display extends JComponent implements Constants,
             return;
         }
         try {
-            if (buffer.getModeId() == IMAGE_MODE)
-                paintImage(g);
-            else
-                paintComponentInternal(g);
+            paintBuffer(buffer, g);
         }
         finally {
             buffer.unlockRead();
         }
+        KeyLatency.painted();
+    }
+
+    private void paintBuffer(Buffer buffer, Graphics g)
+    {
+        if (buffer.getModeId() == IMAGE_MODE)
+            paintImage(g);
+        else
+            paintComponentInternal(g);
     }
 
     private void paintImage(Graphics g)
@@ -1064,7 +1143,7 @@ public final class Display extends JComponent implements Constants,
                 } else
                     backgroundColor = colorBackground;
                 drawBackgroundForLine(g2d, backgroundColor, line, y);
-                int totalChars = formatLine(line, shift, maxCols);
+                LineRenderCache.Entry entry = formatLineCached(line, maxCols);
                 if (r != null)
                     handleSelection(r, line, formatArray, g2d, y);
                 else if (posMatch != null) {
@@ -1074,10 +1153,10 @@ public final class Display extends JComponent implements Constants,
                         highlightBracket(posBracket, line, formatArray, g2d, y);
                 }
                 drawGutterText(g2d, line, y);
-                if (totalChars > 0) {
+                if (entry.length > 0) {
                     // Draw vertical rule first so it will be behind the text.
                     drawVerticalRule(g2d, y, line.getHeight());
-                    drawText(g2d, textArray, totalChars, formatArray, y);
+                    drawText(g2d, entry, y);
                 } else
                     drawVerticalRule(g2d, y, line.getHeight());
                 changedLines.remove(line);
@@ -1299,6 +1378,80 @@ public final class Display extends JComponent implements Constants,
         editor.getGraphics().copyArea(x, y, getWidth(), getHeight() - dy, 0, - dy);
     }
 
+    /**
+     * Makes a line the top line of the display, scrolling the lines that
+     * stay visible and repainting only the lines scrolled into view.
+     */
+    public void scrollTo(Line line)
+    {
+        if (moveTopLine(line)) {
+            editor.maybeScrollCaret();
+            editor.updateDisplay();
+        } else {
+            setTopLine(line);
+            editor.maybeScrollCaret();
+            repaint();
+        }
+    }
+
+    // Makes line the top line by moving the lines that stay visible, if
+    // it's less than a screen away from the current top line and there are
+    // no image lines in the way. Marks the lines that become visible as
+    // changed. Returns false if the display needs to be repainted instead.
+    private boolean moveTopLine(Line line)
+    {
+        if (line == null || topLine == null || pixelsAboveTopLine != 0)
+            return false;
+        if ((updateFlag & REPAINT) != 0 || !isShowing())
+            return false;
+        if (line == topLine)
+            return true;
+        final int rows = getRows();
+        int down = countLines(topLine, line, rows);
+        int up = down < 0 ? countLines(line, topLine, rows) : -1;
+        if (down < 0 && up < 0)
+            return false;
+        // The lines that will be visible, including a partial line at the
+        // bottom.
+        Line[] visible = new Line[rows + 1];
+        Line l = line;
+        for (int i = 0; i <= rows && l != null; i++) {
+            if (l instanceof ImageLine)
+                return false;
+            visible[i] = l;
+            l = l.nextVisible();
+        }
+        if (down > 0) {
+            scrollPixelsDown(down * charHeight);
+            // The partial line that was at the bottom is now complete.
+            for (int i = rows - down; i <= rows; i++) {
+                if (visible[i] != null)
+                    exposeLine(visible[i]);
+            }
+        } else {
+            scrollPixelsUp(up * charHeight);
+            for (int i = 0; i < up; i++)
+                exposeLine(visible[i]);
+        }
+        setTopLine(line);
+        return true;
+    }
+
+    // Returns the number of lines from one line down to another, or -1 if
+    // it's limit or more or there's an image line in between.
+    private static int countLines(Line from, Line to, int limit)
+    {
+        int n = 0;
+        for (Line line = from; line != null && n < limit; line = line.nextVisible()) {
+            if (line == to)
+                return n;
+            if (line instanceof ImageLine)
+                return -1;
+            ++n;
+        }
+        return -1;
+    }
+
     public Line getBottomLine()
     {
         Line line = topLine;
@@ -1486,7 +1639,7 @@ public final class Display extends JComponent implements Constants,
                 return;
             }
             line = prev;
-            lineChanged(line);
+            exposeLine(line);
             ++actual;
         }
         scrollPixelsUp(actual * charHeight);
@@ -1535,7 +1688,7 @@ public final class Display extends JComponent implements Constants,
             bottom = bottom.nextVisible();
             if (bottom == null)
                 break;
-            lineChanged(bottom);
+            exposeLine(bottom);
             Line next = top.nextVisible();
             if (next instanceof ImageLine) {
                 imageLineWindowDown(lines);
@@ -1549,7 +1702,7 @@ public final class Display extends JComponent implements Constants,
         if (bottom != null) {
             bottom = bottom.nextVisible();
             if (bottom != null)
-                lineChanged(bottom);
+                exposeLine(bottom);
         }
         scrollPixelsDown(actual * charHeight);
         setTopLine(top);
@@ -1601,6 +1754,10 @@ public final class Display extends JComponent implements Constants,
     public void setUpdateFlag(int mask)
     {
         updateFlag |= mask;
+        // Whatever needs the whole display repainted may have changed how
+        // any line looks.
+        if ((mask & REPAINT) != 0)
+            renderCache.clear();
     }
 
     private int reframeParam = 0;
@@ -1648,8 +1805,10 @@ public final class Display extends JComponent implements Constants,
 
         if (topLine == null || mustReframe()) {
             Line top = findNewTopLine(editor.getDotLine());
-            setTopLine(top);
-            setUpdateFlag(REPAINT);
+            if (!moveTopLine(top)) {
+                setTopLine(top);
+                setUpdateFlag(REPAINT);
+            }
         }
 
         reframeParam = 0;
@@ -1980,6 +2139,14 @@ public final class Display extends JComponent implements Constants,
             return;
         }
         changedLines.put(line, line);
+        renderCache.remove(line);
+    }
+
+    // Marks a line that has been scrolled into view for repainting. Unlike
+    // lineChanged(), keeps its render cache entry.
+    private synchronized void exposeLine(Line line)
+    {
+        changedLines.put(line, line);
     }
 
     public static void resetDisplay()
@@ -44,6 +44,7 @@ import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.OutputStreamWriter;
 import java.io.UnsupportedEncodingException;
+import java.lang.invoke.MethodHandle;
 import java.lang.reflect.Method;
 import java.net.ConnectException;
 import java.net.Socket;
@@ -396,8 +397,10 @@ public final class Editor extends JPanel implements Constants,
 
         sessionProperties = new SessionProperties();
 
-        if (!alreadyRunning)
+        if (!alreadyRunning) {
             Autosave.recover();
+            Log.debug("Autosave.recover done " + when());
+        }
 
         tagFileManager = new TagFileManager();
 
@@ -420,6 +423,7 @@ public final class Editor extends JPanel implements Constants,
             if (session == null)
                 session = Session.getDefaultSession();
             toBeActivated = session.restore();
+            Log.debug("Session.restore done " + when());
         }
 
         if (files != null) {
@@ -1262,6 +1266,7 @@ public final class Editor extends JPanel implements Constants,
             buffer.repaint();
             setUpdateFlag(REFRAME);
             buffer.needsRenumbering = true;
+            buffer.setChangedLines(getDotLine(), getDotLine());
             buffer.modified();
         }
         finally {
@@ -1279,6 +1284,7 @@ public final class Editor extends JPanel implements Constants,
         if (dotOffset < dotLine.length() - 1)
             tail = dotLine.substring(dotOffset + 1);
         dotLine.setText(head.concat(tail));
+        buffer.setChangedLines(dotLine, dotLine);
         buffer.modified();
         updateInAllEditors(dotLine);
     }
@@ -1882,7 +1888,7 @@ public final class Editor extends JPanel implements Constants,
                   do
                     {
                       if (!dot.getLine().isBlank())
-                        indentLineInternal();
+                        indentLineInternal(false);
                       dot.moveTo(dot.getNextLine(), 0);
                     }
                   while (dot.getLine() != r.getEndLine());
@@ -2095,7 +2101,7 @@ public final class Editor extends JPanel implements Constants,
                 if (getFormatter().parseBuffer())
                     buffer.repaint();
             }
-            indentLineInternal();
+            indentLineInternal(true);
         }
         finally {
             buffer.unlockWrite();
@@ -2103,7 +2109,10 @@ public final class Editor extends JPanel implements Constants,
         setUpdateFlag(REFRAME);
     }
 
-    private void indentLineInternal()
+    // If saveCaret is false, the line is being indented as part of a
+    // region, the caller takes care of the caret, and the change is recorded
+    // in the buffer's undo journal.
+    private void indentLineInternal(boolean saveCaret)
     {
         final Line dotLine = getDotLine();
         final int indent = getMode().getCorrectIndentation(dotLine, buffer);
@@ -2111,7 +2120,7 @@ public final class Editor extends JPanel implements Constants,
 
         if (dotLine.isBlank()) {
             // Put the caret where it needs to go...
-            addUndo(SimpleEdit.LINE_EDIT);
+            addUndoLineEdit(dotLine, saveCaret);
             dotLine.setText("");
             dot.setOffset(0);
             display.setCaretCol(indent - shift);
@@ -2141,7 +2150,8 @@ public final class Editor extends JPanel implements Constants,
                 // indentation area, move it to the start of the non-blank
                 // text.
                 if (display.getCaretCol() + shift < indent) {
-                    addUndo(SimpleEdit.MOVE);
+                    if (saveCaret)
+                        addUndo(SimpleEdit.MOVE);
                     display.setCaretCol(indent - shift);
                     moveDotToCaretCol();
                 }
@@ -2169,7 +2179,7 @@ public final class Editor extends JPanel implements Constants,
         sb.append(nonBlank);
 
         // Replace the existing text.
-        addUndo(SimpleEdit.LINE_EDIT);
+        addUndoLineEdit(dotLine, saveCaret);
         dotLine.setText(sb.toString());
         buffer.modified();
         updateInAllEditors(dotLine);
@@ -2495,55 +2505,27 @@ public final class Editor extends JPanel implements Constants,
 
     public boolean execute(Command command, String parameters) throws NoSuchMethodException
     {
+        final MethodHandle handle;
         try {
-            String className = null;
-            String methodName = null;
-            Method method = null;
-
-            Class[] parameterTypes;
-            if (parameters == null) {
-                parameterTypes = new Class[0];
-            } else {
-                parameterTypes = new Class[1];
-                parameterTypes[0] = Class.forName("java.lang.String");
-            }
-
-            method = command.getMethod();
-            if (method != null) {
-                try {
-                    invoke(method, parameters);
-                    return true;
-                }
-                catch (IllegalArgumentException e) {
-                    // The cached method requires different arguments.
-                    // Fall through.
-                }
-            }
-            // Method is not cached yet.
-            className = command.getClassName();
-            methodName = command.getMethodName();
-            if (className == null) {
-                // Special case. Command is implemented in org.armedbear.j.Editor.
-                method = Editor.class.getMethod(methodName, parameterTypes);
-            } else {
-                Class c = Class.forName("org.armedbear.j." + className);
-                if (c != null)
-                    method = c.getMethod(methodName, parameterTypes);
-            }
-            if (method != null) {
-                // Cache the method for nest time.
-                command.setMethod(method);
-                invoke(method, parameters);
-                return true;
-            }
+            handle = command.getHandle(parameters != null);
         }
         catch (NoSuchMethodException e) {
             throw e;
         }
+        catch (Exception e) {
+            Log.error(e);
+            return false;
+        }
+        try {
+            if (parameters == null)
+                handle.invokeExact(this);
+            else
+                handle.invokeExact(this, parameters);
+        }
         catch (Throwable t) {
             Log.error(t);
         }
-        return false;
+        return true;
     }
 
     private void invoke(Method method, String parameters) throws IllegalArgumentException
@@ -2668,15 +2650,26 @@ public final class Editor extends JPanel implements Constants,
                     executeCommand(commandString);
                     return true;
                 }
-                String[] array = parseCommand(commandString);
-                if (array != null) {
-                    String methodName = array[0];
-                    String parameters = array[1];
-                    try {
-                        return execute(methodName, parameters);
+                Command c = mapping.getBoundCommand();
+                String parameters = mapping.getBoundParameters();
+                String methodName = null;
+                if (c == null) {
+                    String[] array = parseCommand(commandString);
+                    if (array != null) {
+                        methodName = array[0];
+                        parameters = array[1];
+                        c = CommandTable.getCommand(methodName);
+                        if (c != null)
+                            mapping.bind(c, parameters);
                     }
-                    catch (NoSuchMethodException e) {}
                 }
+                try {
+                    if (c != null)
+                        return execute(c, parameters);
+                    if (methodName != null)
+                        return execute(methodName, parameters);
+                }
+                catch (NoSuchMethodException e) {}
             } else if (command instanceof Command) {
                 requestedKeyMap = null;
                 currentEventSequence = null;
@@ -3893,6 +3886,7 @@ public final class Editor extends JPanel implements Constants,
             try {
                 addUndo(SimpleEdit.LINE_EDIT);
                 dotLine.setText(dotLine.getText().concat(s));
+                buffer.setChangedLines(dotLine, dotLine);
                 buffer.modified();
                 dot.setOffset(dotLine.length());
             }
@@ -3970,6 +3964,7 @@ public final class Editor extends JPanel implements Constants,
             dotLine.setText(sb.toString());
             dot.moveRight();
             moveCaretToDotCol();
+            buffer.setChangedLines(dotLine, dotLine);
             buffer.modified();
         }
         finally {
@@ -4459,7 +4454,7 @@ public final class Editor extends JPanel implements Constants,
         // Clean up temporary directory.
         Directories.cleanTempDirectory();
 
-        // Clean up cache  directory.
+        // Save the HTTP cache catalog.
         Cache.cleanup();
 
         Server.stopServer();
@@ -5843,7 +5838,7 @@ public final class Editor extends JPanel implements Constants,
 
                 while (dot.getLine() != null && dot.getLine() != savedDot.getLine()) {
                     if (!dot.getLine().isBlank())
-                        indentLineInternal();
+                        indentLineInternal(true);
                     addUndo(SimpleEdit.MOVE);
                     dot.moveTo(dot.getNextLine(), 0);
                 }
@@ -6307,6 +6302,14 @@ public final class Editor extends JPanel implements Constants,
         return SimpleEdit.addUndo(this, type);
     }
 
+    private void addUndoLineEdit(Line line, boolean saveCaret)
+    {
+        if (saveCaret)
+            addUndo(SimpleEdit.LINE_EDIT);
+        else if (buffer.supportsUndo())
+            buffer.addEdit(new UndoLineChanges(buffer, line));
+    }
+
     public final boolean addUndoDeleteRegion(Region r)
     {
         buffer.addEdit(new UndoDeleteRegion(this, r));
@@ -27,14 +27,23 @@ import org.armedbear.j.vcs.p4.P4;
 import java.util.regex.Pattern;
 import java.util.regex.PatternSyntaxException;
 
+import java.io.BufferedInputStream;
 import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStream;
 import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.StringTokenizer;
 import java.util.Vector;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 import java.util.regex.Matcher;
 import javax.swing.SwingUtilities;
 import javax.swing.undo.CompoundEdit;
@@ -62,7 +71,7 @@ public final class FindInFiles extends Replacement implements Constants,
 
     private Vector<File> results = new Vector<File>();
 
-    private boolean cancelled;
+    private volatile boolean cancelled;
 
     private int numFilesExamined;
     private int numFilesModified;
@@ -73,6 +82,21 @@ public final class FindInFiles extends Replacement implements Constants,
     private ConfirmReplacementDialog confirmDialog;
 
     private final String encoding;
+    private Charset charset;
+
+    // Files that can't contain a match are skipped if they're in the index.
+    private TrigramIndex trigramIndex;
+    private long[] trigrams;
+
+    // Files being searched, in the order their results are reported.
+    private static final int MAX_PENDING_PER_THREAD = 4;
+
+    // Files up to this size are read into memory whole; larger files are
+    // read a line at a time.
+    private static final int MAX_READ_SIZE = 1024 * 1024;
+    private ForkJoinPool pool;
+    private final ArrayDeque<Future<FileResult>> pending =
+        new ArrayDeque<Future<FileResult>>();
 
     public FindInFiles(Editor editor)
     {
@@ -247,20 +271,37 @@ public final class FindInFiles extends Replacement implements Constants,
                 Log.error(e);
             }
         }
-        for (Filter filter : filters) {
-            File dir = null;
-            File spec = File.getInstance(filter.getOriginalPattern());
-            if (spec != null) {
-                File parent = spec.getParentFile();
-                if (parent != null)
-                    dir = parent;
+        try {
+            charset = Charset.forName(encoding);
+        }
+        catch (IllegalArgumentException e) {
+            Log.error(e);
+            charset = Charset.defaultCharset();
+        }
+        trigramIndex = TrigramIndex.getIndex(charset);
+        if (trigramIndex != null)
+            trigrams = TrigramIndex.getTrigrams(getPattern(), isRegularExpression());
+        pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        try {
+            for (Filter filter : filters) {
+                File dir = null;
+                File spec = File.getInstance(filter.getOriginalPattern());
+                if (spec != null) {
+                    File parent = spec.getParentFile();
+                    if (parent != null)
+                        dir = parent;
+                }
+                if (dir == null)
+                    dir = getEditor().getCurrentDirectory();
+                searchDirectory(dir, filter, excludesRE);
+                // Did the user cancel?
+                if (cancelled)
+                    break;
             }
-            if (dir == null)
-                dir = getEditor().getCurrentDirectory();
-            searchDirectory(dir, filter, excludesRE);
-            // Did the user cancel?
-            if (cancelled)
-                break;
+        }
+        finally {
+            pool.shutdownNow();
+            pool = null;
         }
         if (getReplaceWith() == null) {
             // Find in files, not replace in files.
@@ -311,137 +352,340 @@ public final class FindInFiles extends Replacement implements Constants,
         cancelled = true;
     }
 
+    // Directories are listed and files are searched in the pool, but the
+    // results are added to the output buffer in the order a depth-first walk
+    // of the directory tree would find them.
     private void searchDirectory(File dir, Filter filter, Pattern excludesRE)
     {
+        searchListing(pool.submit(() -> listDirectory(dir, filter, excludesRE)));
+        drainAll();
+    }
+
+    private void searchListing(Future<List<Entry>> listing)
+    {
+        List<Entry> entries;
+        try {
+            entries = listing.get();
+        }
+        catch (Exception e) {
+            Log.error(e);
+            return;
+        }
+        for (Entry entry : entries) {
+            if (cancelled)
+                return;
+            if (entry.subdir != null)
+                searchListing(entry.subdir); // Recurse!
+            else
+                searchFile(entry.file);
+        }
+    }
+
+    // Runs in the pool. Subdirectories are listed by tasks of their own.
+    private List<Entry> listDirectory(File dir, Filter filter,
+        Pattern excludesRE)
+    {
+        ArrayList<Entry> entries = new ArrayList<Entry>();
         String[] files = dir.list();
         if (files == null)
-            return;
+            return entries;
         for (String f : files) {
             if (cancelled)
-                return;
-            File file = File.getInstance(dir, f);
+                break;
             if (excludesRE != null && excludesRE.matcher(f).matches())
                 continue;
+            File file = File.getInstance(dir, f);
             if (file.isDirectory()) {
                 if (includeSubdirs)
-                    searchDirectory(file, filter, excludesRE); // Recurse!
+                    entries.add(new Entry(null, pool.submit(
+                        () -> listDirectory(file, filter, excludesRE))));
                 continue;
             }
             if (!filter.accepts(f))
                 continue;
-            if (isBinaryFile(file))
-                continue;
-            if (searchFilesInMemory) {
-                Buffer buf = Editor.getBufferList().findBuffer(file);
-                if (buf != null && buf.isLoaded()) {
-                    Position pos = findInBuffer(buf);
-                    if (pos != null) {
-                        results.add(file);
-                        processFile(file, buf.getMode(), pos);
-                    }
-                    ++numFilesExamined;
-                    continue;
+            entries.add(new Entry(file, null));
+        }
+        return entries;
+    }
+
+    private void searchFile(File file)
+    {
+        Buffer buf = null;
+        if (searchFilesInMemory) {
+            buf = Editor.getBufferList().findBuffer(file);
+            if (buf != null && !buf.isLoaded())
+                buf = null;
+        }
+        final Buffer buffer = buf;
+        pending.add(pool.submit(() -> searchFile(file, buffer)));
+        // Limit the number of files in flight, and report whatever is ready.
+        drain(pending.size() >= MAX_PENDING_PER_THREAD * pool.getParallelism());
+    }
+
+    // Adds the results at the head of the queue to the output buffer, in
+    // order. If wait is true, waits for the first one to be ready.
+    private void drain(boolean wait)
+    {
+        ArrayList<FileResult> batch = new ArrayList<FileResult>();
+        while (!pending.isEmpty() && !cancelled) {
+            Future<FileResult> future = pending.peekFirst();
+            if (!wait && !future.isDone())
+                break;
+            pending.removeFirst();
+            wait = false;
+            try {
+                FileResult result = future.get();
+                if (result != null) {
+                    if (result.buffer != null)
+                        result.pos = findInBuffer(result.buffer);
+                    batch.add(result);
                 }
-                // No buffer found, fall through...
             }
-            Debug.assertTrue(outputBuffer != null);
-            processFile(file);
-            ++numFilesExamined;
+            catch (Exception e) {
+                Log.error(e);
+            }
         }
+        if (!batch.isEmpty())
+            appendResults(batch);
+    }
+
+    private void drainAll()
+    {
+        while (!pending.isEmpty() && !cancelled)
+            drain(true);
+        for (Future<FileResult> future : pending)
+            future.cancel(false);
+        pending.clear();
     }
 
-    private void processFile(File file)
+    private void appendResults(List<FileResult> batch)
     {
+        Debug.assertTrue(outputBuffer != null);
+        boolean update = false;
         try {
-            boolean update = false;
-            BufferedReader reader =
-                new BufferedReader(new InputStreamReader(file.getInputStream(),
-                                                         encoding));
-            int lineNumber = 0;
-            int matches = 0;
-            final boolean delimited = wholeWordsOnly();
-            String s;
-            while ((s = reader.readLine()) != null) {
-                ++lineNumber;
-                boolean found = delimited ? findDelimited(s, mode) : find(s);
-                if (found) {
-                    try {
-                        outputBuffer.lockWrite();
-                    }
-                    catch (InterruptedException e) {
-                        Log.error(e);
-                        return;
-                    }
-                    try {
-                        if (matches == 0) {
-                            // First match in this file.
-                            if (!listEachOccurrence && results.size() == 0)
-                                outputBuffer.appendLine("Found in:");
-                            outputBuffer.appendFileLine(file,
-                                                        listEachOccurrence);
-                            results.add(file);
-                            update = true;
-                        }
-                        ++matches;
-                        if (listEachOccurrence)
-                            outputBuffer.appendOccurrenceLine(s, lineNumber);
-                        else
-                            break;
+            outputBuffer.lockWrite();
+        }
+        catch (InterruptedException e) {
+            Log.error(e);
+            return;
+        }
+        try {
+            for (FileResult result : batch) {
+                ++numFilesExamined;
+                if (result.buffer != null) {
+                    if (result.pos != null) {
+                        results.add(result.file);
+                        processFileInternal(result.file,
+                                            result.buffer.getMode(),
+                                            result.pos);
+                        update = true;
                     }
-                    finally {
-                        outputBuffer.renumber();
-                        outputBuffer.unlockWrite();
+                } else if (result.occurrences != null) {
+                    if (!listEachOccurrence && results.size() == 0)
+                        outputBuffer.appendLine("Found in:");
+                    outputBuffer.appendFileLine(result.file,
+                                                listEachOccurrence);
+                    results.add(result.file);
+                    if (listEachOccurrence) {
+                        for (Occurrence occ : result.occurrences)
+                            outputBuffer.appendOccurrenceLine(occ.text,
+                                                              occ.lineNumber);
                     }
+                    update = true;
                 }
             }
-            // Update display once per file.
             if (update)
-                SwingUtilities.invokeLater(updateDisplayRunnable);
+                outputBuffer.renumber();
         }
-        catch (IOException e) {
-            Log.error(e);
+        finally {
+            outputBuffer.unlockWrite();
         }
+        // Update display once per batch.
+        if (update)
+            SwingUtilities.invokeLater(updateDisplayRunnable);
     }
 
-    // BUG!! Unicode files are treated as binary.
-    private static boolean isBinaryFile(File file)
+    // Runs in the pool. Returns null if the file is binary or can't be read.
+    // If buffer is not null, the buffer will be searched instead of the
+    // file, so all we need to know is whether the file is binary.
+    private FileResult searchFile(File file, Buffer buffer)
     {
-        try {
-            InputStream in = file.getInputStream();
-            byte[] bytes = new byte[4096];
-            int bytesRead = in.read(bytes);
-            in.close();
-            for (int i = 0; i < bytesRead; i++) {
-                if (bytes[i] == 0)
-                    return true;
+        if (cancelled)
+            return null;
+        final TrigramIndex index = trigramIndex;
+        final String path = file.canonicalPath();
+        long lastModified = 0;
+        long length = 0;
+        int state = TrigramIndex.UNKNOWN;
+        if (index != null) {
+            // Before reading the file, so the entry can't be newer than
+            // the text it was made from.
+            lastModified = file.lastModified();
+            length = file.length();
+            state = index.lookup(path, lastModified, length, trigrams);
+            if (state == TrigramIndex.BINARY)
+                return null;
+            if (state == TrigramIndex.NO_MATCH && buffer == null)
+                return new FileResult(file, null);
+        }
+        final boolean indexing = index != null && state == TrigramIndex.UNKNOWN;
+        try (FileChannel channel =
+             FileChannel.open(Paths.get(path),
+                              StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if (size > MAX_READ_SIZE) {
+                return searchLargeFile(file, buffer, indexing ? index : null,
+                                       path, lastModified, length);
+            }
+            // One read does both the binary check and the search.
+            ByteBuffer bytes = ByteBuffer.allocate((int) size);
+            while (bytes.hasRemaining()) {
+                if (channel.read(bytes) < 0)
+                    break; // Truncated since we got its size.
+            }
+            bytes.flip();
+            // BUG!! Unicode files are treated as binary.
+            final int n = Math.min(bytes.limit(), 4096);
+            for (int i = 0; i < n; i++) {
+                if (bytes.get(i) == 0) {
+                    if (index != null)
+                        index.addBinary(path, lastModified, length);
+                    return null;
+                }
+            }
+            FileResult result = new FileResult(file, buffer);
+            if (buffer == null || indexing) {
+                CharBuffer cb = charset.decode(bytes);
+                if (indexing)
+                    index.add(path, lastModified, length, cb);
+                if (buffer == null)
+                    result.occurrences = searchChars(cb);
             }
-            return false;
+            return result;
         }
         catch (IOException e) {
             Log.error(e);
-            return true;
+            return null;
         }
     }
 
-    private void processFile(File file, Mode mode, Position pos)
+    // Returns null if there are no matches.
+    private List<Occurrence> searchChars(CharBuffer cb)
     {
-        Debug.assertTrue(outputBuffer != null);
-        try {
-            outputBuffer.lockWrite();
+        final char[] chars = cb.array();
+        final int begin = cb.arrayOffset() + cb.position();
+        final int end = cb.arrayOffset() + cb.limit();
+        if (!mightMatch(chars, begin, end))
+            return null;
+        List<Occurrence> occurrences = null;
+        int lineNumber = 0;
+        int start = begin;
+        // Line separators are the same as for BufferedReader.readLine().
+        for (int i = begin; i <= end; i++) {
+            if (i < end && chars[i] != '\n' && chars[i] != '\r')
+                continue;
+            if (i == end && start == end)
+                break; // Nothing after the last line separator.
+            if (cancelled)
+                return null;
+            ++lineNumber;
+            String s = new String(chars, start, i - start);
+            if (matches(s, mode)) {
+                if (occurrences == null)
+                    occurrences = new ArrayList<Occurrence>();
+                occurrences.add(new Occurrence(s, lineNumber));
+                if (!listEachOccurrence)
+                    break;
+            }
+            if (i < end - 1 && chars[i] == '\r' && chars[i + 1] == '\n')
+                ++i;
+            start = i + 1;
         }
-        catch (InterruptedException e) {
-            Log.error(e);
-            return;
+        return occurrences;
+    }
+
+    // A case-sensitive literal pattern can't match any line if it isn't
+    // found in the file as a whole, so we can skip splitting it into lines.
+    private boolean mightMatch(char[] chars, int begin, int end)
+    {
+        if (isRegularExpression() || ignoreCase())
+            return true;
+        final String pattern = getPattern();
+        final int length = pattern.length();
+        if (length == 0)
+            return true;
+        final char first = pattern.charAt(0);
+        final int last = end - length;
+        for (int i = begin; i <= last; i++) {
+            if (chars[i] != first)
+                continue;
+            int j = 1;
+            while (j < length && chars[i + j] == pattern.charAt(j))
+                ++j;
+            if (j == length)
+                return true;
         }
+        return false;
+    }
+
+    // Runs in the pool. Reads the file a line at a time, so only one line
+    // is in memory at once. If index is not null, the file is added to it.
+    private FileResult searchLargeFile(File file, Buffer buffer,
+        TrigramIndex index, String path, long lastModified, long length)
+        throws IOException
+    {
+        if (index != null && !TrigramIndex.isIndexable(length))
+            index = null;
+        BufferedInputStream in = new BufferedInputStream(file.getInputStream());
         try {
-            processFileInternal(file, mode, pos);
-            outputBuffer.renumber();
+            in.mark(4096);
+            byte[] bytes = new byte[4096];
+            int bytesRead = in.read(bytes);
+            for (int i = 0; i < bytesRead; i++) {
+                if (bytes[i] == 0) {
+                    if (index != null)
+                        index.addBinary(path, lastModified, length);
+                    return null;
+                }
+            }
+            in.reset();
+            FileResult result = new FileResult(file, buffer);
+            if (buffer != null && index == null)
+                return result;
+            BufferedReader reader =
+                new BufferedReader(new InputStreamReader(in, charset));
+            TrigramIndex.Builder builder =
+                index != null ? new TrigramIndex.Builder() : null;
+            boolean searching = buffer == null;
+            int lineNumber = 0;
+            String s;
+            while ((s = reader.readLine()) != null) {
+                if (cancelled)
+                    return result;
+                if (builder != null)
+                    builder.append(s);
+                if (!searching)
+                    continue;
+                ++lineNumber;
+                if (matches(s, mode)) {
+                    if (result.occurrences == null)
+                        result.occurrences = new ArrayList<Occurrence>();
+                    result.occurrences.add(new Occurrence(s, lineNumber));
+                    if (!listEachOccurrence) {
+                        // Keep reading only if the index needs the rest.
+                        if (builder == null)
+                            break;
+                        searching = false;
+                    }
+                }
+            }
+            if (builder != null && s == null)
+                index.add(path, lastModified, length, builder);
+            return result;
         }
         finally {
-            outputBuffer.unlockWrite();
+            in.close();
         }
-        // Update display once per file.
-        SwingUtilities.invokeLater(updateDisplayRunnable);
     }
 
     private final Runnable updateDisplayRunnable = new Runnable() {
@@ -634,15 +878,15 @@ public final class FindInFiles extends Replacement implements Constants,
                 return;
             }
             try {
-                CompoundEdit compoundEdit = new CompoundEdit();
+                UndoLineChanges undoLineChanges = new UndoLineChanges(buffer);
                 Position pos = new Position(buffer.getFirstLine(), 0);
                 while ((pos = find(mode, pos)) != null) {
-                    compoundEdit.addEdit(new UndoLineEdit(buffer, pos.getLine()));
+                    undoLineChanges.add(pos.getLine());
                     replaceOccurrence(pos);
                     buffer.incrementModCount();
                 }
-                compoundEdit.end();
-                buffer.addEdit(compoundEdit);
+                if (undoLineChanges.size() > 0)
+                    buffer.addEdit(undoLineChanges);
             }
             finally {
                 buffer.unlockWrite();
@@ -973,6 +1217,45 @@ public final class FindInFiles extends Replacement implements Constants,
         }
     }
 
+    // A file to search, or the listing of a subdirectory.
+    private static final class Entry
+    {
+        final File file;
+        final Future<List<Entry>> subdir;
+
+        Entry(File file, Future<List<Entry>> subdir)
+        {
+            this.file = file;
+            this.subdir = subdir;
+        }
+    }
+
+    private static final class FileResult
+    {
+        final File file;
+        final Buffer buffer;
+        List<Occurrence> occurrences;
+        Position pos;
+
+        FileResult(File file, Buffer buffer)
+        {
+            this.file = file;
+            this.buffer = buffer;
+        }
+    }
+
+    private static final class Occurrence
+    {
+        final String text;
+        final int lineNumber;
+
+        Occurrence(String text, int lineNumber)
+        {
+            this.text = text;
+            this.lineNumber = lineNumber;
+        }
+    }
+
     private static final class CheckFileException extends Exception
     {
         CheckFileException(String message)
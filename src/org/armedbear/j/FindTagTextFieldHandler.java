@@ -187,34 +187,31 @@ public final class FindTagTextFieldHandler extends DefaultTextFieldHandler
     {
         List<String> list = getCompletionsInCurrentBuffer(prefix);
         Mode mode = editor.getMode();
-        List<GlobalTag> tags =
-            Editor.getTagFileManager().getTags(editor.getCurrentDirectory(),
+        TagIndex index =
+            Editor.getTagFileManager().getIndex(editor.getCurrentDirectory(),
                 mode);
-        if (tags != null) {
+        if (index != null) {
             boolean prefixIsQualified = mode.isQualifiedName(prefix);
             boolean ignoreCase = Utilities.isLowerCase(prefix);
             int prefixLength = prefix.length();
-            for (GlobalTag tag : tags) {
-                if (tag.getName().regionMatches(ignoreCase, 0, prefix, 0, prefixLength)) {
-                    String toBeAdded;
-                    if (prefixIsQualified)
+            for (GlobalTag tag : index.findByNamePrefix(prefix, ignoreCase)) {
+                String toBeAdded;
+                if (prefixIsQualified)
+                    toBeAdded = tag.getName();
+                else {
+                    toBeAdded = tag.getClassName();
+                    if (toBeAdded == null)
                         toBeAdded = tag.getName();
-                    else {
-                        toBeAdded = tag.getClassName();
-                        if (toBeAdded == null)
-                            toBeAdded = tag.getName();
-                    }
-                    maybeAdd(list, toBeAdded);
-                    continue;
                 }
-                if (!prefixIsQualified && mode.hasQualifiedNames()) {
-                    // The name we're looking for does not have a class prefix.
-                    // Look for a match on the method name of the tag.
-                    String methodName = tag.getMethodName();
-                    if (methodName != null) {
-                        if (methodName.regionMatches(ignoreCase, 0, prefix, 0, prefixLength))
-                            maybeAdd(list, tag.getMethodName());
-                    }
+                maybeAdd(list, toBeAdded);
+            }
+            if (!prefixIsQualified && mode.hasQualifiedNames()) {
+                // The name we're looking for does not have a class prefix.
+                // Look for a match on the method name of the tag.
+                for (GlobalTag tag : index.findByMethodNamePrefix(prefix, ignoreCase)) {
+                    if (tag.getName().regionMatches(ignoreCase, 0, prefix, 0, prefixLength))
+                        continue; // Already added.
+                    maybeAdd(list, tag.getMethodName());
                 }
             }
         }
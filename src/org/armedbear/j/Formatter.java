@@ -47,6 +47,99 @@ public abstract class Formatter implements Constants
         return false;
     }
 
+    // True once parseBufferIncrementally() has parsed the whole buffer with
+    // this formatter, so the line flags hold our states.
+    private boolean parsed;
+
+    /**
+     * Parses the buffer, storing the lexer state at the start of each line
+     * in the line flags.
+     *
+     * Subclasses whose state between lines is kept in the line flags
+     * implement <code>scanLine()</code> (and possibly
+     * <code>getLineState()</code> and <code>isResumable()</code>) and call
+     * this from <code>parseBuffer()</code>. If the buffer knows which lines
+     * have changed, parsing resumes just before the first of them and stops
+     * at the first line after them whose flags are unchanged.
+     *
+     * @param initialState  the state at the start of the buffer
+     * @return              true if the flags of any line have changed
+     */
+    protected final boolean parseBufferIncrementally(int initialState)
+    {
+        Line line = buffer.getFirstLine();
+        int state = initialState;
+        Line lastDirtyLine = null;
+        final Line firstDirtyLine = buffer.getFirstDirtyLine();
+        if (parsed && firstDirtyLine != null && isInBuffer(firstDirtyLine)) {
+            Line resume = firstDirtyLine.previous();
+            while (resume != null && !isResumable(resume.flags()))
+                resume = resume.previous();
+            if (resume != null) {
+                state = scanLine(resume, resume.flags());
+                line = resume.next();
+            }
+            lastDirtyLine = buffer.getLastDirtyLine();
+        }
+        boolean changed = false;
+        boolean pastDirtyLines = false;
+        while (line != null) {
+            state = getLineState(line, state);
+            if (state != line.flags()) {
+                line.setFlags(state);
+                changed = true;
+            } else if (pastDirtyLines && isResumable(state)) {
+                // Nothing changes from here on.
+                break;
+            }
+            state = scanLine(line, state);
+            if (line == lastDirtyLine)
+                pastDirtyLines = true;
+            line = line.next();
+        }
+        parsed = true;
+        buffer.setNeedsParsing(false);
+        return changed;
+    }
+
+    // Returns false if line has been removed from the buffer.
+    private boolean isInBuffer(Line line)
+    {
+        Line prev = line.previous();
+        if (prev != null)
+            return prev.next() == line;
+        return buffer.getFirstLine() == line;
+    }
+
+    /**
+     * Returns the state to store in the flags of a line, given the state at
+     * the end of the previous line. The default is to use that state as is.
+     */
+    protected int getLineState(Line line, int state)
+    {
+        return state;
+    }
+
+    /**
+     * Scans a line whose flags hold the state at its start, and returns the
+     * state at its end. Subclasses that call
+     * <code>parseBufferIncrementally()</code> must override this.
+     */
+    protected int scanLine(Line line, int state)
+    {
+        return state;
+    }
+
+    /**
+     * Returns false if the flags alone don't describe the lexer state at the
+     * start of a line (e.g. inside a here document, where the terminator is
+     * remembered elsewhere), so parsing can't resume or stop there.
+     */
+    protected boolean isResumable(int state)
+    {
+        return true;
+    }
+
     protected final boolean isKeyword(String s)
     {
         return buffer.isKeyword(s);
@@ -86,13 +86,13 @@ public class FtpSaveProcess implements BackgroundProcess, Constants
     {
         Debug.assertTrue(SwingUtilities.isEventDispatchThread());
         if (!buffer.isLocked()) {
-            Log.debug("start() buffer is not locked");
+            Log.debug(Log.FTP, "start() buffer is not locked");
             if (!buffer.lock()) {
                 MessageDialog.showMessageDialog("Buffer is busy", buffer.getFile().netPath());
                 session.unlock();
                 return;
             }
-            Log.debug("start() buffer locked OK");
+            Log.debug(Log.FTP, "start() buffer locked OK");
         }
         Debug.assertTrue(buffer.isLocked());
         buffer.setBusy(true);
@@ -120,7 +120,7 @@ public class FtpSaveProcess implements BackgroundProcess, Constants
 
     public void doSave()
     {
-        Log.debug("doSave force = " + force);
+        Log.debug(Log.FTP, "doSave force = {}", force);
         Debug.assertTrue(buffer != null);
         Debug.assertTrue(source != null);
         Debug.assertTrue(!SwingUtilities.isEventDispatchThread());
@@ -270,7 +270,7 @@ public class FtpSession implements Constants, RemoteSession
         String listing = getDirectoryListingForFile(file.canonicalPath());
         if (listing != null) {
             String s = listing.substring(1, 10);
-            Log.debug("s = |" + s + "|");
+            Log.debug(Log.FTP, "s = |{}|", s);
             if (s.length() == 9) {
                 if (s.charAt(0) == 'r')
                     permissions += 0400;
@@ -444,7 +444,7 @@ public class FtpSession implements Constants, RemoteSession
             }
         }
 
-        Log.debug("getDirectoryListingForFile |" + listing + "|");
+        Log.debug(Log.FTP, "getDirectoryListingForFile |{}|", listing);
         return listing;
     }
 
@@ -463,7 +463,7 @@ public class FtpSession implements Constants, RemoteSession
                 // It would be nice to use STOU here, but most servers don't
                 // implement it.
                 tempName = getUniqueName(remoteFile.getParentFile());
-                Log.debug("tempName = |" + tempName + "|");
+                Log.debug(Log.FTP, "tempName = |{}|", tempName);
                 if (tempName != null)
                     out = getOutputStreamForFile(tempName);
             }
@@ -553,7 +553,7 @@ public class FtpSession implements Constants, RemoteSession
             File file = File.getInstance(dir, String.valueOf(n));
             String name = file.canonicalPath();
             if (!exists(name)) {
-                Log.debug("unique name = |" + name + "|");
+                Log.debug(Log.FTP, "unique name = |{}|", name);
                 return name;
             }
             n += Math.abs(random.nextLong() % now);
@@ -592,7 +592,7 @@ public class FtpSession implements Constants, RemoteSession
                         Log.error(e);
                     else
                         // Exception is expected.
-                        Log.debug("FtpSession.get cancelled");
+                        Log.debug(Log.FTP, "FtpSession.get cancelled");
                 }
                 if (bytesRead <= 0)
                     break;
@@ -655,7 +655,7 @@ public class FtpSession implements Constants, RemoteSession
         if (connected) {
             command("NOOP");
             if (getReply() == 421) {
-                Log.debug("verifyConnected calling connect");
+                Log.debug(Log.FTP, "verifyConnected calling connect");
                 connect();
             }
         } else
@@ -669,7 +669,7 @@ public class FtpSession implements Constants, RemoteSession
     {
         if (progressNotifier != null)
             progressNotifier.setText("Connecting to " + host);
-        Log.debug("connecting to " + host);
+        Log.debug(Log.FTP, "connecting to {}", host);
 
         connected = false;
         loginDirectory = null;
@@ -738,7 +738,7 @@ public class FtpSession implements Constants, RemoteSession
         }
 
         connected = true;
-        Log.debug("connected!");
+        Log.debug(Log.FTP, "connected!");
         return true;
     }
 
@@ -746,7 +746,7 @@ public class FtpSession implements Constants, RemoteSession
     {
         boolean reconnect = false;
         if (echo)
-            Log.debug("==> " + (s.startsWith("PASS ") ? "PASS" : s));
+            Log.debug(Log.FTP, "==> {}", s.startsWith("PASS ") ? "PASS" : s);
         try {
             controlOut.write(s + "\r\n");
             controlOut.flush();
@@ -759,11 +759,12 @@ public class FtpSession implements Constants, RemoteSession
         if (reconnect) {
             // Exception may mean we were disconnected by remote host because
             // of inactivity. Try to reconnect.
-            Log.debug("trying to reconnect...");
+            Log.debug(Log.FTP, "trying to reconnect...");
             connect();
             if (connected) {
                 if (echo)
-                    Log.debug("==> " + (s.startsWith("PASS ") ? "PASS" : s));
+                    Log.debug(Log.FTP, "==> {}",
+                              s.startsWith("PASS ") ? "PASS" : s);
                 try {
                     controlOut.write(s + "\r\n");
                     controlOut.flush();
@@ -787,7 +788,7 @@ public class FtpSession implements Constants, RemoteSession
             do {
                 s = controlIn.readLine();
                 if (echo && s != null)
-                    Log.debug("<== " + s);
+                    Log.debug(Log.FTP, "<== {}", s);
             } while (s != null && !isEndOfReply(s));
         }
         catch (Exception e) {}
@@ -937,7 +938,7 @@ public class FtpSession implements Constants, RemoteSession
                 int hibyte = Integer.parseInt(st.nextToken());
                 int lobyte = Integer.parseInt(st.nextToken());
                 int dataPort = hibyte * 256 + lobyte;
-                Log.debug("opening data socket");
+                Log.debug(Log.FTP, "opening data socket");
                 dataSocket = new Socket(address, dataPort);
                 dataIn = dataSocket.getInputStream();
                 dataOut = dataSocket.getOutputStream();
@@ -1065,9 +1066,9 @@ public class FtpSession implements Constants, RemoteSession
 
     private synchronized void disconnect()
     {
-        Log.debug("disconnect");
+        Log.debug(Log.FTP, "disconnect");
         if (controlSocket != null) {
-            Log.debug("closing control socket...");
+            Log.debug(Log.FTP, "closing control socket...");
             try {
                 controlSocket.close();
             }
@@ -1079,7 +1080,7 @@ public class FtpSession implements Constants, RemoteSession
             controlOut = null;
         }
         if (dataSocket != null) {
-            Log.debug("closing data socket...");
+            Log.debug(Log.FTP, "closing data socket...");
             try {
                 dataSocket.close();
             }
@@ -1095,7 +1096,7 @@ public class FtpSession implements Constants, RemoteSession
 
     private void close()
     {
-        Log.debug("FtpSession.close");
+        Log.debug(Log.FTP, "FtpSession.close");
         if (connected) {
             final Editor editor = Editor.currentEditor();
             editor.setWaitCursor();
@@ -1104,7 +1105,7 @@ public class FtpSession implements Constants, RemoteSession
                 {
                     try {
                         if (echo)
-                            Log.debug("==> QUIT");
+                            Log.debug(Log.FTP, "==> QUIT");
                         controlOut.write("QUIT\r\n");
                         controlOut.flush();
                         getReply();
@@ -1121,13 +1122,13 @@ public class FtpSession implements Constants, RemoteSession
                 Log.error(e);
             }
             if (t.isAlive()) {
-                Log.debug("stopping QUIT thread");
+                Log.debug(Log.FTP, "stopping QUIT thread");
                 t.stop();
             }
             disconnect();
             editor.setDefaultCursor();
         }
-        Log.debug("leaving close");
+        Log.debug(Log.FTP, "leaving close");
     }
 
     public static synchronized FtpSession getSession(FtpFile file)
@@ -37,8 +37,8 @@ public final class GlobalTag extends Tag
     this.filename = filename;
   }
 
-  private GlobalTag(String name, String signature, String filename,
-                    String canonicalSignature)
+  GlobalTag(String name, String signature, String filename,
+            String canonicalSignature)
   {
     super(name, signature);
     this.filename = filename;
@@ -100,6 +100,11 @@ public final class GlobalTag extends Tag
   }
 
   public String getMethodName()
+  {
+    return getMethodName(name);
+  }
+
+  public static String getMethodName(String name)
   {
     // Java
     int index = name.indexOf('.');
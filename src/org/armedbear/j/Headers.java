@@ -26,23 +26,26 @@ public final class Headers
 {
     // These are indexes into the array of values. We only store values for the
     // headers we're interested in.
-    public static final int CC                        =  0;
-    public static final int CONTENT_DISPOSITION       =  1;
-    public static final int CONTENT_TRANSFER_ENCODING =  2;
-    public static final int CONTENT_TYPE              =  3;
-    public static final int DATE                      =  4;
-    public static final int FROM                      =  5;
-    public static final int IN_REPLY_TO               =  6;
-    public static final int MESSAGE_ID                =  7;
-    public static final int REFERENCES                =  8;
-    public static final int REPLY_TO                  =  9;
-    public static final int SET_COOKIE                = 10;
-    public static final int SUBJECT                   = 11;
-    public static final int TO                        = 12;
-    public static final int X_J_STATUS                = 13;
-    public static final int X_UIDL                    = 14;
+    public static final int CACHE_CONTROL             =  0;
+    public static final int CC                        =  1;
+    public static final int CONTENT_DISPOSITION       =  2;
+    public static final int CONTENT_TRANSFER_ENCODING =  3;
+    public static final int CONTENT_TYPE              =  4;
+    public static final int DATE                      =  5;
+    public static final int ETAG                      =  6;
+    public static final int FROM                      =  7;
+    public static final int IN_REPLY_TO               =  8;
+    public static final int LAST_MODIFIED             =  9;
+    public static final int MESSAGE_ID                = 10;
+    public static final int REFERENCES                = 11;
+    public static final int REPLY_TO                  = 12;
+    public static final int SET_COOKIE                = 13;
+    public static final int SUBJECT                   = 14;
+    public static final int TO                        = 15;
+    public static final int X_J_STATUS                = 16;
+    public static final int X_UIDL                    = 17;
 
-    private static final int MAX_HEADERS = 15;
+    private static final int MAX_HEADERS = 18;
 
     private String[] values = new String[MAX_HEADERS];
 
@@ -80,6 +83,8 @@ public final class Headers
         name = name.toLowerCase();
         switch (name.charAt(0)) {
             case 'c':
+                if (name.equals("cache-control"))
+                    return CACHE_CONTROL;
                 if (name.equals("cc"))
                     return CC;
                 if (name.equals("content-disposition"))
@@ -93,6 +98,10 @@ public final class Headers
                 if (name.equals("date"))
                     return DATE;
                 break;
+            case 'e':
+                if (name.equals("etag"))
+                    return ETAG;
+                break;
             case 'f':
                 if (name.equals("from"))
                     return FROM;
@@ -101,6 +110,10 @@ public final class Headers
                 if (name.equals("in-reply-to"))
                     return IN_REPLY_TO;
                 break;
+            case 'l':
+                if (name.equals("last-modified"))
+                    return LAST_MODIFIED;
+                break;
             case 'm':
                 if (name.equals("message-id"))
                     return MESSAGE_ID;
@@ -44,6 +44,10 @@ public final class HttpLoadProcess extends LoadProcess implements BackgroundProc
 
     private int redirectionCount;
 
+    // False to fetch the document again without asking if the cached copy
+    // is still current.
+    private boolean conditional = true;
+
     private StringBuilder sbHeaders = new StringBuilder();
 
     public HttpLoadProcess(Buffer buffer, HttpFile file)
@@ -99,6 +103,9 @@ public final class HttpLoadProcess extends LoadProcess implements BackgroundProc
             Log.error("HttpLoadProcess.load cache is null");
             return; // Report error!
         }
+        final Cache httpCache = Cache.getCache();
+        final Cache.Entry cached = httpCache != null && conditional ?
+            httpCache.getEntry(file.netPath()) : null;
         Debug.assertTrue(socket == null);
         String hostName = file.getHostName();
         int port = file.getPort();
@@ -142,6 +149,11 @@ public final class HttpLoadProcess extends LoadProcess implements BackgroundProc
         String location = null;
         boolean redirected = false;
         String encoding = null;
+        int statusCode = -1;
+        Headers headers = null;
+        int contentLength = 0; // Of the body, if the server says.
+        long contentBytes = 0; // Of the body, as received.
+        boolean complete = false; // Read to the end without an error.
         try {
             InputStream in = socket.getInputStream();
             OutputStreamWriter writer = new OutputStreamWriter(socket.getOutputStream());
@@ -166,6 +178,18 @@ public final class HttpLoadProcess extends LoadProcess implements BackgroundProc
                     sb.append("\r\n");
                 }
             }
+            if (cached != null) {
+                if (cached.getETag() != null) {
+                    sb.append("If-None-Match: ");
+                    sb.append(cached.getETag());
+                    sb.append("\r\n");
+                }
+                if (cached.getLastModified() != null) {
+                    sb.append("If-Modified-Since: ");
+                    sb.append(cached.getLastModified());
+                    sb.append("\r\n");
+                }
+            }
             sb.append("\r\n");
             request = sb.toString();
             writer.write(request);
@@ -176,6 +200,7 @@ public final class HttpLoadProcess extends LoadProcess implements BackgroundProc
             byte[] buf = new byte[16384];
             long totalBytes = 0;
             int totalLength = 0; // Includes length of response headers.
+            boolean readFailed = false;
             if (progressNotifier != null)
                 progressNotifier.progressStart();
             while (!cancelled) {
@@ -187,6 +212,7 @@ public final class HttpLoadProcess extends LoadProcess implements BackgroundProc
                 catch (Exception e) {
                     if (!cancelled)
                         Log.error(e);
+                    readFailed = true;
                 }
                 if (bytesRead <= 0)
                     break;
@@ -205,7 +231,7 @@ public final class HttpLoadProcess extends LoadProcess implements BackgroundProc
                         sb = null;
                         responseHeaders = s.substring(0, index + skip);
                         sbHeaders.append(responseHeaders);
-                        int statusCode = getStatusCode(responseHeaders);
+                        statusCode = getStatusCode(responseHeaders);
                         Log.debug("statusCode = " + statusCode);
                         if (statusCode == 301 || statusCode == 302) {
                             // "Moved Permanently", "Moved Temporarily"
@@ -215,15 +241,17 @@ public final class HttpLoadProcess extends LoadProcess implements BackgroundProc
                             Log.debug(request);
                             Log.debug(responseHeaders);
                         }
+                        // Before removing the status line, so that a
+                        // Content-Length header right after it is found.
+                        contentLength = getContentLength(responseHeaders);
                         // Remove status line.
                         int end = responseHeaders.indexOf('\n');
                         if (end >= 0)
                             responseHeaders = responseHeaders.substring(end + 1);
-                        int contentLength = getContentLength(responseHeaders);
                         if (contentLength != 0)
                             totalLength = responseHeaders.length() + contentLength;
                         Log.debug("responseHeaders = |" + responseHeaders + "|");
-                        Headers headers = Headers.parse(responseHeaders);
+                        headers = Headers.parse(responseHeaders);
                         setContentType(headers.getValue(Headers.CONTENT_TYPE));
                         Log.debug("content-type = |" + contentType + "|");
                         String charset =
@@ -240,9 +268,12 @@ public final class HttpLoadProcess extends LoadProcess implements BackgroundProc
                         int offset = index - oldLength + skip;
                         int length = bytesRead - offset;
                         out.write(buf, offset, length);
+                        contentBytes += length;
                     }
-                } else
+                } else {
                     out.write(buf, 0, bytesRead);
+                    contentBytes += bytesRead;
+                }
                 totalBytes += bytesRead;
                 if (progressNotifier != null)
                     progressNotifier.progress("Received ", totalBytes, totalLength);
@@ -253,12 +284,39 @@ public final class HttpLoadProcess extends LoadProcess implements BackgroundProc
             in.close();
             socket.close();
             socket = null;
+            complete = !readFailed && !cancelled;
         }
         catch (Exception e) {
             Log.error(e);
         }
-        if (cancelled)
+        if (cancelled) {
             cache.delete();
+        } else if (cache.isFile()) {
+            if (statusCode == 304 && cached != null) {
+                // Not modified.
+                if (!httpCache.copyTo(cached, cache)) {
+                    // The cached copy has gone away. Fetch it again.
+                    cache.delete();
+                    cache = null;
+                    conditional = false;
+                    load();
+                    return;
+                }
+                Log.debug("using cached copy of {}", file.netPath());
+                setContentType(cached.getContentType());
+                String charset =
+                    Utilities.getCharsetFromContentType(contentType);
+                encoding = charset != null ?
+                    Utilities.getEncodingFromCharset(charset) : null;
+            } else if (statusCode == 200 && httpCache != null) {
+                // Don't keep a truncated copy; later requests would be told
+                // it's up to date.
+                if (complete && (contentLength == 0 || contentBytes == contentLength))
+                    httpCache.store(file.netPath(), cache, headers);
+                else
+                    Log.debug("not caching incomplete response for {}", file.netPath());
+            }
+        }
         if (!cache.isFile())
             cache = null;
         if (!cancelled && render && redirected && redirectionCount < 5) {
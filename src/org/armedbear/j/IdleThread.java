@@ -80,6 +80,7 @@ public class IdleThread extends Thread
         addTask(autosaveTask);
         addTask(saveStateTask);
         addTask(tagCurrentDirectoryTask);
+        addTask(refreshTrigramIndexTask);
         if (Editor.isDebugEnabled())
             addListThreadsTask();
     }
@@ -229,6 +230,18 @@ public class IdleThread extends Thread
     private IdleThreadTask saveStateTask =
         new IdleThreadTask(saveStateRunnable, 5000, true);
 
+    private Runnable refreshTrigramIndexRunnable = new Runnable() {
+        public void run()
+        {
+            TrigramIndex index = TrigramIndex.getLoadedIndex();
+            if (index != null)
+                index.refresh();
+        }
+    };
+
+    private IdleThreadTask refreshTrigramIndexTask =
+        new IdleThreadTask(refreshTrigramIndexRunnable, 10000, false);
+
     private IdleThreadTask gcTask = new GarbageCollectionTask();
 
     private IdleThreadTask tagCurrentDirectoryTask =
@@ -0,0 +1,142 @@
+/*
+ * KeyLatency.java
+ *
+ * Copyright (C) 2026 Kevin Krouse
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.armedbear.j;
+
+/**
+ * Measures the time from a keystroke reaching the editor to the display
+ * being painted with its effect, including any command or keyboard macro
+ * the keystroke runs.
+ *
+ * Only used on the event dispatch thread.
+ */
+public final class KeyLatency
+{
+    // One frame at 60 frames per second.
+    private static final long FRAME = 16667; // Microseconds.
+
+    // Upper bounds of the histogram buckets.
+    private static final long[] BOUNDS = {
+        1000, 2000, 4000, 8000, FRAME, 2 * FRAME, 4 * FRAME
+    };
+
+    private static long start; // System.nanoTime() of the keystroke, or 0.
+
+    private static int count;
+    private static long total; // Microseconds.
+    private static long max;
+    private static int[] histogram = new int[BOUNDS.length + 1];
+
+    /**
+     * Called when a key event is dispatched.
+     */
+    public static void keystroke()
+    {
+        // If the previous keystroke hasn't been painted yet, measure from
+        // that one.
+        if (start == 0)
+            start = System.nanoTime();
+    }
+
+    /**
+     * Called when a key event turns out not to do anything.
+     */
+    public static void cancel()
+    {
+        start = 0;
+    }
+
+    /**
+     * Called when the display has been painted.
+     */
+    public static void painted()
+    {
+        if (start == 0)
+            return;
+        final long latency = (System.nanoTime() - start) / 1000;
+        start = 0;
+        ++count;
+        total += latency;
+        if (latency > max)
+            max = latency;
+        int i = 0;
+        while (i < BOUNDS.length && latency > BOUNDS[i])
+            ++i;
+        ++histogram[i];
+        if (latency > 4 * FRAME)
+            Log.debug(Log.DISPLAY, "slow keystroke {} us", latency);
+    }
+
+    public static String getReport()
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append("Keystrokes: ");
+        sb.append(count);
+        if (count > 0) {
+            sb.append('\n');
+            sb.append("Mean: ");
+            sb.append(formatMillis(total / count));
+            sb.append("  Max: ");
+            sb.append(formatMillis(max));
+            sb.append('\n');
+            int overFrame = 0;
+            for (int i = 0; i < histogram.length; i++) {
+                if (histogram[i] == 0)
+                    continue;
+                if (i > 0 && BOUNDS[i - 1] >= FRAME)
+                    overFrame += histogram[i];
+                sb.append('\n');
+                if (i < BOUNDS.length) {
+                    sb.append("<= ");
+                    sb.append(formatMillis(BOUNDS[i]));
+                } else {
+                    sb.append(" > ");
+                    sb.append(formatMillis(BOUNDS[i - 1]));
+                }
+                sb.append(": ");
+                sb.append(histogram[i]);
+            }
+            sb.append("\n\nOver one frame: ");
+            sb.append(overFrame);
+        }
+        return sb.toString();
+    }
+
+    public static void reset()
+    {
+        count = 0;
+        total = 0;
+        max = 0;
+        histogram = new int[BOUNDS.length + 1];
+    }
+
+    private static String formatMillis(long micros)
+    {
+        final long tenths = (micros + 50) / 100;
+        return String.valueOf(tenths / 10) + '.' + (tenths % 10) + " ms";
+    }
+
+    public static void keyLatency()
+    {
+        final Editor editor = Editor.currentEditor();
+        MessageDialog.showMessageDialog(editor, getReport(), "Key Latency");
+        reset();
+    }
+}
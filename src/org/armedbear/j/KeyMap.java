@@ -43,6 +43,12 @@ public final class KeyMap implements Constants
 
     private ArrayList<KeyMapping> mappings = new ArrayList<KeyMapping>();
 
+    // The last mapping for each typed character and for each pressed key,
+    // so a keystroke can be looked up without scanning the mappings. Built
+    // when needed and thrown away whenever the mappings change.
+    private Index typedIndex;
+    private Index pressedIndex;
+
     public KeyMap()
     {
     }
@@ -442,29 +448,138 @@ public final class KeyMap implements Constants
     {
         // Mask off the bits we don't care about (Java 1.4).
         modifiers &= 0x0f;
+        if (typedIndex == null)
+            buildIndex();
         if (keyCode == 0 && modifiers == 0) {
             // This is the keyTyped() case. Ignore keyCode and modifiers;
             // keyChar must match the mapping.
+            if (keyChar != 0)
+                return typedIndex.get(keyChar);
+            // Every keyPressed() mapping has a keyChar of zero.
             for (int i = mappings.size(); i-- > 0;) {
                 KeyMapping mapping = mappings.get(i);
                 if (keyChar == mapping.getKeyChar())
                     return mapping;
             }
         } else {
-            for (int i = mappings.size(); i-- > 0;) {
-                // This is the keyPressed() case. keyCode and modifiers must
-                // match the mapping. mapping.getKeyChar() must be zero, but
-                // we ignore the keyChar argument.
-                KeyMapping mapping = mappings.get(i);
-                if (mapping.getKeyChar() == 0 &&
-                    keyCode == mapping.getKeyCode() &&
-                    modifiers == mapping.getModifiers())
-                    return mapping;
-            }
+            // This is the keyPressed() case. keyCode and modifiers must
+            // match the mapping. mapping.getKeyChar() must be zero, but
+            // we ignore the keyChar argument.
+            return pressedIndex.get(getPressedKey(keyCode, modifiers));
         }
         return null;
     }
 
+    private static int getPressedKey(int keyCode, int modifiers)
+    {
+        return keyCode << 4 | modifiers;
+    }
+
+    // Only called from synchronized methods.
+    private void buildIndex()
+    {
+        typedIndex = new Index(mappings.size());
+        pressedIndex = new Index(mappings.size());
+        // Later mappings win, as they did when lookup() searched the
+        // mappings backwards.
+        for (KeyMapping mapping : mappings) {
+            final char keyChar = mapping.getKeyChar();
+            if (keyChar != 0) {
+                typedIndex.put(keyChar, mapping);
+            } else {
+                final int modifiers = mapping.getModifiers();
+                // Mappings with other modifier bits never match.
+                if ((modifiers & ~0x0f) == 0)
+                    pressedIndex.put(getPressedKey(mapping.getKeyCode(),
+                                                   modifiers), mapping);
+            }
+        }
+    }
+
+    // Only called from synchronized methods.
+    private void addMapping(KeyMapping mapping)
+    {
+        mappings.add(mapping);
+        typedIndex = pressedIndex = null;
+    }
+
+    // Only called from synchronized methods.
+    private void setMapping(int i, KeyMapping mapping)
+    {
+        mappings.set(i, mapping);
+        typedIndex = pressedIndex = null;
+    }
+
+    // Only called from synchronized methods.
+    private void removeMapping(int i)
+    {
+        mappings.remove(i);
+        typedIndex = pressedIndex = null;
+    }
+
+    // An open addressing hash table from int keys to mappings.
+    private static final class Index
+    {
+        private int[] keys;
+        private KeyMapping[] values;
+        private int size;
+
+        Index(int expected)
+        {
+            int capacity = 16;
+            while (capacity < expected * 2)
+                capacity <<= 1;
+            keys = new int[capacity];
+            values = new KeyMapping[capacity];
+        }
+
+        KeyMapping get(int key)
+        {
+            final int mask = keys.length - 1;
+            for (int i = hash(key) & mask; values[i] != null; i = (i + 1) & mask) {
+                if (keys[i] == key)
+                    return values[i];
+            }
+            return null;
+        }
+
+        void put(int key, KeyMapping value)
+        {
+            final int mask = keys.length - 1;
+            int i = hash(key) & mask;
+            while (values[i] != null) {
+                if (keys[i] == key) {
+                    values[i] = value;
+                    return;
+                }
+                i = (i + 1) & mask;
+            }
+            keys[i] = key;
+            values[i] = value;
+            if (++size * 2 > keys.length)
+                grow();
+        }
+
+        private void grow()
+        {
+            final int[] oldKeys = keys;
+            final KeyMapping[] oldValues = values;
+            keys = new int[oldKeys.length * 2];
+            values = new KeyMapping[oldValues.length * 2];
+            size = 0;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldValues[i] != null)
+                    put(oldKeys[i], oldValues[i]);
+            }
+        }
+
+        private static int hash(int key)
+        {
+            final int h = key * 0x9e3779b9;
+            return h ^ (h >>> 16);
+        }
+    }
+
     public synchronized final KeyMapping lookup(KeyStroke keyStroke)
     {
         return lookup(keyStroke.getKeyChar(), keyStroke.getKeyCode(),
@@ -518,7 +633,7 @@ public final class KeyMap implements Constants
         final int limit = sourceMappings.length;
         for (KeyMapping mapping : sourceMappings) {
             if (command == mapping.getCommand())
-                mappings.add(mapping);
+                addMapping(mapping);
         }
     }
 
@@ -528,12 +643,12 @@ public final class KeyMap implements Constants
         for (int i = 0; i < mappings.size(); i++) {
             KeyMapping mapping = mappings.get(i);
             if (keyCode == mapping.getKeyCode() && modifiers == mapping.getModifiers()) {
-                mappings.set(i, new KeyMapping(keyCode, modifiers, command));
+                setMapping(i, new KeyMapping(keyCode, modifiers, command));
                 return;
             }
         }
         // No mapping found.
-        mappings.add(new KeyMapping(keyCode, modifiers, command));
+        addMapping(new KeyMapping(keyCode, modifiers, command));
     }
 
     public synchronized void mapKey(int keyCode, int modifiers, String className, String methodName)
@@ -543,12 +658,12 @@ public final class KeyMap implements Constants
         for (int i = 0; i < mappings.size(); i++) {
             KeyMapping mapping = mappings.get(i);
             if (keyCode == mapping.getKeyCode() && modifiers == mapping.getModifiers()) {
-                mappings.set(i, new KeyMapping(keyCode, modifiers, command));
+                setMapping(i, new KeyMapping(keyCode, modifiers, command));
                 return;
             }
         }
         // No mapping found.
-        mappings.add(new KeyMapping(keyCode, modifiers, command));
+        addMapping(new KeyMapping(keyCode, modifiers, command));
     }
 
     public synchronized void mapKey(char keyChar, Object command)
@@ -557,12 +672,12 @@ public final class KeyMap implements Constants
         for (int i = 0; i < mappings.size(); i++) {
             KeyMapping mapping = mappings.get(i);
             if (keyChar == mapping.getKeyChar()) {
-                mappings.set(i, new KeyMapping(keyChar, command));
+                setMapping(i, new KeyMapping(keyChar, command));
                 return;
             }
         }
         // No mapping found.
-        mappings.add(new KeyMapping(keyChar, command));
+        addMapping(new KeyMapping(keyChar, command));
     }
 
     // Only called from synchronized methods.
@@ -570,7 +685,7 @@ public final class KeyMap implements Constants
     {
         KeyMapping mapping = KeyMapping.createKeyMapping(s);
         if (mapping != null) {
-            mappings.add(mapping);
+            addMapping(mapping);
             return true;
         }
         return false;
@@ -592,12 +707,12 @@ public final class KeyMap implements Constants
             for (int i = mappings.size(); i-- > 0;) {
                 KeyMapping mapping = mappings.get(i);
                 if (keyChar == mapping.getKeyChar()) {
-                    mappings.set(i, new KeyMapping(keyChar, command));
+                    setMapping(i, new KeyMapping(keyChar, command));
                     return true;
                 }
             }
             // Not found.
-            mappings.add(new KeyMapping(keyChar, command));
+            addMapping(new KeyMapping(keyChar, command));
         } else {
             for (int i = mappings.size(); i-- > 0;) {
                 // This is the keyPressed() case. keyCode and modifiers must
@@ -607,13 +722,13 @@ public final class KeyMap implements Constants
                 if (mapping.getKeyChar() == 0 &&
                     keyCode == mapping.getKeyCode() &&
                     modifiers == mapping.getModifiers()) {
-                    mappings.set(i,
+                    setMapping(i,
                         new KeyMapping(keyCode, modifiers, command));
                     return true;
                 }
             }
             // Not found.
-            mappings.add(new KeyMapping(keyCode, modifiers, command));
+            addMapping(new KeyMapping(keyCode, modifiers, command));
         }
         return true;
     }
@@ -623,7 +738,7 @@ public final class KeyMap implements Constants
         for (int i = 0; i < mappings.size(); i++) {
             KeyMapping mapping = mappings.get(i);
             if (keyChar == mapping.getKeyChar()) {
-                mappings.remove(i);
+                removeMapping(i);
                 return;
             }
         }
@@ -634,7 +749,7 @@ public final class KeyMap implements Constants
         for (int i = 0; i < mappings.size(); i++) {
             KeyMapping mapping = mappings.get(i);
             if (keyCode == mapping.getKeyCode() && modifiers == mapping.getModifiers()) {
-                mappings.remove(i);
+                removeMapping(i);
                 return;
             }
         }
@@ -655,7 +770,7 @@ public final class KeyMap implements Constants
                 for (int i = mappings.size(); i-- > 0;) {
                     KeyMapping mapping = mappings.get(i);
                     if (keyChar == mapping.getKeyChar()) {
-                        mappings.remove(i);
+                        removeMapping(i);
                         return true;
                     }
                 }
@@ -668,7 +783,7 @@ public final class KeyMap implements Constants
                     if (mapping.getKeyChar() == 0 &&
                         keyCode == mapping.getKeyCode() &&
                         modifiers == mapping.getModifiers()) {
-                        mappings.remove(i);
+                        removeMapping(i);
                         return true;
                     }
                 }
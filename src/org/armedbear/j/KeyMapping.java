@@ -32,6 +32,11 @@ public class KeyMapping implements Constants
     private final int modifiers;
     private final Object command;
 
+    // The Command and parameters of a String command, looked up the first
+    // time the mapping is used. Only used on the event dispatch thread.
+    private Command boundCommand;
+    private String boundParameters;
+
     public KeyMapping(int keyCode, int modifiers, Object command)
     {
         this.keyChar = 0;
@@ -117,6 +122,22 @@ public class KeyMapping implements Constants
         return command;
     }
 
+    final Command getBoundCommand()
+    {
+        return boundCommand;
+    }
+
+    final String getBoundParameters()
+    {
+        return boundParameters;
+    }
+
+    final void bind(Command command, String parameters)
+    {
+        boundCommand = command;
+        boundParameters = parameters;
+    }
+
     public String toString()
     {
         StringBuilder sb = new StringBuilder(64);
@@ -0,0 +1,159 @@
+/*
+ * LineIndex.java
+ *
+ * Copyright (C) 2026 Kevin Krouse
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.armedbear.j;
+
+/**
+ * An immutable snapshot of a buffer's line list, indexed by line number and
+ * by absolute character offset.
+ *
+ * The snapshot is built with a single walk of the linked list and stays
+ * valid until the buffer is modified, so repeated lookups between edits
+ * (goto-line, mapping regex matches back to positions, etc.) no longer have
+ * to walk the list from the first line. The offsets are only computed the
+ * first time one is asked for, since that needs the length of every line.
+ */
+public final class LineIndex
+{
+    private final Line[] lines;
+
+    // offsets[i] is the absolute offset of the start of line i. The line
+    // separator always counts as 1. offsets[count] is the total length, which
+    // can be more than an int will hold for a large mapped file. Null until
+    // it's needed.
+    private long[] offsets;
+
+    private final int count;
+
+    public LineIndex(Line firstLine)
+    {
+        int n = 0;
+        for (Line line = firstLine; line != null; line = line.next())
+            ++n;
+        count = n;
+        lines = new Line[n];
+        int i = 0;
+        for (Line line = firstLine; line != null && i < n; line = line.next())
+            lines[i++] = line;
+    }
+
+    private synchronized long[] getOffsets()
+    {
+        if (offsets == null) {
+            long[] array = new long[count + 1];
+            long offset = 0;
+            for (int i = 0; i < count; i++) {
+                array[i] = offset;
+                offset += lines[i].length() + 1;
+            }
+            array[count] = offset;
+            offsets = array;
+        }
+        return offsets;
+    }
+
+    public int size()
+    {
+        return count;
+    }
+
+    public Line getLine(int lineNumber)
+    {
+        if (lineNumber < 0 || lineNumber >= count)
+            return null;
+        return lines[lineNumber];
+    }
+
+    public Line getLastLine()
+    {
+        return count > 0 ? lines[count - 1] : null;
+    }
+
+    // Returns -1 if the line is not in the index.
+    public int indexOf(Line line)
+    {
+        if (line == null)
+            return -1;
+        // Line numbers are usually current, so try that first.
+        int n = line.lineNumber();
+        if (n >= 0 && n < count && lines[n] == line)
+            return n;
+        for (int i = 0; i < count; i++) {
+            if (lines[i] == line)
+                return i;
+        }
+        return -1;
+    }
+
+    // Returns -1 if the line is not in the index.
+    public long getAbsoluteOffset(Line line)
+    {
+        int n = indexOf(line);
+        return n >= 0 ? getOffsets()[n] : -1;
+    }
+
+    // Returns null if goal is at or beyond the end of the buffer.
+    public Position getPosition(long goal)
+    {
+        if (count == 0)
+            return null;
+        final long[] offsets = getOffsets();
+        if (goal >= offsets[count])
+            return null;
+        // Binary search for the last line that starts at or before goal.
+        int lo = 0;
+        int hi = count - 1;
+        while (lo < hi) {
+            int mid = (lo + hi + 1) >>> 1;
+            if (offsets[mid] <= goal)
+                lo = mid;
+            else
+                hi = mid - 1;
+        }
+        return new Position(lines[lo], (int) (goal - offsets[lo]));
+    }
+
+    public Line findOriginal(int originalLineNumber)
+    {
+        // Unless lines have been inserted or deleted above it, the line we
+        // want is still at its original index.
+        if (originalLineNumber >= 0 && originalLineNumber < count) {
+            Line line = lines[originalLineNumber];
+            if (line.originalLineNumber() == originalLineNumber)
+                return line;
+        }
+        for (int i = 0; i < count; i++) {
+            if (lines[i].originalLineNumber() == originalLineNumber)
+                return lines[i];
+        }
+        return null;
+    }
+
+    // Returns the first line whose original line number is not less than
+    // originalLineNumber, or null.
+    public Line findOriginalAtOrAfter(int originalLineNumber)
+    {
+        for (int i = 0; i < count; i++) {
+            if (lines[i].originalLineNumber() >= originalLineNumber)
+                return lines[i];
+        }
+        return null;
+    }
+}
@@ -0,0 +1,165 @@
+/*
+ * LineRenderCache.java
+ *
+ * Copyright (C) 2026 Kevin Krouse
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.armedbear.j;
+
+import java.awt.font.FontRenderContext;
+import java.awt.font.GlyphVector;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The formatted text of the lines a display has painted recently, with the
+ * glyphs used to draw it, so repainting a line that hasn't changed doesn't
+ * run the formatter or lay out the text again.
+ *
+ * An entry is used only if the line's text and flags are the same as when
+ * it was formatted, and only with the formatter, format table, horizontal
+ * shift and width it was formatted with. Anything else that changes how a
+ * line looks must call <code>remove()</code> or <code>clear()</code>.
+ */
+final class LineRenderCache
+{
+    static final class Entry
+    {
+        final String text;
+        final int flags;
+
+        // The formatted text, as copied by Display.formatSegments().
+        final char[] chars;
+        final int[] formats;
+        final int length;
+
+        // Runs of text with the same format, laid out the first time the
+        // entry is drawn.
+        FontRenderContext frc;
+        int runCount;
+        int[] runStarts;
+        GlyphVector[] glyphs;
+        double[] widths;
+
+        Entry(String text, int flags, char[] chars, int[] formats, int length)
+        {
+            this.text = text;
+            this.flags = flags;
+            this.chars = chars;
+            this.formats = formats;
+            this.length = length;
+        }
+
+        // Copies the formatted text into arrays filled the same way by
+        // Display.formatSegments().
+        void copyTo(char[] ta, int[] fa)
+        {
+            System.arraycopy(chars, 0, ta, 0, length);
+            System.arraycopy(formats, 0, fa, 0, length);
+            Arrays.fill(ta, length, ta.length, ' ');
+            Arrays.fill(fa, length, fa.length, 0);
+        }
+    }
+
+    private final Map<Line, Entry> map;
+
+    private Formatter formatter;
+    private FormatTable formatTable;
+    private int shift;
+    private int maxCols;
+    private int tabWidth;
+    private boolean tabsVisible;
+
+    LineRenderCache(final int capacity)
+    {
+        map = new LinkedHashMap<Line, Entry>(capacity * 4 / 3 + 1, 0.75f, true) {
+            protected boolean removeEldestEntry(
+                Map.Entry<Line, LineRenderCache.Entry> eldest)
+            {
+                return size() > capacity;
+            }
+        };
+    }
+
+    /**
+     * Sets the formatter and layout of the lines to be looked up, discarding
+     * the cache if they're not the same as before.
+     */
+    synchronized void setContext(Formatter formatter, int shift, int maxCols,
+        int tabWidth, boolean tabsVisible)
+    {
+        final FormatTable formatTable = formatter.getFormatTable();
+        if (formatter != this.formatter || formatTable != this.formatTable ||
+            shift != this.shift || maxCols != this.maxCols ||
+            tabWidth != this.tabWidth || tabsVisible != this.tabsVisible) {
+            map.clear();
+            this.formatter = formatter;
+            this.formatTable = formatTable;
+            this.shift = shift;
+            this.maxCols = maxCols;
+            this.tabWidth = tabWidth;
+            this.tabsVisible = tabsVisible;
+        }
+    }
+
+    /**
+     * Returns the entry for a line, or null if there isn't one or the line
+     * has changed since it was formatted.
+     */
+    synchronized Entry get(Line line)
+    {
+        final Entry entry = map.get(line);
+        if (entry == null)
+            return null;
+        final String text = line.getText();
+        if ((text == entry.text || text.equals(entry.text)) &&
+            line.flags() == entry.flags)
+            return entry;
+        map.remove(line);
+        return null;
+    }
+
+    /**
+     * Adds an entry for a line formatted into the first length elements of
+     * ta and fa. The text and flags must be the ones the line had before it
+     * was formatted.
+     */
+    synchronized Entry put(Line line, String text, int flags, char[] ta,
+        int[] fa, int length)
+    {
+        final Entry entry = new Entry(text, flags, Arrays.copyOf(ta, length),
+            Arrays.copyOf(fa, length), length);
+        map.put(line, entry);
+        return entry;
+    }
+
+    synchronized void remove(Line line)
+    {
+        map.remove(line);
+    }
+
+    synchronized void clear()
+    {
+        map.clear();
+    }
+
+    synchronized int size()
+    {
+        return map.size();
+    }
+}
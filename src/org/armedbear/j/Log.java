@@ -20,15 +20,33 @@
 
 package org.armedbear.j;
 
-import java.lang.StringBuilder;
-
+import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.OutputStreamWriter;
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.text.SimpleDateFormat;
 import java.util.Date;
 import java.util.Map;
-
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * The log.
+ *
+ * Messages are checked against the log level on the calling thread and
+ * then put in a ring buffer. A background thread formats them and writes
+ * them to the log file, rolling the file over when it gets too big, so
+ * logging never waits for the file.
+ *
+ * The mail, jdb, FTP and display subsystems can have levels of their own.
+ * To keep logging in busy code cheap when it's not enabled, pass the values
+ * to be logged as arguments to a "{}" pattern, or build the message in a
+ * Supplier; neither is formatted unless the message is going to be logged.
+ */
 public final class Log
 {
     // Levels.
@@ -38,23 +56,83 @@ public final class Log
     private static final int ERROR = 4;
     private static final int FATAL = 5;
 
-    // Synchronization.
-    private static final Object lock = new Object();
+    // Subsystems.
+    public static final int MAIL    = 0;
+    public static final int JDB     = 1;
+    public static final int FTP     = 2;
+    public static final int DISPLAY = 3;
+
+    private static final Property[] subsystemLevelProperties = {
+        Property.LOG_LEVEL_MAIL,
+        Property.LOG_LEVEL_JDB,
+        Property.LOG_LEVEL_FTP,
+        Property.LOG_LEVEL_DISPLAY
+    };
 
-    private static final SimpleDateFormat dateFormat =
-        new SimpleDateFormat("MMM dd HH:mm:ss.SSS ");
     private static final int lineSeparatorLength =
         System.getProperty("line.separator").length();
 
     // Configuration.
-    private static boolean logEnabled;
-    private static long maxFileSize;
-    private static int maxBackupIndex;
-    private static int minLevel;
+    private static volatile boolean logEnabled;
+    private static volatile long maxFileSize;
+    private static volatile int maxBackupIndex;
+    private static volatile int minLevel;
+
+    // The level of each subsystem, or 0 to use the global level.
+    private static volatile int[] subsystemLevels =
+        new int[subsystemLevelProperties.length];
+
+    private static volatile boolean rollOverEnabled;
+
+    // The ring buffer. A record can be filled when its sequence number is
+    // the position it will be filled at, and written when its sequence
+    // number is one more than that.
+    private static final int CAPACITY = 4096; // Must be a power of two.
+    private static final Record[] ring = new Record[CAPACITY];
+    static {
+        for (int i = 0; i < CAPACITY; i++)
+            ring[i] = new Record(i);
+    }
 
+    // The next position to fill.
+    private static final AtomicLong tail = new AtomicLong();
+
+    // The number of records that have been written and flushed.
+    private static volatile long written;
+
+    // Messages lost because the ring buffer was full.
+    private static final AtomicInteger dropped = new AtomicInteger();
+
+    private static Thread writerThread;
+    private static volatile boolean writerWaiting;
+
+    // Only used by the writer thread.
+    private static long head;
     private static PrintWriter logWriter;
     private static long fileSize;
-    private static boolean rollOverEnabled;
+    private static final StringBuilder sb = new StringBuilder(256);
+    private static final SimpleDateFormat dateFormat =
+        new SimpleDateFormat("MMM dd HH:mm:ss.");
+    private static long cachedSecond = Long.MIN_VALUE;
+    private static String cachedDateTime;
+
+    private static final class Record
+    {
+        volatile long sequence;
+
+        int level;
+        long millis;
+        String message; // Or a pattern, if argCount > 0.
+        int argCount;
+        Object arg1;
+        Object arg2;
+        Throwable throwable;
+
+        Record(long sequence)
+        {
+            this.sequence = sequence;
+        }
+    }
 
     private static final void setRollOverEnabled(boolean b)
     {
@@ -71,9 +149,29 @@ public final class Log
         minLevel = level;
     }
 
+    private static final boolean isEnabled(int level, int subsystem)
+    {
+        if (!logEnabled && !Editor.isDebugEnabled())
+            return false;
+        int min = subsystem >= 0 ? subsystemLevels[subsystem] : 0;
+        if (min == 0)
+            min = minLevel;
+        return level >= min;
+    }
+
+    public static final boolean isDebugEnabled()
+    {
+        return isEnabled(DEBUG, -1);
+    }
+
+    public static final boolean isDebugEnabled(int subsystem)
+    {
+        return isEnabled(DEBUG, subsystem);
+    }
+
     public static final void debug(String s)
     {
-        log(DEBUG, s);
+        log(DEBUG, -1, s);
     }
 
     public static final void debug(Throwable t)
@@ -81,14 +179,61 @@ public final class Log
         log(DEBUG, t);
     }
 
+    public static final void debug(Supplier<String> supplier)
+    {
+        if (isEnabled(DEBUG, -1))
+            enqueue(DEBUG, supplier.get(), 0, null, null, null);
+    }
+
+    public static final void debug(String pattern, Object arg)
+    {
+        if (isEnabled(DEBUG, -1))
+            enqueue(DEBUG, pattern, 1, arg, null, null);
+    }
+
+    public static final void debug(String pattern, Object arg1, Object arg2)
+    {
+        if (isEnabled(DEBUG, -1))
+            enqueue(DEBUG, pattern, 2, arg1, arg2, null);
+    }
+
+    public static final void debug(int subsystem, String s)
+    {
+        log(DEBUG, subsystem, s);
+    }
+
+    public static final void debug(int subsystem, Supplier<String> supplier)
+    {
+        if (isEnabled(DEBUG, subsystem))
+            enqueue(DEBUG, supplier.get(), 0, null, null, null);
+    }
+
+    public static final void debug(int subsystem, String pattern, Object arg)
+    {
+        if (isEnabled(DEBUG, subsystem))
+            enqueue(DEBUG, pattern, 1, arg, null, null);
+    }
+
+    public static final void debug(int subsystem, String pattern, Object arg1,
+        Object arg2)
+    {
+        if (isEnabled(DEBUG, subsystem))
+            enqueue(DEBUG, pattern, 2, arg1, arg2, null);
+    }
+
     public static final void info(String s)
     {
-        log(INFO, s);
+        log(INFO, -1, s);
+    }
+
+    public static final void info(int subsystem, String s)
+    {
+        log(INFO, subsystem, s);
     }
 
     public static final void warn(String s)
     {
-        log(WARN, s);
+        log(WARN, -1, s);
     }
 
     public static final void warn(Throwable t)
@@ -98,7 +243,7 @@ public final class Log
 
     public static final void error(String s)
     {
-        log(ERROR, s);
+        log(ERROR, -1, s);
     }
 
     public static final void error(Throwable t)
@@ -108,67 +253,242 @@ public final class Log
 
     public static final void fatal(String s)
     {
-        log(FATAL, s);
+        log(FATAL, -1, s);
     }
 
-    private static final void log(int level, String s)
+    private static final void log(int level, int subsystem, String s)
     {
-        if (Editor.isDebugEnabled()) {
-            System.err.println(s);
-            System.err.flush();
-        }
-        if (logEnabled && level >= minLevel)
-            writeLog(level, s);
+        if (isEnabled(level, subsystem))
+            enqueue(level, s, 0, null, null, null);
     }
 
+    private static final void log(int level, Throwable t)
+    {
+        if (isEnabled(level, -1))
+            enqueue(level, null, 0, null, null, t);
+    }
+
+    // Logs a message whatever the level.
     private static final void forceLog(int level, String s)
     {
-        if (Editor.isDebugEnabled()) {
-            System.err.println(s);
-            System.err.flush();
-        }
-        writeLog(level, s);
+        enqueue(level, s, 0, null, null, null);
     }
 
-    private static final void writeLog(int level, String s)
+    private static final void enqueue(int level, String message, int argCount,
+        Object arg1, Object arg2, Throwable t)
     {
-        synchronized(lock) {
-            if (logWriter != null) {
-                String dt = getDateTimeString();
-                logWriter.print(dt);
-                logWriter.print(levelToString(level));
-                logWriter.println(s);
-                fileSize += dt.length() + 6 + s.length() + lineSeparatorLength;
-                if (rollOverEnabled && fileSize > maxFileSize)
-                    rollOver();
+        final Thread writer = getWriterThread();
+        int retries = 0;
+        long pos = tail.get();
+        while (true) {
+            final Record record = ring[(int) pos & (CAPACITY - 1)];
+            final long difference = record.sequence - pos;
+            if (difference == 0) {
+                if (tail.compareAndSet(pos, pos + 1)) {
+                    record.level = level;
+                    record.millis = System.currentTimeMillis();
+                    record.message = message;
+                    record.argCount = argCount;
+                    record.arg1 = arg1;
+                    record.arg2 = arg2;
+                    record.throwable = t;
+                    // Publish the record.
+                    record.sequence = pos + 1;
+                    if (writerWaiting)
+                        LockSupport.unpark(writer);
+                    return;
+                }
+            } else if (difference < 0) {
+                // The ring buffer is full. Wait a little for the writer to
+                // catch up, unless the message is just chatter.
+                if (level < WARN || Thread.currentThread() == writer ||
+                    ++retries > 1000) {
+                    dropped.incrementAndGet();
+                    return;
+                }
+                LockSupport.unpark(writer);
+                Thread.yield();
             }
+            pos = tail.get();
         }
     }
 
-    private static final void log(int level, Throwable t)
+    private static synchronized final Thread getWriterThread()
     {
-        if (Editor.isDebugEnabled())
-            t.printStackTrace();
-        if (logEnabled && level >= minLevel) {
-            synchronized(lock) {
-                if (logWriter != null) {
-                    String dt = getDateTimeString();
-                    logWriter.print(dt);
-                    logWriter.print(levelToString(level));
-                    StringWriter sw = new StringWriter();
-                    PrintWriter pw = new PrintWriter(sw);
-                    t.printStackTrace(pw);
-                    String s = sw.toString();
-                    logWriter.println(s);
-                    fileSize += dt.length() + 6 + s.length() + lineSeparatorLength;
-                    if (rollOverEnabled && fileSize > maxFileSize)
-                        rollOver();
+        if (writerThread == null) {
+            writerThread = new Thread(new Runnable() {
+                public void run()
+                {
+                    writeLoop();
                 }
+            }, "log writer");
+            writerThread.setDaemon(true);
+            writerThread.setPriority(Thread.MIN_PRIORITY);
+            writerThread.start();
+            Runtime.getRuntime().addShutdownHook(new Thread() {
+                public void run()
+                {
+                    flush();
+                }
+            });
+        }
+        return writerThread;
+    }
+
+    /**
+     * Waits (for a few seconds at most) until everything logged so far has
+     * been written.
+     */
+    public static final void flush()
+    {
+        final Thread writer;
+        synchronized (Log.class) {
+            writer = writerThread;
+        }
+        if (writer == null || Thread.currentThread() == writer)
+            return;
+        final long target = tail.get();
+        final long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (written < target && System.nanoTime() < deadline) {
+            LockSupport.unpark(writer);
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+    }
+
+    private static final void writeLoop()
+    {
+        while (true) {
+            if (writeRecords())
+                continue;
+            writerWaiting = true;
+            if (!isRecordAvailable())
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(100));
+            writerWaiting = false;
+        }
+    }
+
+    private static final boolean isRecordAvailable()
+    {
+        return ring[(int) head & (CAPACITY - 1)].sequence == head + 1;
+    }
+
+    // Writes the records in the ring buffer. Returns false if there weren't
+    // any.
+    private static final boolean writeRecords()
+    {
+        if (!isRecordAvailable())
+            return false;
+        do {
+            final Record record = ring[(int) head & (CAPACITY - 1)];
+            try {
+                write(record);
+            }
+            catch (Throwable t) {
+                t.printStackTrace();
+            }
+            record.message = null;
+            record.arg1 = null;
+            record.arg2 = null;
+            record.throwable = null;
+            record.sequence = head + CAPACITY;
+            ++head;
+        } while (isRecordAvailable());
+        final int n = dropped.getAndSet(0);
+        if (n > 0) {
+            Record record = new Record(0);
+            record.level = WARN;
+            record.millis = System.currentTimeMillis();
+            record.message = String.valueOf(n) + " log messages dropped";
+            write(record);
+        }
+        if (logWriter != null) {
+            logWriter.flush();
+            if (!logEnabled) {
+                // Stop logging.
+                logWriter.close();
+                logWriter = null;
             }
         }
+        written = head;
+        return true;
+    }
+
+    // Only called on the writer thread.
+    private static final void write(Record record)
+    {
+        final String s;
+        if (record.throwable != null) {
+            if (Editor.isDebugEnabled())
+                record.throwable.printStackTrace();
+            StringWriter sw = new StringWriter();
+            PrintWriter pw = new PrintWriter(sw);
+            record.throwable.printStackTrace(pw);
+            pw.flush();
+            s = sw.toString();
+        } else {
+            if (record.argCount > 0)
+                s = format(record.message, record.argCount, record.arg1,
+                           record.arg2);
+            else
+                s = String.valueOf(record.message);
+            if (Editor.isDebugEnabled()) {
+                System.err.println(s);
+                System.err.flush();
+            }
+        }
+        if (logWriter == null && logEnabled)
+            initializeLogWriter();
+        if (logWriter != null) {
+            sb.setLength(0);
+            appendDateTime(sb, record.millis);
+            sb.append(levelToString(record.level));
+            sb.append(s);
+            logWriter.println(sb);
+            fileSize += sb.length() + lineSeparatorLength;
+            if (rollOverEnabled && fileSize > maxFileSize)
+                rollOver();
+        }
+    }
+
+    // Replaces the first argCount occurrences of "{}" in pattern with the
+    // arguments.
+    static final String format(String pattern, int argCount, Object arg1,
+        Object arg2)
+    {
+        StringBuilder result = new StringBuilder(pattern.length() + 32);
+        int start = 0;
+        for (int i = 0; i < argCount; i++) {
+            int index = pattern.indexOf("{}", start);
+            if (index < 0)
+                break;
+            result.append(pattern, start, index);
+            result.append(i == 0 ? arg1 : arg2);
+            start = index + 2;
+        }
+        result.append(pattern, start, pattern.length());
+        return result.toString();
     }
 
-    // Called only from synchronized methods.
+    // Appends the date and time in the format "MMM dd HH:mm:ss.SSS ". Only
+    // the milliseconds are formatted for each message.
+    static final void appendDateTime(StringBuilder sb, long millis)
+    {
+        final long second = Math.floorDiv(millis, 1000L);
+        if (second != cachedSecond) {
+            cachedDateTime = dateFormat.format(new Date(second * 1000));
+            cachedSecond = second;
+        }
+        sb.append(cachedDateTime);
+        final int ms = (int) (millis - second * 1000);
+        if (ms < 100)
+            sb.append('0');
+        if (ms < 10)
+            sb.append('0');
+        sb.append(ms);
+        sb.append(' ');
+    }
+
+    // Only called on the writer thread.
     private static final void rollOver()
     {
         if (!rollOverEnabled)
@@ -194,19 +514,11 @@ public final class Log
             logFile.renameTo(destination);
         logWriter = null;
         fileSize = 0;
-        try {
-            logWriter = new PrintWriter(logFile.getOutputStream(), true);
-            int oldLevel = getLevel();
-            setLevel(INFO);
-            setRollOverEnabled(false);
-            logSystemInformation();
+        initializeLogWriter();
+        if (logWriter != null) {
+            // These are written after anything that's already waiting.
+            forceLog(INFO, Version.getLongVersionString());
             logUptime();
-            setRollOverEnabled(true);
-            setLevel(oldLevel);
-        }
-        catch (IOException e) {
-            logEnabled = false;
-            e.printStackTrace();
         }
         long elapsed = System.currentTimeMillis() - start;
         Log.debug("rollOver " + elapsed + " ms");
@@ -226,36 +538,32 @@ public final class Log
 
     public static final void initialize(boolean dumpEnv, boolean dumpProps)
     {
-        synchronized(lock) {
-            Preferences preferences = Editor.preferences();
-            if (preferences != null) {
-                preferences.addPreferencesChangeListener(preferencesChangeListener);
-                loadPreferences();
-                if (logEnabled) {
-                    initializeLogWriter();
-                    if (logWriter != null) {
-                        setLevel(INFO);
-                        info("Starting j...");
-                        logSystemInformation(dumpEnv, dumpProps);
-                        if (Editor.isDebugEnabled()) {
-                            setLevel(DEBUG);
-                        }
-                        setRollOverEnabled(true);
-                    }
+        Preferences preferences = Editor.preferences();
+        if (preferences != null) {
+            preferences.addPreferencesChangeListener(preferencesChangeListener);
+            loadPreferences();
+            if (logEnabled) {
+                setLevel(INFO);
+                info("Starting j...");
+                logSystemInformation(dumpEnv, dumpProps);
+                if (Editor.isDebugEnabled()) {
+                    setLevel(DEBUG);
                 }
+                setRollOverEnabled(true);
             }
         }
     }
 
+    // Only called on the writer thread.
     private static final void initializeLogWriter()
     {
         Debug.assertTrue(logWriter == null);
         File logFile = getLogFile();
-        if (logFile.isFile())
-            fileSize = logFile.length();
+        fileSize = logFile.isFile() ? logFile.length() : 0;
         try {
-            // Append to file, flush automatically.
-            logWriter = new PrintWriter(logFile.getOutputStream(true), true);
+            // Append to file.
+            logWriter = new PrintWriter(new BufferedWriter(
+                new OutputStreamWriter(logFile.getOutputStream(true))));
         }
         catch (Exception e) {
             logEnabled = false;
@@ -263,11 +571,6 @@ public final class Log
         }
     }
 
-    private static final void logSystemInformation()
-    {
-        logSystemInformation();
-    }
-
     private static final void logSystemInformation(boolean dumpEnv, boolean dumpProps)
     {
         info(Version.getLongVersionString());
@@ -315,17 +618,9 @@ public final class Log
 
     private static final void logUptime()
     {
-        info("up since ".concat(getDateTimeString(Editor.getStartTimeMillis())));
-    }
-
-    private static final String getDateTimeString()
-    {
-        return getDateTimeString(System.currentTimeMillis());
-    }
-
-    private static final String getDateTimeString(long millis)
-    {
-        return dateFormat.format(new Date(millis));
+        SimpleDateFormat format = new SimpleDateFormat("MMM dd HH:mm:ss.SSS");
+        forceLog(INFO, "up since ".concat(
+            format.format(new Date(Editor.getStartTimeMillis()))));
     }
 
     // String returned is always 6 characters long and ends with a space.
@@ -342,22 +637,41 @@ public final class Log
         };
     }
 
-    private static final void loadPreferences()
-    {
-        synchronized(lock) {
-            Preferences preferences = Editor.preferences();
-            logEnabled = preferences.getBooleanProperty(Property.LOG_ENABLED);
-            maxFileSize =
-                preferences.getIntegerProperty(Property.LOG_MAX_FILE_SIZE);
-            if (maxFileSize < 10000)
-                maxFileSize = 10000; // Minimum is 10 KB.
-            else if (maxFileSize > 1000000)
-                maxFileSize = 1000000; // Maximum is 1 MB.
-            maxBackupIndex =
-                preferences.getIntegerProperty(Property.LOG_MAX_BACKUP_INDEX);
-            if (maxBackupIndex < 0)
-                maxBackupIndex = 0; // Minimum is one backup.
+    // Returns 0 for anything that isn't the name of a level.
+    static final int parseLevel(String s)
+    {
+        if (s == null)
+            return 0;
+        return switch (s.trim().toLowerCase()) {
+            case "debug" -> DEBUG;
+            case "info"  -> INFO;
+            case "warn"  -> WARN;
+            case "error" -> ERROR;
+            case "fatal" -> FATAL;
+            default      -> 0;
+        };
+    }
+
+    private static synchronized final void loadPreferences()
+    {
+        Preferences preferences = Editor.preferences();
+        maxFileSize =
+            preferences.getIntegerProperty(Property.LOG_MAX_FILE_SIZE);
+        if (maxFileSize < 10000)
+            maxFileSize = 10000; // Minimum is 10 KB.
+        else if (maxFileSize > 1000000)
+            maxFileSize = 1000000; // Maximum is 1 MB.
+        maxBackupIndex =
+            preferences.getIntegerProperty(Property.LOG_MAX_BACKUP_INDEX);
+        if (maxBackupIndex < 0)
+            maxBackupIndex = 0; // Minimum is one backup.
+        int[] levels = new int[subsystemLevelProperties.length];
+        for (int i = 0; i < levels.length; i++) {
+            levels[i] = parseLevel(
+                preferences.getStringProperty(subsystemLevelProperties[i]));
         }
+        subsystemLevels = levels;
+        logEnabled = preferences.getBooleanProperty(Property.LOG_ENABLED);
     }
 
     private static final PreferencesChangeListener preferencesChangeListener =
@@ -370,25 +684,18 @@ public final class Log
             forceLog(DEBUG, "preferencesChanged maxFileSize = " + maxFileSize);
             forceLog(DEBUG, "preferencesChanged maxBackupIndex = " + maxBackupIndex);
             if (logEnabled && !logWasEnabled) {
-                // Start logging.
-                initializeLogWriter();
-                if (logWriter != null) {
-                    setLevel(INFO);
-                    info("Logging enabled");
-                    logSystemInformation();
-                    logUptime();
-                    if (Editor.isDebugEnabled())
-                        setLevel(DEBUG);
-                    setRollOverEnabled(true);
-                }
+                // Start logging. The writer thread opens the log file.
+                setLevel(INFO);
+                info("Logging enabled");
+                logSystemInformation(false, false);
+                logUptime();
+                if (Editor.isDebugEnabled())
+                    setLevel(DEBUG);
+                setRollOverEnabled(true);
             } else if (logWasEnabled && !logEnabled) {
-                // Stop logging.
-                if (logWriter != null) {
-                    forceLog(INFO, "Logging disabled");
-                    logWriter.flush();
-                    logWriter.close();
-                    logWriter = null;
-                }
+                // Stop logging. The writer thread closes the log file after
+                // writing this.
+                forceLog(INFO, "Logging disabled");
             } else if (logEnabled) {
                 if (Editor.preferences().getBooleanProperty(Property.DEBUG))
                     setLevel(DEBUG);
@@ -0,0 +1,58 @@
+/*
+ * MappedLine.java
+ *
+ * Copyright (C) 2026 Kevin Krouse
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.armedbear.j;
+
+// A line of a memory-mapped file. The text is decoded from the file when
+// it's needed, until the line is changed; then it becomes an ordinary
+// TextLine with its own copy of the text.
+public final class MappedLine extends TextLine
+{
+    private MappedText source; // Null once the text has been materialized.
+    private final int index;
+
+    public MappedLine(MappedText source, int index)
+    {
+        this.source = source;
+        this.index = index;
+    }
+
+    public synchronized String getText()
+    {
+        if (source != null)
+            return source.getText(index);
+        return super.getText();
+    }
+
+    public synchronized int length()
+    {
+        if (source != null)
+            return source.getLength(index);
+        return super.length();
+    }
+
+    protected synchronized void materialize()
+    {
+        if (source != null) {
+            init(source.getText(index));
+            source = null;
+        }
+    }
+}
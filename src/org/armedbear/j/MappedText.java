@@ -0,0 +1,342 @@
+/*
+ * MappedText.java
+ *
+ * Copyright (C) 2026 Kevin Krouse
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.armedbear.j;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * The text of a memory-mapped file, with the start of each line indexed.
+ *
+ * Lines are decoded only when asked for, so a huge file can be opened
+ * without reading all of it into the heap. Line separators and encoding
+ * are detected the same way as <code>SystemBuffer.load()</code> does it.
+ *
+ * Reading a mapping after the file has been truncated faults, so before
+ * decoding a line we check from time to time that the file's size and last
+ * modified time haven't changed. Once they have, lines that haven't been
+ * decoded yet are empty, and <code>isValid()</code> returns false.
+ */
+public final class MappedText
+{
+    // Files are mapped in pieces of this size, since a single mapping can't
+    // be larger than 2 GB.
+    private static final int SEGMENT_SHIFT = 30;
+    private static final long SEGMENT_MASK = (1L << SEGMENT_SHIFT) - 1;
+
+    // Recently decoded lines.
+    private static final int CACHE_SIZE = 1024;
+
+    // Milliseconds between checks that the file hasn't changed.
+    private static final long CHECK_INTERVAL = 1000;
+
+    private final File file;
+    private final long lastModified;
+    private long lastCheck;
+    private boolean valid = true;
+
+    private final MappedByteBuffer[] segments;
+    private final long size;
+
+    // The text starts after the byte order mark (if any).
+    private final long start;
+
+    // 2 for UTF-16 files with a byte order mark, 1 otherwise.
+    private final int unitSize;
+    private final boolean littleEndian;
+
+    private final Charset charset;
+    private final String encoding;
+
+    // True if each byte is one character.
+    private final boolean singleByte;
+
+    // lineStarts[i] is the offset in the file of the start of line i.
+    private long[] lineStarts;
+    private int lineCount;
+    private String lineSeparator;
+
+    private final String[] cache = new String[CACHE_SIZE];
+    private final int[] cachedLines = new int[CACHE_SIZE];
+
+    private MappedText(File file, long lastModified, FileChannel channel,
+        String defaultEncoding) throws IOException
+    {
+        this.file = file;
+        this.lastModified = lastModified;
+        lastCheck = System.currentTimeMillis();
+        size = channel.size();
+        final int count = (int) ((size + SEGMENT_MASK) >>> SEGMENT_SHIFT);
+        segments = new MappedByteBuffer[count];
+        for (int i = 0; i < count; i++) {
+            final long position = (long) i << SEGMENT_SHIFT;
+            segments[i] =
+                channel.map(FileChannel.MapMode.READ_ONLY, position,
+                            Math.min(SEGMENT_MASK + 1, size - position));
+        }
+        // Detect Unicode.
+        if (size >= 2 && getByte(0) == (byte) 0xfe && getByte(1) == (byte) 0xff) {
+            unitSize = 2;
+            littleEndian = false;
+            start = 2;
+            charset = StandardCharsets.UTF_16BE;
+            encoding = "UnicodeBig";
+        } else if (size >= 2 && getByte(0) == (byte) 0xff && getByte(1) == (byte) 0xfe) {
+            unitSize = 2;
+            littleEndian = true;
+            start = 2;
+            charset = StandardCharsets.UTF_16LE;
+            encoding = "UnicodeLittle";
+        } else {
+            unitSize = 1;
+            littleEndian = true;
+            start = 0;
+            // Throws IllegalArgumentException if the encoding is unknown.
+            charset = Charset.forName(defaultEncoding);
+            encoding = defaultEncoding;
+        }
+        singleByte = unitSize == 1 && charset.canEncode() &&
+            charset.newEncoder().maxBytesPerChar() == 1;
+        Arrays.fill(cachedLines, -1);
+    }
+
+    /**
+     * Maps the file and indexes its lines.
+     *
+     * @param file      the file to map
+     * @param encoding  the encoding to use if the file doesn't start with a
+     *                  byte order mark
+     * @return          the mapped text, or null if the file can't be mapped
+     *                  or the encoding is not supported
+     */
+    public static MappedText map(File file, String encoding)
+    {
+        // Before mapping, so a change while we index is noticed later.
+        final long lastModified = file.lastModified();
+        try (FileChannel channel =
+             FileChannel.open(Paths.get(file.canonicalPath()),
+                              StandardOpenOption.READ)) {
+            // The mappings stay valid after the channel is closed.
+            MappedText text =
+                new MappedText(file, lastModified, channel, encoding);
+            text.indexLines();
+            return text;
+        }
+        catch (IOException | IllegalArgumentException | InternalError e) {
+            // InternalError if the file was truncated while we indexed it.
+            Log.error(e);
+            return null;
+        }
+    }
+
+    private void indexLines()
+    {
+        lineStarts = new long[(int) Math.min(Math.max(size >>> 8, 16), 1 << 24)];
+        addLine(start);
+        long pos = start;
+        while (pos < size) {
+            final char c = getChar(pos);
+            pos += unitSize;
+            if (c == '\r') {
+                if (pos < size) {
+                    final char next = getChar(pos);
+                    if (next == '\n') {
+                        // LF after CR.
+                        if (lineSeparator == null)
+                            lineSeparator = "\r\n";
+                        pos += unitSize;
+                    } else if (next != '\r') {
+                        // Something other than LF after CR.  Must be a Mac...
+                        if (lineSeparator == null)
+                            lineSeparator = "\r";
+                    }
+                }
+                addLine(pos);
+            } else if (c == '\n') {
+                // LF without preceding CR.
+                if (lineSeparator == null)
+                    lineSeparator = "\n";
+                addLine(pos);
+            }
+        }
+        // If there is a line separator at the end of the file, the last line
+        // is empty, so the line separator will get written out when the file
+        // is saved.
+        lineStarts = Arrays.copyOf(lineStarts, lineCount);
+    }
+
+    private void addLine(long pos)
+    {
+        if (lineCount == lineStarts.length)
+            lineStarts = Arrays.copyOf(lineStarts, lineCount * 2);
+        lineStarts[lineCount++] = pos;
+    }
+
+    private byte getByte(long pos)
+    {
+        return segments[(int) (pos >>> SEGMENT_SHIFT)].get((int) (pos & SEGMENT_MASK));
+    }
+
+    private char getChar(long pos)
+    {
+        if (unitSize == 1)
+            return (char) (getByte(pos) & 0xff);
+        final byte b1 = getByte(pos);
+        final byte b2 = getByte(pos + 1);
+        if (littleEndian)
+            return (char) ((b2 << 8) + (b1 & 0xff));
+        return (char) ((b1 << 8) + (b2 & 0xff));
+    }
+
+    public int getLineCount()
+    {
+        return lineCount;
+    }
+
+    // Returns null if the file has no line separators.
+    public String getLineSeparator()
+    {
+        return lineSeparator;
+    }
+
+    public String getEncoding()
+    {
+        return encoding;
+    }
+
+    public long length()
+    {
+        return size;
+    }
+
+    /**
+     * Returns false if the file has changed since it was mapped, so lines
+     * that haven't been decoded can no longer be read.
+     */
+    public synchronized boolean isValid()
+    {
+        if (valid) {
+            if (file.length() != size || file.lastModified() != lastModified) {
+                Log.warn(file.canonicalPath() + " changed after it was mapped");
+                valid = false;
+            }
+            lastCheck = System.currentTimeMillis();
+        }
+        return valid;
+    }
+
+    // Returns the text of line i, without its line separator.
+    public synchronized String getText(int i)
+    {
+        final int slot = i & (CACHE_SIZE - 1);
+        if (cachedLines[slot] == i)
+            return cache[slot];
+        if (!checkValid())
+            return "";
+        final byte[] bytes;
+        try {
+            final long begin = lineStarts[i];
+            final long end = getLineEnd(i);
+            if (end == begin)
+                return "";
+            bytes = new byte[(int) (end - begin)];
+            final int segment = (int) (begin >>> SEGMENT_SHIFT);
+            if (segment == (int) ((end - 1) >>> SEGMENT_SHIFT)) {
+                segments[segment].get((int) (begin & SEGMENT_MASK), bytes);
+            } else {
+                // The line crosses a segment boundary.
+                for (int j = 0; j < bytes.length; j++)
+                    bytes[j] = getByte(begin + j);
+            }
+        }
+        catch (InternalError e) {
+            // The file was truncated since the last check.
+            Log.error(e);
+            valid = false;
+            return "";
+        }
+        final String s = new String(bytes, charset);
+        cache[slot] = s;
+        cachedLines[slot] = i;
+        return s;
+    }
+
+    // Returns the length of line i in characters. The line is only decoded
+    // if its length can't be told from its bytes.
+    public synchronized int getLength(int i)
+    {
+        final int slot = i & (CACHE_SIZE - 1);
+        if (cachedLines[slot] == i)
+            return cache[slot].length();
+        if (unitSize == 1 && !singleByte && charset != StandardCharsets.UTF_8)
+            return getText(i).length();
+        if (!checkValid())
+            return 0;
+        try {
+            final long begin = lineStarts[i];
+            final long end = getLineEnd(i);
+            if (unitSize == 2)
+                return (int) ((end - begin + 1) / 2);
+            if (!singleByte) {
+                // UTF-8. Only ASCII has one character per byte.
+                for (long pos = begin; pos < end; pos++) {
+                    if (getByte(pos) < 0)
+                        return getText(i).length();
+                }
+            }
+            return (int) (end - begin);
+        }
+        catch (InternalError e) {
+            // The file was truncated since the last check.
+            Log.error(e);
+            valid = false;
+            return 0;
+        }
+    }
+
+    // Returns the offset in the file of the end of line i, not counting its
+    // line separator.
+    private long getLineEnd(int i)
+    {
+        if (i + 1 == lineCount)
+            return size;
+        final long begin = lineStarts[i];
+        long end = lineStarts[i + 1];
+        if (getChar(end - unitSize) == '\n')
+            end -= unitSize;
+        if (end > begin && getChar(end - unitSize) == '\r')
+            end -= unitSize;
+        return end;
+    }
+
+    private boolean checkValid()
+    {
+        if (System.currentTimeMillis() - lastCheck > CHECK_INTERVAL)
+            isValid();
+        return valid;
+    }
+}
@@ -0,0 +1,168 @@
+/*
+ * OutputQueue.java
+ *
+ * Copyright (C) 2026 Kevin Krouse
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.armedbear.j;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+/**
+ * Carries process output from reader threads to the event dispatch thread.
+ *
+ * Reader threads add chunks of output with <code>put()</code>. At most once
+ * per frame, everything that has arrived since the last frame is passed to
+ * <code>output()</code> on the event dispatch thread, with consecutive
+ * chunks from the same stream joined together, so a process that writes a
+ * lot of output costs one buffer update per frame instead of one per read.
+ *
+ * The queue holds a limited number of characters. If the event dispatch
+ * thread falls behind, <code>put()</code> blocks until the queue has been
+ * drained, which in turn stops the reader thread from reading, so the
+ * process is held up instead of the editor running out of memory.
+ */
+public abstract class OutputQueue implements ActionListener, Runnable
+{
+    private static final int FRAME_INTERVAL = 40; // Milliseconds.
+    private static final int DEFAULT_CAPACITY = 256 * 1024; // Characters.
+
+    private final int capacity;
+    private final ArrayDeque<String> chunks = new ArrayDeque<String>();
+    private final ArrayDeque<Boolean> streams = new ArrayDeque<Boolean>();
+    private int size;
+    private boolean scheduled;
+    private long lastDrained;
+
+    public OutputQueue()
+    {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public OutputQueue(int capacity)
+    {
+        this.capacity = capacity;
+    }
+
+    /**
+     * Adds a chunk of output to the queue, waiting while the queue is full.
+     * Returns without adding the chunk if the calling thread is
+     * interrupted. Never waits on the event dispatch thread, which is the
+     * thread that empties the queue.
+     *
+     * @param s         the output
+     * @param stderr    true if the output is from stderr
+     */
+    public synchronized void put(String s, boolean stderr)
+    {
+        if (s == null || s.length() == 0)
+            return;
+        while (size > 0 && size + s.length() > capacity &&
+               !SwingUtilities.isEventDispatchThread()) {
+            try {
+                wait();
+            }
+            catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+        chunks.add(s);
+        streams.add(Boolean.valueOf(stderr));
+        size += s.length();
+        if (!scheduled) {
+            scheduled = true;
+            final long delay =
+                lastDrained + FRAME_INTERVAL - System.currentTimeMillis();
+            if (delay > 0) {
+                Timer timer = new Timer((int) delay, this);
+                timer.setRepeats(false);
+                timer.start();
+            } else
+                SwingUtilities.invokeLater(this);
+        }
+    }
+
+    // Called by the timer.
+    public void actionPerformed(ActionEvent e)
+    {
+        flush();
+    }
+
+    public void run()
+    {
+        flush();
+    }
+
+    /**
+     * Passes everything in the queue to <code>output()</code>. Must be
+     * called on the event dispatch thread.
+     */
+    public void flush()
+    {
+        // Output that arrives while this is running waits for the next
+        // frame.
+        ArrayList<String> runs = new ArrayList<String>();
+        ArrayList<Boolean> runStreams = new ArrayList<Boolean>();
+        synchronized (this) {
+            StringBuilder sb = null;
+            String run = null;
+            boolean runStream = false;
+            while (!chunks.isEmpty()) {
+                final String chunk = chunks.remove();
+                final boolean stderr = streams.remove().booleanValue();
+                if (run != null && stderr == runStream) {
+                    if (sb == null)
+                        sb = new StringBuilder(run);
+                    sb.append(chunk);
+                } else {
+                    if (run != null) {
+                        runs.add(sb != null ? sb.toString() : run);
+                        runStreams.add(Boolean.valueOf(runStream));
+                    }
+                    sb = null;
+                    run = chunk;
+                    runStream = stderr;
+                }
+            }
+            if (run != null) {
+                runs.add(sb != null ? sb.toString() : run);
+                runStreams.add(Boolean.valueOf(runStream));
+            }
+            size = 0;
+            scheduled = false;
+            lastDrained = System.currentTimeMillis();
+            notifyAll();
+        }
+        for (int i = 0; i < runs.size(); i++)
+            output(runs.get(i), runStreams.get(i).booleanValue());
+    }
+
+    /**
+     * Called on the event dispatch thread with the output that has arrived
+     * since the last frame.
+     *
+     * @param s         the output
+     * @param stderr    true if the output is from stderr
+     */
+    public abstract void output(String s, boolean stderr);
+}
@@ -53,10 +53,18 @@ public final class Property implements Comparable, Constants
         createProperty("fontSize", 12);
     public static final Property GUTTER_FONT_SIZE =
         createProperty("gutterFontSize", 0);
+    public static final Property HTTP_CACHE_SIZE =
+        createProperty("httpCacheSize", 32);
+    public static final Property IMAP_PREFETCH_COUNT =
+        createProperty("imapPrefetchCount", 20);
+    public static final Property IMAP_PREFETCH_SIZE =
+        createProperty("imapPrefetchSize", 2048);
     public static final Property INDENT_SIZE =
         createProperty("indentSize", 4);
     public static final Property JLIST_FIXED_CELL_HEIGHT =
         createProperty("JList.fixedCellHeight", 0);
+    public static final Property LARGE_FILE_THRESHOLD =
+        createProperty("largeFileThreshold", 64);
     public static final Property LIST_THREADS =
         createProperty("listThreads", 0);
     public static final Property LOG_MAX_BACKUP_INDEX =
@@ -147,6 +155,8 @@ public final class Property implements Comparable, Constants
         createProperty("filenameCompletionsExcludePattern", "^(CVS|RCS|SCCS|_darcs|(\\.(svn|hg|darcs|git))|(.+(~|\\.(class|cls|abcl|bak|sw[op]|a|o|obj|exe))))$");
     public static final Property FILENAME_COMPLETIONS_IGNORE_CASE =
         createProperty("filenameCompletionsIgnoreCase", true);
+    public static final Property FIND_IN_FILES_INDEX =
+        createProperty("findInFilesIndex", false);
     public static final Property FIX_CASE =
         createProperty("fixCase", false);
     public static final Property FTP_USE_PASSIVE_MODE =
@@ -159,6 +169,8 @@ public final class Property implements Comparable, Constants
         createProperty("highlightMatchingBracket", false);
     public static final Property HTTP_ENABLE_COOKIES =
         createProperty("httpEnableCookies", false);
+    public static final Property IMAP_IDLE =
+        createProperty("imapIdle", true);
     public static final Property IMAP_USE_LOCAL_CACHE =
         createProperty("imapUseLocalCache", true);
     public static final Property INDENT_AFTER_BRACE =
@@ -225,6 +237,8 @@ public final class Property implements Comparable, Constants
         createProperty("undeleteAdvanceDot", true);
     public static final Property UNDERLINE_BOLD =
         createProperty("underlineBold", false);
+    public static final Property UNDO_MEMORY_LIMIT =
+        createProperty("undoMemoryLimit", 32);
     public static final Property UPPER_CASE_ATTRIBUTE_NAMES =
         createProperty("upperCaseAttributeNames", false);
     public static final Property UPPER_CASE_TAG_NAMES =
@@ -301,6 +315,14 @@ public final class Property implements Comparable, Constants
         createProperty("jdkDocPath");
     public static final Property JDK_SOURCE_PATH =
         createProperty("jdkSourcePath");
+    public static final Property LOG_LEVEL_DISPLAY =
+        createProperty("Log.level.display");
+    public static final Property LOG_LEVEL_FTP =
+        createProperty("Log.level.ftp");
+    public static final Property LOG_LEVEL_JDB =
+        createProperty("Log.level.jdb");
+    public static final Property LOG_LEVEL_MAIL =
+        createProperty("Log.level.mail");
     public static final Property GLOBAL_KEY_MAP =
         createProperty("globalKeyMap");
     public static final Property LOOK_AND_FEEL =
@@ -97,6 +97,7 @@ public final class RegionCommands
     {
         CompoundEdit compoundEdit = new CompoundEdit();
         compoundEdit.addEdit(new UndoMove(editor));
+        UndoLineChanges undoLineChanges = new UndoLineChanges(buffer);
         boolean changed = false;
         final Line beginLine = r.getBeginLine();
         final int beginOffset = r.getBeginOffset();
@@ -117,7 +118,7 @@ public final class RegionCommands
             sb.append(tail);
             final String newText = sb.toString();
             if (!newText.equals(oldText)) {
-                compoundEdit.addEdit(new UndoLineEdit(buffer, beginLine));
+                undoLineChanges.add(beginLine);
                 beginLine.setText(newText);
                 changed = true;
             }
@@ -133,7 +134,7 @@ public final class RegionCommands
                 sb.append(Utilities.detab(toBeChanged, tabWidth, startCol));
             String newText = sb.toString();
             if (!newText.equals(oldText)) {
-                compoundEdit.addEdit(new UndoLineEdit(buffer, beginLine));
+                undoLineChanges.add(beginLine);
                 beginLine.setText(newText);
                 changed = true;
             }
@@ -147,7 +148,7 @@ public final class RegionCommands
                 else
                     newText = Utilities.detab(oldText, tabWidth);
                 if (!newText.equals(oldText)) {
-                    compoundEdit.addEdit(new UndoLineEdit(buffer, line));
+                    undoLineChanges.add(line);
                     line.setText(newText);
                     changed = true;
                 }
@@ -166,12 +167,13 @@ public final class RegionCommands
             sb.append(tail);
             newText = sb.toString();
             if (!newText.equals(oldText)) {
-                compoundEdit.addEdit(new UndoLineEdit(buffer, endLine));
+                undoLineChanges.add(endLine);
                 endLine.setText(newText);
                 changed = true;
             }
         }
         if (changed) {
+            compoundEdit.addEdit(undoLineChanges);
             compoundEdit.end();
             buffer.addEdit(compoundEdit);
             buffer.modified();
@@ -360,6 +362,7 @@ public final class RegionCommands
         Region region, int start)
     {
         CompoundEdit compoundEdit = null;
+        UndoLineChanges undoLineChanges = null;
         if (start < 0) {
             for (Line line = region.getBeginLine(); line != region.getEndLine(); line = line.next()) {
                 final String text = line.getText();
@@ -401,12 +404,14 @@ public final class RegionCommands
                 if (compoundEdit == null) {
                     compoundEdit = new CompoundEdit();
                     compoundEdit.addEdit(new UndoMove(editor));
+                    undoLineChanges = new UndoLineChanges(buffer);
                 }
-                compoundEdit.addEdit(new UndoLineEdit(buffer, line));
+                undoLineChanges.add(line);
                 line.setText(newText);
             }
         }
         if (compoundEdit != null) {
+            compoundEdit.addEdit(undoLineChanges);
             compoundEdit.end();
             buffer.addEdit(compoundEdit);
             buffer.modified();
@@ -23,7 +23,6 @@ import java.lang.StringBuilder;
 import org.armedbear.j.util.Utilities;
 
 import java.io.OutputStreamWriter;
-import javax.swing.SwingUtilities;
 
 public class RemoteShellBuffer extends ShellBuffer
 {
@@ -190,7 +189,7 @@ public class RemoteShellBuffer extends ShellBuffer
         return s;
     }
 
-    protected void stdOutUpdate(final String s)
+    protected void stdOutOutput(String s)
     {
         // Filter to prevent two carriage returns in a row.
         final StringBuilder sb = new StringBuilder(s.length());
@@ -210,18 +209,12 @@ public class RemoteShellBuffer extends ShellBuffer
                 skipCR = false;
             }
         }
-        Runnable r = new Runnable() {
-            public void run()
-            {
-                appendString(sb.toString());
-                setEndOfOutput(new Position(getEnd()));
-                updateLineFlags();
-                updateDisplayInAllFrames();
-                resetUndo();
-                checkPasswordPrompt();
-            }
-        };
-        SwingUtilities.invokeLater(r);
+        appendString(sb.toString());
+        setEndOfOutput(new Position(getEnd()));
+        updateLineFlags();
+        updateDisplayInAllFrames();
+        resetUndo();
+        checkPasswordPrompt();
     }
 
     protected String stdErrFilter(String s)
@@ -331,11 +331,13 @@ public final class ReplaceDialog extends AbstractDialog implements Constants,
             Position saved = new Position(editor.getDot());
             Position pos;
             while ((pos = replacement.find(buffer, editor.getDot())) != null) {
-                editor.addUndo(SimpleEdit.MOVE);
-                editor.getDot().moveTo(pos);
-                if (replacement.isMultilinePattern())
+                if (replacement.isMultilinePattern()) {
+                    editor.addUndo(SimpleEdit.MOVE);
+                    editor.getDot().moveTo(pos);
                     editor.markFoundPattern(replacement);
-                replacement.replaceOccurrence();
+                } else
+                    editor.getDot().moveTo(pos);
+                replacement.replaceOccurrence(false);
             }
             if (replacement.restrictToSelection() && replacement.getRegion() != null) {
                 editor.addUndo(SimpleEdit.MOVE);
@@ -75,6 +75,14 @@ public class Replacement extends Search
     }
 
     public void replaceOccurrence()
+    {
+        replaceOccurrence(true);
+    }
+
+    // If saveCaret is false, we're replacing all occurrences, the caller
+    // takes care of the caret, and a single-line replacement is recorded in
+    // the buffer's undo journal.
+    public void replaceOccurrence(boolean saveCaret)
     {
         final Buffer buffer = editor.getBuffer();
         try {
@@ -117,7 +125,10 @@ public class Replacement extends Search
                 }
                 editor.getBuffer().repaint();
             } else {
-                editor.addUndo(SimpleEdit.LINE_EDIT);
+                if (saveCaret)
+                    editor.addUndo(SimpleEdit.LINE_EDIT);
+                else if (buffer.supportsUndo())
+                    buffer.addEdit(new UndoLineChanges(buffer, dotLine));
                 editor.setMark(null);
                 String head = dotLine.substring(0, dotOffset);
                 String toBeReplaced;
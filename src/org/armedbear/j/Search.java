@@ -211,6 +211,39 @@ public class Search implements Cloneable
         return regularExpression ? findRegExpDelimited(s, mode) : findStringDelimited(s, mode);
     }
 
+    // Same result as find(s), or findDelimited(s, mode) if wholeWordsOnly is
+    // set, but doesn't touch the state of this search, so it is safe to call
+    // from more than one thread at a time. The regular expression (if any)
+    // must already have been compiled.
+    public final boolean matches(String s, Mode mode)
+    {
+        int index = 0;
+        if (regularExpression) {
+            final int limit = s.length();
+            final Matcher m = re.matcher(s);
+            while (index <= limit) {
+                if (!m.find(index))
+                    return false;
+                if (!wholeWordsOnly || Utilities.isDelimited(s, m.start(), m.end() - m.start(), mode))
+                    return true;
+                index = m.start() + 1;
+            }
+            return false;
+        }
+        final String toBeSearched = ignoreCase ? s.toLowerCase() : s;
+        final String target = ignoreCase ? lowerCasePattern : pattern;
+        final int limit = s.length() - patternLength;
+        while (index <= limit) {
+            index = toBeSearched.indexOf(target, index);
+            if (index < 0)
+                return false;
+            if (!wholeWordsOnly || Utilities.isDelimited(s, index, patternLength, mode))
+                return true;
+            ++index;
+        }
+        return false;
+    }
+
     // Search is restricted to region if restrictToSelection is true and
     // region is not null.
     public final Position findString(Buffer buffer, Position start)
@@ -25,8 +25,10 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStreamWriter;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.Comparator;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import org.armedbear.j.mode.dir.DirectoryBuffer;
 import org.armedbear.j.mode.web.WebBuffer;
@@ -41,6 +43,18 @@ public final class Session extends DefaultHandler implements Constants
 {
     private static File sessionDirectory;
 
+    // Sessions are often restored from a home directory on a slow network
+    // file system, so the files are looked at in parallel.
+    private static final int STAT_THREADS = 16;
+
+    // The number of most recently used buffers whose files are read in the
+    // background after the session is restored.
+    private static final int PREFETCH_COUNT = 8;
+
+    static final int MISSING   = 0;
+    static final int DIRECTORY = 1;
+    static final int FILE      = 2;
+
     private final File file;
 
     private List<SessionBufferEntry> bufferEntries;
@@ -201,57 +215,155 @@ public final class Session extends DefaultHandler implements Constants
         }
         if (!file.isFile())
             return null;
+        long start = System.currentTimeMillis();
         if (!load()) {
             Log.error("Session.restore unable to load " + file);
             return null;
         }
+        Log.debug("Session.restore load {} ms",
+                  System.currentTimeMillis() - start);
         return createBuffers();
     }
 
+    // The buffers that are created are placeholders: a buffer's file isn't
+    // read, and its mode isn't determined, until the buffer is activated.
     private Buffer createBuffers()
     {
         long start = System.currentTimeMillis();
-        Buffer toBeActivated = null;
-        long lastActivated = 0;
-        for (SessionBufferEntry entry : bufferEntries) {
+        final int size = bufferEntries.size();
+        final File[] files = new File[size];
+        final Buffer[] buffers = new Buffer[size];
+        for (int i = 0; i < size; i++) {
+            SessionBufferEntry entry = bufferEntries.get(i);
             if (entry != null) {
                 File file = File.getInstance(entry.getPath());
                 if (file != null && file.isLocal()) {
                     // See if a buffer already exists.  (The buffer would have
                     //  been created by autosave recovering a local file.)
-                    Buffer buf = Editor.getBufferList().findBuffer(file);
-                    if (buf != null) {
-                        // do nothing, we already have a buffer
-                    } else if (file.isDirectory()) {
-                        buf = new DirectoryBuffer(file);
-                    } else if (file.isFile() && file.canRead()) {
-                        if (entry.getModeId() == WEB_MODE)
-                            buf = WebBuffer.createWebBuffer(file, null, null);
-                        else
-                            buf = Buffer.precreateBuffer(file);
-                    }
-                    if (buf != null) {
-                        buf.setLastView(new View(entry));
-                        if (toBeActivated == null ||
-                                entry.getLastActivated() > lastActivated) {
-                            toBeActivated = buf;
-                            lastActivated = entry.getLastActivated();
-                        }
-                    }
+                    buffers[i] = Editor.getBufferList().findBuffer(file);
+                    if (buffers[i] == null)
+                        files[i] = file;
                 } else {
                     Log.error("Session.createBuffers file = " + file);
                     Debug.bug();
                 }
             }
         }
+        final int[] kinds = stat(files);
+        long created = System.currentTimeMillis();
+        Log.debug("Session.createBuffers stat {} ms", created - start);
+        Buffer toBeActivated = null;
+        long lastActivated = 0;
+        final ArrayList<Integer> toBePrefetched = new ArrayList<Integer>();
+        for (int i = 0; i < size; i++) {
+            SessionBufferEntry entry = bufferEntries.get(i);
+            Buffer buf = buffers[i];
+            if (buf == null) {
+                if (kinds[i] == DIRECTORY) {
+                    buf = new DirectoryBuffer(files[i]);
+                } else if (kinds[i] == FILE) {
+                    if (entry.getModeId() == WEB_MODE)
+                        buf = WebBuffer.createWebBuffer(files[i], null, null);
+                    else
+                        buf = Buffer.precreateBuffer(files[i]);
+                }
+                if (buf != null && !buf.initialized())
+                    toBePrefetched.add(i);
+                buffers[i] = buf;
+            }
+            if (buf != null) {
+                buf.setLastView(new View(entry));
+                if (toBeActivated == null ||
+                        entry.getLastActivated() > lastActivated) {
+                    toBeActivated = buf;
+                    lastActivated = entry.getLastActivated();
+                }
+            }
+        }
         if (toBeActivated == null)
             toBeActivated = Editor.getBufferList().getFirstBuffer();
-        long elapsed = System.currentTimeMillis() - start;
+        Log.debug("Session.createBuffers create {} ms",
+                  System.currentTimeMillis() - created);
         Log.debug("createBuffers " + Editor.getBufferList().size() +
-            " buffers " + elapsed + " ms");
+            " buffers " + (System.currentTimeMillis() - start) + " ms");
+        prefetch(buffers, toBePrefetched);
         return toBeActivated;
     }
 
+    // Returns MISSING, DIRECTORY or FILE for each of the files. Null elements
+    // are MISSING.
+    static int[] stat(File[] files)
+    {
+        final int[] kinds = new int[files.length];
+        int count = 0;
+        for (File file : files) {
+            if (file != null)
+                ++count;
+        }
+        if (count == 0)
+            return kinds;
+        final ForkJoinPool pool =
+            new ForkJoinPool(Math.min(count, STAT_THREADS));
+        try {
+            List<Future<Integer>> futures =
+                new ArrayList<Future<Integer>>(files.length);
+            for (File file : files)
+                futures.add(file != null ? pool.submit(() -> stat(file)) : null);
+            for (int i = 0; i < files.length; i++) {
+                final Future<Integer> future = futures.get(i);
+                if (future != null) {
+                    try {
+                        kinds[i] = future.get();
+                    }
+                    catch (Exception e) {
+                        Log.error(e);
+                    }
+                }
+            }
+        }
+        finally {
+            pool.shutdown();
+        }
+        return kinds;
+    }
+
+    // Runs in the pool.
+    private static int stat(File file)
+    {
+        if (file.isDirectory())
+            return DIRECTORY;
+        if (file.isFile() && file.canRead())
+            return FILE;
+        return MISSING;
+    }
+
+    // Detects the file types of the most recently used buffers in the
+    // background, so it doesn't have to be done when they're activated.
+    private void prefetch(Buffer[] buffers, List<Integer> indices)
+    {
+        if (indices.isEmpty())
+            return;
+        indices.sort(Comparator.comparingLong(
+            (Integer i) -> bufferEntries.get(i).getLastActivated()).reversed());
+        final ArrayList<Buffer> list = new ArrayList<Buffer>();
+        for (int i = 0; i < indices.size() && i < PREFETCH_COUNT; i++)
+            list.add(buffers[indices.get(i)]);
+        Runnable r = new Runnable() {
+            public void run()
+            {
+                long start = System.currentTimeMillis();
+                for (Buffer buf : list)
+                    buf.detectFileType();
+                Log.debug("Session.prefetch {} buffers {} ms", list.size(),
+                          System.currentTimeMillis() - start);
+            }
+        };
+        Thread thread = new Thread(r, "session prefetch");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
     public void save()
     {
         try {
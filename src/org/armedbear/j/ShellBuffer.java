@@ -284,6 +284,9 @@ public class ShellBuffer extends CommandInterpreterBuffer implements Constants
                 Runnable processExitedRunnable = new Runnable() {
                     public void run()
                     {
+                        // Output still waiting for the next frame comes
+                        // first.
+                        outputQueue.flush();
                         appendString("\nProcess exited\n");
                         setBusy(false);
                         updateDisplayInAllFrames();
@@ -489,22 +492,16 @@ public class ShellBuffer extends CommandInterpreterBuffer implements Constants
         super.appendString(s);
     }
 
-    protected void stdOutUpdate(final String s)
+    protected void stdOutOutput(String s)
     {
-        Runnable r = new Runnable() {
-            public void run()
-            {
-                if (s.length() > 0) {
-                    updateDirectory(s);
-                    appendString(s);
-                }
-                updateLineFlags();
-                updateDisplayInAllFrames();
-                resetUndo();
-                checkPasswordPrompt();
-            }
-        };
-        SwingUtilities.invokeLater(r);
+        if (s.length() > 0) {
+            updateDirectory(s);
+            appendString(s);
+        }
+        updateLineFlags();
+        updateDisplayInAllFrames();
+        resetUndo();
+        checkPasswordPrompt();
     }
 
     protected void stdErrUpdate(final String s)
@@ -522,16 +519,15 @@ public class ShellBuffer extends CommandInterpreterBuffer implements Constants
                 }
             }
         }
-        Runnable r = new Runnable() {
-            public void run()
-            {
-                appendString(s);
-                updateLineFlags();
-                updateDisplayInAllFrames();
-                resetUndo();
-            }
-        };
-        SwingUtilities.invokeLater(r);
+        super.stdErrUpdate(s);
+    }
+
+    protected void stdErrOutput(String s)
+    {
+        appendString(s);
+        updateLineFlags();
+        updateDisplayInAllFrames();
+        resetUndo();
     }
 
     protected void updateLineFlags()
@@ -60,6 +60,7 @@ public final class Sort
             arrayList.add(line.getText());
         Collections.sort(arrayList, new SortLinesComparator());
         CompoundEdit compoundEdit = null;
+        UndoLineChanges undoLineChanges = null;
         int i = 0;
         for (Line line = region.getBeginLine(); line != region.getEndLine(); line = line.next(), i++) {
             String newText = arrayList.get(i);
@@ -67,12 +68,14 @@ public final class Sort
                 if (compoundEdit == null) {
                     compoundEdit = new CompoundEdit();
                     compoundEdit.addEdit(new UndoMove(editor));
+                    undoLineChanges = new UndoLineChanges(buffer);
                 }
-                compoundEdit.addEdit(new UndoLineEdit(buffer, line));
+                undoLineChanges.add(line);
                 line.setText(newText);
             }
         }
         if (compoundEdit != null) {
+            compoundEdit.addEdit(undoLineChanges);
             compoundEdit.end();
             buffer.addEdit(compoundEdit);
             buffer.modified();
@@ -1021,42 +1021,43 @@ public final class SshSession implements Constants, RemoteSession
         }
     }
 
-    private void writeToOutputBuffer(final String s)
-    {
-        Runnable r = new Runnable() {
-            public void run()
-            {
-                // Avoid race (and NPE) if setOutputBuffer(null) gets called in
-                // another thread.
-                final Buffer buf = outputBuffer;
-                if (buf == null)
-                    return;
-                try {
-                    buf.lockWrite();
-                }
-                catch (InterruptedException e) {
-                    Log.debug(e);
-                    return;
-                }
-                try {
-                    buf.append(s);
-                    buf.renumber();
-                }
-                finally {
-                    buf.unlockWrite();
-                }
-                for (EditorIterator it = new EditorIterator(); it.hasNext();) {
-                    Editor ed = it.next();
-                    if (ed.getBuffer() == buf) {
-                        ed.setDot(buf.getEnd());
-                        ed.moveCaretToDotCol();
-                        ed.setUpdateFlag(REPAINT);
-                        ed.updateDisplay();
-                    }
+    private final OutputQueue outputQueue = new OutputQueue() {
+        public void output(String s, boolean stderr)
+        {
+            // Avoid race (and NPE) if setOutputBuffer(null) gets called in
+            // another thread.
+            final Buffer buf = outputBuffer;
+            if (buf == null)
+                return;
+            try {
+                buf.lockWrite();
+            }
+            catch (InterruptedException e) {
+                Log.debug(e);
+                return;
+            }
+            try {
+                buf.append(s);
+                buf.renumber();
+            }
+            finally {
+                buf.unlockWrite();
+            }
+            for (EditorIterator it = new EditorIterator(); it.hasNext();) {
+                Editor ed = it.next();
+                if (ed.getBuffer() == buf) {
+                    ed.setDot(buf.getEnd());
+                    ed.moveCaretToDotCol();
+                    ed.setUpdateFlag(REPAINT);
+                    ed.updateDisplay();
                 }
             }
-        };
-        SwingUtilities.invokeLater(r);
+        }
+    };
+
+    private void writeToOutputBuffer(final String s)
+    {
+        outputQueue.put(s, false);
     }
 
     public boolean checkLogin()
@@ -1131,14 +1132,18 @@ public final class SshSession implements Constants, RemoteSession
         return s;
     }
 
-    private synchronized void stdOutUpdate(final String s)
+    private void stdOutUpdate(final String s)
     {
         if (echo || Editor.preferences().getBooleanProperty(Property.SSH_ECHO))
             Log.debug("<== |" + s + "|");
+        // Not while holding the lock, since this may wait for the event
+        // dispatch thread.
         if (outputBuffer != null)
             writeToOutputBuffer(s);
-        output.append(s);
-        notify();
+        synchronized (this) {
+            output.append(s);
+            notify();
+        }
     }
 
     private String stdErrFilter(String s)
@@ -60,6 +60,8 @@ public class SystemBuffer implements Constants
     private File file;
     private String loadEncoding;
     private List<LocalTag> tags;
+    private volatile LineIndex lineIndex;
+    private MappedText mappedText;
 
     public SystemBuffer()
     {
@@ -83,18 +85,48 @@ public class SystemBuffer implements Constants
     public synchronized void setFirstLine(Line line)
     {
         firstLine = line;
+        lineIndex = null;
     }
 
     public final Position getEnd()
     {
-        Line line = firstLine;
-        if (line == null)
-            return null;
-        while (line.next() != null)
-            line = line.next();
+        Line line = lastLine;
+        if (line == null || !isLastLine(line)) {
+            line = getFirstLine();
+            if (line == null)
+                return null;
+            while (line.next() != null)
+                line = line.next();
+            lastLine = line;
+        }
         return new Position(line, line.length());
     }
 
+    // Returns true if the line is still the last line of the buffer. Edits
+    // don't update lastLine, so it has to be checked before it's used.
+    protected boolean isLastLine(Line line)
+    {
+        if (line.next() != null)
+            return false;
+        final Line prev = line.previous();
+        return prev != null ? prev.next() == line : line == getFirstLine();
+    }
+
+    // The index is rebuilt on demand after it has been invalidated.
+    public final LineIndex getLineIndex()
+    {
+        LineIndex index = lineIndex;
+        if (index == null)
+            lineIndex = index = new LineIndex(getFirstLine());
+        return index;
+    }
+
+    // Called whenever lines are added, removed or changed.
+    protected final void invalidateLineIndex()
+    {
+        lineIndex = null;
+    }
+
     public final File getFile()
     {
         return file;
@@ -166,10 +198,12 @@ public class SystemBuffer implements Constants
         if (!isLoaded) {
             try {
                 if (file.isFile()) {
-                    InputStream in = file.getInputStream();
-                    if (in != null) {
-                        load(in, file.getEncoding());
-                        in.close();
+                    if (!loadMapped(file, file.getEncoding())) {
+                        InputStream in = file.getInputStream();
+                        if (in != null) {
+                            load(in, file.getEncoding());
+                            in.close();
+                        }
                     }
                 }
                 if (getFirstLine() == null) {
@@ -334,6 +368,39 @@ public class SystemBuffer implements Constants
         loadFinished(isLoaded);
     }
 
+    // Files larger than the largeFileThreshold preference (in megabytes) are
+    // mapped into memory, and the text of each line is only decoded when
+    // it's needed. Returns false if the file should be loaded the usual way.
+    protected final boolean loadMapped(File toBeLoaded, String encoding)
+    {
+        if (mode != null && mode.getId() == BINARY_MODE)
+            return false;
+        if (!toBeLoaded.isLocal())
+            return false;
+        final int threshold =
+            Editor.preferences().getIntegerProperty(Property.LARGE_FILE_THRESHOLD);
+        if (threshold <= 0 || toBeLoaded.length() < (long) threshold << 20)
+            return false;
+        if (encoding == null) {
+            encoding =
+                Editor.preferences().getStringProperty(Property.DEFAULT_ENCODING);
+        }
+        MappedText text = MappedText.map(toBeLoaded, encoding);
+        if (text == null)
+            return false;
+        final int count = text.getLineCount();
+        for (int i = 0; i < count; i++)
+            appendLine(new MappedLine(text, i));
+        if (lineSeparator == null)
+            lineSeparator = text.getLineSeparator();
+        loadEncoding = text.getEncoding();
+        mappedText = text;
+        loadProgress((int) Math.min(text.length(), Integer.MAX_VALUE));
+        isLoaded = true;
+        loadFinished(isLoaded);
+        return true;
+    }
+
     public final Line getLastLine()
     {
         return lastLine;
@@ -346,6 +413,7 @@ public class SystemBuffer implements Constants
 
     protected void appendLine(Line line)
     {
+        lineIndex = null;
         line.setPrevious(lastLine);
         if (lastLine != null)
             lastLine.setNext(line);
@@ -401,8 +469,11 @@ public class SystemBuffer implements Constants
     // Overridden by Buffer.renumber().
     public void renumber()
     {
-        for (Line line = getFirstLine(); line != null; line = line.next())
+        lineIndex = null;
+        for (Line line = getFirstLine(); line != null; line = line.next()) {
             line.setLineNumber(lineCount++);
+            lastLine = line;
+        }
     }
 
     public void writeBuffer() throws SaveException
@@ -412,7 +483,14 @@ public class SystemBuffer implements Constants
             throw new SaveException(file,
                                     file.canonicalPath() + " is not writable");
         }
-        if (Platform.isPlatformWindows()) {
+        // Lines that haven't been changed are still read from a mapped file,
+        // so it can't be written in place, and if the file has changed on
+        // disk we no longer have their text.
+        if (mappedText != null && !mappedText.isValid()) {
+            throw new SaveException(file,
+                file.canonicalPath() + " has changed on disk since it was loaded");
+        }
+        if (Platform.isPlatformWindows() || mappedText != null) {
             // writeTemporaryFile() throws a SaveException if an error occurs.
             File tempFile = writeTemporaryFile();
             if (!makePatchFile()) {
@@ -570,6 +648,8 @@ public class SystemBuffer implements Constants
         }
         setFirstLine(null);
         lastLine = null;
+        lineIndex = null;
+        mappedText = null;
         isLoaded = false;
     }
 
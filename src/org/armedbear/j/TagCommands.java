@@ -202,26 +202,23 @@ public final class TagCommands implements Constants
             return null;
         final String name = expression.getName();
         final int arity = expression.getArity();
-        List<GlobalTag> tags = Editor.getTagFileManager().getTags(directory, mode);
-        if (tags == null) {
+        TagIndex index = Editor.getTagFileManager().getIndex(directory, mode);
+        if (index == null) {
             if (!directory.isRemote())
                 Editor.getTagFileManager().addToQueue(directory, mode);
             return null;
         }
 
         List<GlobalTag> list = null;
-        for (GlobalTag tag : tags) {
-            String methodName = tag.getMethodName();
-            if (methodName != null && methodName.equals(name)) {
-                if (arity >= 0) {
-                    int n = Expression.getArity(tag.getCanonicalSignature());
-                    if (n >= 0 && n != arity)
-                        continue;
-                }
-                if (list == null)
-                    list = new ArrayList<GlobalTag>();
-                list.add(tag);
+        for (GlobalTag tag : index.findByMethodName(name, false)) {
+            if (arity >= 0) {
+                int n = Expression.getArity(tag.getCanonicalSignature());
+                if (n >= 0 && n != arity)
+                    continue;
             }
+            if (list == null)
+                list = new ArrayList<GlobalTag>();
+            list.add(tag);
         }
         return list;
     }
@@ -231,8 +228,8 @@ public final class TagCommands implements Constants
     {
         if (!mode.isTaggable())
             return null;
-        List<GlobalTag> tags = Editor.getTagFileManager().getTags(directory, mode);
-        if (tags == null) {
+        TagIndex index = Editor.getTagFileManager().getIndex(directory, mode);
+        if (index == null) {
             if (!directory.isRemote())
                 Editor.getTagFileManager().addToQueue(directory, mode);
             return null;
@@ -240,33 +237,26 @@ public final class TagCommands implements Constants
 
         boolean isQualified = mode.isQualifiedName(name);
         List<GlobalTag> list = new ArrayList<GlobalTag>();
-        for (GlobalTag tag : tags) {
-            String tagName = tag.getName();
-            if ((ignoreCase && tagName.equalsIgnoreCase(name)) || tagName.equals(name)) {
+        for (GlobalTag tag : index.findByName(name, ignoreCase)) {
+            if (arity >= 0) {
+                int n = Expression.getArity(tag.getCanonicalSignature());
+                if (n < 0 || n == arity)
+                    list.add(tag);
+            } else
+                list.add(tag);
+        }
+        if (!isQualified) {
+            // The name we're looking for does not have a class prefix.
+            for (GlobalTag tag : index.findByMethodName(name, ignoreCase)) {
+                String tagName = tag.getName();
+                if ((ignoreCase && tagName.equalsIgnoreCase(name)) || tagName.equals(name))
+                    continue; // Already checked.
                 if (arity >= 0) {
                     int n = Expression.getArity(tag.getCanonicalSignature());
-                    if (n == -1 || n == arity) {
+                    if (n < 0 || n == arity)
                         list.add(tag);
-                        continue;
-                    }
-                } else {
+                } else
                     list.add(tag);
-                    continue;
-                }
-            }
-            if (!isQualified) {
-                // The name we're looking for does not have a class prefix.
-                String methodName = tag.getMethodName();
-                if (methodName != null) {
-                    if ((ignoreCase && methodName.equalsIgnoreCase(name)) || methodName.equals(name)) {
-                        if (arity >= 0) {
-                            int n = Expression.getArity(tag.getCanonicalSignature());
-                            if (n < 0 || n == arity)
-                                list.add(tag);
-                        } else
-                            list.add(tag);
-                    }
-                }
             }
         }
         return list.size() > 0 ? list : null;
@@ -22,28 +22,38 @@ package org.armedbear.j;
 
 import org.armedbear.j.util.Utilities;
 
-import java.io.BufferedReader;
-import java.io.BufferedWriter;
-import java.io.IOException;
-import java.io.InputStreamReader;
-import java.io.OutputStreamWriter;
 import java.util.ArrayList;
-import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Vector;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 public final class TagFileManager extends Thread
 {
-    // Version of tag file format.
-    private static final String VERSION = "1";
-
     private final File tagFileDir;
     private final TagFileCatalog catalog;
 
     private Vector<QueueEntry> queue = new Vector<QueueEntry>();
     private boolean enabled = true;
 
-    private TagFileCache cache;
+    // The tag files that have been read most recently, by tag file. The
+    // rest are mapped again when they're needed.
+    private static final int MAX_CACHED_INDEXES = 5;
+
+    private final LinkedHashMap<File, TagIndex> cache =
+        new LinkedHashMap<File, TagIndex>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            protected boolean removeEldestEntry(Map.Entry<File, TagIndex> eldest)
+            {
+                return size() > MAX_CACHED_INDEXES;
+            }
+        };
+
+    // Files are tagged in parallel.
+    private ForkJoinPool pool;
 
     public TagFileManager()
     {
@@ -135,35 +145,45 @@ public final class TagFileManager extends Thread
             File oldTagfile = getTagFile(dir, mode);
             File tagfile = Utilities.getTempFile(tagFileDir);
             if (tagfile != null) {
-                String[] files = dir.list();
+                List<File> files = getFilesToTag(dir, mode);
                 if (files != null) {
-                    BufferedWriter writer =
-                        new BufferedWriter(new OutputStreamWriter(
-                            tagfile.getOutputStream()));
-                    writer.write(VERSION);
-                    writer.write('\n');
-                    for (String s : files) {
-                        File file = File.getInstance(dir, s);
-                        if (mode.accepts(file.getName()) && file.isFile()) {
-                            SystemBuffer buf = new SystemBuffer(file);
-                            buf.load();
-                            Tagger tagger = mode.getTagger(buf);
-                            tagger.run();
-                            tagger.writeTags(writer);
-                            buf._empty();
+                    // Tags of files that haven't changed since the directory
+                    // was last tagged are copied from the old tag file.
+                    TagIndex oldIndex = getIndex(dir, mode);
+                    Map<String, List<GlobalTag>> oldTags =
+                        oldIndex != null ? oldIndex.getTagsByFile() : null;
+                    ArrayList<String> paths = new ArrayList<String>();
+                    long[] lastModified = new long[files.size()];
+                    ArrayList<Future<List<GlobalTag>>> futures =
+                        new ArrayList<Future<List<GlobalTag>>>();
+                    for (int i = 0; i < files.size(); i++) {
+                        final File file = files.get(i);
+                        final String path = file.canonicalPath();
+                        paths.add(path);
+                        lastModified[i] = file.lastModified();
+                        if (oldTags != null && oldTags.containsKey(path) &&
+                            oldIndex.getLastModified(path) == lastModified[i]) {
+                            futures.add(null);
+                        } else {
+                            futures.add(getPool().submit(
+                                () -> tagFile(file, mode)));
                         }
                     }
-                    writer.flush();
-                    writer.close();
-                    if (tagfile.length() == 0) {
-                        tagfile.delete();
-                    } else {
-                        catalog.addEntry(dir, tagfile, mode);
-                        catalog.save();
-                        if (oldTagfile != null) {
-                            oldTagfile.delete();
-                            if (cache != null)
-                                cache.remove(oldTagfile);
+                    ArrayList<GlobalTag> tags = new ArrayList<GlobalTag>();
+                    for (int i = 0; i < futures.size(); i++) {
+                        Future<List<GlobalTag>> future = futures.get(i);
+                        if (future != null)
+                            tags.addAll(future.get());
+                        else
+                            tags.addAll(oldTags.get(paths.get(i)));
+                    }
+                    TagIndex.write(tagfile, paths, lastModified, tags);
+                    catalog.addEntry(dir, tagfile, mode);
+                    catalog.save();
+                    if (oldTagfile != null) {
+                        oldTagfile.delete();
+                        synchronized (cache) {
+                            cache.remove(oldTagfile);
                         }
                     }
                 }
@@ -174,26 +194,58 @@ public final class TagFileManager extends Thread
         }
     }
 
+    private synchronized ForkJoinPool getPool()
+    {
+        if (pool == null)
+            pool = new ForkJoinPool(Runtime.getRuntime().availableProcessors());
+        return pool;
+    }
+
+    // Runs in the pool.
+    private static List<GlobalTag> tagFile(File file, Mode mode)
+    {
+        SystemBuffer buf = new SystemBuffer(file);
+        buf.load();
+        Tagger tagger = mode.getTagger(buf);
+        if (tagger == null)
+            return new ArrayList<GlobalTag>();
+        tagger.run();
+        List<GlobalTag> tags = tagger.getGlobalTags();
+        buf._empty();
+        return tags;
+    }
+
+    // Returns null if the directory can't be listed.
+    private static List<File> getFilesToTag(File dir, Mode mode)
+    {
+        String[] names = dir.list();
+        if (names == null)
+            return null;
+        ArrayList<File> files = new ArrayList<File>();
+        for (String name : names) {
+            File file = File.getInstance(dir, name);
+            if (mode.accepts(file.getName()) && file.isFile())
+                files.add(file);
+        }
+        return files;
+    }
+
     private boolean isTagFileOutOfDate(QueueEntry entry)
     {
         if (entry.directory.isRemote())
             return false;
-        File tagfile = getTagFile(entry.directory, entry.mode);
-        if (tagfile == null)
+        TagIndex index = getIndex(entry.directory, entry.mode);
+        if (index == null)
             return true;
-        if (!tagfile.exists())
+        List<File> files = getFilesToTag(entry.directory, entry.mode);
+        if (files == null)
+            return false;
+        // Files have been added or removed?
+        if (files.size() != index.getFileCount())
             return true;
-        long tagfileLastModified = tagfile.lastModified();
-        String[] files = entry.directory.list();
-        if (files != null) {
-            for (int i = 0; i < files.length; i++) {
-                File file = File.getInstance(entry.directory, files[i]);
-                if (!file.isFile())
-                    continue;
-                if (entry.mode.accepts(file.getName()))
-                    if (file.lastModified() > tagfileLastModified)
-                        return true;
-            }
+        for (File file : files) {
+            if (file.lastModified() != index.getLastModified(file.canonicalPath()))
+                return true;
         }
         return false;
     }
@@ -225,50 +277,29 @@ public final class TagFileManager extends Thread
         catalog.update();
     }
 
-    public List<GlobalTag> getTags(File directory, Mode mode)
+    // Returns null if the directory hasn't been tagged.
+    public TagIndex getIndex(File directory, Mode mode)
     {
         File tagFile = getTagFile(directory, mode);
         if (tagFile == null) {
-            Log.debug("getTags no tag file " + directory + " " + mode);
+            Log.debug("getIndex no tag file " + directory + " " + mode);
             return null;
         }
-        if (!tagFile.isFile()) {
-            Log.debug("getTags tag file doesn't exist");
-            return null;
-        }
-        List<GlobalTag> tags = null;
-        // First checked cached tag files.
-        if (cache != null)
-            tags = cache.getTags(tagFile);
-        if (tags == null) {
-            try {
-                BufferedReader reader =
-                    new BufferedReader(new InputStreamReader(tagFile.getInputStream()));
-                String s = reader.readLine();
-                if (s != null && s.equals(VERSION)) {
-                    tags = new ArrayList<GlobalTag>();
-                    while ((s = reader.readLine()) != null) {
-                        GlobalTag tag = GlobalTag.makeGlobalTag(s);
-                        if (tag != null)
-                            tags.add(tag);
-                    }
-                } else {
-                    Log.warn("getTags wrong version " + directory + " " +
-                        mode);
-                }
-                reader.close();
+        synchronized (cache) {
+            TagIndex index = cache.get(tagFile);
+            if (index != null)
+                return index;
+            if (!tagFile.isFile()) {
+                Log.debug("getIndex tag file doesn't exist");
+                return null;
             }
-            catch (IOException e) {
-                Log.error(e);
-            }
-            if (tags != null) {
-                if (cache == null)
-                    cache = new TagFileCache();
-                cache.add(directory, mode.toString(), tagFile, tags);
-            } else
-                tagFile.delete();
+            index = TagIndex.read(tagFile);
+            if (index != null)
+                cache.put(tagFile, index);
+            else
+                tagFile.delete(); // Old format.
+            return index;
         }
-        return tags;
     }
 
     private static class QueueEntry
@@ -299,113 +330,4 @@ public final class TagFileManager extends Thread
             return false;
         }
     }
-
-    private static class TagFileCache
-    {
-        private static final int MAX_FILES = 5;
-
-        private ArrayList<CacheEntry> list = new ArrayList<CacheEntry>(MAX_FILES);
-
-        TagFileCache() {}
-
-        synchronized List<GlobalTag> getTags(File tagFile)
-        {
-            for (CacheEntry entry : list) {
-                if (entry.tagFile.equals(tagFile)) {
-                    entry.lastAccess = System.currentTimeMillis();
-                    // Move entry to top of list.
-                    ArrayList<CacheEntry> newList = new ArrayList<CacheEntry>(MAX_FILES);
-                    newList.add(entry);
-                    for (CacheEntry e : list) {
-                        if (e != entry)
-                            newList.add(e);
-                    }
-                    Debug.assertTrue(newList.size() == list.size());
-                    list = newList;
-                    checkOrder();
-                    return entry.tags;
-                }
-            }
-            return null;
-        }
-
-        synchronized void add(File directory, String modeName,
-            File tagFile, List<GlobalTag> tags)
-        {
-            CacheEntry entry = new CacheEntry(directory, modeName, tagFile, tags);
-            ArrayList<CacheEntry> newList = new ArrayList<CacheEntry>(MAX_FILES);
-            newList.add(entry);
-            int count = 1;
-            for (int i = 0; i < list.size() && count < MAX_FILES; i++) {
-                CacheEntry e = list.get(i);
-                if (!e.tagFile.equals(tagFile)) {
-                    newList.add(e);
-                    ++count;
-                }
-            }
-            list = newList;
-            checkOrder();
-        }
-
-        synchronized void remove(File tagFile)
-        {
-            Iterator<CacheEntry> iter = list.iterator();
-            while (iter.hasNext()) {
-                CacheEntry entry = iter.next();
-                if (entry.tagFile.equals(tagFile)) {
-                    iter.remove();
-                    checkOrder();
-                    Log.debug("cache remove size = " + list.size());
-                    return;
-                }
-            }
-            // Not found.
-        }
-
-        // Only called from synchronized methods.
-        void checkOrder()
-        {
-            if (Editor.isDebugEnabled()) {
-                for (int i = 0; i < list.size()-1; i++) {
-                    CacheEntry entry1 = list.get(i);
-                    CacheEntry entry2 = list.get(i+1);
-                    if (entry1.lastAccess < entry2.lastAccess)
-                        Debug.bug();
-                }
-//                 dump();
-            }
-        }
-
-        // Only called from synchronized methods.
-//         void dump()
-//         {
-//             for (int i = 0; i < list.size(); i++)
-//                 Log.debug(String.valueOf(i) + " " + list.get(i).toString());
-//         }
-    }
-
-    private static class CacheEntry
-    {
-        final File directory; // Needed for debugging only!
-        final String modeName; // Needed for debugging only!
-        final File tagFile;
-        List<GlobalTag> tags;
-        long lastAccess; // Needed for debugging only!
-
-        CacheEntry(File directory, String modeName, File tagFile,
-            List<GlobalTag> tags)
-        {
-            this.directory = directory;
-            this.modeName = modeName;
-            this.tagFile = tagFile;
-            this.tags = tags;
-            this.lastAccess = System.currentTimeMillis();
-        }
-
-        public String toString()
-        {
-            return directory.canonicalPath() + " " + modeName + " " +
-                String.valueOf(lastAccess);
-        }
-    }
 }
@@ -0,0 +1,354 @@
+/*
+ * TagIndex.java
+ *
+ * Copyright (C) 2026 Kevin Krouse
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.armedbear.j;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A memory-mapped tag file.
+ *
+ * The file holds the tags for one directory and mode, with two tables of
+ * tag numbers: one sorted by name and one sorted by method name, both
+ * ignoring case. Lookups are binary searches over the mapped file, so only
+ * the tags that match are ever read into the heap. The file also records
+ * the last modified time of each source file, so when the directory is
+ * tagged again, only the files that have changed need to be re-tagged.
+ */
+public final class TagIndex
+{
+    private static final int MAGIC = 0x4a544147; // "JTAG"
+    private static final int VERSION = 2;
+
+    private final ByteBuffer bb;
+    private final String[] paths;
+    private final long[] lastModified;
+    private final HashMap<String, Integer> pathMap =
+        new HashMap<String, Integer>();
+    private final int count;
+
+    // Positions in the file of the tables of record offsets and the
+    // sorted tables of tag numbers.
+    private final int offsetsStart;
+    private final int byNameStart;
+    private final int byMethodNameStart;
+
+    private TagIndex(ByteBuffer bb)
+    {
+        this.bb = bb;
+        int pos = 8;
+        final int fileCount = bb.getInt(pos);
+        pos += 4;
+        paths = new String[fileCount];
+        lastModified = new long[fileCount];
+        for (int i = 0; i < fileCount; i++) {
+            paths[i] = readString(pos);
+            pos += stringSize(pos);
+            lastModified[i] = bb.getLong(pos);
+            pos += 8;
+            pathMap.put(paths[i], Integer.valueOf(i));
+        }
+        count = bb.getInt(pos);
+        pos += 4;
+        offsetsStart = pos;
+        byNameStart = offsetsStart + count * 4;
+        byMethodNameStart = byNameStart + count * 4;
+    }
+
+    // Returns null if the file doesn't exist or isn't in the current format.
+    public static TagIndex read(File file)
+    {
+        if (file == null || !file.isFile())
+            return null;
+        try (FileChannel channel =
+             FileChannel.open(Paths.get(file.canonicalPath()),
+                              StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if (size < 12 || size > Integer.MAX_VALUE)
+                return null;
+            ByteBuffer bb = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (bb.getInt(0) != MAGIC || bb.getInt(4) != VERSION) {
+                Log.debug("TagIndex.read old or invalid format " + file);
+                return null;
+            }
+            return new TagIndex(bb);
+        }
+        catch (Exception e) {
+            // IndexOutOfBoundsException if the file is truncated.
+            Log.error(e);
+            return null;
+        }
+    }
+
+    /**
+     * Writes a tag file.
+     *
+     * @param file          the tag file
+     * @param paths         the canonical paths of the source files
+     * @param lastModified  the last modified times of the source files
+     * @param tags          the tags
+     */
+    public static void write(File file, List<String> paths, long[] lastModified,
+        List<GlobalTag> tags) throws IOException
+    {
+        HashMap<String, Integer> pathMap = new HashMap<String, Integer>();
+        for (int i = 0; i < paths.size(); i++)
+            pathMap.put(paths.get(i), Integer.valueOf(i));
+        final int count = tags.size();
+        final String[] names = new String[count];
+        final String[] methodNames = new String[count];
+        for (int i = 0; i < count; i++) {
+            names[i] = tags.get(i).getName();
+            methodNames[i] = GlobalTag.getMethodName(names[i]);
+        }
+        Integer[] byName = sortedTagNumbers(names);
+        Integer[] byMethodName = sortedTagNumbers(methodNames);
+
+        // Records.
+        ByteArrayOutputStream recordBytes = new ByteArrayOutputStream();
+        DataOutputStream records = new DataOutputStream(recordBytes);
+        int[] offsets = new int[count];
+        for (int i = 0; i < count; i++) {
+            GlobalTag tag = tags.get(i);
+            offsets[i] = records.size();
+            writeString(records, tag.getName());
+            Integer fileIndex = pathMap.get(tag.getFileName());
+            records.writeInt(fileIndex != null ? fileIndex.intValue() : -1);
+            writeString(records, tag.getSignature());
+            writeString(records, tag.getCanonicalSignature());
+        }
+        records.flush();
+
+        ByteArrayOutputStream headerBytes = new ByteArrayOutputStream();
+        DataOutputStream header = new DataOutputStream(headerBytes);
+        header.writeInt(MAGIC);
+        header.writeInt(VERSION);
+        header.writeInt(paths.size());
+        for (int i = 0; i < paths.size(); i++) {
+            writeString(header, paths.get(i));
+            header.writeLong(lastModified[i]);
+        }
+        header.writeInt(count);
+        header.flush();
+        final int recordsStart = header.size() + count * 12;
+
+        DataOutputStream out =
+            new DataOutputStream(new BufferedOutputStream(file.getOutputStream()));
+        try {
+            headerBytes.writeTo(out);
+            for (int i = 0; i < count; i++)
+                out.writeInt(recordsStart + offsets[i]);
+            for (int i = 0; i < count; i++)
+                out.writeInt(byName[i].intValue());
+            for (int i = 0; i < count; i++)
+                out.writeInt(byMethodName[i].intValue());
+            recordBytes.writeTo(out);
+            out.flush();
+        }
+        finally {
+            out.close();
+        }
+    }
+
+    private static Integer[] sortedTagNumbers(final String[] keys)
+    {
+        Integer[] array = new Integer[keys.length];
+        for (int i = 0; i < array.length; i++)
+            array[i] = Integer.valueOf(i);
+        Arrays.sort(array, new Comparator<Integer>() {
+            public int compare(Integer a, Integer b)
+            {
+                return String.CASE_INSENSITIVE_ORDER.compare(keys[a.intValue()],
+                                                             keys[b.intValue()]);
+            }
+        });
+        return array;
+    }
+
+    private static void writeString(DataOutputStream out, String s)
+        throws IOException
+    {
+        if (s == null) {
+            out.writeInt(-1);
+            return;
+        }
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private String readString(int pos)
+    {
+        final int length = bb.getInt(pos);
+        if (length < 0)
+            return null;
+        byte[] bytes = new byte[length];
+        bb.get(pos + 4, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private int stringSize(int pos)
+    {
+        return 4 + Math.max(bb.getInt(pos), 0);
+    }
+
+    public int size()
+    {
+        return count;
+    }
+
+    // Returns -1 if the file isn't in the index.
+    public long getLastModified(String path)
+    {
+        Integer index = pathMap.get(path);
+        return index != null ? lastModified[index.intValue()] : -1;
+    }
+
+    public int getFileCount()
+    {
+        return paths.length;
+    }
+
+    private int getRecordOffset(int tagNumber)
+    {
+        return bb.getInt(offsetsStart + tagNumber * 4);
+    }
+
+    private String getName(int tagNumber)
+    {
+        return readString(getRecordOffset(tagNumber));
+    }
+
+    private GlobalTag getTag(int tagNumber)
+    {
+        int pos = getRecordOffset(tagNumber);
+        final String name = readString(pos);
+        pos += stringSize(pos);
+        final int fileIndex = bb.getInt(pos);
+        pos += 4;
+        final String signature = readString(pos);
+        pos += stringSize(pos);
+        final String canonicalSignature = readString(pos);
+        final String path = fileIndex >= 0 ? paths[fileIndex] : null;
+        return new GlobalTag(name, signature, path, canonicalSignature);
+    }
+
+    public List<GlobalTag> getTags()
+    {
+        ArrayList<GlobalTag> list = new ArrayList<GlobalTag>(count);
+        for (int i = 0; i < count; i++)
+            list.add(getTag(i));
+        return list;
+    }
+
+    // Returns the tags of each file, by canonical path.
+    public Map<String, List<GlobalTag>> getTagsByFile()
+    {
+        HashMap<String, List<GlobalTag>> map =
+            new HashMap<String, List<GlobalTag>>();
+        for (String path : paths)
+            map.put(path, new ArrayList<GlobalTag>());
+        for (int i = 0; i < count; i++) {
+            GlobalTag tag = getTag(i);
+            List<GlobalTag> list = map.get(tag.getFileName());
+            if (list != null)
+                list.add(tag);
+        }
+        return map;
+    }
+
+    // Returns the tags whose names match name.
+    public List<GlobalTag> findByName(String name, boolean ignoreCase)
+    {
+        return find(byNameStart, name, false, false, ignoreCase);
+    }
+
+    // Returns the tags whose method names match name.
+    public List<GlobalTag> findByMethodName(String name, boolean ignoreCase)
+    {
+        return find(byMethodNameStart, name, true, false, ignoreCase);
+    }
+
+    // Returns the tags whose names start with prefix.
+    public List<GlobalTag> findByNamePrefix(String prefix, boolean ignoreCase)
+    {
+        return find(byNameStart, prefix, false, true, ignoreCase);
+    }
+
+    // Returns the tags whose method names start with prefix.
+    public List<GlobalTag> findByMethodNamePrefix(String prefix,
+        boolean ignoreCase)
+    {
+        return find(byMethodNameStart, prefix, true, true, ignoreCase);
+    }
+
+    private String getKey(int table, int i, boolean methodName)
+    {
+        String name = getName(bb.getInt(table + i * 4));
+        return methodName ? GlobalTag.getMethodName(name) : name;
+    }
+
+    private List<GlobalTag> find(int table, String s, boolean methodName,
+        boolean prefix, boolean ignoreCase)
+    {
+        // Find the first entry that is not less than s, ignoring case.
+        int lo = 0;
+        int hi = count;
+        while (lo < hi) {
+            final int mid = (lo + hi) >>> 1;
+            if (String.CASE_INSENSITIVE_ORDER.compare(getKey(table, mid, methodName), s) < 0)
+                lo = mid + 1;
+            else
+                hi = mid;
+        }
+        ArrayList<GlobalTag> list = new ArrayList<GlobalTag>();
+        final int length = s.length();
+        for (int i = lo; i < count; i++) {
+            final String key = getKey(table, i, methodName);
+            if (prefix) {
+                if (!key.regionMatches(true, 0, s, 0, length))
+                    break;
+                if (!ignoreCase && !key.startsWith(s))
+                    continue;
+            } else {
+                if (!key.equalsIgnoreCase(s))
+                    break;
+                if (!ignoreCase && !key.equals(s))
+                    continue;
+            }
+            list.add(getTag(bb.getInt(table + i * 4)));
+        }
+        return list;
+    }
+}
@@ -20,8 +20,7 @@
 
 package org.armedbear.j;
 
-import java.io.IOException;
-import java.io.Writer;
+import java.util.ArrayList;
 import java.util.List;
 
 public abstract class Tagger implements Constants, Runnable
@@ -35,52 +34,41 @@ public abstract class Tagger implements Constants, Runnable
         this.buffer = buffer;
     }
 
-    public void writeTags(Writer writer)
+    // Returns the tags to be put in the tag file for the directory.
+    public List<GlobalTag> getGlobalTags()
     {
+        List<GlobalTag> list = new ArrayList<GlobalTag>();
         if (buffer == null)
-            return;
+            return list;
         List<LocalTag> tags = buffer.getTags();
         if (tags == null)
-            return;
+            return list;
         File file = buffer.getFile();
         if (file == null)
-            return;
+            return list;
         final String canonicalPath = file.canonicalPath();
-        try {
-            for (LocalTag localTag : tags) {
-                if (localTag != null) {
-                    switch (localTag.getType()) {
-                        case TAG_INTERFACE:
-                        case TAG_CLASS:
-                        case TAG_METHOD:
-                        case TAG_EXPLICIT:
-                        case TAG_DEFUN: // Lisp.
-                        case TAG_GENERIC_FUNCTION: // Lisp.
-                        case TAG_MACRO: // Lisp.
-                        case TAG_STRUCT: // Lisp.
-                            writer.write(localTag.getName());
-                            writer.write(separatorChar);
-                            writer.write(canonicalPath);
-                            writer.write(separatorChar);
-                            writer.write(localTag.getLine().getText());
-                            final String canonicalSignature =
-                                    localTag.getCanonicalSignature();
-                            if (canonicalSignature != null) {
-                                writer.write(separatorChar);
-                                writer.write(canonicalSignature);
-                            }
-                            writer.write('\n');
-                            break;
-                        default:
-                            break;
-                    }
+        for (LocalTag localTag : tags) {
+            if (localTag != null) {
+                switch (localTag.getType()) {
+                    case TAG_INTERFACE:
+                    case TAG_CLASS:
+                    case TAG_METHOD:
+                    case TAG_EXPLICIT:
+                    case TAG_DEFUN: // Lisp.
+                    case TAG_GENERIC_FUNCTION: // Lisp.
+                    case TAG_MACRO: // Lisp.
+                    case TAG_STRUCT: // Lisp.
+                        list.add(new GlobalTag(localTag.getName(),
+                                               localTag.getLine().getText(),
+                                               canonicalPath,
+                                               localTag.getCanonicalSignature()));
+                        break;
+                    default:
+                        break;
                 }
             }
-            writer.flush();
-        }
-        catch (IOException e) {
-            Log.error(e);
         }
+        return list;
     }
 
     public abstract void run();
@@ -56,13 +56,20 @@ public class TextLine extends AbstractLine
         this.flags = flags;
     }
 
-    public final synchronized String getText()
+    public synchronized String getText()
     {
         return text != null ? text : "";
     }
 
+    // Subclasses that load their text on demand override this to load it
+    // into the text field before the field is changed or copied.
+    protected void materialize()
+    {
+    }
+
     public final synchronized void setText(String s)
     {
+        materialize();
         if (originalText == null)
             originalText = text;
         text = s;
@@ -138,7 +145,7 @@ public class TextLine extends AbstractLine
         return getText().trim();
     }
 
-    public final int length()
+    public int length()
     {
         return getText().length();
     }
@@ -178,6 +185,7 @@ public class TextLine extends AbstractLine
     // Copies text, original text, and bit flags only.
     public Line copy()
     {
+        materialize();
         TextLine line = new TextLine(text);
         line.originalText = originalText;
         line.bits = bits;
@@ -189,6 +197,8 @@ public class TextLine extends AbstractLine
     {
         if (line instanceof TextLine) {
             TextLine textLine = (TextLine) line;
+            textLine.materialize();
+            materialize();
             text = textLine.text;
             originalText = textLine.originalText;
             bits = textLine.bits;
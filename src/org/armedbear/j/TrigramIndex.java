@@ -0,0 +1,883 @@
+/*
+ * TrigramIndex.java
+ *
+ * Copyright (C) 2026 Kevin Krouse
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.armedbear.j;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.armedbear.j.util.Utilities;
+
+/**
+ * An index of the trigrams in the files that Find in Files has searched.
+ *
+ * For each file, the index records its last modified time, its length, and
+ * a Bloom filter of the trigrams (three consecutive characters on a line,
+ * ignoring case) in its text. If the filter of a file that hasn't changed
+ * lacks any of the trigrams a match must contain, Find in Files doesn't
+ * need to read the file. The filter may say a file contains a trigram it
+ * doesn't, which only costs a read, but never the reverse.
+ *
+ * Find in Files adds the files it reads to the index. An idle task brings
+ * the entries up to date with their files and writes the index to
+ * ~/.j/trigrams.
+ *
+ * The file is a header followed by a record for each change to the index,
+ * so only new entries are written; a later record for a path replaces an
+ * earlier one. When most of the file is records that have been replaced,
+ * it is rewritten with only the current ones. Only the entries are kept in
+ * memory, with the filters that have been used most recently and those that
+ * haven't been written yet.
+ */
+public final class TrigramIndex
+{
+    private static final int MAGIC = 0x4a545249; // "JTRI"
+    private static final int VERSION = 2;
+
+    // Larger files aren't indexed; they're always read.
+    private static final long MAX_FILE_SIZE = 16 * 1024 * 1024;
+
+    // Bits in the largest filter. The bit positions are taken from a 64-bit
+    // hash, 21 bits at a time.
+    private static final int MAX_FILTER_BITS = 1 << 21;
+
+    // Words of filters read from the file that are kept in memory.
+    private static final int MAX_CACHED_WORDS = 1 << 20;
+
+    // Words of filters that haven't been written. When there are more than
+    // this, add() writes them instead of waiting for the idle task.
+    private static final int MAX_PENDING_WORDS = 1 << 20;
+
+    // The file isn't rewritten until it is at least this long.
+    private static final long MIN_COMPACT_LENGTH = 1024 * 1024;
+
+    // Word counts in a record that mean it has no filter.
+    private static final int BINARY_RECORD = -1;
+    private static final int REMOVED_RECORD = -2;
+
+    // Entries checked by each run of the idle task.
+    private static final int REFRESH_BATCH_SIZE = 100;
+
+    // Minimum time between passes over all of the entries.
+    private static final long REFRESH_INTERVAL = 60000;
+
+    // Results of lookup().
+    public static final int UNKNOWN     = 0; // Not indexed, or out of date.
+    public static final int BINARY      = 1;
+    public static final int NO_MATCH    = 2;
+    public static final int MIGHT_MATCH = 3;
+
+    private static TrigramIndex index;
+
+    private final File file;
+    private final Charset charset;
+    private final ConcurrentHashMap<String, Entry> entries =
+        new ConcurrentHashMap<String, Entry>();
+    // Paths removed since the last write.
+    private final Set<String> removed = ConcurrentHashMap.newKeySet();
+    private final AtomicInteger pendingWords = new AtomicInteger();
+    private volatile boolean dirty;
+
+    // The rest are guarded by this.
+    private final LinkedHashMap<Entry, long[]> cache =
+        new LinkedHashMap<Entry, long[]>(16, 0.75f, true);
+    private int cachedWords;
+    private FileChannel channel;
+    // The end of the last complete record in the file, or 0 if the file
+    // has no usable header.
+    private long validLength;
+    private boolean closed;
+
+    // Used only by the idle thread.
+    private Iterator<String> refreshIterator;
+    private long lastRefresh;
+
+    TrigramIndex(File file, Charset charset)
+    {
+        this.file = file;
+        this.charset = charset;
+    }
+
+    /**
+     * Returns the index for files decoded with the given charset, reading
+     * it from disk the first time. Returns null if the index is disabled.
+     */
+    public static synchronized TrigramIndex getIndex(Charset charset)
+    {
+        if (!Editor.preferences().getBooleanProperty(Property.FIND_IN_FILES_INDEX))
+            return null;
+        if (index == null || !index.charset.equals(charset)) {
+            // The new index will start the file over.
+            if (index != null)
+                index.close();
+            File file =
+                File.getInstance(Directories.getEditorDirectory(), "trigrams");
+            index = read(file, charset);
+        }
+        return index;
+    }
+
+    // Returns the index if it has been read, or null.
+    public static synchronized TrigramIndex getLoadedIndex()
+    {
+        return index;
+    }
+
+    // Never returns null. If the file doesn't exist, or was written for a
+    // different charset, the index is empty.
+    static TrigramIndex read(File file, Charset charset)
+    {
+        TrigramIndex trigramIndex = new TrigramIndex(file, charset);
+        if (file.isFile())
+            trigramIndex.load();
+        return trigramIndex;
+    }
+
+    private void load()
+    {
+        final long fileLength = file.length();
+        try (DataInputStream in = new DataInputStream(
+                 new BufferedInputStream(file.getInputStream()))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION)
+                return;
+            if (!in.readUTF().equals(charset.name()))
+                return;
+            long pos = getHeaderLength();
+            validLength = pos;
+            while (pos < fileLength) {
+                final String path = in.readUTF();
+                final long lastModified = in.readLong();
+                final long length = in.readLong();
+                final int words = in.readInt();
+                pos += getRecordHeaderLength(path);
+                if (words == REMOVED_RECORD) {
+                    entries.remove(path);
+                } else {
+                    final long offset = pos;
+                    if (words > 0) {
+                        pos += words * 8L;
+                        // The last record may have been cut short.
+                        if (pos > fileLength)
+                            break;
+                        in.skipBytes(words * 8);
+                    }
+                    entries.put(path,
+                        new Entry(lastModified, length, words, offset, null));
+                }
+                validLength = pos;
+            }
+        }
+        catch (EOFException e) {
+            // The last record was cut short. It will be written over.
+        }
+        catch (IOException e) {
+            Log.error(e);
+            entries.clear();
+            validLength = 0;
+        }
+    }
+
+    /**
+     * Writes the entries that have changed since the last write. Once most
+     * of the file is records that have been replaced, rewrites it.
+     */
+    synchronized void write()
+    {
+        if (file == null || closed)
+            return;
+        dirty = false;
+        pendingWords.set(0);
+        ArrayList<String> removedPaths = new ArrayList<String>();
+        for (Iterator<String> it = removed.iterator(); it.hasNext();) {
+            removedPaths.add(it.next());
+            it.remove();
+        }
+        try {
+            final FileChannel ch = getChannel();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            final Entry removedEntry =
+                new Entry(0, 0, REMOVED_RECORD, -1, null);
+            for (String path : removedPaths)
+                writeRecordHeader(out, path, removedEntry);
+            ArrayList<String> paths = new ArrayList<String>();
+            ArrayList<Entry> originals = new ArrayList<Entry>();
+            ArrayList<Entry> written = new ArrayList<Entry>();
+            long liveLength = getHeaderLength();
+            for (Map.Entry<String, Entry> mapEntry : entries.entrySet()) {
+                final String path = mapEntry.getKey();
+                final Entry entry = mapEntry.getValue();
+                liveLength += getRecordLength(path, entry);
+                if (entry.offset >= 0)
+                    continue;
+                writeRecordHeader(out, path, entry);
+                final long offset = validLength + out.size();
+                if (entry.bits != null) {
+                    for (long word : entry.bits)
+                        out.writeLong(word);
+                }
+                paths.add(path);
+                originals.add(entry);
+                written.add(new Entry(entry.lastModified, entry.length,
+                                      entry.words, offset, null));
+            }
+            out.flush();
+            writeFully(ch, ByteBuffer.wrap(bytes.toByteArray()), validLength);
+            validLength += bytes.size();
+            for (int i = 0; i < paths.size(); i++) {
+                // Unless the entry was replaced while we wrote it.
+                final Entry entry = originals.get(i);
+                if (entries.replace(paths.get(i), entry, written.get(i)) &&
+                    entry.bits != null)
+                    cache(written.get(i), entry.bits);
+            }
+            if (validLength > MIN_COMPACT_LENGTH &&
+                validLength > 2 * liveLength)
+                compact();
+        }
+        catch (IOException e) {
+            Log.error(e);
+            removed.addAll(removedPaths);
+        }
+    }
+
+    // Rewrites the file with only the records of the current entries.
+    private void compact() throws IOException
+    {
+        // Same directory, so the rename doesn't have to copy.
+        File temp = Utilities.getTempFile(file.getParentFile());
+        ArrayList<String> paths = new ArrayList<String>();
+        ArrayList<Entry> moved = new ArrayList<Entry>();
+        ArrayList<Entry> replaced = new ArrayList<Entry>();
+        DataOutputStream out = new DataOutputStream(
+            new BufferedOutputStream(temp.getOutputStream()));
+        long length;
+        try {
+            writeHeader(out);
+            for (Map.Entry<String, Entry> mapEntry : entries.entrySet()) {
+                final String path = mapEntry.getKey();
+                final Entry entry = mapEntry.getValue();
+                if (entry.offset < 0)
+                    continue; // Written by the next write().
+                writeRecordHeader(out, path, entry);
+                final long offset = out.size();
+                if (entry.words > 0) {
+                    for (long word : readBits(entry))
+                        out.writeLong(word);
+                }
+                paths.add(path);
+                replaced.add(entry);
+                moved.add(new Entry(entry.lastModified, entry.length,
+                                    entry.words, offset, null));
+            }
+            out.flush();
+            length = out.size();
+        }
+        finally {
+            out.close();
+        }
+        channel.close();
+        channel = null;
+        if (!Utilities.deleteRename(temp, file))
+            throw new IOException("unable to rename " + temp.canonicalPath());
+        validLength = length;
+        cache.clear();
+        cachedWords = 0;
+        for (int i = 0; i < paths.size(); i++)
+            entries.replace(paths.get(i), replaced.get(i), moved.get(i));
+    }
+
+    // Stops writing the file, which another index is going to use.
+    private synchronized void close()
+    {
+        closed = true;
+        if (channel != null) {
+            try {
+                channel.close();
+            }
+            catch (IOException e) {
+                Log.error(e);
+            }
+            channel = null;
+        }
+    }
+
+    private FileChannel getChannel() throws IOException
+    {
+        if (channel == null) {
+            channel = FileChannel.open(Paths.get(file.canonicalPath()),
+                                       StandardOpenOption.READ,
+                                       StandardOpenOption.WRITE,
+                                       StandardOpenOption.CREATE);
+            // Anything after the last complete record is written over.
+            channel.truncate(validLength);
+            if (validLength == 0) {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                DataOutputStream out = new DataOutputStream(bytes);
+                writeHeader(out);
+                out.flush();
+                writeFully(channel, ByteBuffer.wrap(bytes.toByteArray()), 0);
+                validLength = bytes.size();
+            }
+        }
+        return channel;
+    }
+
+    private static void writeFully(FileChannel ch, ByteBuffer buf,
+        long position) throws IOException
+    {
+        while (buf.hasRemaining())
+            ch.write(buf, position + buf.position());
+    }
+
+    private void writeHeader(DataOutputStream out) throws IOException
+    {
+        out.writeInt(MAGIC);
+        out.writeInt(VERSION);
+        out.writeUTF(charset.name());
+    }
+
+    private static void writeRecordHeader(DataOutputStream out, String path,
+        Entry entry) throws IOException
+    {
+        out.writeUTF(path);
+        out.writeLong(entry.lastModified);
+        out.writeLong(entry.length);
+        out.writeInt(entry.words);
+    }
+
+    private long getHeaderLength()
+    {
+        return 8 + getUTFLength(charset.name());
+    }
+
+    private static long getRecordHeaderLength(String path)
+    {
+        return getUTFLength(path) + 20;
+    }
+
+    private static long getRecordLength(String path, Entry entry)
+    {
+        return getRecordHeaderLength(path) +
+            (entry.words > 0 ? entry.words * 8L : 0);
+    }
+
+    // Returns the number of bytes writeUTF() writes for a string.
+    private static int getUTFLength(String s)
+    {
+        int length = 2;
+        for (int i = 0; i < s.length(); i++) {
+            final char c = s.charAt(i);
+            if (c >= 0x0001 && c <= 0x007f)
+                length += 1;
+            else if (c <= 0x07ff)
+                length += 2;
+            else
+                length += 3;
+        }
+        return length;
+    }
+
+    // Returns the filter of an entry, reading it from the file if it isn't
+    // in memory, or null if the entry has been replaced or the filter can't
+    // be read.
+    private long[] getBits(String path, Entry entry)
+    {
+        if (entry.bits != null)
+            return entry.bits;
+        synchronized (this) {
+            if (closed || entries.get(path) != entry)
+                return null;
+            long[] bits = cache.get(entry);
+            if (bits == null) {
+                try {
+                    bits = readBits(entry);
+                }
+                catch (IOException e) {
+                    Log.error(e);
+                    return null;
+                }
+                cache(entry, bits);
+            }
+            return bits;
+        }
+    }
+
+    private long[] readBits(Entry entry) throws IOException
+    {
+        final FileChannel ch = getChannel();
+        ByteBuffer buf = ByteBuffer.allocate(entry.words * 8);
+        while (buf.hasRemaining()) {
+            if (ch.read(buf, entry.offset + buf.position()) < 0)
+                throw new EOFException();
+        }
+        buf.flip();
+        final long[] bits = new long[entry.words];
+        buf.asLongBuffer().get(bits);
+        return bits;
+    }
+
+    private void cache(Entry entry, long[] bits)
+    {
+        cache.put(entry, bits);
+        cachedWords += bits.length;
+        // Least recently used first.
+        Iterator<long[]> it = cache.values().iterator();
+        while (cachedWords > MAX_CACHED_WORDS && it.hasNext()) {
+            cachedWords -= it.next().length;
+            it.remove();
+        }
+    }
+
+    public int size()
+    {
+        return entries.size();
+    }
+
+    /**
+     * Looks up a file. The last modified time and length must be those of
+     * the file now; if they don't match the entry, the result is UNKNOWN.
+     *
+     * @param trigrams  the trigrams a match must contain, or null
+     */
+    public int lookup(String path, long lastModified, long length,
+        long[] trigrams)
+    {
+        final Entry entry = entries.get(path);
+        if (entry == null || entry.lastModified != lastModified ||
+            entry.length != length)
+            return UNKNOWN;
+        if (entry.words == BINARY_RECORD)
+            return BINARY;
+        if (trigrams != null) {
+            final long[] bits = getBits(path, entry);
+            if (bits == null)
+                return UNKNOWN;
+            final int mask = bits.length * 64 - 1;
+            for (long t : trigrams) {
+                if (!isSet(bits, (int) t & mask) ||
+                    !isSet(bits, (int) (t >>> 21) & mask) ||
+                    !isSet(bits, (int) (t >>> 42) & mask))
+                    return NO_MATCH;
+            }
+        }
+        return MIGHT_MATCH;
+    }
+
+    /**
+     * Adds or replaces the entry for a file. The last modified time and
+     * length must have been taken before the file was read.
+     */
+    public void add(String path, long lastModified, long length, CharBuffer cb)
+    {
+        if (length > MAX_FILE_SIZE)
+            return;
+        put(path, lastModified, length, makeFilter(cb));
+    }
+
+    /**
+     * Adds or replaces the entry for a file whose text has been given to
+     * the builder.
+     */
+    public void add(String path, long lastModified, long length,
+        Builder builder)
+    {
+        if (length > MAX_FILE_SIZE)
+            return;
+        put(path, lastModified, length, builder.makeFilter());
+    }
+
+    private void put(String path, long lastModified, long length, long[] bits)
+    {
+        entries.put(path,
+            new Entry(lastModified, length, bits.length, -1, bits));
+        dirty = true;
+        if (pendingWords.addAndGet(bits.length) > MAX_PENDING_WORDS)
+            write();
+    }
+
+    /**
+     * Returns true if a file of the given length would be indexed.
+     */
+    public static boolean isIndexable(long length)
+    {
+        return length <= MAX_FILE_SIZE;
+    }
+
+    public void addBinary(String path, long lastModified, long length)
+    {
+        entries.put(path,
+            new Entry(lastModified, length, BINARY_RECORD, -1, null));
+        dirty = true;
+    }
+
+    private void remove(String path)
+    {
+        entries.remove(path);
+        removed.add(path);
+        dirty = true;
+    }
+
+    /**
+     * Called by the idle thread. Brings a batch of entries up to date with
+     * their files, and writes the index if it has changed.
+     */
+    public void refresh()
+    {
+        if (refreshIterator == null) {
+            if (System.currentTimeMillis() - lastRefresh > REFRESH_INTERVAL)
+                refreshIterator =
+                    new ArrayList<String>(entries.keySet()).iterator();
+        }
+        if (refreshIterator != null) {
+            for (int i = 0; i < REFRESH_BATCH_SIZE; i++) {
+                if (!refreshIterator.hasNext()) {
+                    refreshIterator = null;
+                    lastRefresh = System.currentTimeMillis();
+                    break;
+                }
+                refreshEntry(refreshIterator.next());
+            }
+        }
+        if (dirty)
+            write();
+    }
+
+    private void refreshEntry(String path)
+    {
+        final Entry entry = entries.get(path);
+        if (entry == null)
+            return;
+        final File f = File.getInstance(path);
+        if (f == null || !f.isFile() || f.length() > MAX_FILE_SIZE) {
+            remove(path);
+            return;
+        }
+        final long lastModified = f.lastModified();
+        final long length = f.length();
+        if (lastModified == entry.lastModified && length == entry.length)
+            return;
+        try (BufferedInputStream in =
+                 new BufferedInputStream(f.getInputStream())) {
+            // BUG!! Unicode files are treated as binary.
+            in.mark(4096);
+            byte[] bytes = new byte[4096];
+            final int n = in.read(bytes);
+            for (int i = 0; i < n; i++) {
+                if (bytes[i] == 0) {
+                    addBinary(path, lastModified, length);
+                    return;
+                }
+            }
+            in.reset();
+            BufferedReader reader =
+                new BufferedReader(new InputStreamReader(in, charset));
+            Builder builder = new Builder();
+            String s;
+            while ((s = reader.readLine()) != null)
+                builder.append(s);
+            add(path, lastModified, length, builder);
+        }
+        catch (IOException e) {
+            remove(path);
+        }
+    }
+
+    private static boolean isSet(long[] bits, int i)
+    {
+        return (bits[i >>> 6] & (1L << i)) != 0;
+    }
+
+    // Returns a 64-bit hash of a trigram.
+    private static long trigram(char a, char b, char c)
+    {
+        long t = ((long) Character.toLowerCase(a) << 32) |
+            ((long) Character.toLowerCase(b) << 16) | Character.toLowerCase(c);
+        t ^= t >>> 33;
+        t *= 0xff51afd7ed558ccdL;
+        t ^= t >>> 33;
+        t *= 0xc4ceb9fe1a85ec53L;
+        t ^= t >>> 33;
+        return t;
+    }
+
+    static long[] makeFilter(CharSequence text)
+    {
+        Builder builder = new Builder();
+        builder.append(text);
+        return builder.makeFilter();
+    }
+
+    private static long[] rehash(long[] table)
+    {
+        long[] newTable = new long[table.length * 2];
+        final int mask = newTable.length - 1;
+        for (long t : table) {
+            if (t != 0) {
+                int slot = (int) (t ^ (t >>> 32)) & mask;
+                while (newTable[slot] != 0)
+                    slot = (slot + 1) & mask;
+                newTable[slot] = t;
+            }
+        }
+        return newTable;
+    }
+
+    /**
+     * Returns the trigrams that any line matching the pattern must contain,
+     * or null if there are none that we can tell.
+     */
+    public static long[] getTrigrams(String pattern, boolean regularExpression)
+    {
+        List<String> literals;
+        if (regularExpression) {
+            literals = getRequiredLiterals(pattern);
+        } else {
+            literals = new ArrayList<String>();
+            literals.add(pattern);
+        }
+        ArrayList<Long> list = new ArrayList<Long>();
+        for (String s : literals) {
+            for (int i = 0; i + 2 < s.length(); i++) {
+                long t = trigram(s.charAt(i), s.charAt(i + 1), s.charAt(i + 2));
+                list.add(Long.valueOf(t != 0 ? t : 1));
+            }
+        }
+        if (list.isEmpty())
+            return null;
+        long[] trigrams = new long[list.size()];
+        for (int i = 0; i < trigrams.length; i++)
+            trigrams[i] = list.get(i).longValue();
+        return trigrams;
+    }
+
+    /**
+     * Returns strings that any match of a regular expression must contain.
+     *
+     * Only literal characters outside of groups and character classes are
+     * considered, and none at all if the expression has alternatives outside
+     * of a group, so the list may be empty.
+     */
+    static List<String> getRequiredLiterals(String regex)
+    {
+        ArrayList<String> list = new ArrayList<String>();
+        StringBuilder sb = new StringBuilder();
+        int depth = 0;
+        final int length = regex.length();
+        for (int i = 0; i < length; i++) {
+            char c = regex.charAt(i);
+            switch (c) {
+                case '\\':
+                    if (++i >= length)
+                        break;
+                    c = regex.charAt(i);
+                    if (c == 'Q') {
+                        // Quoted up to \E.
+                        int end = regex.indexOf("\\E", i + 1);
+                        if (end < 0)
+                            end = length;
+                        if (depth == 0)
+                            sb.append(regex, i + 1, end);
+                        i = end + 1;
+                    } else if (Character.isLetterOrDigit(c)) {
+                        // \w, \b, \1 and so on.
+                        flush(sb, list);
+                    } else if (depth == 0) {
+                        sb.append(c);
+                    }
+                    break;
+                case '[': {
+                    // Skip the character class.
+                    int j = i + 1;
+                    if (j < length && regex.charAt(j) == '^')
+                        ++j;
+                    if (j < length && regex.charAt(j) == ']')
+                        ++j;
+                    int nesting = 1;
+                    for (; j < length && nesting > 0; j++) {
+                        final char d = regex.charAt(j);
+                        if (d == '\\')
+                            ++j;
+                        else if (d == '[')
+                            ++nesting;
+                        else if (d == ']')
+                            --nesting;
+                    }
+                    i = j - 1;
+                    flush(sb, list);
+                    break;
+                }
+                case '|':
+                    // Alternatives outside of a group mean nothing is
+                    // required.
+                    if (depth == 0)
+                        return new ArrayList<String>();
+                    break;
+                case '(':
+                    ++depth;
+                    flush(sb, list);
+                    break;
+                case ')':
+                    --depth;
+                    flush(sb, list);
+                    break;
+                case '*':
+                case '?':
+                case '{':
+                    // The preceding character may not be there at all.
+                    if (sb.length() > 0)
+                        sb.setLength(sb.length() - 1);
+                    flush(sb, list);
+                    if (c == '{') {
+                        final int end = regex.indexOf('}', i);
+                        i = end >= 0 ? end : length;
+                    }
+                    break;
+                case '+':
+                case '.':
+                case '^':
+                case '$':
+                    flush(sb, list);
+                    break;
+                default:
+                    if (depth == 0)
+                        sb.append(c);
+                    break;
+            }
+        }
+        flush(sb, list);
+        return list;
+    }
+
+    private static void flush(StringBuilder sb, List<String> list)
+    {
+        if (sb.length() > 0) {
+            list.add(sb.toString());
+            sb.setLength(0);
+        }
+    }
+
+    /**
+     * Collects the trigrams of a file's text as it is read, so that the
+     * text doesn't have to be in memory all at once.
+     */
+    public static final class Builder
+    {
+        private long[] table = new long[1024];
+        private int count;
+
+        /**
+         * Adds the trigrams in some text. No trigram spans a line separator
+         * or a call to this method, so each call should be given whole
+         * lines.
+         */
+        public void append(CharSequence text)
+        {
+            final int limit = text.length();
+            for (int i = 0; i + 2 < limit; i++) {
+                final char c = text.charAt(i + 2);
+                if (c == '\n' || c == '\r') {
+                    i += 2;
+                    continue;
+                }
+                final char b = text.charAt(i + 1);
+                if (b == '\n' || b == '\r') {
+                    ++i;
+                    continue;
+                }
+                final char a = text.charAt(i);
+                if (a == '\n' || a == '\r')
+                    continue;
+                long t = trigram(a, b, c);
+                if (t == 0)
+                    t = 1; // 0 marks an empty slot.
+                int slot = (int) (t ^ (t >>> 32)) & (table.length - 1);
+                while (table[slot] != 0 && table[slot] != t)
+                    slot = (slot + 1) & (table.length - 1);
+                if (table[slot] == 0) {
+                    table[slot] = t;
+                    if (++count * 2 > table.length)
+                        table = rehash(table);
+                }
+            }
+        }
+
+        long[] makeFilter()
+        {
+            // About 8 bits per trigram, so that with 3 bits per trigram the
+            // chance of a false positive is about 3%.
+            int size = 64;
+            while (size < count * 8 && size < MAX_FILTER_BITS)
+                size <<= 1;
+            final long[] bits = new long[size / 64];
+            final int mask = size - 1;
+            for (long t : table) {
+                if (t != 0) {
+                    final int i = (int) t & mask;
+                    final int j = (int) (t >>> 21) & mask;
+                    final int k = (int) (t >>> 42) & mask;
+                    bits[i >>> 6] |= 1L << i;
+                    bits[j >>> 6] |= 1L << j;
+                    bits[k >>> 6] |= 1L << k;
+                }
+            }
+            return bits;
+        }
+    }
+
+    private static final class Entry
+    {
+        final long lastModified;
+        final long length;
+        final int words; // BINARY_RECORD if the file is binary.
+        final long offset; // Of the filter in the file, or -1 if not written.
+        final long[] bits; // Null once the entry has been written.
+
+        Entry(long lastModified, long length, int words, long offset,
+            long[] bits)
+        {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.words = words;
+            this.offset = offset;
+            this.bits = bits;
+        }
+    }
+}
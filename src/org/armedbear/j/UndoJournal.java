@@ -0,0 +1,116 @@
+/*
+ * UndoJournal.java
+ *
+ * Copyright (C) 2026 Kevin Krouse
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.armedbear.j;
+
+import java.util.ArrayList;
+
+/**
+ * An append-only store for the text kept by undo records.
+ *
+ * Text is appended to large character arrays and referred to by position
+ * and length, so an undo record that covers thousands of lines holds a few
+ * arrays of numbers rather than an object for each line. Each array counts
+ * the characters in it that are still in use; when the records that refer
+ * to an array have all been discarded, the array is dropped.
+ */
+public final class UndoJournal
+{
+    private static final int CHUNK_SIZE = 64 * 1024;
+
+    private final ArrayList<char[]> chunks = new ArrayList<char[]>();
+    private int[] liveCounts = new int[8];
+
+    // Number of characters used in the last chunk.
+    private int used;
+
+    // Total size of the chunks that have not been dropped, in characters.
+    private long allocated;
+
+    /**
+     * Appends a string to the journal.
+     *
+     * @param s         the string
+     * @return          the position of the string in the journal, to be
+     *                  passed to <code>getString()</code> and
+     *                  <code>release()</code> along with its length
+     */
+    public synchronized long append(String s)
+    {
+        final int length = s.length();
+        if (length == 0)
+            return 0;
+        int index = chunks.size() - 1;
+        if (index < 0 || chunks.get(index).length - used < length) {
+            if (index >= 0 && liveCounts[index] == 0) {
+                // Everything in the old last chunk has been released.
+                allocated -= chunks.set(index, null).length;
+            }
+            char[] chunk = new char[Math.max(CHUNK_SIZE, length)];
+            chunks.add(chunk);
+            allocated += chunk.length;
+            ++index;
+            if (index == liveCounts.length) {
+                int[] newLiveCounts = new int[index * 2];
+                System.arraycopy(liveCounts, 0, newLiveCounts, 0, index);
+                liveCounts = newLiveCounts;
+            }
+            used = 0;
+        }
+        s.getChars(0, length, chunks.get(index), used);
+        final long position = ((long) index << 32) | used;
+        used += length;
+        liveCounts[index] += length;
+        return position;
+    }
+
+    public synchronized String getString(long position, int length)
+    {
+        if (length == 0)
+            return "";
+        char[] chunk = chunks.get((int) (position >>> 32));
+        if (chunk == null)
+            throw new IllegalStateException("text has been released");
+        return new String(chunk, (int) position, length);
+    }
+
+    /**
+     * Tells the journal that the string at the given position is no longer
+     * needed.
+     */
+    public synchronized void release(long position, int length)
+    {
+        if (length == 0)
+            return;
+        final int index = (int) (position >>> 32);
+        liveCounts[index] -= length;
+        Debug.assertTrue(liveCounts[index] >= 0);
+        if (liveCounts[index] == 0 && index < chunks.size() - 1) {
+            // The last chunk is kept, since it is still being filled.
+            allocated -= chunks.set(index, null).length;
+        }
+    }
+
+    // Returns the approximate number of bytes held by the journal.
+    public synchronized long getMemoryUsage()
+    {
+        return allocated * 2;
+    }
+}
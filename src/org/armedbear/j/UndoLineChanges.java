@@ -0,0 +1,280 @@
+/*
+ * UndoLineChanges.java
+ *
+ * Copyright (C) 2026 Kevin Krouse
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.armedbear.j;
+
+import java.util.Arrays;
+import javax.swing.undo.AbstractUndoableEdit;
+import javax.swing.undo.UndoableEdit;
+
+/**
+ * Changes to the text of any number of lines, recorded in the buffer's undo
+ * journal.
+ *
+ * This is meant for commands that change many lines at once (sorting,
+ * replacing all occurrences, detabbing a region, etc.). Unlike
+ * <code>UndoLineEdit</code>, it doesn't save or restore the caret, so the
+ * command should add an <code>UndoMove</code> first if the caret needs to
+ * be put back. Successive changes to the same buffer within a compound edit
+ * are coalesced into a single edit, and a line that is changed repeatedly is
+ * only recorded once.
+ */
+public final class UndoLineChanges extends AbstractUndoableEdit
+    implements Constants, UndoableEdit
+{
+    private static final long serialVersionUID = 1L;
+
+    private static final byte NEW   = 0x01;
+    private static final byte SAVED = 0x02;
+
+    private final Buffer buffer;
+    private final UndoJournal journal;
+    private final int preModCount;
+    private int postModCount;
+
+    private final State preState = new State();
+    private State postState;
+
+    // Set once the edit can't be coalesced with any that follow.
+    private boolean ended;
+
+    public UndoLineChanges(Buffer buffer)
+    {
+        this.buffer = buffer;
+        final UndoManager undoManager = buffer.getUndoManager();
+        journal = undoManager != null ? undoManager.getJournal() : new UndoJournal();
+        preModCount = buffer.getModCount();
+        if (buffer.needsRenumbering())
+            buffer.renumber();
+    }
+
+    public UndoLineChanges(Buffer buffer, Line line)
+    {
+        this(buffer);
+        add(line);
+    }
+
+    /**
+     * Records the text of a line that is about to be changed.
+     *
+     * @param line      the line
+     */
+    public void add(Line line)
+    {
+        final int lineNumber = line.lineNumber();
+        if (preState.count > 0 &&
+            preState.lineNumbers[preState.count - 1] == lineNumber)
+            return;
+        preState.add(journal, line);
+    }
+
+    public final int size()
+    {
+        return preState.count;
+    }
+
+    // Called by the undo manager when another edit is added after this one
+    // at the top level, so that edits that belong to different commands
+    // aren't undone together.
+    /*package*/ void end()
+    {
+        ended = true;
+    }
+
+    public boolean addEdit(UndoableEdit edit)
+    {
+        if (edit instanceof UndoLineChanges && canUndo() && !ended &&
+            postState == null) {
+            UndoLineChanges e = (UndoLineChanges) edit;
+            if (e.buffer == buffer && e.postState == null) {
+                final State s = e.preState;
+                for (int i = 0; i < s.count; i++) {
+                    if (preState.count > 0 &&
+                        preState.lineNumbers[preState.count - 1] == s.lineNumbers[i])
+                        journal.release(s.positions[i], s.lengths[i]);
+                    else
+                        preState.add(s.lineNumbers[i], s.positions[i],
+                                     s.lengths[i], s.originalTexts[i], s.bits[i]);
+                }
+                s.count = 0;
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void undo()
+    {
+        super.undo();
+        if (buffer.needsRenumbering())
+            buffer.renumber();
+        final LineIndex index = buffer.getLineIndex();
+        final boolean savePostState = postState == null;
+        if (savePostState) {
+            postModCount = buffer.getModCount();
+            postState = new State();
+        }
+        // Changes are undone in the reverse order, so a line that was
+        // changed more than once ends up with the text it had before the
+        // first change.
+        for (int i = preState.count; i-- > 0;) {
+            final Line line = index.getLine(preState.lineNumbers[i]);
+            if (line == null) {
+                Debug.bug();
+                continue;
+            }
+            if (savePostState)
+                postState.add(journal, line);
+            preState.restore(journal, i, line);
+        }
+        if (savePostState)
+            postState.reverse();
+        changed(preModCount);
+    }
+
+    public void redo()
+    {
+        super.redo();
+        if (buffer.needsRenumbering())
+            buffer.renumber();
+        final LineIndex index = buffer.getLineIndex();
+        for (int i = 0; i < postState.count; i++) {
+            final Line line = index.getLine(postState.lineNumbers[i]);
+            if (line == null) {
+                Debug.bug();
+                continue;
+            }
+            postState.restore(journal, i, line);
+        }
+        changed(postModCount);
+    }
+
+    public void die()
+    {
+        super.die();
+        preState.release(journal);
+        if (postState != null)
+            postState.release(journal);
+    }
+
+    private void changed(int modCount)
+    {
+        final int oldModCount = buffer.getModCount();
+        buffer.setModCount(modCount);
+        if (modCount != oldModCount) {
+            // Buffer was changed.
+            buffer.invalidate();
+            Sidebar.setUpdateFlagInAllFrames(SIDEBAR_MODIFIED_BUFFER_COUNT |
+                SIDEBAR_REPAINT_BUFFER_LIST);
+            Sidebar.repaintBufferListInAllFrames();
+        }
+        // The caret isn't restored here, but it must stay within its line.
+        for (EditorIterator it = new EditorIterator(); it.hasNext();) {
+            Editor ed = it.next();
+            if (ed.getBuffer() == buffer) {
+                final Line dotLine = ed.getDotLine();
+                if (dotLine != null && ed.getDotOffset() > dotLine.length())
+                    ed.getDot().setOffset(dotLine.length());
+                final Position mark = ed.getMark();
+                if (mark != null && mark.getOffset() > mark.getLine().length())
+                    mark.setOffset(mark.getLine().length());
+            }
+        }
+    }
+
+    // The text and status of a list of lines, with the text kept in the
+    // journal.
+    private static final class State
+    {
+        int count;
+        int[] lineNumbers = new int[8];
+        long[] positions = new long[8];
+        int[] lengths = new int[8];
+        String[] originalTexts = new String[8];
+        byte[] bits = new byte[8];
+
+        void add(UndoJournal journal, Line line)
+        {
+            final String text = line.getText();
+            byte b = 0;
+            if (line.isNew())
+                b |= NEW;
+            if (line.isSaved())
+                b |= SAVED;
+            add(line.lineNumber(), journal.append(text), text.length(),
+                line.getOriginalText(), b);
+        }
+
+        void add(int lineNumber, long position, int length,
+            String originalText, byte b)
+        {
+            if (count == lineNumbers.length) {
+                final int capacity = count * 2;
+                lineNumbers = Arrays.copyOf(lineNumbers, capacity);
+                positions = Arrays.copyOf(positions, capacity);
+                lengths = Arrays.copyOf(lengths, capacity);
+                originalTexts = Arrays.copyOf(originalTexts, capacity);
+                bits = Arrays.copyOf(bits, capacity);
+            }
+            lineNumbers[count] = lineNumber;
+            positions[count] = position;
+            lengths[count] = length;
+            originalTexts[count] = originalText;
+            bits[count] = b;
+            ++count;
+        }
+
+        void restore(UndoJournal journal, int i, Line line)
+        {
+            line.setText(journal.getString(positions[i], lengths[i]));
+            line.setOriginalText(originalTexts[i]);
+            line.setNew((bits[i] & NEW) != 0);
+            line.setSaved((bits[i] & SAVED) != 0);
+        }
+
+        void reverse()
+        {
+            for (int i = 0, j = count - 1; i < j; i++, j--) {
+                int n = lineNumbers[i];
+                lineNumbers[i] = lineNumbers[j];
+                lineNumbers[j] = n;
+                long position = positions[i];
+                positions[i] = positions[j];
+                positions[j] = position;
+                n = lengths[i];
+                lengths[i] = lengths[j];
+                lengths[j] = n;
+                String s = originalTexts[i];
+                originalTexts[i] = originalTexts[j];
+                originalTexts[j] = s;
+                byte b = bits[i];
+                bits[i] = bits[j];
+                bits[j] = b;
+            }
+        }
+
+        void release(UndoJournal journal)
+        {
+            for (int i = 0; i < count; i++)
+                journal.release(positions[i], lengths[i]);
+            count = 0;
+        }
+    }
+}
@@ -25,6 +25,50 @@ import javax.swing.undo.UndoableEdit;
 
 public final class UndoManager extends javax.swing.undo.UndoManager
 {
+    private final UndoJournal journal = new UndoJournal();
+
+    // In bytes. If negative, the undoMemoryLimit preference is used.
+    private long memoryLimit = -1;
+
+    public UndoJournal getJournal()
+    {
+        return journal;
+    }
+
+    public void setMemoryLimit(long memoryLimit)
+    {
+        this.memoryLimit = memoryLimit;
+    }
+
+    private long getMemoryLimit()
+    {
+        if (memoryLimit >= 0)
+            return memoryLimit;
+        return Editor.preferences().getIntegerProperty(Property.UNDO_MEMORY_LIMIT)
+            * 1024L * 1024L;
+    }
+
+    public synchronized boolean addEdit(UndoableEdit edit)
+    {
+        // Line changes are only coalesced within a compound edit.
+        final UndoableEdit last = lastEdit();
+        if (last instanceof UndoLineChanges)
+            ((UndoLineChanges) last).end();
+        final boolean result = super.addEdit(edit);
+        if (journal.getMemoryUsage() > 0) {
+            final long limit = getMemoryLimit();
+            if (limit > 0) {
+                // Discard the oldest edits until the journal is back under
+                // the limit. The most recent edit is always kept, since it
+                // may be a compound edit that is still in progress.
+                while (journal.getMemoryUsage() > limit && edits.size() > 1 &&
+                    edits.get(0).canUndo())
+                    trimEdits(0, 0);
+            }
+        }
+        return result;
+    }
+
     public synchronized void undo()
     {
         UndoableEdit edit = editToBeUndone();
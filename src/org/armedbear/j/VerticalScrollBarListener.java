@@ -83,16 +83,16 @@ public final class VerticalScrollBarListener implements AdjustmentListener
         if (line == display.getTopLine())
             return; // No change.
         if (line != null) {
-            display.setTopLine(line);
-            if (line instanceof ImageLine)
+            if (line instanceof ImageLine) {
+                display.setTopLine(line);
                 display.setPixelsAboveTopLine(newValue - y);
-            else if (newValue > y) {
-                line = line.nextVisible();
-                if (line != null)
-                    display.setTopLine(line);
+                editor.maybeScrollCaret();
+                display.repaint();
+                return;
             }
-            editor.maybeScrollCaret();
-            display.repaint();
+            if (newValue > y && line.nextVisible() != null)
+                line = line.nextVisible();
+            display.scrollTo(line);
         }
     }
 }
@@ -101,8 +101,8 @@ public final class EventHandler implements Runnable
                                 Log.error(e);
                             }
                         } else {
-                            Log.debug("threadRef is null");
-                            Log.debug("event = " + event);
+                            Log.debug(Log.JDB, "threadRef is null");
+                            Log.debug(Log.JDB, "event = {}", event);
                         }
                     }
                     jdb.fireContextChanged();
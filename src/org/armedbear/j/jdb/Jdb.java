@@ -789,7 +789,8 @@ public final class Jdb extends Buffer implements JdbConstants
                     for (ResolvableBreakpoint bp : breakpoints) {
                         String className = bp.getClassName();
                         if (className != null) {
-                            Log.debug("adding class prepare request for |" + className + "|");
+                            Log.debug(Log.JDB, "adding class prepare request for |{}|",
+                                      className);
                             ClassPrepareRequest cpr =
                                     mgr.createClassPrepareRequest();
                             cpr.addClassFilter(className);
@@ -797,7 +798,7 @@ public final class Jdb extends Buffer implements JdbConstants
                         }
                     }
                 } else {
-                    Log.debug("startProcessInternal adding default breakpoint");
+                    Log.debug(Log.JDB, "startProcessInternal adding default breakpoint");
                     breakpoints.add(new MethodBreakpoint(this, mainClass,
                         "main"));
                     fireBreakpointChanged();
@@ -820,13 +821,14 @@ public final class Jdb extends Buffer implements JdbConstants
             for (ResolvableBreakpoint bp : breakpoints) {
                 if (!bp.isResolved()) {
                     try {
-                        Log.debug("bp.getClassName() = " + bp.getClassName());
+                        Log.debug(Log.JDB, "bp.getClassName() = {}",
+                                  bp.getClassName());
                         EventRequest eventRequest = bp.resolveAgainstPreparedClasses();
                         if (eventRequest != null) {
-                            Log.debug("bp was resolved");
+                            Log.debug(Log.JDB, "bp was resolved");
                             eventRequest.enable();
                         } else
-                            Log.debug("bp was NOT resolved");
+                            Log.debug(Log.JDB, "bp was NOT resolved");
                     }
                     catch (Exception e) {
                         Log.error(e);
@@ -910,13 +912,13 @@ public final class Jdb extends Buffer implements JdbConstants
                 String sourceName = null;
                 try {
                     sourceName = location.sourceName();
-                    Log.debug("sourceName = |" + sourceName + "|");
+                    Log.debug(Log.JDB, "sourceName = |{}|", sourceName);
                 }
                 catch (AbsentInformationException e) {
                     Log.error(e);
                 }
                 int lineNumber = location.lineNumber();
-                Log.debug("lineNumber = " + lineNumber);
+                Log.debug(Log.JDB, "lineNumber = {}", lineNumber);
                 Log.debug(location.declaringType().name());
                 if (sourceName != null)
                     follow(editor, className, sourceName, lineNumber - 1);
@@ -1160,7 +1162,7 @@ public final class Jdb extends Buffer implements JdbConstants
         }
         // Try current directory.
         File dir = Editor.currentEditor().getCurrentDirectory();
-        Log.debug("trying dir = " + dir);
+        Log.debug(Log.JDB, "trying dir = {}", dir);
         File file = File.getInstance(dir, fileName);
         if (file != null && file.isFile())
             return file;
@@ -1358,7 +1360,7 @@ public final class Jdb extends Buffer implements JdbConstants
             EventRequestManager mgr = vm.eventRequestManager();
             if (catchMode != CATCH_NONE) {
                 List<? extends ExceptionRequest> list = mgr.exceptionRequests();
-                Log.debug("exception request count = " + list.size());
+                Log.debug(Log.JDB, "exception request count = {}", list.size());
                 mgr.deleteEventRequests(list);
             }
             if (newCatchMode != CATCH_NONE) {
@@ -1380,10 +1382,10 @@ public final class Jdb extends Buffer implements JdbConstants
         if (vm == null)
             return;
         if (currentThread == null) {
-            Log.debug("currentThread is null");
+            Log.debug(Log.JDB, "currentThread is null");
             return;
         }
-        Log.debug("currentThread = " + currentThread.name());
+        Log.debug(Log.JDB, "currentThread = {}", currentThread.name());
         int count = 1;
         if (args != null) {
             try {
@@ -1408,10 +1410,10 @@ public final class Jdb extends Buffer implements JdbConstants
         if (vm == null)
             return;
         if (currentThread == null) {
-            Log.debug("currentThread is null");
+            Log.debug(Log.JDB, "currentThread is null");
             return;
         }
-        Log.debug("currentThread = " + currentThread.name());
+        Log.debug(Log.JDB, "currentThread = {}", currentThread.name());
         boolean out = false;
         int count = 1;
         if (args != null) {
@@ -1442,7 +1444,7 @@ public final class Jdb extends Buffer implements JdbConstants
         if (vm == null)
             return;
         if (currentThread == null) {
-            Log.debug("currentThread is null");
+            Log.debug(Log.JDB, "currentThread is null");
             return;
         }
         clearStepForThread(currentThread);
@@ -1489,7 +1491,7 @@ public final class Jdb extends Buffer implements JdbConstants
                     }
                     // getStringValueOfObject() resumes the current thread, so
                     // the context has changed...
-                    Log.debug("doPrint calling fireContextChanged");
+                    Log.debug(Log.JDB, "doPrint calling fireContextChanged");
                     fireContextChanged();
                 }
             }
@@ -1538,7 +1540,7 @@ public final class Jdb extends Buffer implements JdbConstants
         if (vm == null)
             return;
         if (currentThread == null) {
-            Log.debug("currentThread is null");
+            Log.debug(Log.JDB, "currentThread is null");
             return;
         }
         boolean contextChanged = false;
@@ -1665,14 +1667,14 @@ public final class Jdb extends Buffer implements JdbConstants
     private static Value getValue(String expression, StackFrame frame)
         throws Exception
     {
-        Log.debug("getValue");
+        Log.debug(Log.JDB, "getValue");
         StringTokenizer st = new StringTokenizer(expression, "[].");
         if (!st.hasMoreTokens()) {
-            Log.debug("no more tokens");
+            Log.debug(Log.JDB, "no more tokens");
             throw new NoSuchFieldException();
         }
         String token = st.nextToken();
-        Log.debug("token = |" + token + "|");
+        Log.debug(Log.JDB, "token = |{}|", token);
         Value currentValue = null;
         Field currentField = null;
         ObjectReference obj = null;
@@ -1682,19 +1684,19 @@ public final class Jdb extends Buffer implements JdbConstants
             if (currentValue == null)
                 throw new NoSuchFieldException(token);
         } else {
-            Log.debug("calling visibleVariableByName");
+            Log.debug(Log.JDB, "calling visibleVariableByName");
             local = frame.visibleVariableByName(token);
-            Log.debug("local = " + local);
+            Log.debug(Log.JDB, "local = {}", local);
             if (local != null) {
                 currentValue = frame.getValue(local);
-                Log.debug("currentValue = " + currentValue);
+                Log.debug(Log.JDB, "currentValue = {}", currentValue);
             } else {
                 ReferenceType refType = frame.location().declaringType();
-                Log.debug("refType = " + refType);
+                Log.debug(Log.JDB, "refType = {}", refType);
                 obj = frame.thisObject();
                 if (obj == null) {
                     // Static method.
-                    Log.debug("static method");
+                    Log.debug(Log.JDB, "static method");
                     currentField = refType.fieldByName(token);
                     if (currentField != null && currentField.isStatic())
                         currentValue = refType.getValue(currentField);
@@ -1705,7 +1707,7 @@ public final class Jdb extends Buffer implements JdbConstants
                     if (currentField != null)
                         currentValue = obj.getValue(currentField);
                     else {
-                        Log.debug("throwing NoSuchFieldException ...");
+                        Log.debug(Log.JDB, "throwing NoSuchFieldException ...");
                         throw new NoSuchFieldException();
                     }
                 }
@@ -1714,7 +1716,7 @@ public final class Jdb extends Buffer implements JdbConstants
         while (st.hasMoreTokens() && currentValue != null) {
             String prevToken = token;
             token = st.nextToken();
-            Log.debug("while loop token = |" + token + "|");
+            Log.debug(Log.JDB, "while loop token = |{}|", token);
             Object arg;
             try {
                 arg = token;
@@ -1731,7 +1733,7 @@ public final class Jdb extends Buffer implements JdbConstants
                     throw new ArrayIndexOutOfBoundsException();
             } else if (currentValue instanceof ObjectReference &&
                 arg instanceof String) {
-                Log.debug("object reference, string");
+                Log.debug(Log.JDB, "object reference, string");
                 obj = (ObjectReference) currentValue;
                 ReferenceType refType = obj.referenceType();
                 currentField = refType.fieldByName(token);
@@ -1740,7 +1742,8 @@ public final class Jdb extends Buffer implements JdbConstants
             } else
                 throw new Exception();
         }
-        Log.debug("getValue returning currentValue = " + currentValue);
+        Log.debug(Log.JDB, "getValue returning currentValue = {}",
+                  currentValue);
         return currentValue;
     }
 
@@ -54,7 +54,7 @@ public final class LineNumberBreakpoint extends ResolvableBreakpoint
             className = packageName.concat(".").concat(name);
         else
             className = name;
-        Log.debug("LineNumberBreakpoint className = |" + className + "|");
+        Log.debug(Log.JDB, "LineNumberBreakpoint className = |{}|", className);
         // Our line numbers are zero-based.
         lineNumber = line.lineNumber() + 1;
     }
@@ -76,10 +76,10 @@ public final class LineNumberBreakpoint extends ResolvableBreakpoint
     public EventRequest resolveEventRequest(ReferenceType refType)
         throws Exception
     {
-        Log.debug("LineNumberBreakpoint.resolveEventRequest");
+        Log.debug(Log.JDB, "LineNumberBreakpoint.resolveEventRequest");
         Location location = findLocation(refType, lineNumber);
         if (location == null) {
-            Log.debug("resolveEventRequest location is null");
+            Log.debug(Log.JDB, "resolveEventRequest location is null");
             return null;
         }
         EventRequestManager erm =
@@ -84,7 +84,7 @@ public final class MethodBreakpoint extends ResolvableBreakpoint
     {
         file = JavaSource.findSource(refType.name(), jdb.getSourcePath());
         if (file == null) {
-            Log.debug("setBreakpointInSource findSource returned null");
+            Log.debug(Log.JDB, "setBreakpointInSource findSource returned null");
             return;
         }
         Buffer buf = Editor.getBuffer(file);
@@ -104,7 +104,7 @@ public final class MethodBreakpoint extends ResolvableBreakpoint
             lookFor = lookFor.substring(index+1);
         lookFor += '.';
         lookFor += method.name();
-        Log.debug("lookFor = |" + lookFor + "|");
+        Log.debug(Log.JDB, "lookFor = |{}|", lookFor);
         Line begin = null;
         Line end = null;
         for (int i = 0; i < tags.size(); i++) {
@@ -100,21 +100,22 @@ public abstract class ResolvableBreakpoint
 
     public EventRequest resolveAgainstPreparedClasses() throws Exception
     {
-        Log.debug("resolveAgainstPreparedClasses className = |" + className + "|");
+        Log.debug(Log.JDB, "resolveAgainstPreparedClasses className = |{}|",
+                  className);
         Iterator<ReferenceType> iter = jdb.getVM().allClasses().iterator();
         while (eventRequest == null && iter.hasNext()) {
             ReferenceType refType = iter.next();
             if (refType.isPrepared() && refType.name().equals(className)) {
                 eventRequest = resolveEventRequest(refType);
                 if (eventRequest != null) {
-                    Log.debug("resolved!");
+                    Log.debug(Log.JDB, "resolved!");
                     resolved();
                     jdb.fireBreakpointChanged();
                     return eventRequest;
                 }
             }
         }
-        Log.debug("*** not resolved");
+        Log.debug(Log.JDB, "*** not resolved");
         return null;
     }
 
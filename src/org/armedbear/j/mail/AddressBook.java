@@ -60,7 +60,7 @@ public final class AddressBook
                 if (file != null && file.isFile())
                     inputStream = file.getInputStream();
                 else if (backupFile != null && backupFile.isFile()) {
-                    Log.debug("getGlobalAddressBook loading backup file");
+                    Log.debug(Log.MAIL, "getGlobalAddressBook loading backup file");
                     inputStream = backupFile.getInputStream();
                 }
                 if (inputStream != null) {
@@ -142,9 +142,12 @@ public final class AddressBook
                     return;
             }
         }
-        Log.debug("calling addEntry a.getAddress() = |" + a.getAddress() + "|");
-        Log.debug("calling addEntry a.getPersonal() = |" + a.getPersonal() + "|");
-        Log.debug("calling addEntry personal = |" + personal + "| address = |" + address + "|");
+        Log.debug(Log.MAIL, "calling addEntry a.getAddress() = |{}|",
+                  a.getAddress());
+        Log.debug(Log.MAIL, "calling addEntry a.getPersonal() = |{}|",
+                  a.getPersonal());
+        Log.debug(Log.MAIL, "calling addEntry personal = |{}| address = |{}|",
+                  personal, address);
         addEntry(new AddressBookEntry(personal, address));
     }
 
@@ -84,6 +84,10 @@ public final class CheckMailTask extends IdleThreadTask
         // Avoid locking unnecessarily.
         if (!mb.getBooleanProperty(Property.CHECK_ENABLED))
             return;
+        // The server tells us about new messages in this one.
+        if (mb instanceof ImapMailboxBuffer &&
+            ((ImapMailboxBuffer) mb).isPushEnabled())
+            return;
         int interval = mb.getIntegerProperty(Property.CHECK_INTERVAL);
         if (interval <= 0)
             return;
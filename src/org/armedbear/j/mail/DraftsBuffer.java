@@ -128,8 +128,8 @@ public final class DraftsBuffer extends MailboxBuffer
                 Debug.bug();
                 return;
             }
-            Log.debug("delete renaming " + file.getName() + " to " +
-                    deleted.getName());
+            Log.debug(Log.MAIL, "delete renaming {} to {}",
+                      file.getName(), deleted.getName());
             if (file.renameTo(deleted)) {
                 entry.setFile(deleted);
                 entry.setFlags(entry.getFlags() | MailboxEntry.DELETED);
@@ -171,8 +171,8 @@ public final class DraftsBuffer extends MailboxBuffer
                 Debug.bug();
                 return;
             }
-            Log.debug("undelete renaming " + file.getName() + " to " +
-                    undeleted.getName());
+            Log.debug(Log.MAIL, "undelete renaming {} to {}",
+                      file.getName(), undeleted.getName());
             if (file.renameTo(undeleted)) {
                 entry.setFile(undeleted);
                 entry.setFlags(entry.getFlags() & ~MailboxEntry.DELETED);
@@ -241,7 +241,7 @@ public final class DraftsBuffer extends MailboxBuffer
             for (final String name : names) {
                 if (name.indexOf(".deleted") >= 0) {
                     File file = File.getInstance(directory, name);
-                    Log.debug("deleting " + file);
+                    Log.debug(Log.MAIL, "deleting {}", file);
                     file.delete();
                     result = true;
                 }
@@ -0,0 +1,154 @@
+/*
+ * ImapIdler.java
+ *
+ * Copyright (C) 2026 Kevin Krouse
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.armedbear.j.mail;
+
+import java.util.Timer;
+import java.util.TimerTask;
+import org.armedbear.j.Log;
+
+/**
+ * Watches an IMAP mailbox with IDLE (RFC 2177) on a connection of its own,
+ * passing the changes the server reports to the mailbox as they happen, so
+ * the mailbox doesn't have to be polled.
+ */
+public final class ImapIdler implements Runnable
+{
+    // RFC 2177 says servers may log out clients that have been idle for 30
+    // minutes, so IDLE is restarted before then.
+    private static final long RESTART_INTERVAL = 29 * 60 * 1000;
+
+    // A connection that's silent for longer than this is assumed to have
+    // been lost.
+    private static final int TIMEOUT = 31 * 60 * 1000;
+
+    private static final long MIN_BACKOFF = 1000;
+    private static final long MAX_BACKOFF = 5 * 60 * 1000;
+
+    private static Timer timer;
+
+    private final ImapMailboxBuffer mailbox;
+    private final ImapSession session;
+    private final String folderName;
+
+    private volatile boolean stopped;
+    private volatile boolean supported = true;
+
+    public ImapIdler(ImapMailboxBuffer mailbox, ImapSession session)
+    {
+        this.mailbox = mailbox;
+        this.session = session;
+        folderName = session.getFolderName();
+        session.setMailbox(mailbox);
+        session.setTimeout(TIMEOUT);
+    }
+
+    public void start()
+    {
+        Thread thread = new Thread(this, "idle " + folderName);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public synchronized void stop()
+    {
+        stopped = true;
+        notifyAll();
+        session.disconnect();
+    }
+
+    // Returns false once the idler has stopped, or if the server turned out
+    // not to support IDLE.
+    public final boolean isActive()
+    {
+        return supported && !stopped;
+    }
+
+    public void run()
+    {
+        long backoff = MIN_BACKOFF;
+        boolean connected = false;
+        while (!stopped) {
+            if (session.verifySelected(folderName)) {
+                if (!session.hasCapability("IDLE")) {
+                    Log.warn("IDLE not supported for " + folderName);
+                    supported = false;
+                    break;
+                }
+                if (!connected) {
+                    connected = true;
+                    if (backoff > MIN_BACKOFF) {
+                        // We may have missed something while we were
+                        // disconnected.
+                        mailbox.synchronize();
+                    }
+                }
+                if (stopped)
+                    break;
+                TimerTask restart = schedule(new Runnable() {
+                    public void run()
+                    {
+                        session.stopIdle();
+                    }
+                }, RESTART_INTERVAL);
+                boolean succeeded = session.idle(mailbox);
+                restart.cancel();
+                if (succeeded) {
+                    backoff = MIN_BACKOFF;
+                    continue;
+                }
+            }
+            if (stopped)
+                break;
+            Log.debug(Log.MAIL, "ImapIdler {} reconnecting in {} ms",
+                      folderName, backoff);
+            connected = false;
+            session.disconnect();
+            synchronized (this) {
+                if (!stopped) {
+                    try {
+                        wait(backoff);
+                    }
+                    catch (InterruptedException e) {
+                        break;
+                    }
+                }
+            }
+            backoff = Math.min(backoff * 2, MAX_BACKOFF);
+        }
+        session.logout();
+        Log.debug(Log.MAIL, "ImapIdler {} stopped", folderName);
+    }
+
+    // Runs r on the timer thread after delay milliseconds.
+    static synchronized TimerTask schedule(final Runnable r, long delay)
+    {
+        if (timer == null)
+            timer = new Timer("imap idle timer", true);
+        TimerTask task = new TimerTask() {
+            public void run()
+            {
+                r.run();
+            }
+        };
+        timer.schedule(task, delay);
+        return task;
+    }
+}
@@ -23,9 +23,16 @@ package org.armedbear.j.mail;
 import java.io.UnsupportedEncodingException;
 import java.net.MalformedURLException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeSet;
 import javax.swing.SwingUtilities;
 import org.armedbear.j.BackgroundProcess;
 import org.armedbear.j.Buffer;
@@ -50,18 +57,37 @@ import org.armedbear.j.util.Utilities;
 import org.armedbear.j.View;
 
 public final class ImapMailboxBuffer extends MailboxBuffer
+    implements ImapSession.IdleListener
 {
     private static final int DEFAULT_PORT = 143;
 
+    // Most entries prefetch() collects for each message it may fetch.
+    private static final int PREFETCH_CANDIDATES_PER_MESSAGE = 4;
+
     private final ImapSession session;
     private final String folderName;
 
     private int messageCount = -1;
     private int uidValidity;
+    private long highestModSeq;
     private int uidLast;
     private ImapMailboxCache mailboxCache;
     private boolean cancelled;
     private Thread backgroundThread;
+    private ImapIdler idler;
+    private ImapPrefetcher prefetcher;
+
+    // Changes reported by the idler, waiting to be applied. Guarded by
+    // pushedFlags.
+    private final HashMap<Integer, Integer> pushedFlags =
+        new HashMap<Integer, Integer>();
+    private final HashSet<Integer> pushedExpunges = new HashSet<Integer>();
+    // Message numbers of messages whose flags changed, reported without
+    // their UIDs.
+    private final TreeSet<Integer> pushedMessageNumbers = new TreeSet<Integer>();
+    private boolean pushedNewMessages;
+    private boolean pushedResync;
+    private boolean pushRetryScheduled;
 
     public ImapMailboxBuffer(ImapURL url, ImapSession session)
     {
@@ -70,7 +96,7 @@ public final class ImapMailboxBuffer extends MailboxBuffer
         session.setMailbox(this);
         String tunnel = getStringProperty(Property.TUNNEL);
         if (tunnel != null) {
-            Log.debug("tunnel = |" + tunnel + "|");
+            Log.debug(Log.MAIL, "tunnel = |{}|", tunnel);
             session.setTunnel(tunnel);
         }
         folderName = session.getFolderName();
@@ -125,6 +151,11 @@ public final class ImapMailboxBuffer extends MailboxBuffer
         return uidValidity;
     }
 
+    public final long getHighestModSeq()
+    {
+        return highestModSeq;
+    }
+
     public final int getMessageCount()
     {
         return messageCount;
@@ -137,7 +168,7 @@ public final class ImapMailboxBuffer extends MailboxBuffer
 
     public void setAlertText(final String s)
     {
-        Log.debug("alert = " + s);
+        Log.debug(Log.MAIL, "alert = {}", s);
         Runnable r = new Runnable() {
             public void run()
             {
@@ -149,7 +180,7 @@ public final class ImapMailboxBuffer extends MailboxBuffer
 
     public void setStatusText(final String s)
     {
-        Log.debug("status = " + s);
+        Log.debug(Log.MAIL, "status = {}", s);
         Runnable r = new Runnable() {
             public void run()
             {
@@ -173,7 +204,7 @@ public final class ImapMailboxBuffer extends MailboxBuffer
                 try {
                     if (session.verifyConnected() && session.verifySelected(folderName)) {
                         if (session.isReadOnly()) {
-                            Log.debug("expunge - read-only - reselecting...");
+                            Log.debug(Log.MAIL, "expunge - read-only - reselecting...");
                             session.reselect(folderName);
                             if (session.isReadOnly()) {
                                 Log.error("expunge - mailbox is read-only");
@@ -184,9 +215,9 @@ public final class ImapMailboxBuffer extends MailboxBuffer
                         if (messageCache != null)
                             messageCache.removeDeletedEntries(Collections.unmodifiableList(entries));
                         if (session.close()) {
-                            Log.debug("expunge back from close(), calling reselect()");
+                            Log.debug(Log.MAIL, "expunge back from close(), calling reselect()");
                             if (session.reselect(folderName)) {
-                                Log.debug("expunge back from reselect()");
+                                Log.debug(Log.MAIL, "expunge back from reselect()");
                                 getAllMessageHeaders();
                                 refreshBuffer();
                                 setBusy(false);
@@ -246,6 +277,7 @@ public final class ImapMailboxBuffer extends MailboxBuffer
                 setBackgroundProcess(this);
                 if (getAllMessageHeaders()) {
                     refreshBuffer();
+                    startIdler();
                     completionRunnable = new Runnable() {
                         public void run()
                         {
@@ -260,6 +292,9 @@ public final class ImapMailboxBuffer extends MailboxBuffer
                                     ed.updateDisplay();
                                 }
                             }
+                            // Start with the message the user is likely to
+                            // read first.
+                            prefetch(getInitialEntry(), true);
                         }
                     };
                 } else {
@@ -292,7 +327,7 @@ public final class ImapMailboxBuffer extends MailboxBuffer
 
     private void abort()
     {
-        Log.debug("ImapMailboxBuffer.abort");
+        Log.debug(Log.MAIL, "ImapMailboxBuffer.abort");
         cancelled = true;
         if (backgroundThread != null && backgroundThread.isAlive())
             backgroundThread.interrupt();
@@ -342,7 +377,7 @@ public final class ImapMailboxBuffer extends MailboxBuffer
                     return;
                 }
                 if (cancelled) {
-                    Log.debug("cancelled, disconnecting...");
+                    Log.debug(Log.MAIL, "cancelled, disconnecting...");
                     session.disconnect();
                     return;
                 }
@@ -352,7 +387,7 @@ public final class ImapMailboxBuffer extends MailboxBuffer
                     return;
                 }
                 if (cancelled) {
-                    Log.debug("cancelled, disconnecting...");
+                    Log.debug(Log.MAIL, "cancelled, disconnecting...");
                     session.disconnect();
                     return;
                 }
@@ -369,15 +404,13 @@ public final class ImapMailboxBuffer extends MailboxBuffer
                 } else {
                     // Not interactive.
                     if (session.getMessageCount() != messageCount) {
-                        Log.debug("session.getMessageCount() = " +
-                            session.getMessageCount() +
-                            " mailbox message count = " +
-                            messageCount);
+                        Log.debug(Log.MAIL, "session.getMessageCount() = {} mailbox message count = {}",
+                                  session.getMessageCount(), messageCount);
                         changed = getNewMessageHeaders();
                     }
                 }
                 if (cancelled) {
-                    Log.debug("cancelled, disconnecting...");
+                    Log.debug(Log.MAIL, "cancelled, disconnecting...");
                     session.disconnect();
                 }
             }
@@ -422,18 +455,16 @@ public final class ImapMailboxBuffer extends MailboxBuffer
             public void run()
             {
                 boolean succeeded = false;
+                final ImapSession pooled = ImapSessionPool.acquire(session);
                 try {
-                    if (session.verifyConnected() && session.verifySelected(folderName)) {
-                        session.setEcho(true);
-                        session.writeTagged("create " + name);
-                        succeeded = session.getResponse() == ImapSession.OK;
-                        session.setEcho(false);
+                    if (pooled.verifyConnected()) {
+                        pooled.setEcho(true);
+                        pooled.writeTagged("create " + name);
+                        succeeded = pooled.getResponse() == ImapSession.OK;
                     }
                 }
                 finally {
-                    unlock();
-                    setBusy(false);
-                    Editor.updateDisplayLater(ImapMailboxBuffer.this);
+                    ImapSessionPool.release(pooled);
                     if (succeeded)
                         success("Folder created");
                     else
@@ -441,12 +472,9 @@ public final class ImapMailboxBuffer extends MailboxBuffer
                 }
             }
         };
-        // Even though we're not changing this mailbox per se, we need to lock
-        // it here so we have exclusive use of the session.
-        if (lock()) {
-            setBusy(true);
-            new Thread(createRunnable).start();
-        }
+        // We're not changing this mailbox per se, so we use a session of our
+        // own rather than waiting for the mailbox to be unlocked.
+        new Thread(createRunnable).start();
     }
 
     public void deleteFolder()
@@ -466,18 +494,16 @@ public final class ImapMailboxBuffer extends MailboxBuffer
             public void run()
             {
                 boolean succeeded = false;
+                final ImapSession pooled = ImapSessionPool.acquire(session);
                 try {
-                    if (session.verifyConnected() && session.verifySelected(folderName)) {
-                        session.setEcho(true);
-                        session.writeTagged("delete " + name);
-                        succeeded = session.getResponse() == ImapSession.OK;
-                        session.setEcho(false);
+                    if (pooled.verifyConnected()) {
+                        pooled.setEcho(true);
+                        pooled.writeTagged("delete " + name);
+                        succeeded = pooled.getResponse() == ImapSession.OK;
                     }
                 }
                 finally {
-                    unlock();
-                    setBusy(false);
-                    Editor.updateDisplayLater(ImapMailboxBuffer.this);
+                    ImapSessionPool.release(pooled);
                     if (succeeded)
                         success("Folder deleted");
                     else
@@ -485,12 +511,9 @@ public final class ImapMailboxBuffer extends MailboxBuffer
                 }
             }
         };
-        // Even though we're not changing this mailbox per se, we need to lock
-        // it here so we have exclusive use of the session.
-        if (lock()) {
-            setBusy(true);
-            new Thread(deleteFolderRunnable).start();
-        }
+        // We're not changing this mailbox per se, so we use a session of our
+        // own rather than waiting for the mailbox to be unlocked.
+        new Thread(deleteFolderRunnable).start();
     }
 
     public void saveToFolder()
@@ -524,34 +547,43 @@ public final class ImapMailboxBuffer extends MailboxBuffer
         if (destination == null)
             return;
         final Line dotLine = advanceDot ? editor.getDotLine() : null;
+        // Copying to another IMAP folder doesn't change this mailbox, so it
+        // uses a session of its own and doesn't lock the mailbox. Saving to
+        // a local mailbox needs the messages themselves, which are read with
+        // the mailbox's session.
+        final boolean local = destination.startsWith("mailbox:");
         Runnable saveRunnable = new Runnable() {
             public void run()
             {
                 boolean succeeded = false;
+                final ImapSession pooled =
+                    local ? null : ImapSessionPool.acquire(session);
                 try {
-                    if (session.verifyConnected() && session.verifySelected(folderName)) {
-                        if (destination.startsWith("mailbox:")) {
-                            // Destination is local.
+                    if (local) {
+                        if (session.verifyConnected() && session.verifySelected(folderName))
                             succeeded = saveLocal(toBeCopied, destination, false);
-                        } else {
-                            session.setEcho(true);
-                            final String messageSet = getMessageSet(toBeCopied);
-                            StringBuilder sbuf = new StringBuilder("uid copy ");
-                            sbuf.append(messageSet);
-                            sbuf.append(' ');
-                            sbuf.append(destination);
-                            if (session.writeTagged(sbuf.toString()))
-                                if (session.getResponse() == ImapSession.OK)
-                                    succeeded = true;
-                            session.setEcho(false);
-                        }
+                    } else if (pooled.verifyConnected() && pooled.verifySelected(folderName)) {
+                        pooled.setEcho(true);
+                        // The mailbox isn't locked, so its entries may change
+                        // under us.
+                        final String messageSet = getMessageSet(toBeCopied, null);
+                        StringBuilder sbuf = new StringBuilder("uid copy ");
+                        sbuf.append(messageSet);
+                        sbuf.append(' ');
+                        sbuf.append(destination);
+                        if (pooled.writeTagged(sbuf.toString()))
+                            if (pooled.getResponse() == ImapSession.OK)
+                                succeeded = true;
                     }
                 }
                 finally {
                     if (succeeded && dotLine != null)
                         advanceDot(dotLine);
-                    setBusy(false);
-                    unlock();
+                    if (local) {
+                        setBusy(false);
+                        unlock();
+                    } else
+                        ImapSessionPool.release(pooled);
                     editor.updateDisplayLater();
                     if (succeeded) {
                         StringBuilder sbuf = new StringBuilder("Saved ");
@@ -565,7 +597,9 @@ public final class ImapMailboxBuffer extends MailboxBuffer
                 }
             }
         };
-        if (lock()) {
+        if (!local)
+            new Thread(saveRunnable).start();
+        else if (lock()) {
             setBusy(true);
             new Thread(saveRunnable).start();
         }
@@ -655,7 +689,8 @@ public final class ImapMailboxBuffer extends MailboxBuffer
         boolean succeeded = false;
         if (session.verifyConnected() && session.verifySelected(folderName)) {
             if (session.isReadOnly()) {
-                Log.debug("moveToFolder " + folderName + " is read-only - reselecting...");
+                Log.debug(Log.MAIL, "moveToFolder {} is read-only - reselecting...",
+                          folderName);
                 session.reselect(folderName);
                 if (session.isReadOnly())
                     throw new MailException("Mailbox " + folderName + " is read-only");
@@ -666,7 +701,7 @@ public final class ImapMailboxBuffer extends MailboxBuffer
             } else {
                 // Destination is an IMAP folder.
                 session.setEcho(true);
-                final String messageSet = getMessageSet(toBeMoved);
+                final String messageSet = getMessageSet(toBeMoved, entries);
                 StringBuilder sb = new StringBuilder("uid copy ");
                 sb.append(messageSet);
                 sb.append(' ');
@@ -704,26 +739,29 @@ public final class ImapMailboxBuffer extends MailboxBuffer
         if (!mbox.lock())
             return false;
         boolean error = false;
+        List<MailboxEntry> saved = new ArrayList<MailboxEntry>();
         for (int i = 0; i < toBeSaved.size(); i++) {
             ImapMailboxEntry entry = (ImapMailboxEntry) toBeSaved.get(i);
             Message message = getMessage(entry, null);
             if (message != null &&
                 mbox.appendMessage(message, entry.getFlags() & ~MailboxEntry.TAGGED)) {
-                if (delete) {
-                    session.writeTagged("uid store " + entry.getUid() + " +flags.silent (\\deleted)");
-                    if (session.getResponse() == ImapSession.OK) {
-                        entry.setFlags(entry.getFlags() | MailboxEntry.DELETED);
-                        updateEntry(entry);
-                    } else {
-                        error = true;
-                        break;
-                    }
-                }
+                saved.add(entry);
             } else {
                 error = true;
                 break;
             }
         }
+        // Delete the messages that were saved, all at once.
+        if (delete && saved.size() > 0) {
+            session.uidStore(getMessageSet(saved, entries), "+flags.silent (\\deleted)");
+            if (session.getResponse() == ImapSession.OK) {
+                for (MailboxEntry entry : saved) {
+                    entry.setFlags(entry.getFlags() | MailboxEntry.DELETED);
+                    updateEntry(entry);
+                }
+            } else
+                error = true;
+        }
         mbox.unlock();
         mbox.updateViews();
         return !error;
@@ -740,7 +778,7 @@ public final class ImapMailboxBuffer extends MailboxBuffer
                     return null;
                 }
                 String name = ((ImapURL)targetUrl).getFolderName();
-                Log.debug("folder name = |" + name + "|");
+                Log.debug(Log.MAIL, "folder name = |{}|", name);
                 return name;
             }
             catch (MalformedURLException e) {
@@ -806,13 +844,14 @@ public final class ImapMailboxBuffer extends MailboxBuffer
         boolean succeeded = false;
         if (session.verifyConnected() && session.verifySelected(folderName)) {
             if (session.isReadOnly()) {
-                Log.debug("delete " + folderName + " is read-only - reselecting...");
+                Log.debug(Log.MAIL, "delete {} is read-only - reselecting...",
+                          folderName);
                 session.reselect(folderName);
                 if (session.isReadOnly())
                     throw new MailException("Mailbox " + folderName + " is read-only");
             }
             session.setEcho(true);
-            session.uidStore(getMessageSet(toBeDeleted), "+flags.silent (\\deleted)");
+            session.uidStore(getMessageSet(toBeDeleted, entries), "+flags.silent (\\deleted)");
             if (session.getResponse() == ImapSession.OK) {
                 succeeded = true;
                 for (int i = 0; i < toBeDeleted.size(); i++) {
@@ -869,7 +908,7 @@ public final class ImapMailboxBuffer extends MailboxBuffer
                 try {
                     if (session.verifyConnected() && session.verifySelected(folderName)) {
                         if (session.isReadOnly()) {
-                            Log.debug("storeFlagsInternal - read-only - reselecting...");
+                            Log.debug(Log.MAIL, "storeFlagsInternal - read-only - reselecting...");
                             session.reselect(folderName);
                             if (session.isReadOnly()) {
                                 readOnlyError();
@@ -877,7 +916,8 @@ public final class ImapMailboxBuffer extends MailboxBuffer
                             }
                         }
                         session.setEcho(true);
-                        final String messageSet = getMessageSet(entriesToBeProcessed);
+                        final String messageSet =
+                            getMessageSet(entriesToBeProcessed, entries);
                         switch (action) {
                             case ACTION_UNDELETE:
                                 session.uidStore(messageSet, "-flags.silent (\\deleted)");
@@ -961,7 +1001,7 @@ public final class ImapMailboxBuffer extends MailboxBuffer
                 try {
                     if (session.verifyConnected() && session.verifySelected(folderName)) {
                         if (session.isReadOnly()) {
-                            Log.debug("storeFlagsInternal - read-only - reselecting...");
+                            Log.debug(Log.MAIL, "storeFlagsInternal - read-only - reselecting...");
                             session.reselect(folderName);
                             if (session.isReadOnly()) {
                                 readOnlyError();
@@ -970,9 +1010,20 @@ public final class ImapMailboxBuffer extends MailboxBuffer
                         }
                         boolean error = false;
                         session.setEcho(true);
+                        // The two stores are independent, so they can be
+                        // sent together.
+                        List<String> commands = new ArrayList<String>(2);
+                        if (entriesToBeSet.size() > 0)
+                            commands.add("uid store " + getMessageSet(entriesToBeSet, entries) +
+                                " +flags.silent (\\flagged)");
+                        if (entriesToBeCleared.size() > 0)
+                            commands.add("uid store " + getMessageSet(entriesToBeCleared, entries) +
+                                " -flags.silent (\\flagged)");
+                        int[] results =
+                            session.pipeline(commands.toArray(new String[commands.size()]));
+                        int i = 0;
                         if (entriesToBeSet.size() > 0) {
-                            session.uidStore(getMessageSet(entriesToBeSet), "+flags.silent (\\flagged)");
-                            if (session.getResponse() == ImapSession.OK) {
+                            if (results[i++] == ImapSession.OK) {
                                 for (MailboxEntry entry : entriesToBeSet) {
                                     entry.flag();
                                     updateEntry(entry);
@@ -980,9 +1031,8 @@ public final class ImapMailboxBuffer extends MailboxBuffer
                             } else
                                 error = true;
                         }
-                        if (!error && entriesToBeCleared.size() > 0) {
-                            session.uidStore(getMessageSet(entriesToBeCleared), "-flags.silent (\\flagged)");
-                            if (session.getResponse() == ImapSession.OK) {
+                        if (entriesToBeCleared.size() > 0) {
+                            if (results[i++] == ImapSession.OK) {
                                 for (MailboxEntry entry : entriesToBeCleared) {
                                     entry.unflag();
                                     updateEntry(entry);
@@ -1039,6 +1089,202 @@ public final class ImapMailboxBuffer extends MailboxBuffer
         }
     }
 
+    private void startIdler()
+    {
+        if (idler != null)
+            return;
+        if (!getBooleanProperty(Property.CHECK_ENABLED) ||
+            !getBooleanProperty(Property.IMAP_IDLE))
+            return;
+        if (!session.hasCapability("IDLE"))
+            return;
+        idler = new ImapIdler(this, session.newSession());
+        idler.start();
+    }
+
+    // Returns true if the server tells us about changes to the mailbox as
+    // they happen, so there's no need to check for new messages.
+    public final boolean isPushEnabled()
+    {
+        return idler != null && idler.isActive();
+    }
+
+    // IdleListener. Called on the idler's thread.
+    public void messageCountChanged(int count)
+    {
+        synchronized (pushedFlags) {
+            pushedNewMessages = true;
+        }
+        applyPushedChanges();
+    }
+
+    public void messagesExpunged(List<Integer> uids)
+    {
+        synchronized (pushedFlags) {
+            if (uids != null)
+                pushedExpunges.addAll(uids);
+            else
+                pushedResync = true;
+        }
+        applyPushedChanges();
+    }
+
+    public void flagsChanged(int messageNumber, int uid, int flags)
+    {
+        synchronized (pushedFlags) {
+            if (uid > 0)
+                pushedFlags.put(uid, flags);
+            else if (messageNumber > 0)
+                pushedMessageNumbers.add(messageNumber);
+            else
+                pushedResync = true;
+        }
+        applyPushedChanges();
+    }
+
+    // Called by the idler when it reconnects, since it may have missed
+    // something.
+    /*package*/ void synchronize()
+    {
+        synchronized (pushedFlags) {
+            pushedResync = true;
+        }
+        applyPushedChanges();
+    }
+
+    private void applyPushedChanges()
+    {
+        if (lock()) {
+            new Thread(applyPushedChangesRunnable).start();
+            return;
+        }
+        // Try again when whatever has the mailbox locked is done.
+        synchronized (pushedFlags) {
+            if (pushRetryScheduled)
+                return;
+            pushRetryScheduled = true;
+        }
+        ImapIdler.schedule(new Runnable() {
+            public void run()
+            {
+                synchronized (pushedFlags) {
+                    pushRetryScheduled = false;
+                }
+                if (Editor.getBufferList().contains(ImapMailboxBuffer.this))
+                    applyPushedChanges();
+            }
+        }, 1000);
+    }
+
+    private final Runnable applyPushedChangesRunnable = new Runnable() {
+        public void run()
+        {
+            final HashMap<Integer, Integer> flags;
+            final HashSet<Integer> expunged;
+            final String messageSet;
+            final boolean newMessages;
+            boolean resync;
+            synchronized (pushedFlags) {
+                flags = new HashMap<Integer, Integer>(pushedFlags);
+                expunged = new HashSet<Integer>(pushedExpunges);
+                if (pushedMessageNumbers.isEmpty()) {
+                    messageSet = null;
+                } else {
+                    StringBuilder sb = new StringBuilder();
+                    for (Integer n : pushedMessageNumbers) {
+                        if (sb.length() > 0)
+                            sb.append(',');
+                        sb.append(n);
+                    }
+                    messageSet = sb.toString();
+                }
+                newMessages = pushedNewMessages;
+                resync = pushedResync;
+                pushedFlags.clear();
+                pushedExpunges.clear();
+                pushedMessageNumbers.clear();
+                pushedNewMessages = false;
+                pushedResync = false;
+            }
+            boolean unlock = true;
+            try {
+                if (messageSet != null && !resync) {
+                    // Ask for the UIDs of the messages, rather than fetching
+                    // all the headers again.
+                    Map<Integer, Integer> fetched = null;
+                    if (session.verifyConnected() &&
+                        session.verifySelected(folderName))
+                        fetched = session.fetchFlags(messageSet);
+                    if (fetched != null)
+                        flags.putAll(fetched);
+                    else
+                        resync = true;
+                }
+                if (resync) {
+                    // Check the connection here, since getAllMessageHeaders()
+                    // kills the mailbox if it can't connect.
+                    if (session.verifyConnected() &&
+                        session.verifySelected(folderName) &&
+                        getAllMessageHeaders()) {
+                        refreshBuffer();
+                        updateDisplay();
+                    }
+                    return;
+                }
+                if (flags.size() > 0 || expunged.size() > 0)
+                    applyPushedChanges(flags, expunged);
+                if (newMessages) {
+                    // Starts a new thread, unlocks mailbox when done.
+                    unlock = false;
+                    getNewMessages(false);
+                }
+            }
+            finally {
+                if (unlock)
+                    unlock();
+            }
+        }
+    };
+
+    private void applyPushedChanges(Map<Integer, Integer> flags,
+        Set<Integer> expunged)
+    {
+        boolean removed = false;
+        ArrayList<MailboxEntry> changed = new ArrayList<MailboxEntry>();
+        for (Iterator<MailboxEntry> it = entries.iterator(); it.hasNext();) {
+            ImapMailboxEntry entry = (ImapMailboxEntry) it.next();
+            if (expunged.contains(entry.getUid())) {
+                it.remove();
+                removed = true;
+                continue;
+            }
+            Integer f = flags.get(entry.getUid());
+            if (f != null) {
+                // Keep our idea of which messages are new.
+                int newFlags = f | (entry.getFlags() & MailboxEntry.RECENT);
+                if (newFlags != entry.getFlags()) {
+                    entry.setFlags(newFlags);
+                    changed.add(entry);
+                }
+            }
+        }
+        Log.debug(Log.MAIL, "applyPushedChanges {} changed {} expunged",
+                  changed.size(), expunged.size());
+        if (removed) {
+            // Invalidate message count.
+            messageCount = -1;
+            refreshBuffer();
+            updateDisplay();
+        } else if (changed.size() > 0) {
+            for (MailboxEntry entry : changed)
+                updateEntry(entry);
+            countMessages();
+            Editor.updateDisplayLater(this);
+        }
+        if (removed || changed.size() > 0)
+            new ImapMailboxCache(this).writeCache();
+    }
+
     private List<MailboxEntry> retrieveMessageHeaders(int uidBegin, int uidEnd,
         boolean recent)
     {
@@ -1058,7 +1304,7 @@ public final class ImapMailboxBuffer extends MailboxBuffer
         sbCommand.append(" (uid flags internaldate rfc822.size envelope");
         sbCommand.append(" body.peek[header.fields (references)]");
         sbCommand.append(')');
-        Log.debug("command = |" + sbCommand.toString() + "|");
+        Log.debug(Log.MAIL, "command = |{}|", sbCommand.toString());
         session.writeTagged(sbCommand.toString());
         StatusBarProgressNotifier progressNotifier =
             new StatusBarProgressNotifier(this);
@@ -1069,7 +1315,7 @@ public final class ImapMailboxBuffer extends MailboxBuffer
             while (true) {
                 String s = session.readLine();
                 if (s == null) {
-                    Log.debug("retrieveMessageHeaders s == null");
+                    Log.debug(Log.MAIL, "retrieveMessageHeaders s == null");
                     break;
                 }
                 if (s.startsWith(endPrefix))
@@ -1081,7 +1327,7 @@ public final class ImapMailboxBuffer extends MailboxBuffer
                         addEntry(list, sb.toString(), uidBegin, recent);
                         progressNotifier.progress(getProgressText(list.size()));
                         if (cancelled) {
-                            Log.debug("retrieveMessageHeaders cancelled, disconnecting...");
+                            Log.debug(Log.MAIL, "retrieveMessageHeaders cancelled, disconnecting...");
                             session.disconnect();
                             return list;
                         }
@@ -1106,7 +1352,8 @@ public final class ImapMailboxBuffer extends MailboxBuffer
         finally {
             progressNotifier.progressStop();
             long elapsed = System.currentTimeMillis() - start;
-            Log.debug("retrieveMessageHeaders " + list.size() + " messages in " + elapsed + " ms");
+            Log.debug(Log.MAIL, "retrieveMessageHeaders {} messages in {} ms",
+                      list.size(), elapsed);
         }
         return list;
     }
@@ -1205,13 +1452,23 @@ public final class ImapMailboxBuffer extends MailboxBuffer
             Log.error(e);
         }
 
+        // The entries will be up to date as of when the mailbox was
+        // selected.
+        final long modSeq = session.getHighestModSeq();
         entries = null;
         uidLast = 0;
         if (mailboxCache != null && mailboxCache.isValid()) {
-            Log.debug("mailboxCache is valid");
+            Log.debug(Log.MAIL, "mailboxCache is valid");
             List<MailboxEntry> cachedEntries = mailboxCache.getEntries();
-            Log.debug("cachedEntries.size() = " + cachedEntries.size());
-            updateCachedEntries(cachedEntries);
+            Log.debug(Log.MAIL, "cachedEntries.size() = {}",
+                      cachedEntries.size());
+            if (mailboxCache.synchronize(session)) {
+                for (MailboxEntry entry : cachedEntries) {
+                    if (entry != null)
+                        ((ImapMailboxEntry) entry).setMailbox(this);
+                }
+            } else
+                updateCachedEntries(cachedEntries);
             int size = cachedEntries.size();
             entries = new ArrayList<MailboxEntry>(size);
             // Add entries from cache, skipping any that have been nulled out.
@@ -1219,7 +1476,7 @@ public final class ImapMailboxBuffer extends MailboxBuffer
                 if (entry != null)
                     entries.add(entry);
             }
-            Log.debug("entries.size() = " + entries.size());
+            Log.debug(Log.MAIL, "entries.size() = {}", entries.size());
             // We don't need the cache any more.
             mailboxCache = null;
             updateLastUid();
@@ -1241,6 +1498,7 @@ public final class ImapMailboxBuffer extends MailboxBuffer
                 entries = new ArrayList<MailboxEntry>(newEntries);
         }
         uidValidity = session.getUidValidity();
+        highestModSeq = modSeq;
         if (entries == null)
             entries = new ArrayList<MailboxEntry>();
         else if (entries instanceof ArrayList)
@@ -1267,7 +1525,7 @@ public final class ImapMailboxBuffer extends MailboxBuffer
 
     private void processIncomingFilters(List<MailboxEntry> entryList)
     {
-        Log.debug("processIncomingFilters");
+        Log.debug(Log.MAIL, "processIncomingFilters");
         final List<? extends IncomingFilter> filterList = IncomingFilter.getFilterList();
         if (filterList == null || filterList.size() == 0)
             return;
@@ -1277,15 +1535,18 @@ public final class ImapMailboxBuffer extends MailboxBuffer
             return;
         MailboxURL inboxUrl = MailboxURL.parse(inbox);
         if (!(inboxUrl instanceof ImapURL)) {
-            Log.debug("processIncomingFilters not inbox " + url.toString());
+            Log.debug(Log.MAIL, "processIncomingFilters not inbox {}",
+                      url.toString());
             return;
         }
         if (!url.getHost().equals(inboxUrl.getHost())) {
-            Log.debug("processIncomingFilters not inbox " + url.toString());
+            Log.debug(Log.MAIL, "processIncomingFilters not inbox {}",
+                      url.toString());
             return;
         }
         if (!folderName.equals(((ImapURL)inboxUrl).getFolderName())) {
-            Log.debug("processIncomingFilters not inbox " + url.toString());
+            Log.debug(Log.MAIL, "processIncomingFilters not inbox {}",
+                      url.toString());
             return;
         }
         SmtpSession smtp = null;
@@ -1341,13 +1602,13 @@ public final class ImapMailboxBuffer extends MailboxBuffer
     private void processMove(ImapMailboxEntry entry, String destination)
     {
         if (destination != null) {
-            Log.debug("destination = |" + destination + "|");
+            Log.debug(Log.MAIL, "destination = |{}|", destination);
             ArrayList<MailboxEntry> list = new ArrayList<MailboxEntry>(1);
             list.add(entry);
             try {
-                Log.debug("processMove calling moveToFolder");
+                Log.debug(Log.MAIL, "processMove calling moveToFolder");
                 moveToFolder(list, destination);
-                Log.debug("processMove back from moveToFolder");
+                Log.debug(Log.MAIL, "processMove back from moveToFolder");
             }
             catch (Exception e) {
                 Log.error(e);
@@ -1359,7 +1620,7 @@ public final class ImapMailboxBuffer extends MailboxBuffer
     {
         if (bounceTo == null)
             return false;
-        Log.debug("bounceTo = |" + bounceTo + "|");
+        Log.debug(Log.MAIL, "bounceTo = |{}|", bounceTo);
         MailAddress[] to = MailAddress.parseAddresses(bounceTo);
         if (to == null)
             return false;
@@ -1405,14 +1666,14 @@ public final class ImapMailboxBuffer extends MailboxBuffer
         while (true) {
             final String s = session.readLine();
             if (s == null) {
-                Log.debug("updateCachedEntries s is null");
+                Log.debug(Log.MAIL, "updateCachedEntries s is null");
                 break;
             }
             if (s.startsWith(endPrefix))
                 break;
             int uid = ImapMailboxEntry.parseUid(s);
             if (uid == 0) {
-                Log.debug("uid = 0 s = |" + s + "|");
+                Log.debug(Log.MAIL, "uid = 0 s = |{}|", s);
                 continue;
             }
             ImapMailboxEntry entry =
@@ -1474,6 +1735,7 @@ public final class ImapMailboxBuffer extends MailboxBuffer
                 ImapMessageBuffer mb =
                     new ImapMessageBuffer(this, entry, rawText);
                 activateMessageBuffer(editor, mb, useOtherWindow);
+                messageRead(entry, true);
                 if ((entry.getFlags() & MailboxEntry.SEEN) == 0) {
                     if (session.isReadOnly())
                         markReadLocal(entry);
@@ -1564,7 +1826,7 @@ public final class ImapMailboxBuffer extends MailboxBuffer
         String contentType = headers.getValue(Headers.CONTENT_TYPE);
         if (contentType != null)
             charset = Utilities.getCharsetFromContentType(contentType);
-        Log.debug("charset = " + charset);
+        Log.debug(Log.MAIL, "charset = {}", charset);
         String encoding = Utilities.getEncodingFromCharset(charset);
         if (encoding.equalsIgnoreCase("us-ascii"))
             encoding = null;
@@ -1673,8 +1935,8 @@ public final class ImapMailboxBuffer extends MailboxBuffer
             Log.error(e);
         }
         if (sb != null) {
-            Log.debug("advertised length = " + length);
-            Log.debug("actual length = " + sb.length());
+            Log.debug(Log.MAIL, "advertised length = {}", length);
+            Log.debug(Log.MAIL, "actual length = {}", sb.length());
             sb.setLength(length);
             return sb.toString();
         } else
@@ -1701,8 +1963,15 @@ public final class ImapMailboxBuffer extends MailboxBuffer
 
     public void dispose()
     {
-        Log.debug("ImapMailboxBuffer.dispose " + folderName + " on " +
-            session.getHost());
+        Log.debug(Log.MAIL, "ImapMailboxBuffer.dispose {} on {}",
+                  folderName, session.getHost());
+        if (idler != null)
+            idler.stop();
+        synchronized (this) {
+            if (prefetcher != null)
+                prefetcher.cancel();
+        }
+        Log.debug(Log.MAIL, "prefetch {}", ImapPrefetcher.getReport());
         Runnable r = new Runnable() {
             public void run()
             {
@@ -1715,8 +1984,8 @@ public final class ImapMailboxBuffer extends MailboxBuffer
 
     protected void finalize() throws Throwable
     {
-        Log.debug("ImapMailboxBuffer.finalize " + folderName + " on " +
-            session.getHost());
+        Log.debug(Log.MAIL, "ImapMailboxBuffer.finalize {} on {}",
+                  folderName, session.getHost());
         super.finalize();
     }
 
@@ -1731,45 +2000,65 @@ public final class ImapMailboxBuffer extends MailboxBuffer
         return sb.toString();
     }
 
+    // Returns a compact UID set for the messages in list, which may be in
+    // any order. If all is not null, it should be all the entries in the
+    // mailbox; a range may then span UIDs that aren't in the mailbox, since
+    // those messages have already been expunged.
     // Package scope for testing.
-    /*package*/ static String getMessageSet(List<MailboxEntry> list)
+    /*package*/ static String getMessageSet(List<MailboxEntry> list,
+        List<MailboxEntry> all)
     {
+        final int limit = list.size();
+        int[] uids = new int[limit];
+        for (int i = 0; i < limit; i++)
+            uids[i] = ((ImapMailboxEntry)list.get(i)).getUid();
+        Arrays.sort(uids);
+        int[] known = null;
+        if (all != null) {
+            known = new int[all.size()];
+            for (int i = 0; i < known.length; i++)
+                known[i] = ((ImapMailboxEntry)all.get(i)).getUid();
+            Arrays.sort(known);
+        }
         StringBuilder sb = new StringBuilder();
-        int limit = list.size();
         int begin = -1;
         int end = -1;
         for (int i = 0; i < limit; i++) {
-            ImapMailboxEntry entry = (ImapMailboxEntry) list.get(i);
+            final int uid = uids[i];
             if (begin < 0) {
-                begin = entry.getUid();
-                end = entry.getUid();
-            } else if (entry.getUid() == end + 1) {
-                end = entry.getUid();
+                begin = end = uid;
+            } else if (uid == end || uid == end + 1) {
+                end = uid;
+            } else if (known != null && nextKnownUid(known, end) == uid) {
+                end = uid;
             } else {
-                if (sb.length() > 0)
-                    sb.append(',');
-                if (begin != end) {
-                    Debug.assertTrue(end > begin);
-                    sb.append(begin);
-                    sb.append(':');
-                    sb.append(end);
-                    begin = end = entry.getUid();
-                } else {
-                    sb.append(begin);
-                    begin = end = entry.getUid();
-                }
+                appendRange(sb, begin, end);
+                begin = end = uid;
             }
         }
+        if (begin >= 0)
+            appendRange(sb, begin, end);
+        return sb.toString();
+    }
+
+    private static int nextKnownUid(int[] known, int uid)
+    {
+        int index = Arrays.binarySearch(known, uid);
+        if (index >= 0 && index + 1 < known.length)
+            return known[index + 1];
+        return -1;
+    }
+
+    private static void appendRange(StringBuilder sb, int begin, int end)
+    {
         if (sb.length() > 0)
             sb.append(',');
-        if (begin != end) {
+        sb.append(begin);
+        if (end != begin) {
             Debug.assertTrue(end > begin);
-            sb.append(begin);
             sb.append(':');
             sb.append(end);
-        } else
-            sb.append(begin);
-        return sb.toString();
+        }
     }
 
     public String toString()
@@ -1794,29 +2083,107 @@ public final class ImapMailboxBuffer extends MailboxBuffer
 
     private void cacheMessage(int uid, String message, String encoding)
     {
-        if (messageCache != null) {
-            if (messageCache.getUidValidity() != session.getUidValidity())
-                messageCache = null;
-        }
-        if (messageCache == null) {
-            messageCache = ImapMessageCache.getMessageCache(this);
-            if (messageCache == null)
-                return;
-        }
-        messageCache.store(uid, message, encoding);
+        ImapMessageCache cache = getMessageCache();
+        if (cache != null)
+            cache.store(uid, message, encoding);
     }
 
     private String getMessageTextFromCache(int uid)
+    {
+        ImapMessageCache cache = getMessageCache();
+        if (cache == null)
+            return null;
+        return cache.getMessageText(uid);
+    }
+
+    private synchronized ImapMessageCache getMessageCache()
     {
         if (messageCache != null) {
             if (messageCache.getUidValidity() != session.getUidValidity())
                 messageCache = null;
         }
-        if (messageCache == null) {
+        if (messageCache == null)
             messageCache = ImapMessageCache.getMessageCache(this);
-            if (messageCache == null)
-                return null;
+        return messageCache;
+    }
+
+    // Returns true if the message for entry is in the local cache.
+    /*package*/ boolean isCached(MailboxEntry entry)
+    {
+        if (!(entry instanceof ImapMailboxEntry) ||
+            !getBooleanProperty(Property.IMAP_USE_LOCAL_CACHE))
+            return false;
+        final ImapMessageCache cache = getMessageCache();
+        return cache != null &&
+            cache.isCached(((ImapMailboxEntry)entry).getUid());
+    }
+
+    // Called when the user has read the message for entry, with cached true
+    // if it came from the local cache.
+    /*package*/ void messageRead(MailboxEntry entry, boolean cached)
+    {
+        if (getBooleanProperty(Property.IMAP_USE_LOCAL_CACHE))
+            ImapPrefetcher.read(cached);
+        prefetch(entry, false);
+    }
+
+    // Starts fetching the messages after entry (or from entry on, if
+    // inclusive is true), and then any other unread messages, into the local
+    // cache in the background, so they can be read without waiting for the
+    // server.
+    private void prefetch(MailboxEntry entry, boolean inclusive)
+    {
+        final int maxCount = getIntegerProperty(Property.IMAP_PREFETCH_COUNT);
+        if (maxCount <= 0 || !getBooleanProperty(Property.IMAP_USE_LOCAL_CACHE))
+            return;
+        final ImapMessageCache cache = getMessageCache();
+        if (cache == null)
+            return;
+        // Entries that are already cached are skipped by the prefetcher, so
+        // collect more than maxCount, but not every unread message in a big
+        // folder.
+        final int maxCandidates = maxCount * PREFETCH_CANDIDATES_PER_MESSAGE;
+        LinkedHashSet<ImapMailboxEntry> candidates =
+            new LinkedHashSet<ImapMailboxEntry>();
+        // The lines are relinked when the buffer is refreshed.
+        try {
+            lockRead();
+        }
+        catch (InterruptedException e) {
+            Log.error(e);
+            return;
+        }
+        try {
+            Line line = getLineForEntry(entry);
+            if (line == null)
+                return;
+            if (!inclusive)
+                line = line.next();
+            for (; line != null && candidates.size() < maxCount; line = line.next()) {
+                if (line instanceof MailboxLine)
+                    candidates.add((ImapMailboxEntry)((MailboxLine)line).getMailboxEntry());
+            }
+            for (Line l = getFirstLine();
+                 l != null && candidates.size() < maxCandidates;
+                 l = l.next()) {
+                if (l instanceof MailboxLine) {
+                    MailboxEntry e = ((MailboxLine)l).getMailboxEntry();
+                    if ((e.getFlags() & MailboxEntry.SEEN) == 0)
+                        candidates.add((ImapMailboxEntry)e);
+                }
+            }
+        }
+        finally {
+            unlockRead();
+        }
+        final long maxBytes =
+            getIntegerProperty(Property.IMAP_PREFETCH_SIZE) * 1024L;
+        synchronized (this) {
+            if (prefetcher != null)
+                prefetcher.cancel();
+            prefetcher = new ImapPrefetcher(this, cache,
+                new ArrayList<ImapMailboxEntry>(candidates), maxCount, maxBytes);
+            prefetcher.start();
         }
-        return messageCache.getMessageText(uid);
     }
 }
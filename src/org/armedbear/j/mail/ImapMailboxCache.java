@@ -28,7 +28,9 @@ import java.io.ObjectOutputStream;
 import java.io.OutputStream;
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Properties;
 import java.util.Set;
 
@@ -47,6 +49,10 @@ public final class ImapMailboxCache implements Serializable
     private final int uidValidity;
     private final ArrayList<MailboxEntry> entries;
 
+    // The highest mod-sequence (RFC 7162) of the mailbox the entries are
+    // known to be up to date with, or 0.
+    private final long highestModSeq;
+
     // Force serialization to be dependent on ImapMailboxEntry.
     private final ImapMailboxEntry dummy = new ImapMailboxEntry(0);
 
@@ -55,9 +61,20 @@ public final class ImapMailboxCache implements Serializable
         this.mailbox = mailbox;
         mailboxName = mailbox.getName();
         uidValidity = mailbox.getUidValidity();
+        highestModSeq = mailbox.getHighestModSeq();
         entries = new ArrayList<MailboxEntry>(mailbox.getEntries());
     }
 
+    // For testing only!
+    /*package*/ ImapMailboxCache(String mailboxName, int uidValidity,
+        long highestModSeq, List<MailboxEntry> entries)
+    {
+        this.mailboxName = mailboxName;
+        this.uidValidity = uidValidity;
+        this.highestModSeq = highestModSeq;
+        this.entries = new ArrayList<MailboxEntry>(entries);
+    }
+
     private final void setMailbox(ImapMailboxBuffer mailbox)
     {
         this.mailbox = mailbox;
@@ -68,6 +85,87 @@ public final class ImapMailboxCache implements Serializable
         return entries;
     }
 
+    public final long getHighestModSeq()
+    {
+        return highestModSeq;
+    }
+
+    /**
+     * Brings the entries up to date with the mailbox selected in session,
+     * fetching only the flags that have changed since the cache was written.
+     * Entries for messages that have been expunged are set to null.
+     *
+     * Returns false, leaving the entries alone, if the server doesn't
+     * support mod-sequences for the mailbox or the commands fail. The
+     * caller must then fetch the flags of every message.
+     */
+    public boolean synchronize(ImapSession session)
+    {
+        final long serverModSeq = session.getHighestModSeq();
+        if (highestModSeq <= 0 || serverModSeq < highestModSeq)
+            return false;
+        long start = System.currentTimeMillis();
+        int uidMax = 0;
+        for (MailboxEntry entry : entries) {
+            int uid = ((ImapMailboxEntry) entry).getUid();
+            if (uid > uidMax)
+                uidMax = uid;
+        }
+        ImapSession.Changes changes = null;
+        if (serverModSeq > highestModSeq) {
+            changes = session.uidFetchChanges("1:" + uidMax, highestModSeq);
+            if (changes == null)
+                return false;
+        }
+        Set<Integer> remaining = null;
+        if (!session.isQresyncEnabled()) {
+            // Expunged messages aren't reported without QRESYNC, but if the
+            // number of messages in the mailbox adds up, none were expunged.
+            List<Integer> uids = session.uidSearch("uid " + (uidMax + 1) + ":*");
+            if (uids == null)
+                return false;
+            int newer = 0;
+            for (int uid : uids) {
+                if (uid > uidMax)
+                    ++newer;
+            }
+            if (session.getMessageCount() != entries.size() + newer) {
+                uids = session.uidSearch("all");
+                if (uids == null)
+                    return false;
+                remaining = new HashSet<Integer>(uids);
+            }
+        }
+        int updated = 0;
+        int expunged = 0;
+        Map<Integer, Integer> flags = null;
+        Set<Integer> vanished = null;
+        if (changes != null) {
+            flags = changes.getFlags();
+            vanished = new HashSet<Integer>(changes.getVanished());
+        }
+        for (int i = 0; i < entries.size(); i++) {
+            ImapMailboxEntry entry = (ImapMailboxEntry) entries.get(i);
+            final Integer uid = entry.getUid();
+            if ((vanished != null && vanished.contains(uid)) ||
+                (remaining != null && !remaining.contains(uid))) {
+                entries.set(i, null);
+                ++expunged;
+            } else if (flags != null) {
+                Integer f = flags.get(uid);
+                if (f != null) {
+                    entry.setFlags(f);
+                    ++updated;
+                }
+            }
+        }
+        Log.debug(Log.MAIL,
+                  "ImapMailboxCache.synchronize " + updated + " updated " +
+                  expunged + " expunged " +
+                  (System.currentTimeMillis() - start) + " ms");
+        return true;
+    }
+
     public void writeCache()
     {
         Runnable r = new Runnable() {
@@ -82,8 +180,8 @@ public final class ImapMailboxCache implements Serializable
     private void writeCacheInternal()
     {
         try {
-            Log.debug("ImapMailboxCache.writeCacheInternal " + entries.size() +
-                " entries");
+            Log.debug(Log.MAIL, "ImapMailboxCache.writeCacheInternal {} entries",
+                      entries.size());
             Debug.assertTrue(uidValidity != 0);
             File temp = Utilities.getTempFile();
             ObjectOutputStream objectOut =
@@ -92,7 +190,7 @@ public final class ImapMailboxCache implements Serializable
             objectOut.flush();
             objectOut.close();
             Utilities.deleteRename(temp, getCacheFile(mailbox));
-            Log.debug("ImapMailboxCache.writeCacheInternal completed");
+            Log.debug(Log.MAIL, "ImapMailboxCache.writeCacheInternal completed");
         }
         catch (IOException e) {
             Log.error(e);
@@ -113,7 +211,7 @@ public final class ImapMailboxCache implements Serializable
             return cache;
         }
         catch (Exception e) {
-            Log.debug("ImapMailboxCache.readCache returning null");
+            Log.debug(Log.MAIL, "ImapMailboxCache.readCache returning null");
             return null;
         }
         finally {
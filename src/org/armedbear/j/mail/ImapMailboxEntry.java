@@ -73,6 +73,7 @@ import org.armedbear.j.util.Tuple2;
   private static final String FLAGS_START = "FLAGS ";
   private static final String ENVELOPE_START = "ENVELOPE ";
   private static final String BODY_START = "BODY[";
+  private static final String MODSEQ_START = "MODSEQ ";
 
     public static ImapMailboxEntry parseEntry(String s)
     {
@@ -109,6 +110,9 @@ import org.armedbear.j.util.Tuple2;
             else if (test(s, BODY_START)) {
                 s = readBodyHeaders(entry, s);
             }
+            else if (test(s, MODSEQ_START)) {
+                s = skipModSeq(s);
+            }
             else {
                 Log.error("Unexpected text: " + s);
                 break;
@@ -191,6 +195,18 @@ import org.armedbear.j.util.Tuple2;
         return p.second;
     }
 
+    // Sent by servers with CONDSTORE enabled. Not needed here.
+    private static String skipModSeq(String s)
+    {
+        s = match(s, MODSEQ_START);
+        Tuple2<String, String> p = parseParenthesized(s);
+        if (p == null) {
+            Log.error("can't parse MODSEQ");
+            return null;
+        }
+        return p.second;
+    }
+
     private static String readRFC822Size(ImapMailboxEntry entry, String s)
     {
         s = match(s, RFC822_SIZE_START);
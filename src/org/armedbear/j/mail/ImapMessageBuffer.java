@@ -122,16 +122,26 @@ public final class ImapMessageBuffer extends MessageBuffer
 
         public void cancel()
         {
-            Log.debug("loadProcess.cancel cancelled!");
+            Log.debug(Log.MAIL, "loadProcess.cancel cancelled!");
             cancelled = true;
             progressNotifier.cancel();
             setBusy(false);
-            Log.debug("loadProcess.cancel calling kill");
+            Log.debug(Log.MAIL, "loadProcess.cancel calling kill");
             kill();
-            Log.debug("loadProcess.cancel back from kill");
+            Log.debug(Log.MAIL, "loadProcess.cancel back from kill");
         }
     };
 
+    protected void loadMessage(ProgressNotifier progressNotifier)
+    {
+        final ImapMailboxBuffer imb = (ImapMailboxBuffer) mailbox;
+        final boolean cached = imb.isCached(entry);
+        super.loadMessage(progressNotifier);
+        // Get the next messages ready while this one is being read.
+        if (message != null)
+            imb.messageRead(entry, cached);
+    }
+
     public void deleteMessage()
     {
         storeFlagsInternal(ACTION_DELETE);
@@ -161,7 +171,7 @@ public final class ImapMessageBuffer extends MessageBuffer
                     String folderName = ((ImapMailboxBuffer)mailbox).getFolderName();
                     if (session.verifyConnected() && session.verifySelected(folderName)) {
                         if (session.isReadOnly()) {
-                            Log.debug("deleteMessage - read-only - reselecting...");
+                            Log.debug(Log.MAIL, "deleteMessage - read-only - reselecting...");
                             session.reselect(folderName);
                             if (session.isReadOnly()) {
                                 ((ImapMailboxBuffer)mailbox).readOnlyError();
@@ -259,7 +269,7 @@ public final class ImapMessageBuffer extends MessageBuffer
                     if (session.verifyConnected() &&
                         session.verifySelected(folderName)) {
                         if (session.isReadOnly()) {
-                            Log.debug("moveMessage - read-only - reselecting...");
+                            Log.debug(Log.MAIL, "moveMessage - read-only - reselecting...");
                             session.reselect(folderName);
                             if (session.isReadOnly()) {
                                 ((ImapMailboxBuffer) mailbox).readOnlyError();
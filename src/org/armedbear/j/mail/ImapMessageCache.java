@@ -85,11 +85,12 @@ public final class ImapMessageCache
             }
         }
         if (!ok) {
-            Log.debug("getMessageCache deleting old files");
+            Log.debug(Log.MAIL, "getMessageCache deleting old files");
             String[] files = cacheDirectory.list();
             for (int i = files.length-1; i >= 0; i--)
                 File.getInstance(cacheDirectory, files[i]).delete();
-            Log.debug("getMessageCache writing UIDVALIDITY " + uidValidity);
+            Log.debug(Log.MAIL, "getMessageCache writing UIDVALIDITY {}",
+                      uidValidity);
             try {
                 BufferedWriter writer =
                     new BufferedWriter(new OutputStreamWriter(file.getOutputStream()));
@@ -104,9 +105,16 @@ public final class ImapMessageCache
         return new ImapMessageCache(cacheDirectory, uidValidity);
     }
 
-    public void store(int uid, String message, String encoding)
+    public boolean isCached(int uid)
     {
-        Log.debug("store encoding = |" + encoding + "|");
+        File file = File.getInstance(cacheDirectory, String.valueOf(uid));
+        return file != null && file.isFile();
+    }
+
+    // Synchronized because messages are also stored by the prefetcher.
+    public synchronized void store(int uid, String message, String encoding)
+    {
+        Log.debug(Log.MAIL, "store encoding = |{}|", encoding);
         if (encoding == null)
             encoding = "ISO-8859-1";
         if (!cacheDirectory.isDirectory()) {
@@ -121,17 +129,24 @@ public final class ImapMessageCache
         if (file == null)
             return;
         if (file.isFile()) {
-            Log.debug("ImapMessageCache.store message is already cached");
+            Log.debug(Log.MAIL, "ImapMessageCache.store message is already cached");
             return;
         }
+        // Write to a temporary file first, so a reader never sees part of
+        // a message.
+        File temp = File.getInstance(cacheDirectory, uid + ".tmp");
         try {
             BufferedWriter writer = null;
             writer =
-                new BufferedWriter(new OutputStreamWriter(file.getOutputStream(),
+                new BufferedWriter(new OutputStreamWriter(temp.getOutputStream(),
                     encoding));
             writer.write(message);
             writer.flush();
             writer.close();
+            if (!temp.renameTo(file)) {
+                Log.error("ImapMessageCache.store can't rename " + temp);
+                temp.delete();
+            }
         }
         catch (UnsupportedEncodingException e) {
             Log.error(e);
@@ -199,7 +214,7 @@ public final class ImapMessageCache
 
     public void removeDeletedEntries(List<MailboxEntry> mailboxEntries)
     {
-        Log.debug("ImapMessageCache.removeDeletedEntries");
+        Log.debug(Log.MAIL, "ImapMessageCache.removeDeletedEntries");
         long start = System.currentTimeMillis();
         for (MailboxEntry entry : mailboxEntries) {
             ImapMailboxEntry imapEntry = (ImapMailboxEntry)entry;
@@ -207,13 +222,14 @@ public final class ImapMessageCache
                 File file = File.getInstance(cacheDirectory,
                         String.valueOf(imapEntry.getUid()));
                 if (file != null && file.isFile()) {
-                    Log.debug("deleting " + file.netPath());
+                    Log.debug(Log.MAIL, "deleting {}", file.netPath());
                     file.delete();
                 }
             }
         }
         long elapsed = System.currentTimeMillis() - start;
-        Log.debug("ImapMessageCache.removeDeletedEntries " + elapsed + " ms");
+        Log.debug(Log.MAIL, "ImapMessageCache.removeDeletedEntries {} ms",
+                  elapsed);
     }
 
     private static synchronized File getCacheDirectory(ImapMailboxBuffer mb)
@@ -256,7 +272,8 @@ public final class ImapMessageCache
                     }
                     catch (MalformedURLException e) {
                         Log.error(e);
-                        Log.debug("deleting cached messages for " + key);
+                        Log.debug(Log.MAIL, "deleting cached messages for {}",
+                                  key);
                         File dir =
                             File.getInstance(parentDirectory, value);
                         if (dir != null && dir.isDirectory()) {
@@ -267,7 +284,7 @@ public final class ImapMessageCache
                                     files[i].delete();
                                 }
                             }
-                            Log.debug("removing directory " + dir);
+                            Log.debug(Log.MAIL, "removing directory {}", dir);
                             dir.delete();
                         }
                     }
@@ -302,7 +319,7 @@ public final class ImapMessageCache
         } else
             cacheDirectory = File.getInstance(parentDirectory, directoryName);
         if (modified) {
-            Log.debug("saving modified catalog");
+            Log.debug(Log.MAIL, "saving modified catalog");
             try {
                 OutputStream out = catalogFile.getOutputStream();
                 catalog.save(out, null);
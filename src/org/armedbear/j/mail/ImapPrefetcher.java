@@ -0,0 +1,165 @@
+/*
+ * ImapPrefetcher.java
+ *
+ * Copyright (C) 2026 Kevin Krouse
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.armedbear.j.mail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import org.armedbear.j.Log;
+
+/**
+ * Fetches messages the user is likely to read next into the local message
+ * cache, in the background, on a connection of its own.
+ */
+public final class ImapPrefetcher implements Runnable
+{
+    // Messages fetched with each command.
+    private static final int BATCH_SIZE = 8;
+
+    // For the hit rate.
+    private static int reads;
+    private static int hits;
+    private static int prefetched;
+    private static long prefetchedBytes;
+
+    private final ImapMailboxBuffer mailbox;
+    private final ImapMessageCache cache;
+    private final List<ImapMailboxEntry> candidates;
+    private final int maxCount;
+    private final long maxBytes;
+
+    private volatile boolean cancelled;
+
+    // Fetches up to maxCount of the candidates, in order, that aren't cached
+    // yet, as long as they add up to no more than maxBytes.
+    public ImapPrefetcher(ImapMailboxBuffer mailbox, ImapMessageCache cache,
+        List<ImapMailboxEntry> candidates, int maxCount, long maxBytes)
+    {
+        this.mailbox = mailbox;
+        this.cache = cache;
+        this.candidates = candidates;
+        this.maxCount = maxCount;
+        this.maxBytes = maxBytes;
+    }
+
+    public void start()
+    {
+        Thread thread = new Thread(this, "imap prefetch");
+        thread.setDaemon(true);
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.start();
+    }
+
+    // Stops after the batch in progress.
+    public void cancel()
+    {
+        cancelled = true;
+    }
+
+    public void run()
+    {
+        List<ImapMailboxEntry> toBeFetched = new ArrayList<ImapMailboxEntry>();
+        long bytes = 0;
+        for (ImapMailboxEntry entry : candidates) {
+            if (toBeFetched.size() >= maxCount || cancelled)
+                break;
+            if (entry.isDeleted() || cache.isCached(entry.getUid()))
+                continue;
+            // Skip messages that are too big for what's left.
+            if (bytes + entry.getSize() > maxBytes)
+                continue;
+            bytes += entry.getSize();
+            toBeFetched.add(entry);
+        }
+        if (toBeFetched.isEmpty())
+            return;
+        final long start = System.currentTimeMillis();
+        final ImapSession session = ImapSessionPool.acquire(mailbox.getSession());
+        int count = 0;
+        bytes = 0;
+        try {
+            if (!session.verifyConnected() ||
+                !session.verifySelected(mailbox.getFolderName()))
+                return;
+            if (session.getUidValidity() != cache.getUidValidity()) {
+                Log.debug(Log.MAIL, "prefetch UIDVALIDITY has changed");
+                return;
+            }
+            for (int i = 0; i < toBeFetched.size() && !cancelled; i += BATCH_SIZE) {
+                List<MailboxEntry> batch = new ArrayList<MailboxEntry>(
+                    toBeFetched.subList(i, Math.min(i + BATCH_SIZE, toBeFetched.size())));
+                Map<Integer, String> messages =
+                    session.uidFetchMessages(ImapMailboxBuffer.getMessageSet(batch, null));
+                if (messages == null)
+                    break;
+                for (Map.Entry<Integer, String> message : messages.entrySet()) {
+                    // The text is one character per byte, so it's stored
+                    // as ISO-8859-1 to get the original bytes back.
+                    cache.store(message.getKey(), message.getValue(), null);
+                    ++count;
+                    bytes += message.getValue().length();
+                }
+            }
+        }
+        finally {
+            ImapSessionPool.release(session);
+            prefetched(count, bytes);
+            Log.debug(Log.MAIL, "prefetched {} messages in {} ms", count,
+                      System.currentTimeMillis() - start);
+            Log.debug(Log.MAIL, "prefetch {}", getReport());
+        }
+    }
+
+    private static synchronized void prefetched(int count, long bytes)
+    {
+        prefetched += count;
+        prefetchedBytes += bytes;
+    }
+
+    // Called when a message is read, with hit true if it came from the
+    // cache.
+    public static synchronized void read(boolean hit)
+    {
+        ++reads;
+        if (hit)
+            ++hits;
+    }
+
+    public static synchronized String getReport()
+    {
+        StringBuilder sb = new StringBuilder("cache hits ");
+        sb.append(hits);
+        sb.append(" of ");
+        sb.append(reads);
+        sb.append(" reads");
+        if (reads > 0) {
+            sb.append(" (");
+            sb.append(hits * 100 / reads);
+            sb.append("%)");
+        }
+        sb.append(", prefetched ");
+        sb.append(prefetched);
+        sb.append(" messages (");
+        sb.append(prefetchedBytes / 1024);
+        sb.append(" KB)");
+        return sb.toString();
+    }
+}
@@ -25,6 +25,13 @@ import java.io.InterruptedIOException;
 import java.io.OutputStreamWriter;
 import java.net.Socket;
 import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import org.armedbear.j.Debug;
 import org.armedbear.j.Editor;
 import java.lang.StringBuilder;
@@ -69,6 +76,11 @@ public final class ImapSession
     private int recent;
     private int uidValidity;
     private int uidNext;
+    private long highestModSeq;
+    private Set<String> capabilities;
+    private boolean qresyncEnabled;
+    private boolean idling;
+    private int timeout; // Milliseconds, or 0 for no timeout.
     private String errorText;
     private long lastErrorMillis;
 
@@ -88,6 +100,11 @@ public final class ImapSession
         mailbox = mb;
     }
 
+    public final boolean isConnected()
+    {
+        return state != DISCONNECTED;
+    }
+
     public final boolean isReadOnly()
     {
         return readOnly;
@@ -133,6 +150,26 @@ public final class ImapSession
         return uidValidity;
     }
 
+    // The highest mod-sequence (RFC 7162) of the selected mailbox when it
+    // was selected, or 0 if the server doesn't support mod-sequences for the
+    // mailbox.
+    public final long getHighestModSeq()
+    {
+        return highestModSeq;
+    }
+
+    public final boolean hasCapability(String capability)
+    {
+        return capabilities != null &&
+            capabilities.contains(capability.toUpperCase());
+    }
+
+    // If QRESYNC is enabled, UID FETCH can report expunged messages.
+    public final boolean isQresyncEnabled()
+    {
+        return qresyncEnabled;
+    }
+
     public final String getErrorText()
     {
         return errorText;
@@ -156,7 +193,8 @@ public final class ImapSession
                 }
             }
         }
-        Log.debug("setTunnel host = |" + tunnelHost + "| port = " + tunnelPort);
+        Log.debug(Log.MAIL, "setTunnel host = |{}| port = {}",
+                  tunnelHost, tunnelPort);
     }
 
     public synchronized final long getLastErrorMillis()
@@ -166,7 +204,7 @@ public final class ImapSession
 
     private synchronized final void setLastErrorMillis(long millis)
     {
-        Log.debug("setLastErrorMillis");
+        Log.debug(Log.MAIL, "setLastErrorMillis");
         lastErrorMillis = millis;
     }
 
@@ -194,6 +232,22 @@ public final class ImapSession
         return new ImapSession(url, user, password);
     }
 
+    // Returns a new session for the same mailbox, with a connection of its
+    // own.
+    public ImapSession newSession()
+    {
+        ImapSession session = new ImapSession(url, user, password);
+        session.tunnelHost = tunnelHost;
+        session.tunnelPort = tunnelPort;
+        return session;
+    }
+
+    // Takes effect the next time the session connects.
+    public final void setTimeout(int millis)
+    {
+        timeout = millis;
+    }
+
     public boolean verifyConnected()
     {
         if (state != DISCONNECTED) {
@@ -226,34 +280,39 @@ public final class ImapSession
             h = tunnelHost;
             p = tunnelPort;
             ssl = p == ImapURL.DEFAULT_SSL_PORT;
-            Log.debug("connect using tunnel h = " + h + " p = " + p);
+            Log.debug(Log.MAIL, "connect using tunnel h = {} p = {}", h, p);
         } else {
             h = getHost();
             p = getPort();
             ssl = url.isSSL();
         }
         SocketConnection sc = new SocketConnection(h, p, ssl, 30000, 200, null);
-        Log.debug("connecting to " + h + " on port " + p);
+        Log.debug(Log.MAIL, "connecting to {} on port {}", h, p);
         socket = sc.connect();
         if (socket == null) {
             errorText = sc.getErrorText();
             Log.error(errorText);
             return false;
         }
-        Log.debug("connected to " + h);
+        Log.debug(Log.MAIL, "connected to {}", h);
         boolean succeeded = false;
         boolean oldEcho = echo;
         if (Editor.isDebugEnabled())
             echo = true;
         try {
+            if (timeout > 0)
+                socket.setSoTimeout(timeout);
             reader = new MailReader(socket.getInputStream());
             writer = new OutputStreamWriter(socket.getOutputStream(),
                 "iso-8859-1");
             if (readLine() != null) {
+                capabilities = null;
+                qresyncEnabled = false;
                 writeTagged("login " + user + " " + password);
                 if (getResponse() == OK) {
                     state = AUTHENTICATED;
                     succeeded = true;
+                    getCapabilities();
                 }
             }
         }
@@ -266,8 +325,38 @@ public final class ImapSession
         return succeeded;
     }
 
-    private static final String UIDVALIDITY = "* OK [UIDVALIDITY ";
-    private static final String UIDNEXT     = "* OK [UIDNEXT ";
+    private void getCapabilities()
+    {
+        // The server may have included its capabilities in the response to
+        // LOGIN.
+        if (capabilities == null && errorText != null &&
+            errorText.startsWith("[CAPABILITY ")) {
+            int end = errorText.indexOf(']');
+            if (end > 0)
+                setCapabilities(errorText.substring(12, end));
+        }
+        if (capabilities == null) {
+            if (!writeTagged("capability") || getResponse() != OK)
+                return;
+        }
+        if (hasCapability("QRESYNC")) {
+            if (writeTagged("enable qresync") && getResponse() == OK)
+                qresyncEnabled = true;
+        }
+        Log.debug(Log.MAIL, "capabilities {} qresync {}", capabilities,
+                  qresyncEnabled);
+    }
+
+    private void setCapabilities(String s)
+    {
+        capabilities = new HashSet<String>();
+        for (String capability : s.trim().toUpperCase().split(" +"))
+            capabilities.add(capability);
+    }
+
+    private static final String UIDVALIDITY   = "* OK [UIDVALIDITY ";
+    private static final String UIDNEXT       = "* OK [UIDNEXT ";
+    private static final String HIGHESTMODSEQ = "* OK [HIGHESTMODSEQ ";
 
     public boolean reselect(String folderName)
     {
@@ -275,13 +364,13 @@ public final class ImapSession
         boolean oldEcho = echo;
         if (Editor.isDebugEnabled())
             echo = true;
+        highestModSeq = 0;
         try {
-            if (state < AUTHENTICATED ||
-                !writeTagged("select \"" + folderName + "\"")) {
+            if (state < AUTHENTICATED || !writeTagged(select(folderName))) {
                 connect();
                 if (state < AUTHENTICATED)
                     return false;
-                if (!writeTagged("select \"" + folderName + "\""))
+                if (!writeTagged(select(folderName)))
                     return false;
             }
             while (true) {
@@ -317,6 +406,10 @@ public final class ImapSession
                     uidNext = Utilities.parseInt(s.substring(UIDNEXT.length()));
                     continue;
                 }
+                if (upper.startsWith(HIGHESTMODSEQ)) {
+                    highestModSeq = parseLong(s.substring(HIGHESTMODSEQ.length()));
+                    continue;
+                }
                 if (upper.startsWith(lastTag + " ")) {
                     // Tagged response.
                     if (upper.startsWith(lastTag + " OK ")) {
@@ -329,8 +422,8 @@ public final class ImapSession
                                 " is read-only!");
                             setLastErrorMillis(System.currentTimeMillis());
                         } else {
-                            Log.debug("reselect mailbox " + folderName +
-                                " is read-write");
+                            Log.debug(Log.MAIL, "reselect mailbox {} is read-write",
+                                      folderName);
                         }
                         return true;
                     } else {
@@ -357,14 +450,294 @@ public final class ImapSession
         finally {
             echo = oldEcho;
             long elapsed = System.currentTimeMillis() - start;
-            Log.debug("ImapSession.reselect " + folderName + " " + elapsed + " ms");
+            Log.debug(Log.MAIL, "ImapSession.reselect {} {} ms",
+                      folderName, elapsed);
+        }
+    }
+
+    // With QRESYNC enabled, CONDSTORE is enabled too.
+    private String select(String folderName)
+    {
+        StringBuilder sb = new StringBuilder("select \"");
+        sb.append(folderName);
+        sb.append('"');
+        if (!qresyncEnabled && hasCapability("CONDSTORE"))
+            sb.append(" (condstore)");
+        return sb.toString();
+    }
+
+    private static long parseLong(String s)
+    {
+        int end = 0;
+        while (end < s.length() && Character.isDigit(s.charAt(end)))
+            ++end;
+        try {
+            return Long.parseLong(s.substring(0, end));
+        }
+        catch (NumberFormatException e) {
+            Log.error(e);
+            return 0;
+        }
+    }
+
+    /**
+     * The messages that have changed since a given mod-sequence.
+     */
+    public static final class Changes
+    {
+        // UID to flags.
+        private final Map<Integer, Integer> flags =
+            new HashMap<Integer, Integer>();
+
+        private final List<Integer> vanished = new ArrayList<Integer>();
+
+        public Map<Integer, Integer> getFlags()
+        {
+            return flags;
+        }
+
+        // Only reported if QRESYNC is enabled.
+        public List<Integer> getVanished()
+        {
+            return vanished;
+        }
+    }
+
+    private static final String VANISHED_EARLIER = "* VANISHED (EARLIER) ";
+
+    /**
+     * Returns the flags of the messages in uidSet whose mod-sequences are
+     * greater than modSeq, and, if QRESYNC is enabled, the UIDs of the
+     * messages in uidSet that have been expunged since then. Returns null
+     * if the command fails.
+     */
+    public Changes uidFetchChanges(String uidSet, long modSeq)
+    {
+        StringBuilder sb = new StringBuilder("uid fetch ");
+        sb.append(uidSet);
+        sb.append(" (uid flags) (changedsince ");
+        sb.append(modSeq);
+        if (qresyncEnabled)
+            sb.append(" vanished");
+        sb.append(')');
+        if (!writeTagged(sb.toString()))
+            return null;
+        final String endPrefix = lastTag + " ";
+        final Changes changes = new Changes();
+        while (true) {
+            String s = readLine();
+            if (s == null)
+                return null;
+            if (s.startsWith(endPrefix))
+                return s.regionMatches(true, endPrefix.length(), "OK ", 0, 3) ?
+                    changes : null;
+            if (s.regionMatches(true, 0, VANISHED_EARLIER, 0,
+                                VANISHED_EARLIER.length())) {
+                parseUidSet(s.substring(VANISHED_EARLIER.length()),
+                            changes.vanished);
+                continue;
+            }
+            int uid = ImapMailboxEntry.parseUid(s);
+            if (uid > 0)
+                changes.flags.put(uid, ImapMailboxEntry.parseFlags(s));
+            else
+                processUntaggedResponse(s);
+        }
+    }
+
+    /**
+     * Returns the flags of the messages in messageSet (message numbers, not
+     * UIDs) by UID, or null if the command fails.
+     */
+    public Map<Integer, Integer> fetchFlags(String messageSet)
+    {
+        if (!writeTagged("fetch " + messageSet + " (uid flags)"))
+            return null;
+        final String endPrefix = lastTag + " ";
+        final Map<Integer, Integer> flags = new HashMap<Integer, Integer>();
+        while (true) {
+            String s = readLine();
+            if (s == null)
+                return null;
+            if (s.startsWith(endPrefix))
+                return s.regionMatches(true, endPrefix.length(), "OK ", 0, 3) ?
+                    flags : null;
+            int uid = ImapMailboxEntry.parseUid(s);
+            if (uid > 0)
+                flags.put(uid, ImapMailboxEntry.parseFlags(s));
+            else
+                processUntaggedResponse(s);
+        }
+    }
+
+    private static final String SEARCH = "* SEARCH";
+
+    /**
+     * Returns the UIDs of the messages matching criteria, or null if the
+     * command fails.
+     */
+    public List<Integer> uidSearch(String criteria)
+    {
+        if (!writeTagged("uid search ".concat(criteria)))
+            return null;
+        final String endPrefix = lastTag + " ";
+        final List<Integer> uids = new ArrayList<Integer>();
+        while (true) {
+            String s = readLine();
+            if (s == null)
+                return null;
+            if (s.startsWith(endPrefix))
+                return s.regionMatches(true, endPrefix.length(), "OK ", 0, 3) ?
+                    uids : null;
+            if (s.regionMatches(true, 0, SEARCH, 0, SEARCH.length())) {
+                String list = s.substring(SEARCH.length()).trim();
+                if (list.length() > 0)
+                    parseUidSet(list.replace(' ', ','), uids);
+            } else
+                processUntaggedResponse(s);
+        }
+    }
+
+    /**
+     * Receives the changes to the selected mailbox that the server reports
+     * while the session is idle.
+     */
+    public interface IdleListener
+    {
+        // The mailbox now has messageCount messages.
+        void messageCountChanged(int messageCount);
+
+        // Messages have been expunged. The UIDs are only reported if
+        // QRESYNC is enabled; otherwise uids is null.
+        void messagesExpunged(List<Integer> uids);
+
+        // The flags of a message have changed. The server only has to
+        // report the UID once QRESYNC is enabled (RFC 7162); CONDSTORE alone
+        // isn't enough. If it doesn't, uid is 0.
+        void flagsChanged(int messageNumber, int uid, int flags);
+    }
+
+    /**
+     * Waits for the server to report changes to the selected mailbox (RFC
+     * 2177), passing them to listener, until stopIdle() is called.
+     *
+     * Returns true if IDLE ended normally, or false if the server rejected
+     * it or the connection was lost.
+     */
+    public boolean idle(IdleListener listener)
+    {
+        if (!writeTagged("idle"))
+            return false;
+        final String endPrefix = lastTag + " ";
+        while (true) {
+            String s = readLine();
+            if (s == null || s.startsWith(endPrefix))
+                return false;
+            if (s.startsWith("+"))
+                break;
+            processIdleResponse(s, listener);
+        }
+        synchronized (this) {
+            idling = true;
+        }
+        try {
+            while (true) {
+                String s = readLine();
+                if (s == null)
+                    return false;
+                if (s.startsWith(endPrefix))
+                    return s.regionMatches(true, endPrefix.length(), "OK ", 0, 3);
+                processIdleResponse(s, listener);
+            }
+        }
+        finally {
+            synchronized (this) {
+                idling = false;
+            }
+        }
+    }
+
+    // Ends IDLE. Called on another thread than the one in idle().
+    public synchronized void stopIdle()
+    {
+        if (!idling || writer == null)
+            return;
+        idling = false;
+        if (echo)
+            Log.debug(Log.MAIL, "==> DONE");
+        try {
+            writer.write("DONE\r\n");
+            writer.flush();
+        }
+        catch (IOException e) {
+            Log.error(e);
+        }
+    }
+
+    private void processIdleResponse(String s, IdleListener listener)
+    {
+        final String upper = s.toUpperCase();
+        if (!upper.startsWith("* "))
+            return;
+        if (upper.startsWith("* VANISHED ")) {
+            if (!upper.startsWith(VANISHED_EARLIER))
+                listener.messagesExpunged(vanished(s));
+        } else if (upper.indexOf(" FETCH (") >= 0) {
+            if (upper.indexOf("FLAGS (") >= 0)
+                listener.flagsChanged((int) parseLong(s.substring(2)),
+                                      ImapMailboxEntry.parseUid(s),
+                                      ImapMailboxEntry.parseFlags(s));
+        } else {
+            processUntaggedResponse(s);
+            if (upper.endsWith(" EXISTS"))
+                listener.messageCountChanged(messageCount);
+            else if (upper.endsWith(" EXPUNGE"))
+                listener.messagesExpunged(null);
+        }
+    }
+
+    // With QRESYNC enabled, an untagged VANISHED response replaces EXPUNGE.
+    private List<Integer> vanished(String s)
+    {
+        List<Integer> uids = new ArrayList<Integer>();
+        parseUidSet(s.substring(11), uids);
+        messageCount = Math.max(messageCount - uids.size(), 0);
+        Log.debug(Log.MAIL, "VANISHED messageCount = {}", messageCount);
+        if (mailbox != null)
+            mailbox.messageExpunged(0);
+        return uids;
+    }
+
+    // Adds the UIDs in an IMAP sequence set like "1:3,7" to list.
+    static void parseUidSet(String s, List<Integer> list)
+    {
+        for (String range : s.trim().split(",")) {
+            int colon = range.indexOf(':');
+            try {
+                if (colon < 0) {
+                    list.add(Integer.parseInt(range));
+                } else {
+                    int first = Integer.parseInt(range.substring(0, colon));
+                    int last = Integer.parseInt(range.substring(colon + 1));
+                    if (first > last) {
+                        int temp = first;
+                        first = last;
+                        last = temp;
+                    }
+                    for (int uid = first; uid <= last; uid++)
+                        list.add(uid);
+                }
+            }
+            catch (NumberFormatException e) {
+                Log.error(e);
+            }
         }
     }
 
     public boolean close()
     {
         if (state != SELECTED) {
-            Log.debug("already closed");
+            Log.debug(Log.MAIL, "already closed");
             return true;
         }
         // State may be set to DISCONNECTED if writeTagged() or getResponse()
@@ -379,7 +752,7 @@ public final class ImapSession
 
     public void logout()
     {
-        Log.debug("ImapSession.logout " + getHost());
+        Log.debug(Log.MAIL, "ImapSession.logout {}", getHost());
         if (state > DISCONNECTED) {
             if (writeTagged("logout"))
                 getResponse();
@@ -412,7 +785,7 @@ public final class ImapSession
             String s = reader.readLine();
             if (s != null) {
                 if (echo)
-                    Log.debug("<== " + s);
+                    Log.debug(Log.MAIL, "<== {}", s);
                 if (s.startsWith(lastTag + " "))
                     errorText = getTaggedResponseText(s);
             }
@@ -439,6 +812,97 @@ public final class ImapSession
         }
     }
 
+    private static final String BODY_LITERAL = "BODY[] {";
+
+    // Fetches whole messages with BODY.PEEK, so they aren't marked as seen.
+    // Returns the raw text of each message, one character per byte, by UID,
+    // or null if the command fails.
+    public Map<Integer, String> uidFetchMessages(String uidSet)
+    {
+        if (!writeTagged("uid fetch " + uidSet + " (uid body.peek[])"))
+            return null;
+        Map<Integer, String> messages = new HashMap<Integer, String>();
+        while (true) {
+            String s = readLine();
+            if (s == null)
+                return null;
+            String upper = s.toUpperCase();
+            if (upper.startsWith(lastTag + " "))
+                return getResult(s, lastTag) == OK ? messages : null;
+            if (upper.startsWith("* BYE ")) {
+                Log.debug(Log.MAIL, "uidFetchMessages |{}|", s);
+                disconnect();
+                return null;
+            }
+            int index = upper.indexOf(BODY_LITERAL);
+            if (index < 0 || !upper.startsWith("* ") || !upper.endsWith("}")) {
+                processUntaggedResponse(s);
+                continue;
+            }
+            int length;
+            try {
+                length = Integer.parseInt(
+                    s.substring(index + BODY_LITERAL.length(), s.length() - 1));
+            }
+            catch (NumberFormatException e) {
+                Log.error(e);
+                disconnect();
+                return null;
+            }
+            String text = readLiteral(length);
+            // The rest of the response follows the literal.
+            String rest = text != null ? readLine() : null;
+            if (rest == null)
+                return null;
+            // The UID may come before or after the message.
+            int uid = parseUid(upper.substring(0, index));
+            if (uid < 0)
+                uid = parseUid(rest.toUpperCase());
+            if (uid > 0)
+                messages.put(uid, text);
+        }
+    }
+
+    private static int parseUid(String s)
+    {
+        int index = s.indexOf("UID ");
+        while (index > 0 && s.charAt(index - 1) != '(' &&
+               s.charAt(index - 1) != ' ')
+            index = s.indexOf("UID ", index + 1);
+        if (index < 0)
+            return -1;
+        int begin = index + 4;
+        int end = begin;
+        while (end < s.length() && Character.isDigit(s.charAt(end)))
+            ++end;
+        try {
+            return Integer.parseInt(s.substring(begin, end));
+        }
+        catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    private String readLiteral(int length)
+    {
+        if (reader == null)
+            return null;
+        try {
+            String s = reader.read(length);
+            if (s == null)
+                disconnect();
+            else if (echo)
+                Log.debug(Log.MAIL, "<== {} bytes", length);
+            return s;
+        }
+        catch (IOException e) {
+            Log.error(e);
+            setLastErrorMillis(System.currentTimeMillis());
+            disconnect();
+            return null;
+        }
+    }
+
     public void uidStore(int uid, String arg)
     {
         StringBuilder sb = new StringBuilder("uid store ");
@@ -461,6 +925,77 @@ public final class ImapSession
     {
         if (writer == null)
             return false;
+        try {
+            write(s);
+            writer.flush();
+            return true;
+        }
+        catch (IOException e) {
+            Log.error(e);
+            disconnect();
+            return false;
+        }
+    }
+
+    // Sends all the commands before reading any of the responses, so the
+    // whole batch costs one round trip instead of one per command. The
+    // commands must not depend on each other's success. Returns the result
+    // (OK, NO, etc.) of each command, in order.
+    public int[] pipeline(String... commands)
+    {
+        final int[] results = new int[commands.length];
+        Arrays.fill(results, BYE);
+        if (writer == null)
+            return results;
+        final String[] tags = new String[commands.length];
+        try {
+            for (int i = 0; i < commands.length; i++) {
+                write(commands[i]);
+                tags[i] = lastTag;
+            }
+            writer.flush();
+        }
+        catch (IOException e) {
+            Log.error(e);
+            disconnect();
+            return results;
+        }
+        // The server may complete the commands in any order.
+        int pending = commands.length;
+        while (pending > 0) {
+            String s = readLine();
+            if (s == null)
+                break;
+            String upper = s.toUpperCase();
+            int index = upper.indexOf("[ALERT]");
+            if (index >= 0 && mailbox != null)
+                mailbox.setAlertText(s.substring(index+7).trim());
+            if (upper.startsWith("* BYE ")) {
+                Log.debug(Log.MAIL, "pipeline |{}|", s);
+                disconnect();
+                break;
+            }
+            if (upper.startsWith("* ")) {
+                processUntaggedResponse(s);
+                continue;
+            }
+            index = upper.indexOf(' ');
+            String tag = index >= 0 ? upper.substring(0, index) : upper;
+            for (int i = 0; i < tags.length; i++) {
+                if (tag.equals(tags[i])) {
+                    results[i] = getResult(s, tag);
+                    tags[i] = null;
+                    --pending;
+                    break;
+                }
+            }
+        }
+        return results;
+    }
+
+    // Writes a tagged command without flushing.
+    private void write(String s) throws IOException
+    {
         // Store command.
         int index = s.indexOf(' ');
         final String lastCommand = index >= 0 ? s.substring(0, index) : s;
@@ -470,22 +1005,13 @@ public final class ImapSession
             if (lastCommand.equalsIgnoreCase("login")) {
                 index = s.lastIndexOf(' ');
                 if (index >= 0)
-                    Log.debug("==> " + s.substring(0, index));
+                    Log.debug(Log.MAIL, "==> {}", s.substring(0, index));
                 else
-                    Log.debug("==> " + s);
+                    Log.debug(Log.MAIL, "==> {}", s);
             } else
-                Log.debug("==> " + s);
-        }
-        try {
-            writer.write(s.concat("\r\n"));
-            writer.flush();
-            return true;
-        }
-        catch (IOException e) {
-            Log.error(e);
-            disconnect();
-            return false;
+                Log.debug(Log.MAIL, "==> {}", s);
         }
+        writer.write(s.concat("\r\n"));
     }
 
     public int getResponse()
@@ -496,47 +1022,57 @@ public final class ImapSession
                 return BYE;
             String upper = s.toUpperCase();
             int index = upper.indexOf("[ALERT]");
-            if (index >= 0)
+            if (index >= 0 && mailbox != null)
                 mailbox.setAlertText(s.substring(index+7).trim());
             if (upper.startsWith("* BYE ")) {
-                Log.debug("getResponse |" + s + "|");
+                Log.debug(Log.MAIL, "getResponse |{}|", s);
                 disconnect();
                 return BYE;
             }
-            if (upper.startsWith(lastTag + " ")) {
-                upper = upper.substring(lastTag.length() + 1);
-                if (upper.startsWith("OK "))
-                    return OK;
-                if (upper.startsWith("NO ")) {
-                    mailbox.setStatusText(s.substring(3).trim());
-                    return NO;
-                }
-                if (upper.startsWith("BAD "))
-                    return BAD;
-                // According to Section 7.1 of RFC 2060, PREAUTH and BYE are
-                // always untagged, so we should never encounter the following
-                // cases.
-                if (upper.startsWith("PREAUTH"))
-                    return PREAUTH;
-                if (upper.startsWith("BYE")) {
-                    disconnect();
-                    return BYE;
-                }
-                return UNKNOWN;
-            }
+            if (upper.startsWith(lastTag + " "))
+                return getResult(s, lastTag);
             processUntaggedResponse(s);
         }
     }
 
+    // s is the tagged response to the command with the given tag.
+    private int getResult(String s, String tag)
+    {
+        String upper = s.substring(tag.length() + 1).toUpperCase();
+        if (upper.startsWith("OK "))
+            return OK;
+        if (upper.startsWith("NO ")) {
+            if (mailbox != null)
+                mailbox.setStatusText(s.substring(tag.length() + 4).trim());
+            return NO;
+        }
+        if (upper.startsWith("BAD "))
+            return BAD;
+        // According to Section 7.1 of RFC 2060, PREAUTH and BYE are always
+        // untagged, so we should never encounter the following cases.
+        if (upper.startsWith("PREAUTH"))
+            return PREAUTH;
+        if (upper.startsWith("BYE")) {
+            disconnect();
+            return BYE;
+        }
+        return UNKNOWN;
+    }
+
     private void processUntaggedResponse(String s)
     {
-        Log.debug("processUntaggedResponse |" + s + "|");
+        Log.debug(Log.MAIL, "processUntaggedResponse |{}|", s);
         if (s.startsWith("* ")) {
             final String upper = s.toUpperCase();
-            if (upper.endsWith(" EXISTS")) {
+            if (upper.startsWith("* CAPABILITY ")) {
+                setCapabilities(s.substring(13));
+            } else if (upper.startsWith("* VANISHED ") &&
+                       !upper.startsWith(VANISHED_EARLIER)) {
+                vanished(s);
+            } else if (upper.endsWith(" EXISTS")) {
                 try {
                     messageCount = Integer.parseInt(upper.substring(2, upper.length()-7));
-                    Log.debug("messageCount = " + messageCount);
+                    Log.debug(Log.MAIL, "messageCount = {}", messageCount);
                 }
                 catch (NumberFormatException e) {
                     Log.error(e);
@@ -544,7 +1080,7 @@ public final class ImapSession
             } else if (upper.endsWith(" RECENT")) {
                 try {
                     recent = Integer.parseInt(upper.substring(2, upper.length()-7));
-                    Log.debug("recent = " + recent);
+                    Log.debug(Log.MAIL, "recent = {}", recent);
                 }
                 catch (NumberFormatException e) {
                     Log.error(e);
@@ -555,11 +1091,13 @@ public final class ImapSession
                         Integer.parseInt(upper.substring(2, upper.length()-8));
                     if (messageCount > 0) {
                         --messageCount;
-                        Log.debug("EXPUNGE messageCount = " + messageCount);
+                        Log.debug(Log.MAIL, "EXPUNGE messageCount = {}",
+                                  messageCount);
                     } else
                         Log.error("received untagged EXPUNGE response with messageCount = " +
                             messageCount);
-                    mailbox.messageExpunged(messageNumber);
+                    if (mailbox != null)
+                        mailbox.messageExpunged(messageNumber);
                 }
                 catch (NumberFormatException e) {
                     Log.error(e);
@@ -603,7 +1141,7 @@ public final class ImapSession
 
     protected void finalize() throws Throwable
     {
-        Log.debug("ImapSession.finalize " + getHost());
+        Log.debug(Log.MAIL, "ImapSession.finalize {}", getHost());
         super.finalize();
     }
 }
@@ -0,0 +1,123 @@
+/*
+ * ImapSessionPool.java
+ *
+ * Copyright (C) 2026 Kevin Krouse
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.armedbear.j.mail;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedList;
+import java.util.List;
+import org.armedbear.j.Log;
+
+/**
+ * Spare connections to IMAP accounts, for operations that don't need the
+ * mailbox's own session and shouldn't have to wait for it.
+ */
+public final class ImapSessionPool
+{
+    // Connected sessions kept per account.
+    private static final int MAX_IDLE = 2;
+
+    // Servers may drop connections that have been idle for 30 minutes.
+    private static final long MAX_IDLE_MILLIS = 10 * 60 * 1000;
+
+    private static final class PooledSession
+    {
+        final ImapSession session;
+        final long released;
+
+        PooledSession(ImapSession session, long released)
+        {
+            this.session = session;
+            this.released = released;
+        }
+    }
+
+    private static final HashMap<String, LinkedList<PooledSession>> pools =
+        new HashMap<String, LinkedList<PooledSession>>();
+
+    private ImapSessionPool()
+    {
+    }
+
+    private static String getKey(ImapSession session)
+    {
+        return session.getUser() + '@' + session.getHost() + ':' +
+            session.getPort();
+    }
+
+    // Returns a session for the same account as prototype, with a connection
+    // of its own. The session may not be connected yet, so the caller should
+    // use verifyConnected() as usual. The caller must give the session back
+    // with release() when it's done.
+    public static ImapSession acquire(ImapSession prototype)
+    {
+        ImapSession session = null;
+        List<ImapSession> stale = null;
+        synchronized (pools) {
+            LinkedList<PooledSession> pool = pools.get(getKey(prototype));
+            if (pool != null) {
+                final long now = System.currentTimeMillis();
+                while (!pool.isEmpty()) {
+                    PooledSession pooled = pool.removeFirst();
+                    if (now - pooled.released < MAX_IDLE_MILLIS) {
+                        session = pooled.session;
+                        break;
+                    }
+                    if (stale == null)
+                        stale = new ArrayList<ImapSession>();
+                    stale.add(pooled.session);
+                }
+            }
+        }
+        if (stale != null) {
+            for (ImapSession s : stale)
+                s.logout();
+        }
+        if (session == null) {
+            Log.debug(Log.MAIL, "ImapSessionPool.acquire new session for {}",
+                      prototype.getHost());
+            session = prototype.newSession();
+        }
+        return session;
+    }
+
+    public static void release(ImapSession session)
+    {
+        session.setEcho(false);
+        if (session.isConnected()) {
+            synchronized (pools) {
+                final String key = getKey(session);
+                LinkedList<PooledSession> pool = pools.get(key);
+                if (pool == null) {
+                    pool = new LinkedList<PooledSession>();
+                    pools.put(key, pool);
+                }
+                if (pool.size() < MAX_IDLE) {
+                    // Most recently used first.
+                    pool.addFirst(new PooledSession(session,
+                        System.currentTimeMillis()));
+                    return;
+                }
+            }
+        }
+        session.logout();
+    }
+}
@@ -123,9 +123,9 @@ public class LocalMailboxBuffer extends MailboxBuffer
             raf.seek(offset);
             String text = raf.readLine();
             if (!text.startsWith("From ")) {
-                Log.debug("LocalMailboxBuffer.getMessage expected \"From \"");
-                Log.debug("text = |" + text + "|");
-                Log.debug("offset = " + offset);
+                Log.debug(Log.MAIL, "LocalMailboxBuffer.getMessage expected \"From \"");
+                Log.debug(Log.MAIL, "text = |{}|", text);
+                Log.debug(Log.MAIL, "offset = {}", offset);
                 Debug.assertTrue(false);
                 return ""; // BUG!
             }
@@ -428,7 +428,7 @@ public class LocalMailboxBuffer extends MailboxBuffer
 
     protected void readMailboxFile(ProgressNotifier progressNotifier)
     {
-        Log.debug("LocalMailboxBuffer.readMailboxFile");
+        Log.debug(Log.MAIL, "LocalMailboxBuffer.readMailboxFile");
         long start = System.currentTimeMillis();
         Mbox mbox = Mbox.getInstance(mailboxFile);
         if (mbox == null)
@@ -471,7 +471,7 @@ public class LocalMailboxBuffer extends MailboxBuffer
 
     protected boolean rewriteMailbox(boolean purge)
     {
-        Log.debug("rewriteMailbox");
+        Log.debug(Log.MAIL, "rewriteMailbox");
         long start = System.currentTimeMillis();
         boolean succeeded = false;
         try {
@@ -586,7 +586,7 @@ public class LocalMailboxBuffer extends MailboxBuffer
         }
         finally {
             long elapsed = System.currentTimeMillis() - start;
-            Log.debug("rewriteMailbox " + elapsed + " ms");
+            Log.debug(Log.MAIL, "rewriteMailbox {} ms", elapsed);
         }
         return succeeded;
     }
@@ -607,33 +607,33 @@ public class LocalMailboxBuffer extends MailboxBuffer
 
     public void dispose()
     {
-        Log.debug("LocalMailboxBuffer.dispose");
+        Log.debug(Log.MAIL, "LocalMailboxBuffer.dispose");
         Mbox.cleanup();
         MailboxProperties.saveProperties(this);
         if (isOwned()) {
-            Log.debug("mailbox is owned");
+            Log.debug(Log.MAIL, "mailbox is owned");
         } else {
-            Log.debug("mailbox is foreign");
+            Log.debug(Log.MAIL, "mailbox is foreign");
             return;
         }
         Runnable disposeRunnable = new Runnable() {
             public void run()
             {
                 try {
-                    Log.debug("disposeRunnable.run() calling acquire()...");
+                    Log.debug(Log.MAIL, "disposeRunnable.run() calling acquire()...");
                     acquire(); // Blocks, may throw InterruptedException.
-                    Log.debug("disposeRunnable.run() back from acquire()");
+                    Log.debug(Log.MAIL, "disposeRunnable.run() back from acquire()");
                     clearRecent();
                     if (dirty) {
                         final Object pending = new Object();
                         Editor.getPendingOperations().add(pending);
-                        Log.debug("disposeRunnable.run() calling rewriteMailbox()...");
+                        Log.debug(Log.MAIL, "disposeRunnable.run() calling rewriteMailbox()...");
                         rewriteMailbox(false);
-                        Log.debug("disposeRunnable.run() back from rewriteMailbox()");
+                        Log.debug(Log.MAIL, "disposeRunnable.run() back from rewriteMailbox()");
                         Editor.getPendingOperations().remove(pending);
                     }
                     release();
-                    Log.debug("disposeRunnable.run() back from release()");
+                    Log.debug(Log.MAIL, "disposeRunnable.run() back from release()");
                 }
                 catch (InterruptedException e) {
                     Log.error(e);
@@ -645,7 +645,7 @@ public class LocalMailboxBuffer extends MailboxBuffer
 
     protected void finalize() throws Throwable
     {
-        Log.debug("LocalMailboxBuffer.finalize");
+        Log.debug(Log.MAIL, "LocalMailboxBuffer.finalize");
         super.finalize();
     }
 
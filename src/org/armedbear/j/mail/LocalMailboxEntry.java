@@ -30,6 +30,13 @@ public final class LocalMailboxEntry extends MailboxEntry
     private long nextMessageStart;
     private String uidl;
 
+    // Used by MboxSummary, which fills in the rest.
+    LocalMailboxEntry(int messageNumber, long messageStart)
+    {
+        this.messageNumber = messageNumber;
+        this.messageStart = messageStart;
+    }
+
     public LocalMailboxEntry(int messageNumber, long messageStart, String s)
     {
         this.messageNumber = messageNumber;
@@ -86,4 +93,9 @@ public final class LocalMailboxEntry extends MailboxEntry
     {
         return uidl;
     }
+
+    final void setUidl(String uidl)
+    {
+        this.uidl = uidl;
+    }
 }
@@ -97,7 +97,7 @@ public final class MailCommands implements Constants
     public static void openMailbox(Editor editor, MailboxURL url)
     {
         String limitPattern = url.getLimitPattern();
-        Log.debug("limitPattern = |" + limitPattern + "|");
+        Log.debug(Log.MAIL, "limitPattern = |{}|", limitPattern);
         MailboxFilter filter = null;
         boolean badLimitPattern = false;
         if (limitPattern != null) {
@@ -78,6 +78,26 @@ public final class MailReader
         }
     }
 
+    // Reads exactly length bytes, one character per byte, with line
+    // separators left as they are. Returns null at end of stream.
+    public String read(int length) throws IOException
+    {
+        char[] a = new char[length];
+        int i = 0;
+        while (i < length) {
+            if (pos >= count) {
+                fill();
+                if (pos >= count)
+                    return null;
+            }
+            int n = Math.min(length - i, count - pos);
+            for (int j = 0; j < n; j++)
+                a[i++] = (char) (buf[pos++] & 0xff);
+            offset += n;
+        }
+        return new String(a);
+    }
+
     public void close() throws IOException
     {
         inputStream.close();
@@ -62,6 +62,9 @@ public abstract class MailboxBuffer extends Buffer
 
     protected List<MailboxEntry> entries;
 
+    // Null unless the entries are grouped by thread.
+    private ThreadIndex threadIndex;
+
     private long lastCheckMillis;
 
     private int sortBy = SORT_BY_DATE_SENT;
@@ -532,7 +535,7 @@ public abstract class MailboxBuffer extends Buffer
 
     private boolean bounceMessages(List<MailboxEntry> toBeBounced, MailAddress[] to)
     {
-        Log.debug("bounceMessages initializing SMTP session...");
+        Log.debug(Log.MAIL, "bounceMessages initializing SMTP session...");
         SmtpSession smtp = SmtpSession.getDefaultSession();
         if (smtp == null)
             return false;
@@ -545,7 +548,7 @@ public abstract class MailboxBuffer extends Buffer
         }
         finally {
             Debug.assertTrue(smtp != null);
-            Log.debug("bounceMessages closing SMTP session...");
+            Log.debug(Log.MAIL, "bounceMessages closing SMTP session...");
             smtp.quit();
         }
     }
@@ -712,7 +715,7 @@ public abstract class MailboxBuffer extends Buffer
                     if (e.getDate().equals(entry.getDate())) {
                         if (e.getSize() == entry.getSize()) {
                             // Found it!
-                            Log.debug("findLineForEntry date/size match");
+                            Log.debug(Log.MAIL, "findLineForEntry date/size match");
                             return line;
                         }
                     } else if (!groupByThread) {
@@ -909,8 +912,15 @@ public abstract class MailboxBuffer extends Buffer
     {
         if (getBooleanProperty(Property.GROUP_BY_THREAD)) {
             long start = System.currentTimeMillis();
-            SortByThread sort = new SortByThread(entries);
-            sort.run();
+            // Only the threads that have changed since the last refresh get
+            // new lines.
+            boolean incremental = false;
+            if (threadIndex == null)
+                threadIndex = new ThreadIndex(entries);
+            else
+                incremental = threadIndex.update(entries);
+            List<ThreadIndex.Conversation> conversations =
+                threadIndex.getConversations();
             try {
                 lockWrite();
             }
@@ -921,7 +931,20 @@ public abstract class MailboxBuffer extends Buffer
             try {
                 synchronized (this) {
                     empty();
-                    sort.addEntries(this, limitFilter);
+                    int sequenceNumber = 1;
+                    for (ThreadIndex.Conversation c : conversations) {
+                        sequenceNumber = c.setSequenceNumbers(sequenceNumber);
+                        for (MailboxLine line : c.getLines(limitFilter)) {
+                            // Like new lines, unfolded.
+                            line.show();
+                            appendLine(line);
+                        }
+                    }
+                    // The last line may still be linked to the line that
+                    // followed it last time.
+                    final Line lastLine = getLastLine();
+                    if (lastLine != null)
+                        lastLine.setNext(null);
                     renumber();
                     countMessages();
                     setLoaded(true);
@@ -931,8 +954,10 @@ public abstract class MailboxBuffer extends Buffer
                 unlockWrite();
             }
             long elapsed = System.currentTimeMillis() - start;
-            Log.debug("refreshBuffer " + elapsed + " ms");
+            Log.debug(Log.MAIL, "refreshBuffer {} ms{}", elapsed,
+                      incremental ? " (incremental)" : "");
         } else {
+            threadIndex = null;
             Debug.assertTrue(sortBy == SORT_BY_DATE_SENT);
             // Don't change order of entries!
             ArrayList<MailboxEntry> temp = new ArrayList<MailboxEntry>(entries);
@@ -1222,7 +1247,7 @@ public abstract class MailboxBuffer extends Buffer
                             } else {
                                 dotLine = getLastLine();
                                 if (dotLine != null) {
-                                    Log.debug("updateDisplayRunnable setting dotLine to last line");
+                                    Log.debug(Log.MAIL, "updateDisplayRunnable setting dotLine to last line");
                                     ed.setDot(dotLine, 0);
                                     ed.moveCaretToDotCol();
                                 } else
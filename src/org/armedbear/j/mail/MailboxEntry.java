@@ -206,6 +206,11 @@ public abstract class MailboxEntry implements Serializable
         return references;
     }
 
+    public final boolean isOrphan()
+    {
+        return orphan;
+    }
+
     public final void setOrphan(boolean b)
     {
         orphan = b;
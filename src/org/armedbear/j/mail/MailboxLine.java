@@ -28,11 +28,14 @@ public final class MailboxLine extends TextLine implements Line
     private final MailboxEntry entry;
     private final int depth;
 
+    // The parts of the entry that can change after the text is made.
+    private int flags;
+    private int sequenceNumber;
+    private boolean orphan;
+
     public MailboxLine(MailboxEntry entry)
     {
-        super(entry.toString());
-        this.entry = entry;
-        this.depth = 1;
+        this(entry, 1);
     }
 
     public MailboxLine(MailboxEntry entry, int depth)
@@ -40,6 +43,24 @@ public final class MailboxLine extends TextLine implements Line
         super(entry.toString(depth));
         this.entry = entry;
         this.depth = depth;
+        flags = entry.getFlags();
+        sequenceNumber = entry.getSequenceNumber();
+        orphan = entry.isOrphan();
+    }
+
+    // Makes the text again if the entry has changed since it was made. Lines
+    // that are reused when the buffer is refreshed must be refreshed too,
+    // since flags may be changed without updateEntry().
+    public final void refresh()
+    {
+        if (entry.getFlags() != flags || entry.isOrphan() != orphan ||
+            (MailboxEntry.SHOW_MESSAGE_NUMBERS &&
+             entry.getSequenceNumber() != sequenceNumber)) {
+            flags = entry.getFlags();
+            sequenceNumber = entry.getSequenceNumber();
+            orphan = entry.isOrphan();
+            init(entry.toString(depth));
+        }
     }
 
     public final MailboxEntry getMailboxEntry()
@@ -85,7 +85,7 @@ public final class MailboxProperties
         }
         PropertyList properties = mb.getProperties();
         if (properties == null || properties.size() == 0) {
-            Log.debug("MailboxProperties.saveProperties no properties set");
+            Log.debug(Log.MAIL, "MailboxProperties.saveProperties no properties set");
             return;
         }
         if (list == null)
@@ -74,14 +74,14 @@ public final class Mbox
 
     public static synchronized void cleanup()
     {
-        Log.debug("Mbox.cleanup");
+        Log.debug(Log.MAIL, "Mbox.cleanup");
         if (mboxList == null || mboxList.size() == 0)
             return;
         Iterator<Mbox> iter = mboxList.iterator();
         while (iter.hasNext()) {
             Mbox mbox = iter.next();
             if (findMailbox(mbox) == null) {
-                Log.debug("removing Mbox for " + mbox.getFile());
+                Log.debug(Log.MAIL, "removing Mbox for {}", mbox.getFile());
                 iter.remove();
             }
         }
@@ -110,21 +110,21 @@ public final class Mbox
     // Return a copy.
     public synchronized final List<MailboxEntry> getEntries(ProgressNotifier progressNotifier)
     {
-        Log.debug("Mbox.getEntries");
+        Log.debug(Log.MAIL, "Mbox.getEntries");
         Debug.assertTrue(isLocked());
         if (entries != null) {
             if (file.lastModified() > lastModified) {
-                Log.debug("mbox last modified later than entries last modified");
+                Log.debug(Log.MAIL, "mbox last modified later than entries last modified");
                 entries = null;
             }
         }
         if (entries == null) {
             File summaryFile = getSummaryFile();
             if (summaryFile.isFile() && summaryFile.lastModified() > file.lastModified()) {
-                Log.debug("using summary");
+                Log.debug(Log.MAIL, "using summary");
                 MboxSummary summary = MboxSummary.read(summaryFile);
                 if (summary != null) {
-                    Log.debug("summary is valid");
+                    Log.debug(Log.MAIL, "summary is valid");
                     if (summary.lastModified() == file.lastModified()) {
                         if (summary.length() == file.length()) {
                             entries = summary.getEntries();
@@ -134,7 +134,7 @@ public final class Mbox
                 }
             }
             if (entries == null) {
-                Log.debug("entries == null, calling read...");
+                Log.debug(Log.MAIL, "entries == null, calling read...");
                 read(progressNotifier);
             }
         }
@@ -143,7 +143,7 @@ public final class Mbox
 
     public synchronized boolean lock()
     {
-        Log.debug("Mbox.lock " + file.canonicalPath());
+        Log.debug(Log.MAIL, "Mbox.lock {}", file.canonicalPath());
         try {
             return mutex.attempt();
         }
@@ -154,7 +154,7 @@ public final class Mbox
 
     public synchronized void unlock()
     {
-        Log.debug("Mbox.unlock " + file.canonicalPath());
+        Log.debug(Log.MAIL, "Mbox.unlock {}", file.canonicalPath());
         mutex.release();
     }
 
@@ -165,7 +165,7 @@ public final class Mbox
 
     private synchronized void read(ProgressNotifier progressNotifier)
     {
-        Log.debug("entering Mbox.read");
+        Log.debug(Log.MAIL, "entering Mbox.read");
         long start = System.currentTimeMillis();
         Debug.assertTrue(isLocked());
         entries = new ArrayList<LocalMailboxEntry>(1000);
@@ -182,7 +182,7 @@ public final class Mbox
                 String text = reader.readLine();
                 if (text == null) {
                     // End of file.
-                    Log.debug("read - end of file");
+                    Log.debug(Log.MAIL, "read - end of file");
                     if (entries.size() > 0) {
                         LocalMailboxEntry entry =
                             entries.get(entries.size()-1);
@@ -201,7 +201,7 @@ public final class Mbox
                         messageStart = here;
                     }
                     if (progressNotifier != null && progressNotifier.cancelled()) {
-                        Log.debug("Mbox.read cancelled!");
+                        Log.debug(Log.MAIL, "Mbox.read cancelled!");
                         break;
                     }
                     sb.setLength(0);
@@ -230,10 +230,10 @@ public final class Mbox
             }
             if (complete) {
                 long elapsed = System.currentTimeMillis() - start;
-                Log.debug("Mbox.read " + elapsed + " ms");
+                Log.debug(Log.MAIL, "Mbox.read {} ms", elapsed);
                 // User did not cancel.
                 writeSummary();
-                Log.debug("Mbox.read - after writeSummary");
+                Log.debug(Log.MAIL, "Mbox.read - after writeSummary");
                 lastModified = file.lastModified();
             }
         }
@@ -249,17 +249,18 @@ public final class Mbox
                     Log.error(e);
                 }
             }
-            Log.debug("leaving Mbox.read");
+            Log.debug(Log.MAIL, "leaving Mbox.read");
         }
     }
 
     public synchronized boolean appendMessage(Message message, final int flags)
     {
-        Log.debug("Mbox.appendMessage flags = " + flags);
+        Log.debug(Log.MAIL, "Mbox.appendMessage flags = {}", flags);
         Debug.assertTrue(isLocked());
         try {
             BufferedReader reader =
                 new BufferedReader(new StringReader(message.getRawText()));
+            final long oldLastModified = file.lastModified();
             BufferedWriter writer =
                 new BufferedWriter(new FileWriter(file.canonicalPath(), true));
             final long messageStart = file.length();
@@ -313,16 +314,28 @@ public final class Mbox
             writer.flush();
             writer.close();
             reader.close();
+            final long nextMessageStart = file.length();
+            final int messageNumber;
+            if (entries != null)
+                messageNumber = entries.size() + 1;
+            else {
+                Log.debug(Log.MAIL, "appendMessage entries == null");
+                messageNumber = 0; // Set correctly when the summary is read.
+            }
+            LocalMailboxEntry entry =
+                new LocalMailboxEntry(messageNumber, messageStart,
+                    sb.toString());
+            entry.setNextMessageStart(nextMessageStart);
+            entry.setSize((int)(nextMessageStart - messageStart));
+            // Keep the summary up to date so the mailbox doesn't have to be
+            // read again.
+            MboxSummary.append(getSummaryFile(), file, oldLastModified,
+                messageStart, entry);
             if (entries != null) {
-                final long nextMessageStart = file.length();
-                LocalMailboxEntry entry =
-                    new LocalMailboxEntry(entries.size()+1, messageStart,
-                        sb.toString());
-                entry.setNextMessageStart(nextMessageStart);
-                entry.setSize((int)(nextMessageStart - messageStart));
                 entries.add(entry);
-            } else
-                Log.debug("appendMessage entries == null");
+                if (lastModified == oldLastModified)
+                    lastModified = file.lastModified();
+            }
             return true;
         }
         catch (IOException e) {
@@ -372,7 +385,7 @@ public final class Mbox
 
     protected void finalize() throws Throwable
     {
-        Log.debug("Mbox.finalize " + file);
+        Log.debug(Log.MAIL, "Mbox.finalize {}", file);
         super.finalize();
     }
 }
@@ -20,20 +20,46 @@
 
 package org.armedbear.j.mail;
 
-import java.io.BufferedInputStream;
-import java.io.InvalidClassException;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
-import java.io.Serializable;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
+import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
 import org.armedbear.j.File;
 import org.armedbear.j.Log;
 import org.armedbear.j.util.Utilities;
 
-public final class MboxSummary implements Serializable
+// The summary file is a fixed-size header followed by one record per
+// message. Offsets, sizes, flags and dates are stored as primitives.
+// Strings are stored once and referred to by index after that, so repeated
+// addresses and message ids don't take up space in the file or the heap.
+// New records can be appended to the file without rewriting it.
+public final class MboxSummary
 {
+    private static final int MAGIC = 0x4a4d4253; // "JMBS"
+    private static final int VERSION = 1;
+
+    // Header offsets.
+    private static final int LAST_MODIFIED_OFFSET = 8;
+    private static final int LENGTH_OFFSET = 16;
+    private static final int COUNT_OFFSET = 24;
+    private static final int HEADER_SIZE = 28;
+
+    // String references.
+    private static final int NULL_STRING = 0;
+    private static final int NEW_STRING = -1;
+
+    private static final long NO_DATE = Long.MIN_VALUE;
+
     private final ArrayList<LocalMailboxEntry> entries;
     private final String path;
     private long lastModified;
@@ -47,6 +73,15 @@ public final class MboxSummary implements Serializable
         length = mailboxFile.length();
     }
 
+    private MboxSummary(String path, long lastModified, long length,
+        ArrayList<LocalMailboxEntry> entries)
+    {
+        this.path = path;
+        this.lastModified = lastModified;
+        this.length = length;
+        this.entries = entries;
+    }
+
     public synchronized ArrayList<LocalMailboxEntry> getEntries()
     {
         return entries;
@@ -65,56 +100,261 @@ public final class MboxSummary implements Serializable
     public synchronized void write(File file)
     {
         try {
-            Log.debug("MboxSummary.write");
+            Log.debug(Log.MAIL, "MboxSummary.write");
             long start = System.currentTimeMillis();
-            File temp = Utilities.getTempFile();
-            ObjectOutputStream objectOut = new ObjectOutputStream(temp.getOutputStream());
-            objectOut.writeObject(this);
-            objectOut.flush();
-            objectOut.close();
+            // Same directory, so the rename doesn't have to copy.
+            File temp = Utilities.getTempFile(file.getParentFile());
+            DataOutputStream out =
+                new DataOutputStream(new BufferedOutputStream(temp.getOutputStream()));
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(lastModified);
+            out.writeLong(length);
+            out.writeInt(entries.size());
+            Writer writer = new Writer(out, true);
+            writer.writeString(path);
+            for (LocalMailboxEntry entry : entries)
+                writer.writeEntry(entry);
+            out.flush();
+            out.close();
             Utilities.deleteRename(temp, file);
             long elapsed = System.currentTimeMillis() - start;
-            Log.debug("MboxSummary.write completed " + elapsed + " ms");
+            Log.debug(Log.MAIL, "MboxSummary.write completed {} ms", elapsed);
         }
         catch (Exception e) {
             Log.error(e);
         }
     }
 
-    public static MboxSummary read(File file)
+    // Adds an entry for a message that has just been appended to the
+    // mailbox. The summary must be up to date with the mailbox as it was
+    // before the message was appended (oldLastModified and oldLength);
+    // if it isn't, nothing is done, and the mailbox will be read again the
+    // next time it's opened.
+    public static void append(File file, File mailboxFile,
+        long oldLastModified, long oldLength, LocalMailboxEntry entry)
     {
-        Log.debug("MboxSummary.read");
         if (file == null || !file.isFile())
-            return null;
-        ObjectInputStream in = null;
+            return;
+        RandomAccessFile raf = null;
         try {
-            in = new ObjectInputStream(new BufferedInputStream(file.getInputStream()));
-            MboxSummary summary = (MboxSummary) in.readObject();
-            File mailboxFile = File.getInstance(summary.path);
-            if (mailboxFile != null && mailboxFile.isFile()) {
-                if (summary.length == mailboxFile.length())
-                    if (summary.lastModified == mailboxFile.lastModified())
-                        return summary;
-            }
-        }
-        catch (InvalidClassException e) {
-            // Expected if an incompatible change has been made to the
-            // serialized class. No big deal.
-            Log.debug(e);
+            raf = new RandomAccessFile(file.canonicalPath(), "rw");
+            if (raf.length() < HEADER_SIZE)
+                return;
+            if (raf.readInt() != MAGIC || raf.readInt() != VERSION)
+                return;
+            if (raf.readLong() != oldLastModified || raf.readLong() != oldLength)
+                return;
+            final int count = raf.readInt();
+            // Strings in the new record are all written out in full, since
+            // we don't know what's already in the table. The reader adds
+            // them to the table just the same.
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream(1024);
+            DataOutputStream out = new DataOutputStream(bytes);
+            new Writer(out, false).writeEntry(entry);
+            out.flush();
+            raf.seek(raf.length());
+            raf.write(bytes.toByteArray());
+            raf.seek(LAST_MODIFIED_OFFSET);
+            raf.writeLong(mailboxFile.lastModified());
+            raf.seek(LENGTH_OFFSET);
+            raf.writeLong(mailboxFile.length());
+            raf.seek(COUNT_OFFSET);
+            raf.writeInt(count + 1);
         }
-        catch (Exception e) {
+        catch (IOException e) {
             Log.error(e);
         }
         finally {
-            if (in != null) {
+            if (raf != null) {
                 try {
-                    in.close();
+                    raf.close();
                 }
                 catch (IOException e) {
                     Log.error(e);
                 }
             }
         }
-        return null;
+    }
+
+    public static MboxSummary read(File file)
+    {
+        Log.debug(Log.MAIL, "MboxSummary.read");
+        if (file == null || !file.isFile())
+            return null;
+        try (FileChannel channel =
+             FileChannel.open(Paths.get(file.canonicalPath()),
+                              StandardOpenOption.READ)) {
+            final long size = channel.size();
+            if (size < HEADER_SIZE || size > Integer.MAX_VALUE)
+                return null;
+            ByteBuffer bb = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (bb.getInt() != MAGIC || bb.getInt() != VERSION) {
+                // Old or incompatible format. No big deal.
+                Log.debug(Log.MAIL, "MboxSummary.read unsupported format");
+                return null;
+            }
+            final long lastModified = bb.getLong();
+            final long length = bb.getLong();
+            final int count = bb.getInt();
+            Reader reader = new Reader(bb);
+            final String path = reader.readString();
+            File mailboxFile = File.getInstance(path);
+            if (mailboxFile == null || !mailboxFile.isFile())
+                return null;
+            if (length != mailboxFile.length())
+                return null;
+            if (lastModified != mailboxFile.lastModified())
+                return null;
+            ArrayList<LocalMailboxEntry> entries =
+                new ArrayList<LocalMailboxEntry>(count);
+            for (int i = 0; i < count; i++)
+                entries.add(reader.readEntry(i + 1));
+            return new MboxSummary(path, lastModified, length, entries);
+        }
+        catch (Exception e) {
+            // BufferUnderflowException if the file is truncated.
+            Log.error(e);
+            return null;
+        }
+    }
+
+    private static final class Writer
+    {
+        private final DataOutputStream out;
+
+        // Null if every string is to be written out in full.
+        private final HashMap<String, Integer> table;
+
+        Writer(DataOutputStream out, boolean intern)
+        {
+            this.out = out;
+            table = intern ? new HashMap<String, Integer>() : null;
+        }
+
+        void writeEntry(LocalMailboxEntry entry) throws IOException
+        {
+            out.writeLong(entry.getMessageStart());
+            out.writeLong(entry.getNextMessageStart());
+            out.writeInt(entry.getSize());
+            out.writeInt(entry.getFlags());
+            RFC822Date date = entry.getDate();
+            out.writeLong(date != null && date.getDate() != null ?
+                          date.getTime() : NO_DATE);
+            writeString(entry.getSubject());
+            writeString(entry.getMessageId());
+            writeString(entry.getInReplyTo());
+            writeString(entry.getUidl());
+            writeAddresses(entry.getFrom());
+            writeAddresses(entry.getReplyTo());
+            writeAddresses(entry.getTo());
+            writeAddresses(entry.getCc());
+            String[] references = entry.getReferences();
+            if (references == null) {
+                out.writeInt(-1);
+            } else {
+                out.writeInt(references.length);
+                for (String s : references)
+                    writeString(s);
+            }
+        }
+
+        private void writeAddresses(MailAddress[] addresses) throws IOException
+        {
+            if (addresses == null) {
+                out.writeInt(-1);
+                return;
+            }
+            out.writeInt(addresses.length);
+            for (MailAddress a : addresses) {
+                writeString(a.getEncodedPersonal());
+                writeString(a.getAddress());
+            }
+        }
+
+        void writeString(String s) throws IOException
+        {
+            if (s == null) {
+                out.writeInt(NULL_STRING);
+                return;
+            }
+            if (table != null) {
+                Integer index = table.get(s);
+                if (index != null) {
+                    out.writeInt(index.intValue());
+                    return;
+                }
+                table.put(s, Integer.valueOf(table.size() + 1));
+            }
+            byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+            out.writeInt(NEW_STRING);
+            out.writeInt(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    private static final class Reader
+    {
+        private final ByteBuffer bb;
+        private final ArrayList<String> table = new ArrayList<String>();
+
+        Reader(ByteBuffer bb)
+        {
+            this.bb = bb;
+        }
+
+        LocalMailboxEntry readEntry(int messageNumber)
+        {
+            LocalMailboxEntry entry =
+                new LocalMailboxEntry(messageNumber, bb.getLong());
+            entry.setNextMessageStart(bb.getLong());
+            entry.size = bb.getInt();
+            entry.flags = bb.getInt();
+            final long time = bb.getLong();
+            entry.date = new RFC822Date(time != NO_DATE ? new Date(time) : null);
+            entry.subject = readString();
+            entry.messageId = readString();
+            entry.inReplyTo = readString();
+            entry.setUidl(readString());
+            entry.from = readAddresses();
+            entry.replyTo = readAddresses();
+            entry.to = readAddresses();
+            entry.cc = readAddresses();
+            final int count = bb.getInt();
+            if (count >= 0) {
+                String[] references = new String[count];
+                for (int i = 0; i < count; i++)
+                    references[i] = readString();
+                entry.references = references;
+            }
+            return entry;
+        }
+
+        private MailAddress[] readAddresses()
+        {
+            final int count = bb.getInt();
+            if (count < 0)
+                return null;
+            MailAddress[] addresses = new MailAddress[count];
+            for (int i = 0; i < count; i++) {
+                String encodedPersonal = readString();
+                addresses[i] = new MailAddress(encodedPersonal, readString());
+            }
+            return addresses;
+        }
+
+        String readString()
+        {
+            final int index = bb.getInt();
+            if (index == NULL_STRING)
+                return null;
+            if (index != NEW_STRING)
+                return table.get(index - 1);
+            byte[] bytes = new byte[bb.getInt()];
+            bb.get(bytes);
+            String s = new String(bytes, StandardCharsets.UTF_8);
+            table.add(s);
+            return s;
+        }
     }
 }
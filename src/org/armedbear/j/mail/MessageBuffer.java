@@ -339,11 +339,11 @@ public class MessageBuffer extends Buffer
     {
         final Editor editor = Editor.currentEditor();
         String inReplyTo = message.getHeaderValue(Headers.IN_REPLY_TO);
-        Log.debug("inReplyTo = |" + inReplyTo + "|");
+        Log.debug(Log.MAIL, "inReplyTo = |{}|", inReplyTo);
         if (inReplyTo != null) {
             String msgId = extractMessageId(inReplyTo);
             if (msgId != null) {
-                Log.debug("msgId = |" + msgId + "|");
+                Log.debug(Log.MAIL, "msgId = |{}|", msgId);
                 MailboxEntry parentEntry = mailbox.getEntryForMessageId(msgId);
                 if (parentEntry != null) {
                     load(editor, parentEntry);
@@ -352,13 +352,13 @@ public class MessageBuffer extends Buffer
             }
         }
         String references = message.getHeaderValue(Headers.REFERENCES);
-        Log.debug("references = |" + references + "|");
+        Log.debug(Log.MAIL, "references = |{}|", references);
         if (references != null) {
             List<String> list = extractAllMessageIds(references);
             if (list != null) {
                 for (String msgId : list) {
                     if (msgId != null) {
-                        Log.debug("msgId = |" + msgId + "|");
+                        Log.debug(Log.MAIL, "msgId = |{}|", msgId);
                         MailboxEntry parentEntry =
                                 mailbox.getEntryForMessageId(msgId);
                         if (parentEntry != null) {
@@ -400,7 +400,7 @@ public class MessageBuffer extends Buffer
             String msgId = s.substring(begin, end + 1);
             if (list == null)
                 list = new ArrayList<String>();
-            Log.debug("adding |" + msgId + "|");
+            Log.debug(Log.MAIL, "adding |{}|", msgId);
             list.add(msgId);
             s = s.substring(end+1);
         }
@@ -433,11 +433,11 @@ public class MessageBuffer extends Buffer
     {
         String toBeQuoted = mimeBody != null ? mimeBody : rawBody;
         if (toBeQuoted == null) {
-            Log.debug("quoteBody toBeQuoted is null");
+            Log.debug(Log.MAIL, "quoteBody toBeQuoted is null");
             return null;
         }
         if (Utilities.isWhitespace(toBeQuoted)) {
-            Log.debug("quoteBody toBeQuoted is whitespace");
+            Log.debug(Log.MAIL, "quoteBody toBeQuoted is whitespace");
             return null;
         }
         String wrapped = wrap(toBeQuoted, wrapCol-2, 8);
@@ -523,7 +523,7 @@ public class MessageBuffer extends Buffer
         Runnable bounceRunnable = new Runnable() {
             public void run()
             {
-                Log.debug("MessageBuffer bounceRunnable.run()");
+                Log.debug(Log.MAIL, "MessageBuffer bounceRunnable.run()");
                 boolean succeeded = false;
                 try {
                     succeeded = Mail.bounceMessage(message, to);
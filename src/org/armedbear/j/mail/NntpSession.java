@@ -129,7 +129,7 @@ public final class NntpSession
             return null;
 
         if (timeout > 0) {
-            Log.debug("reconnecting ...");
+            Log.debug(Log.MAIL, "reconnecting ...");
             disconnect();
             return _getArticle(articleNumber, progressNotifier);
         }
@@ -160,7 +160,7 @@ public final class NntpSession
             if (progressNotifier != null) {
                 progressNotifier.progress("Received ", sb.length(), 0);
                 if (progressNotifier.cancelled()) {
-                    Log.debug("getArticle cancelled!!");
+                    Log.debug(Log.MAIL, "getArticle cancelled!!");
                     abort();
                     break;
                 }
@@ -258,7 +258,7 @@ public final class NntpSession
         try {
             String s = reader.readLine();
             if (echo && s != null)
-                Log.debug("<== ".concat(s));
+                Log.debug(Log.MAIL, "<== {}", s);
             return s;
         }
         catch (IOException e) {
@@ -273,7 +273,7 @@ public final class NntpSession
             if (!reconnect())
                 return false;
         if (echo)
-            Log.debug("==> ".concat(s));
+            Log.debug(Log.MAIL, "==> {}", s);
         try {
             writer.write(s);
             writer.write("\r\n");
@@ -284,11 +284,11 @@ public final class NntpSession
             Log.error(e);
         }
         // Things didn't go exactly as planned. Try to reconnect.
-        Log.debug("writeLine trying to reconnect...");
+        Log.debug(Log.MAIL, "writeLine trying to reconnect...");
         if (connect()) {
             if (selectGroup(groupName)) {
                 if (echo)
-                    Log.debug("==> ".concat(s));
+                    Log.debug(Log.MAIL, "==> {}", s);
                 try {
                     writer.write(s);
                     writer.write("\r\n");
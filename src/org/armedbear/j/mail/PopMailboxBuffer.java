@@ -176,7 +176,7 @@ public final class PopMailboxBuffer extends LocalMailboxBuffer
 
         public void cancel()
         {
-            Log.debug("loadProcess.cancel");
+            Log.debug(Log.MAIL, "loadProcess.cancel");
             cancelled = true;
             progressNotifier.cancel();
             progressNotifier.setText("Cancelled, cleaning up...");
@@ -209,9 +209,10 @@ public final class PopMailboxBuffer extends LocalMailboxBuffer
         // dialog.
         if (session.getPassword() == null)
             return;
-        Log.debug("PopMailboxBuffer.getNewMessages " + userInitiated);
+        Log.debug(Log.MAIL, "PopMailboxBuffer.getNewMessages {}",
+                  userInitiated);
         setBusy(true);
-        Log.debug("PopMailboxBuffer.getNewMessages back from setBusy(true)");
+        Log.debug(Log.MAIL, "PopMailboxBuffer.getNewMessages back from setBusy(true)");
         if (userInitiated)
             saveDisplayState();
         Debug.assertTrue(backgroundThread == null);
@@ -269,12 +270,12 @@ public final class PopMailboxBuffer extends LocalMailboxBuffer
 
         public void cancel()
         {
-            Log.debug("GetNewMessagesProcess.cancel");
+            Log.debug(Log.MAIL, "GetNewMessagesProcess.cancel");
             cancelled = true;
             progressNotifier.cancel();
             progressNotifier.setText("Cancelled, cleaning up...");
             if (backgroundThread != null && backgroundThread.isAlive()) {
-                Log.debug("interrupting background thread...");
+                Log.debug(Log.MAIL, "interrupting background thread...");
                 backgroundThread.interrupt();
             }
             session.disconnect();
@@ -283,7 +284,7 @@ public final class PopMailboxBuffer extends LocalMailboxBuffer
 
     private boolean retrieveNewMessages()
     {
-        Log.debug("PopMailboxBuffer.retrieveNewMessages");
+        Log.debug(Log.MAIL, "PopMailboxBuffer.retrieveNewMessages");
         if (!connect())
             return false;
         File outputFile = null;
@@ -320,14 +321,14 @@ public final class PopMailboxBuffer extends LocalMailboxBuffer
                 // messages.
                 if (!getBooleanProperty(Property.POP_KEEP_MESSAGES_ON_SERVER))
                     deleteMessagesOnServer(serverMessageList);
-                Log.debug("no new messages");
+                Log.debug(Log.MAIL, "no new messages");
                 return true;
             }
             if (getLocalStore() == null)
                 return false; // Error.
             if (localStore.isFile() && localStore.length() > 0) {
                 outputFile = Utilities.getTempFile(localStore.getParentFile());
-                Log.debug("calling copyFile");
+                Log.debug(Log.MAIL, "calling copyFile");
                 long copyStart = System.currentTimeMillis();
                 if (!Utilities.copyFile(localStore, outputFile))
                     return false;
@@ -348,7 +349,7 @@ public final class PopMailboxBuffer extends LocalMailboxBuffer
                 return false;
             }
             if (!ok) {
-                Log.debug("not ok...");
+                Log.debug(Log.MAIL, "not ok...");
                 // retrieveMessages() was interrupted. Truncate output file to
                 // proper length.
                 if (entries.size() == 0)
@@ -359,10 +360,12 @@ public final class PopMailboxBuffer extends LocalMailboxBuffer
                 try {
                     RandomAccessFile raf =
                         outputFile.getRandomAccessFile("rw");
-                    Log.debug("before raf.length() = " + raf.length());
-                    Log.debug("truncating to " + offset);
+                    Log.debug(Log.MAIL, "before raf.length() = {}",
+                              raf.length());
+                    Log.debug(Log.MAIL, "truncating to {}", offset);
                     raf.setLength(offset);
-                    Log.debug("after raf.length() = " + raf.length());
+                    Log.debug(Log.MAIL, "after raf.length() = {}",
+                              raf.length());
                     raf.close();
                 }
                 catch (IOException e) {
@@ -378,7 +381,7 @@ public final class PopMailboxBuffer extends LocalMailboxBuffer
             outputFile = null;
         }
         finally {
-            Log.debug("retrieveNewMessages calling logout() ...");
+            Log.debug(Log.MAIL, "retrieveNewMessages calling logout() ...");
             session.logout();
             if (outputFile != null && outputFile.isFile())
                 outputFile.delete();
@@ -445,7 +448,8 @@ public final class PopMailboxBuffer extends LocalMailboxBuffer
             }
         }
         Log.debug("getServerMessageList " + (System.currentTimeMillis() - start) + " ms");
-        Log.debug("getServerMessageList count = " + count + " list size = " + list.size());
+        Log.debug(Log.MAIL, "getServerMessageList count = {} list size = {}",
+                  count, list.size());
         return list;
     }
 
@@ -478,7 +482,7 @@ public final class PopMailboxBuffer extends LocalMailboxBuffer
 
     private boolean retrieveMessages(List<MessageListEntry> messageList, MailboxFileWriter writer)
     {
-        Log.debug("entering retrieveMessages");
+        Log.debug(Log.MAIL, "entering retrieveMessages");
         long start = System.currentTimeMillis();
         for (int i = 0; i < messageList.size(); i++) {
             String text = "Retrieving message " + (i + 1)  + " of " + messageList.size();
@@ -600,7 +604,8 @@ public final class PopMailboxBuffer extends LocalMailboxBuffer
 
     private boolean deleteMessagesOnServer(List<MessageListEntry> serverMessageList)
     {
-        Log.debug("deleteMessagesOnServer need to delete " + serverMessageList.size() + " messages");
+        Log.debug(Log.MAIL, "deleteMessagesOnServer need to delete {} messages",
+                  serverMessageList.size());
         for (MessageListEntry messageListEntry : serverMessageList) {
             session.write("dele " + messageListEntry.messageNumber);
             String response = session.readLine();
@@ -611,7 +616,7 @@ public final class PopMailboxBuffer extends LocalMailboxBuffer
                 return false; // Error!
             }
         }
-        Log.debug("deleteMessagesOnServer success!");
+        Log.debug(Log.MAIL, "deleteMessagesOnServer success!");
         return true;
     }
 
@@ -653,7 +658,7 @@ public final class PopMailboxBuffer extends LocalMailboxBuffer
 
         public void cancel()
         {
-            Log.debug("expungeProcess.cancel");
+            Log.debug(Log.MAIL, "expungeProcess.cancel");
             cancelled = true;
             if (backgroundThread != null && backgroundThread.isAlive())
                 backgroundThread.interrupt();
@@ -668,7 +673,7 @@ public final class PopMailboxBuffer extends LocalMailboxBuffer
         if (getBooleanProperty(Property.POP_EXPUNGE_DELETED_MESSAGES_ON_SERVER) == false ||
             getBooleanProperty(Property.POP_KEEP_MESSAGES_ON_SERVER) == false) {
             // This is the "local expunge only" case.
-            Log.debug("expungeInternal \"local expunge only\" case");
+            Log.debug(Log.MAIL, "expungeInternal \"local expunge only\" case");
             // First add all deleted entries to expunged list.
             for (int i = entries.size() - 1; i >= 0; i--) {
                 MailboxEntry entry = (MailboxEntry) entries.get(i);
@@ -681,7 +686,7 @@ public final class PopMailboxBuffer extends LocalMailboxBuffer
             return;
         }
         // Reaching here, we want to expunge the deleted messages on the server too.
-        Log.debug("expungeInternal \"expunge through\" case");
+        Log.debug(Log.MAIL, "expungeInternal \"expunge through\" case");
         if (!connect()) {
             Log.error("expungeInternal can't connect");
             return;
@@ -777,7 +782,7 @@ public final class PopMailboxBuffer extends LocalMailboxBuffer
     // on the server.
     private void pruneExpungedUidlsList(List<MessageListEntry> serverMessageList)
     {
-        Log.debug("pruneExpungedUidlsList");
+        Log.debug(Log.MAIL, "pruneExpungedUidlsList");
         if (expungedUidlsList == null)
             return; // Nothing to do.
         boolean changed = false;
@@ -911,27 +916,27 @@ public final class PopMailboxBuffer extends LocalMailboxBuffer
 
     public void dispose()
     {
-        Log.debug("PopMailboxBuffer.dispose");
+        Log.debug(Log.MAIL, "PopMailboxBuffer.dispose");
         Runnable disposeRunnable = new Runnable() {
             public void run()
             {
                 try {
-                    Log.debug("disposeRunnable.run() calling acquire()...");
+                    Log.debug(Log.MAIL, "disposeRunnable.run() calling acquire()...");
                     acquire(); // Blocks, may throw InterruptedException.
-                    Log.debug("disposeRunnable.run() back from acquire()");
+                    Log.debug(Log.MAIL, "disposeRunnable.run() back from acquire()");
                     if (dirty) {
                         final Object pending = new Object();
                         Editor.getPendingOperations().add(pending);
-                        Log.debug("disposeRunnable.run() calling rewriteMailbox()...");
+                        Log.debug(Log.MAIL, "disposeRunnable.run() calling rewriteMailbox()...");
                         rewriteMailbox(false);
-                        Log.debug("disposeRunnable.run() back from rewriteMailbox()");
+                        Log.debug(Log.MAIL, "disposeRunnable.run() back from rewriteMailbox()");
                         Editor.getPendingOperations().remove(pending);
                     }
                     Debug.assertTrue(session != null);
-                    Log.debug("disposeRunnable.run() calling session.logout()...");
+                    Log.debug(Log.MAIL, "disposeRunnable.run() calling session.logout()...");
                     session.logout();
                     release();
-                    Log.debug("disposeRunnable.run() back from release()");
+                    Log.debug(Log.MAIL, "disposeRunnable.run() back from release()");
                 }
                 catch (InterruptedException e) {
                     Log.error(e);
@@ -944,7 +949,7 @@ public final class PopMailboxBuffer extends LocalMailboxBuffer
 
     protected void finalize() throws Throwable
     {
-        Log.debug("PopMailboxBuffer.finalize");
+        Log.debug(Log.MAIL, "PopMailboxBuffer.finalize");
         super.finalize();
     }
 
@@ -177,12 +177,12 @@ public final class PopSession
                 Log.error(e);
             }
         } else
-            Log.debug("PopSession.setTimeout socket is null");
+            Log.debug(Log.MAIL, "PopSession.setTimeout socket is null");
     }
 
     public synchronized boolean logout()
     {
-        Log.debug("PopSession.logout");
+        Log.debug(Log.MAIL, "PopSession.logout");
         boolean succeeded = false;
         if (state > DISCONNECTED) {
             setEcho(true);
@@ -209,7 +209,7 @@ public final class PopSession
 
     protected void finalize()
     {
-        Log.debug("PopSession.finalize");
+        Log.debug(Log.MAIL, "PopSession.finalize");
     }
 
     public synchronized String readLine()
@@ -217,7 +217,7 @@ public final class PopSession
         try {
             String s = reader.readLine();
             if (echo && s != null)
-                Log.debug("<== " + s);
+                Log.debug(Log.MAIL, "<== {}", s);
             return s;
         }
         catch (IOException e) {
@@ -232,7 +232,7 @@ public final class PopSession
         if (writer == null)
             return false;
         if (echo)
-            Log.debug("==> " + (s.startsWith("pass ") ? "pass" : s));
+            Log.debug(Log.MAIL, "==> {}", s.startsWith("pass ") ? "pass" : s);
         s += "\r\n";
         try {
             writer.write(s);
@@ -777,7 +777,7 @@ public final class SendMail extends Buffer
                 mailbox.setAnsweredFlag(entryRepliedTo);
             File file = getFile();
             if (file.isFile()) {
-                Log.debug("deleting draft " + file);
+                Log.debug(Log.MAIL, "deleting draft {}", file);
                 file.delete();
                 for (BufferIterator it = new BufferIterator(); it.hasNext();) {
                     Buffer buf = it.next();
@@ -921,7 +921,7 @@ public final class SendMail extends Buffer
                 for (String fullPath : attachments) {
                     File file = File.getInstance(fullPath);
                     String contentType = getContentTypeForFile(file);
-                    Log.debug("contentType = " + contentType);
+                    Log.debug(Log.MAIL, "contentType = {}", contentType);
                     writer.write("--");
                     writer.write(getBoundary());
                     writer.write(separator);
@@ -1195,7 +1195,7 @@ public final class SendMail extends Buffer
         appendAddressesFromString(list, getCc());
         appendAddressesFromString(list, getBcc());
         for (String aList : list)
-            Log.debug("|" + aList + "|");
+            Log.debug(Log.MAIL, "|{}|", aList);
         return list;
     }
 
@@ -219,7 +219,8 @@ public final class SmtpSession extends Writer
     {
         if (connected)
             return true;
-        Log.debug("connecting to port " + getPort() + " on " + getHost() + " ...");
+        Log.debug(Log.MAIL, "connecting to port {} on {} ...",
+                  getPort(), getHost());
         try {
             socket = new Socket(getHost(), getPort());
         }
@@ -273,14 +274,14 @@ public final class SmtpSession extends Writer
 
     private boolean startTLS()
     {
-        Log.debug("staring TLS");
+        Log.debug(Log.MAIL, "staring TLS");
         SSLSocketFactory sf = (SSLSocketFactory)SSLSocketFactory.getDefault();
         try {
             SSLSocket sslsocket = (SSLSocket)sf.createSocket(this.socket, getHost(), getPort(), true);
             // XXX: check certificates
             // XXX: set protocols and cyphers
             sslsocket.startHandshake();
-            Log.debug("TLS handshake successful");
+            Log.debug(Log.MAIL, "TLS handshake successful");
             socket = sslsocket;
             reader =
                     new BufferedReader(new InputStreamReader(socket.getInputStream()));
@@ -299,11 +300,11 @@ public final class SmtpSession extends Writer
     private boolean authenticate() throws IOException
     {
         if (user == null && password == null) {
-            Log.debug("no credentials, not authenticating");
+            Log.debug(Log.MAIL, "no credentials, not authenticating");
             return true;
         }
 
-        Log.debug("authenticating");
+        Log.debug(Log.MAIL, "authenticating");
         writeLine("AUTH PLAIN");
 
         // A response of 530 indicates the server wants us to use TLS
@@ -388,7 +389,7 @@ public final class SmtpSession extends Writer
         try {
             String s = reader.readLine();
             if (echo && s != null)
-                Log.debug("<== " + s);
+                Log.debug(Log.MAIL, "<== {}", s);
             return s;
         }
         catch (IOException e) {
@@ -435,7 +436,7 @@ public final class SmtpSession extends Writer
     public boolean writeLine(String s)
     {
         if (echo)
-            Log.debug("==> " + s);
+            Log.debug(Log.MAIL, "==> {}", s);
         try {
             writer.write(s);
             writer.write("\r\n");
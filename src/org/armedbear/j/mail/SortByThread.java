@@ -21,13 +21,12 @@
 package org.armedbear.j.mail;
 
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.Comparator;
 import java.util.HashMap;
-import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
-import javax.swing.tree.DefaultMutableTreeNode;
 import org.armedbear.j.Debug;
 import org.armedbear.j.Log;
 
@@ -107,7 +106,7 @@ public final class SortByThread
     private void removeEmptyContainers(final Node parent)
     {
         for (int i = 0; i < parent.getChildCount(); i++) {
-            Node node = (Node) parent.getChildAt(i);
+            Node node = parent.getChildAt(i);
             if (node.getMailboxEntry() == null && node.getChildCount() == 0) {
                 // An empty container with no children.
                 parent.remove(i);
@@ -118,7 +117,7 @@ public final class SortByThread
                 Debug.assertTrue(node.getParent() == parent);
                 if (parent != root || node.getChildCount() == 1) {
                     for (int j = node.getChildCount(); j-- > 0;) {
-                        Node child = (Node) node.getChildAt(j);
+                        Node child = node.getChildAt(j);
                         Debug.assertTrue(child.getParent() == node);
                         node.remove(j);
                         Debug.assertTrue(child.getParent() == null);
@@ -143,11 +142,11 @@ public final class SortByThread
 
         // Iterate through top-level nodes.
         for (int i = root.getChildCount(); i-- > 0; ) {
-            final Node node = (Node) root.getChildAt(i);
+            final Node node = root.getChildAt(i);
             MailboxEntry entry = node.getMailboxEntry();
             if (entry == null) {
                 if (node.getChildCount() > 0)
-                    entry = ((Node)node.getChildAt(0)).getMailboxEntry();
+                    entry = node.getChildAt(0).getMailboxEntry();
                 if (entry == null)
                     continue;
             }
@@ -161,7 +160,7 @@ public final class SortByThread
             if (oldNode.isDummy() && node.isDummy()) {
                 // Add node's children to old node.
                 for (int j = node.getChildCount(); j-- > 0;) {
-                    Node child = (Node) node.getChildAt(j);
+                    Node child = node.getChildAt(j);
                     node.remove(j);
                     oldNode.add(child);
                 }
@@ -198,7 +197,7 @@ public final class SortByThread
             // Create a new container for the old message.
             Node c = new Node(oldEntry);
             for (int j = oldNode.getChildCount(); j-- > 0;) {
-                Node child = (Node) oldNode.getChildAt(j);
+                Node child = oldNode.getChildAt(j);
                 oldNode.remove(j);
                 c.add(child);
             }
@@ -218,14 +217,14 @@ public final class SortByThread
     {
         HashMap<String, Node> subjectMap = new HashMap<String, Node>();
         for (int i = 0, limit = root.getChildCount(); i < limit; i++) {
-            final Node node = (Node) root.getChildAt(i);
+            final Node node = root.getChildAt(i);
             MailboxEntry entry = node.getMailboxEntry();
             if (entry == null) {
                 // Dummy node.
                 if (node.getChildCount() > 0)
-                    entry = ((Node)node.getChildAt(0)).getMailboxEntry();
+                    entry = node.getChildAt(0).getMailboxEntry();
                 else {
-                    Log.debug("dummy node child count is zero");
+                    Log.debug(Log.MAIL, "dummy node child count is zero");
                     continue;
                 }
             }
@@ -254,7 +253,7 @@ public final class SortByThread
     {
         // Depth first!
         for (int i = 0, limit = node.getChildCount(); i < limit; i++)
-            sort((Node)node.getChildAt(i));
+            sort(node.getChildAt(i));
         if (node.getChildCount() > 1)
             node.sortChildren();
     }
@@ -283,114 +282,160 @@ public final class SortByThread
         return null;
     }
 
-    private int sequenceNumber;
-
-    public void addEntries(MailboxBuffer mb, MailboxFilter filter)
+    // Returns the top-level nodes, in order, after run(). Each one is a
+    // thread of its own, and is detached from the root.
+    /*package*/ List<Node> getThreads()
     {
-        sequenceNumber = 1;
-        addEntriesForNode(root, mb, filter, 0);
+        final int count = root.getChildCount();
+        ArrayList<Node> threads = new ArrayList<Node>(count);
+        for (int i = 0; i < count; i++)
+            threads.add(root.getChildAt(i));
+        for (Node node : threads)
+            node.setParent(null);
+        return threads;
     }
 
-    private void addEntriesForNode(Node node, MailboxBuffer mb, MailboxFilter filter,
-        int depth)
+    // A message, or a placeholder for a message that isn't in the mailbox
+    // but is referred to by messages that are. This is a lot smaller than a
+    // Swing tree node, since there may be one for every message in a large
+    // mailbox.
+    static final class Node
     {
-        if (node != root) {
-            MailboxEntry entry = node.getMailboxEntry();
-            if (entry != null) {
-                entry.setSequenceNumber(sequenceNumber++);
-                if (filter == null || filter.accept(entry))
-                    mb.appendLine(entry, depth);
-            } else {
-                if (node.getChildCount() > 0) {
-                    Node child = (Node) node.getChildAt(0);
-                    MailboxEntry childEntry = child.getMailboxEntry();
-                    if (childEntry != null)
-                        childEntry.setOrphan(true);
-                }
-            }
+        private static final Node[] NO_CHILDREN = new Node[0];
+
+        private MailboxEntry entry;
+        private String baseSubject;
+        private Node parent;
+        private Node[] children = NO_CHILDREN;
+        private int childCount;
+
+        Node()
+        {
         }
-        for (int i = 0, limit = node.getChildCount(); i < limit; i++)
-            addEntriesForNode((Node)node.getChildAt(i), mb, filter, depth + 1);
-    }
-}
 
-class Node extends DefaultMutableTreeNode
-{
-    private String messageId;
-    private String baseSubject;
+        Node(MailboxEntry entry)
+        {
+            this.entry = entry;
+        }
 
-    Node()
-    {
-        super();
-    }
+        Node(String messageId, String baseSubject)
+        {
+            this.baseSubject = baseSubject;
+        }
 
-    Node(MailboxEntry entry)
-    {
-        super(entry);
-    }
+        MailboxEntry getMailboxEntry()
+        {
+            return entry;
+        }
 
-    Node(String messageId, String baseSubject)
-    {
-        this.messageId = messageId;
-        this.baseSubject = baseSubject;
-    }
+        void setUserObject(MailboxEntry entry)
+        {
+            this.entry = entry;
+        }
 
-    MailboxEntry getMailboxEntry()
-    {
-        return (MailboxEntry) getUserObject();
-    }
+        String getBaseSubject()
+        {
+            return baseSubject;
+        }
 
-    String getBaseSubject()
-    {
-        return baseSubject;
-    }
+        void setBaseSubject(String s)
+        {
+            baseSubject = s;
+        }
 
-    void setBaseSubject(String s)
-    {
-        baseSubject = s;
-    }
+        Node getParent()
+        {
+            return parent;
+        }
 
-    String getMessageId()
-    {
-        return messageId;
-    }
+        void setParent(Node parent)
+        {
+            this.parent = parent;
+        }
 
-    RFC822Date getDate()
-    {
-        MailboxEntry entry = getMailboxEntry();
-        if (entry != null)
-            return entry.getDate();
-        if (getChildCount() > 0) {
-            Node child = (Node) getChildAt(0);
-            entry = child.getMailboxEntry();
+        int getChildCount()
+        {
+            return childCount;
+        }
+
+        Node getChildAt(int i)
+        {
+            if (i >= childCount)
+                throw new ArrayIndexOutOfBoundsException(i);
+            return children[i];
+        }
+
+        // Makes child the last child of this node, removing it from its old
+        // parent first.
+        void add(Node child)
+        {
+            if (child.parent != null)
+                child.parent.remove(child);
+            if (childCount == children.length)
+                children = Arrays.copyOf(children, Math.max(2, childCount * 2));
+            children[childCount++] = child;
+            child.parent = this;
+        }
+
+        void remove(int i)
+        {
+            Node child = getChildAt(i);
+            System.arraycopy(children, i + 1, children, i, childCount - i - 1);
+            children[--childCount] = null;
+            child.parent = null;
+        }
+
+        private void remove(Node child)
+        {
+            for (int i = 0; i < childCount; i++) {
+                if (children[i] == child) {
+                    remove(i);
+                    return;
+                }
+            }
+        }
+
+        // Returns true if node is this node or one of its ancestors.
+        boolean isNodeAncestor(Node node)
+        {
+            for (Node n = this; n != null; n = n.parent) {
+                if (n == node)
+                    return true;
+            }
+            return false;
+        }
+
+        RFC822Date getDate()
+        {
+            MailboxEntry entry = getMailboxEntry();
             if (entry != null)
                 return entry.getDate();
+            if (getChildCount() > 0) {
+                Node child = getChildAt(0);
+                entry = child.getMailboxEntry();
+                if (entry != null)
+                    return entry.getDate();
+            }
+            Log.debug(Log.MAIL, "getDate no date");
+            return null;
         }
-        Log.debug("getDate no date");
-        return null;
-    }
 
-    boolean isDummy()
-    {
-        return getUserObject() == null;
-    }
-
-    void sortChildren()
-    {
-        if (children != null)
-            sortEntriesByDate(children);
-    }
+        boolean isDummy()
+        {
+            return entry == null;
+        }
 
-    private static final Comparator comparator = new Comparator() {
-        public int compare(Object o1, Object o2)
+        void sortChildren()
         {
-            return RFC822Date.compare(((Node)o1).getDate(),
-                ((Node)o2).getDate());
+            if (childCount > 1)
+                Arrays.sort(children, 0, childCount, comparator);
         }
-    };
 
-    private static final void sortEntriesByDate(List<? extends Object> list)
-    {
-        Collections.sort(list, comparator);
+        private static final Comparator<Node> comparator = new Comparator<Node>() {
+            public int compare(Node o1, Node o2)
+            {
+                return RFC822Date.compare(o1.getDate(), o2.getDate());
+            }
+        };
     }
 }
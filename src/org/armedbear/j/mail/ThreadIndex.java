@@ -0,0 +1,387 @@
+/*
+ * ThreadIndex.java
+ *
+ * Copyright (C) 2026 Kevin Krouse
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.armedbear.j.mail;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * The threads of a mailbox, kept from one refresh to the next. When entries
+ * are added or removed, only the threads they could belong to are threaded
+ * again with SortByThread, so the lines of all the other threads can stay
+ * as they are.
+ */
+public final class ThreadIndex
+{
+    // If more of the mailbox than this has changed, it's quicker to thread
+    // the whole thing again.
+    private static final int MAX_CHANGED_PERCENT = 25;
+
+    /**
+     * A top-level thread, and the lines that display it.
+     */
+    static final class Conversation
+    {
+        private final SortByThread.Node root;
+        private final RFC822Date date;
+
+        // In the order they're displayed.
+        private final MailboxEntry[] entries;
+        private final int[] depths;
+
+        // One for each entry, made when they're first needed.
+        private MailboxLine[] lines;
+
+        private Conversation(SortByThread.Node root)
+        {
+            this.root = root;
+            date = root.getDate();
+            ArrayList<MailboxEntry> list = new ArrayList<MailboxEntry>();
+            ArrayList<Integer> depthList = new ArrayList<Integer>();
+            addEntriesForNode(root, list, depthList, 1);
+            entries = list.toArray(new MailboxEntry[list.size()]);
+            depths = new int[entries.length];
+            for (int i = 0; i < depths.length; i++)
+                depths[i] = depthList.get(i);
+        }
+
+        private static void addEntriesForNode(SortByThread.Node node,
+            List<MailboxEntry> list, List<Integer> depthList, int depth)
+        {
+            MailboxEntry entry = node.getMailboxEntry();
+            if (entry != null) {
+                list.add(entry);
+                depthList.add(depth);
+            } else if (node.getChildCount() > 0) {
+                MailboxEntry childEntry = node.getChildAt(0).getMailboxEntry();
+                if (childEntry != null)
+                    childEntry.setOrphan(true);
+            }
+            for (int i = 0, limit = node.getChildCount(); i < limit; i++)
+                addEntriesForNode(node.getChildAt(i), list, depthList, depth + 1);
+        }
+
+        RFC822Date getDate()
+        {
+            return date;
+        }
+
+        // The subject that SortByThread groups top-level threads by.
+        String getSubject()
+        {
+            MailboxEntry entry = root.getMailboxEntry();
+            if (entry == null && root.getChildCount() > 0)
+                entry = root.getChildAt(0).getMailboxEntry();
+            if (entry == null)
+                return null;
+            String baseSubject = entry.getBaseSubject();
+            if (baseSubject == null || baseSubject.length() == 0)
+                return null;
+            return baseSubject;
+        }
+
+        MailboxEntry[] getEntries()
+        {
+            return entries;
+        }
+
+        // Numbers the entries from n on, and returns the next number.
+        int setSequenceNumbers(int n)
+        {
+            // The lines pick up the new numbers in getLines().
+            for (MailboxEntry entry : entries)
+                entry.setSequenceNumber(n++);
+            return n;
+        }
+
+        // Returns the lines for the entries that filter accepts. The lines
+        // are reused, but the filter is applied every time, since what it
+        // accepts can depend on the entries' flags and the time.
+        List<MailboxLine> getLines(MailboxFilter filter)
+        {
+            if (lines == null) {
+                lines = new MailboxLine[entries.length];
+                for (int i = 0; i < entries.length; i++)
+                    lines[i] = new MailboxLine(entries[i], depths[i]);
+            }
+            ArrayList<MailboxLine> list =
+                new ArrayList<MailboxLine>(entries.length);
+            for (int i = 0; i < entries.length; i++) {
+                if (filter == null || filter.accept(entries[i])) {
+                    lines[i].refresh();
+                    list.add(lines[i]);
+                }
+            }
+            return list;
+        }
+    }
+
+    // Sorted by date.
+    private final ArrayList<Conversation> conversations =
+        new ArrayList<Conversation>();
+
+    private final IdentityHashMap<MailboxEntry, Conversation> entryMap =
+        new IdentityHashMap<MailboxEntry, Conversation>();
+
+    // The conversation that mentions each message ID, either as the ID of
+    // one of its messages or in In-Reply-To or References. If more than one
+    // conversation mentions the same ID, the others are in sharedIds.
+    private final HashMap<String, Conversation> idMap =
+        new HashMap<String, Conversation>();
+    private final HashMap<String, List<Conversation>> sharedIds =
+        new HashMap<String, List<Conversation>>();
+
+    // Conversations by the subject that SortByThread groups them by.
+    private final HashMap<String, List<Conversation>> subjectMap =
+        new HashMap<String, List<Conversation>>();
+
+    public ThreadIndex(List<? extends MailboxEntry> entries)
+    {
+        rebuild(entries);
+    }
+
+    public synchronized List<Conversation> getConversations()
+    {
+        return new ArrayList<Conversation>(conversations);
+    }
+
+    // Brings the index up to date with entries. Returns false if the whole
+    // mailbox had to be threaded again.
+    public synchronized boolean update(List<? extends MailboxEntry> entries)
+    {
+        ArrayList<MailboxEntry> added = new ArrayList<MailboxEntry>();
+        int found = 0;
+        for (MailboxEntry entry : entries) {
+            if (entryMap.containsKey(entry))
+                ++found;
+            else
+                added.add(entry);
+        }
+        ArrayList<MailboxEntry> removed = new ArrayList<MailboxEntry>();
+        if (found < entryMap.size()) {
+            Set<MailboxEntry> current = Collections.newSetFromMap(
+                new IdentityHashMap<MailboxEntry, Boolean>(entries.size()));
+            current.addAll(entries);
+            for (MailboxEntry entry : entryMap.keySet()) {
+                if (!current.contains(entry))
+                    removed.add(entry);
+            }
+        }
+        if (added.isEmpty() && removed.isEmpty())
+            return true;
+        final int limit = entries.size() * MAX_CHANGED_PERCENT / 100;
+        if (added.size() + removed.size() > limit) {
+            rebuild(entries);
+            return false;
+        }
+
+        // Find the conversations that the changes could affect: the ones
+        // the removed entries were in, the ones that mention the added
+        // entries' IDs, and the ones that SortByThread could group with any
+        // of those by subject.
+        final Set<Conversation> affected = new HashSet<Conversation>();
+        final ArrayDeque<Conversation> queue = new ArrayDeque<Conversation>();
+        final HashSet<String> subjects = new HashSet<String>();
+        for (MailboxEntry entry : removed) {
+            Conversation c = entryMap.get(entry);
+            if (affected.add(c))
+                queue.add(c);
+        }
+        for (MailboxEntry entry : added) {
+            for (String id : getIds(entry)) {
+                Conversation c = idMap.get(id);
+                if (c != null && affected.add(c))
+                    queue.add(c);
+                List<Conversation> shared = sharedIds.get(id);
+                if (shared != null) {
+                    for (Conversation s : shared) {
+                        if (affected.add(s))
+                            queue.add(s);
+                    }
+                }
+            }
+            addSubject(entry.getBaseSubject(), subjects, affected, queue);
+        }
+        int count = added.size();
+        while (!queue.isEmpty()) {
+            Conversation c = queue.remove();
+            count += c.getEntries().length;
+            if (count > limit) {
+                rebuild(entries);
+                return false;
+            }
+            // Any of its entries could end up at the top level.
+            for (MailboxEntry entry : c.getEntries())
+                addSubject(entry.getBaseSubject(), subjects, affected, queue);
+        }
+
+        // Thread the entries of those conversations again, with the added
+        // entries, in the same order as a full rebuild would see them.
+        ArrayList<MailboxEntry> members = new ArrayList<MailboxEntry>(count);
+        for (MailboxEntry entry : entries) {
+            Conversation c = entryMap.get(entry);
+            if (c == null || affected.contains(c))
+                members.add(entry);
+        }
+        for (Conversation c : affected)
+            unregister(c);
+        conversations.removeAll(affected);
+        SortByThread sort = new SortByThread(members);
+        sort.run();
+        for (SortByThread.Node node : sort.getThreads())
+            insert(new Conversation(node));
+        return true;
+    }
+
+    private void addSubject(String subject, Set<String> subjects,
+        Set<Conversation> affected, ArrayDeque<Conversation> queue)
+    {
+        if (subject == null || subject.length() == 0 || !subjects.add(subject))
+            return;
+        List<Conversation> list = subjectMap.get(subject);
+        if (list != null) {
+            for (Conversation c : list) {
+                if (affected.add(c))
+                    queue.add(c);
+            }
+        }
+    }
+
+    private void rebuild(List<? extends MailboxEntry> entries)
+    {
+        conversations.clear();
+        entryMap.clear();
+        idMap.clear();
+        sharedIds.clear();
+        subjectMap.clear();
+        SortByThread sort = new SortByThread(entries);
+        sort.run();
+        List<SortByThread.Node> threads = sort.getThreads();
+        conversations.ensureCapacity(threads.size());
+        for (SortByThread.Node node : threads) {
+            Conversation c = new Conversation(node);
+            conversations.add(c);
+            register(c);
+        }
+    }
+
+    // Adds c after any conversations with the same date.
+    private void insert(Conversation c)
+    {
+        int low = 0;
+        int high = conversations.size();
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (RFC822Date.compare(conversations.get(mid).getDate(), c.getDate()) <= 0)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        conversations.add(low, c);
+        register(c);
+    }
+
+    private void register(Conversation c)
+    {
+        for (MailboxEntry entry : c.getEntries()) {
+            entryMap.put(entry, c);
+            for (String id : getIds(entry)) {
+                Conversation old = idMap.get(id);
+                if (old == null) {
+                    idMap.put(id, c);
+                } else if (old != c) {
+                    List<Conversation> shared = sharedIds.get(id);
+                    if (shared == null) {
+                        shared = new ArrayList<Conversation>(2);
+                        sharedIds.put(id, shared);
+                    }
+                    if (!shared.contains(c))
+                        shared.add(c);
+                }
+            }
+        }
+        String subject = c.getSubject();
+        if (subject != null) {
+            List<Conversation> list = subjectMap.get(subject);
+            if (list == null) {
+                list = new ArrayList<Conversation>(1);
+                subjectMap.put(subject, list);
+            }
+            list.add(c);
+        }
+    }
+
+    private void unregister(Conversation c)
+    {
+        for (MailboxEntry entry : c.getEntries()) {
+            if (entryMap.get(entry) == c)
+                entryMap.remove(entry);
+            for (String id : getIds(entry)) {
+                List<Conversation> shared = sharedIds.get(id);
+                if (idMap.get(id) == c) {
+                    if (shared != null)
+                        idMap.put(id, shared.remove(shared.size() - 1));
+                    else
+                        idMap.remove(id);
+                } else if (shared != null) {
+                    shared.remove(c);
+                }
+                if (shared != null && shared.isEmpty())
+                    sharedIds.remove(id);
+            }
+        }
+        String subject = c.getSubject();
+        if (subject != null) {
+            List<Conversation> list = subjectMap.get(subject);
+            if (list != null) {
+                list.remove(c);
+                if (list.isEmpty())
+                    subjectMap.remove(subject);
+            }
+        }
+    }
+
+    // The message IDs entry mentions.
+    private static List<String> getIds(MailboxEntry entry)
+    {
+        ArrayList<String> ids = new ArrayList<String>();
+        addId(ids, entry.getMessageId());
+        addId(ids, entry.getInReplyTo());
+        String[] references = entry.getReferences();
+        if (references != null) {
+            for (String reference : references)
+                addId(ids, reference);
+        }
+        return ids;
+    }
+
+    private static void addId(List<String> ids, String id)
+    {
+        if (id != null && id.length() > 0)
+            ids.add(id);
+    }
+}
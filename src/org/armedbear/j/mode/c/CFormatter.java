@@ -353,90 +353,83 @@ public final class CFormatter extends Formatter implements Constants
 
     public boolean parseBuffer()
     {
-        int state = STATE_NEUTRAL;
-        boolean continued = false;
-        Line line = buffer.getFirstLine();
-        boolean changed = false;
-        while (line != null) {
-            int oldflags = line.flags();
-            // Quoted strings can't span lines in C.
-            if (state == STATE_QUOTE && !continued)
-                state = STATE_NEUTRAL;
-            if (state != oldflags) {
-                line.setFlags(state);
-                changed = true;
-            }
-            if (state == STATE_NEUTRAL) {
-                if (line.getText().startsWith("#if 0")) {
-                    // Might be null.
-                    Line match = CMode.findMatchPreprocessor(line);
-                    while (line != null && line != match) {
-                        oldflags = line.flags();
-                        if (oldflags != STATE_DISABLED) {
-                            line.setFlags(STATE_DISABLED);
-                            changed = true;
-                        }
-                        line = line.next();
-                    }
-                    if (line != null && line.getText().startsWith("#en")) {
-                        oldflags = line.flags();
-                        if (oldflags != STATE_DISABLED) {
-                            line.setFlags(STATE_DISABLED);
-                            changed = true;
-                        }
-                        line = line.next();
-                    }
-                    continue;
-                }
+        return parseBufferIncrementally(STATE_NEUTRAL);
+    }
+
+    // The line that ends the "#if 0" block being parsed, or null if the
+    // block runs to the end of the buffer.
+    private Line disabledEnd;
+
+    protected int getLineState(Line line, int state)
+    {
+        if (state == STATE_DISABLED) {
+            if (line == disabledEnd && !line.getText().startsWith("#en"))
+                return STATE_NEUTRAL; // #else or #elif
+            return STATE_DISABLED;
+        }
+        if (state == STATE_NEUTRAL && line.getText().startsWith("#if 0")) {
+            // Might be null.
+            disabledEnd = CMode.findMatchPreprocessor(line);
+            return STATE_DISABLED;
+        }
+        return state;
+    }
+
+    protected int scanLine(Line line, int state)
+    {
+        if (state == STATE_DISABLED)
+            return line == disabledEnd ? STATE_NEUTRAL : STATE_DISABLED;
+        char quoteChar = '\0';
+        final int limit = line.length();
+        char c = '\0';
+        for (int i = 0; i < limit; i++) {
+            c = line.charAt(i);
+            if (c == '\\' && i < limit-1) {
+                // Escape.
+                ++i;
+                continue;
             }
-            char quoteChar = '\0';
-            final int limit = line.length();
-            char c = '\0';
-            continued = false;
-            for (int i = 0; i < limit; i++) {
-                c = line.charAt(i);
-                if (c == '\\' && i < limit-1) {
-                    // Escape.
-                    ++i;
-                    continue;
-                }
-                if (state == STATE_COMMENT) {
-                    if (c == '*' && i < limit-1) {
-                        c = line.charAt(i+1);
-                        if (c == '/') {
-                            ++i;
-                            state = STATE_NEUTRAL;
-                        }
-                    }
-                    continue;
-                }
-                if (state == STATE_QUOTE) {
-                    if (c == quoteChar) {
+            if (state == STATE_COMMENT) {
+                if (c == '*' && i < limit-1) {
+                    c = line.charAt(i+1);
+                    if (c == '/') {
+                        ++i;
                         state = STATE_NEUTRAL;
-                        quoteChar = '\0';
                     }
-                    continue;
                 }
-                // Not in comment or quoted string.
-                if (c == '/' && i < limit-1) {
-                    c = line.charAt(++i);
-                    if (c == '/') {
-                        // Single-line comment beginning.
-                        // Ignore rest of line.
-                        break;
-                    } else if (c == '*')
-                        state = STATE_COMMENT;
-                } else if (c == '"' || c == '\'') {
-                    state = STATE_QUOTE;
-                    quoteChar = c;
+                continue;
+            }
+            if (state == STATE_QUOTE) {
+                if (c == quoteChar) {
+                    state = STATE_NEUTRAL;
+                    quoteChar = '\0';
                 }
+                continue;
+            }
+            // Not in comment or quoted string.
+            if (c == '/' && i < limit-1) {
+                c = line.charAt(++i);
+                if (c == '/') {
+                    // Single-line comment beginning.
+                    // Ignore rest of line.
+                    break;
+                } else if (c == '*')
+                    state = STATE_COMMENT;
+            } else if (c == '"' || c == '\'') {
+                state = STATE_QUOTE;
+                quoteChar = c;
             }
-            if (c == '\\')
-                continued = true;
-            line = line.next();
         }
-        buffer.setNeedsParsing(false);
-        return changed;
+        // Quoted strings can't span lines in C unless continued.
+        if (state == STATE_QUOTE && c != '\\')
+            state = STATE_NEUTRAL;
+        return state;
+    }
+
+    // Where the "#if 0" block ends is not recorded in the line flags.
+    protected boolean isResumable(int state)
+    {
+        return state != STATE_DISABLED;
     }
 
     private static final boolean isOperatorChar(char c)
@@ -28,7 +28,9 @@ import org.armedbear.j.EditorIterator;
 import org.armedbear.j.mode.lisp.JLispBuffer;
 import java.lang.StringBuilder;
 import org.armedbear.j.File;
+import org.armedbear.j.Line;
 import org.armedbear.j.Log;
+import org.armedbear.j.OutputQueue;
 import org.armedbear.j.Platform;
 import org.armedbear.j.Position;
 import org.armedbear.j.util.ReaderThread;
@@ -39,7 +41,6 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
 import java.util.ArrayList;
-import javax.swing.SwingUtilities;
 
 public final class CompilationBuffer extends CompilationErrorBuffer
     implements Runnable
@@ -314,28 +315,43 @@ public final class CompilationBuffer extends CompilationErrorBuffer
         killProcess();
     }
 
-    private void appendLater(final String s)
-    {
-        Runnable runnable = new Runnable() {
-            public void run()
-            {
-                Position pos = posEndOfBuffer;
-                insertString(pos, s);
+    private final OutputQueue outputQueue = new OutputQueue() {
+        public void output(String s, boolean stderr)
+        {
+            try {
+                lockWrite();
+            }
+            catch (InterruptedException e) {
+                Log.debug(e);
+                return;
+            }
+            try {
                 if (needsRenumbering())
                     renumber();
-                for (EditorIterator it = new EditorIterator(); it.hasNext();) {
-                    Editor ed = it.next();
-                    if (ed.getBuffer() == CompilationBuffer.this) {
-                        ed.eob();
-                        ed.getDisplay().setReframe(-2);
-                        ed.setUpdateFlag(Constants.REPAINT);
-                        ed.updateDisplay();
-                    }
+                Line last = appendOutput(findLastLine(posEndOfBuffer.getLine()), s);
+                posEndOfBuffer = new Position(last, last.length());
+            }
+            finally {
+                unlockWrite();
+            }
+            for (EditorIterator it = new EditorIterator(); it.hasNext();) {
+                Editor ed = it.next();
+                if (ed.getBuffer() == CompilationBuffer.this) {
+                    ed.eob();
+                    ed.getDisplay().setReframe(-2);
+                    ed.setUpdateFlag(Constants.REPAINT);
+                    ed.updateDisplay();
                 }
-                resetUndo();
             }
-        };
-        SwingUtilities.invokeLater(runnable);
+            resetUndo();
+        }
+    };
+
+    // Output from both streams goes through the same queue, so it stays in
+    // the order in which it was read.
+    private void appendLater(final String s)
+    {
+        outputQueue.put(s, false);
     }
 
     public String getFileNameForDisplay()
@@ -0,0 +1,554 @@
+/*
+ * Diff.java
+ *
+ * Copyright (C) 2026 Kevin Krouse
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.armedbear.j.mode.diff;
+
+import java.text.SimpleDateFormat;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.HashMap;
+
+import org.armedbear.j.Buffer;
+import org.armedbear.j.Line;
+import org.armedbear.j.MappedText;
+
+/**
+ * Compares two lists of lines without running an external diff program.
+ *
+ * Each line is replaced by a number, equal lines getting equal numbers, and
+ * the numbers are compared with Myers' O(ND) algorithm, searching from both
+ * ends for the middle of the edit script so that it runs in linear space.
+ * This is the algorithm GNU diff uses, including the heuristic that gives up
+ * on finding the shortest edit script when the files have very little in
+ * common, so the output is normally the same as <code>diff -u</code>.
+ *
+ * Lines are given the way a buffer stores them: split at the line
+ * separators, so the last one is empty if the text ends with a line
+ * separator.
+ */
+public final class Diff
+{
+    private static final int DEFAULT_CONTEXT = 3;
+
+    // Texts with more lines than this to compare (after leaving out the
+    // lines that only one of them has) are split at their unique lines first.
+    private static final int ANCHOR_THRESHOLD = 4096;
+
+    private final String[] a;
+    private final String[] b;
+
+    // Number of lines, not counting the empty last line after a final line
+    // separator.
+    private final int aCount;
+    private final int bCount;
+
+    // True if the text doesn't end with a line separator.
+    private final boolean aNoNewline;
+    private final boolean bNoNewline;
+
+    private final int[] aIds;
+    private final int[] bIds;
+
+    private final boolean[] aChanged;
+    private final boolean[] bChanged;
+
+    // Number of distinct lines.
+    private int idCount;
+
+    // The lines that are compared, and whether each of them is changed.
+    private int[] xIds;
+    private int[] yIds;
+    private boolean[] xChanged;
+    private boolean[] yChanged;
+
+    // Diagonal vectors for the forward and backward searches, indexed by
+    // x - y + yIds.length + 1.
+    private int[] fd;
+    private int[] bd;
+    private int tooExpensive;
+
+    private boolean changes;
+
+    public Diff(String[] a, String[] b)
+    {
+        this.a = a;
+        this.b = b;
+        aNoNewline = a.length > 0 && a[a.length - 1].length() > 0;
+        bNoNewline = b.length > 0 && b[b.length - 1].length() > 0;
+        aCount = aNoNewline ? a.length : Math.max(a.length - 1, 0);
+        bCount = bNoNewline ? b.length : Math.max(b.length - 1, 0);
+        aIds = new int[aCount];
+        bIds = new int[bCount];
+        aChanged = new boolean[aCount];
+        bChanged = new boolean[bCount];
+        hashLines();
+        compare();
+    }
+
+    /**
+     * Compares the text of a file with the text of a buffer.
+     *
+     * @param text      the file
+     * @param buffer    the buffer
+     */
+    public static Diff compare(MappedText text, Buffer buffer)
+    {
+        final String[] a = new String[text.getLineCount()];
+        for (int i = 0; i < a.length; i++)
+            a[i] = text.getText(i);
+        return new Diff(a, getLines(buffer));
+    }
+
+    /**
+     * Returns the lines of a buffer. The caller should hold the buffer's read
+     * lock.
+     */
+    public static String[] getLines(Buffer buffer)
+    {
+        final String[] lines = new String[buffer.getLineCount()];
+        int i = 0;
+        for (Line line = buffer.getFirstLine(); line != null; line = line.next()) {
+            if (i == lines.length)
+                break;
+            lines[i++] = line.getText();
+        }
+        if (i < lines.length) {
+            // Line count was out of date.
+            String[] copy = new String[i];
+            System.arraycopy(lines, 0, copy, 0, i);
+            return copy;
+        }
+        return lines;
+    }
+
+    /**
+     * Returns a name followed by a tab and a time, for the first two lines of
+     * unified output.
+     */
+    public static String getHeader(String name, long time)
+    {
+        SimpleDateFormat df = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS Z");
+        return name + '\t' + df.format(new Date(time));
+    }
+
+    public boolean hasChanges()
+    {
+        return changes;
+    }
+
+    // Replaces each line with a number that is the same for equal lines.
+    private void hashLines()
+    {
+        HashMap<String, Integer> map =
+            new HashMap<String, Integer>((aCount + bCount) * 2 + 16);
+        for (int i = 0; i < aCount; i++)
+            aIds[i] = id(map, a[i]);
+        for (int i = 0; i < bCount; i++)
+            bIds[i] = id(map, b[i]);
+        idCount = map.size();
+        // A last line that ends with a line separator differs from one that
+        // doesn't.
+        if (aNoNewline != bNoNewline) {
+            if (aNoNewline && aCount > 0)
+                aIds[aCount - 1] = -1;
+            if (bNoNewline && bCount > 0)
+                bIds[bCount - 1] = -2;
+        }
+    }
+
+    private static int id(HashMap<String, Integer> map, String s)
+    {
+        Integer id = map.get(s);
+        if (id == null) {
+            id = Integer.valueOf(map.size());
+            map.put(s, id);
+        }
+        return id.intValue();
+    }
+
+    private void compare()
+    {
+        // Lines that don't occur at all in the other text can't match
+        // anything, so they are marked as changed and left out of the
+        // comparison. When many lines have been changed, this leaves much
+        // less to compare.
+        final int[] aCounts = new int[idCount];
+        final int[] bCounts = new int[idCount];
+        for (int i = 0; i < aCount; i++)
+            if (aIds[i] >= 0)
+                ++aCounts[aIds[i]];
+        for (int i = 0; i < bCount; i++)
+            if (bIds[i] >= 0)
+                ++bCounts[bIds[i]];
+        final int[] aIndexes = keep(aIds, aChanged, bCounts);
+        final int[] bIndexes = keep(bIds, bChanged, aCounts);
+        xIds = new int[aIndexes.length];
+        for (int i = 0; i < aIndexes.length; i++)
+            xIds[i] = aIds[aIndexes[i]];
+        yIds = new int[bIndexes.length];
+        for (int i = 0; i < bIndexes.length; i++)
+            yIds[i] = bIds[bIndexes[i]];
+        xChanged = new boolean[xIds.length];
+        yChanged = new boolean[yIds.length];
+        final int diags = xIds.length + yIds.length + 3;
+        fd = new int[diags];
+        bd = new int[diags];
+        // Roughly the square root of the number of diagonals, but at least
+        // 4096, as in GNU diff.
+        tooExpensive = 1;
+        for (int n = diags; n != 0; n >>= 2)
+            tooExpensive <<= 1;
+        tooExpensive = Math.max(4096, tooExpensive);
+        if (xIds.length + yIds.length > ANCHOR_THRESHOLD)
+            compareAnchored(aCounts, bCounts);
+        else
+            compareSeq(0, xIds.length, 0, yIds.length);
+        for (int i = 0; i < aIndexes.length; i++)
+            if (xChanged[i])
+                aChanged[aIndexes[i]] = true;
+        for (int i = 0; i < bIndexes.length; i++)
+            if (yChanged[i])
+                bChanged[bIndexes[i]] = true;
+        xIds = yIds = fd = bd = null;
+        xChanged = yChanged = null;
+        for (int i = 0; i < aCount && !changes; i++)
+            changes = aChanged[i];
+        for (int i = 0; i < bCount && !changes; i++)
+            changes = bChanged[i];
+    }
+
+    // Matches up the lines that occur exactly once in each text, keeping the
+    // longest run of them that is in the same order in both (as patience diff
+    // does), and compares the pieces in between. The edit script may not be
+    // the shortest possible, but when there are many changes it is found
+    // much faster.
+    private void compareAnchored(int[] aCounts, int[] bCounts)
+    {
+        final int[] yPositions = new int[idCount];
+        for (int j = 0; j < yIds.length; j++)
+            yPositions[yIds[j]] = j;
+        // Candidate anchors, in order of x.
+        int[] xs = new int[16];
+        int[] ys = new int[16];
+        int n = 0;
+        for (int i = 0; i < xIds.length; i++) {
+            final int id = xIds[i];
+            if (aCounts[id] == 1 && bCounts[id] == 1) {
+                if (n == xs.length) {
+                    xs = Arrays.copyOf(xs, n * 2);
+                    ys = Arrays.copyOf(ys, n * 2);
+                }
+                xs[n] = i;
+                ys[n] = yPositions[id];
+                ++n;
+            }
+        }
+        // Longest increasing subsequence of ys, by patience sorting:
+        // tails[k] is the index of the smallest y that ends an increasing
+        // subsequence of length k + 1.
+        final int[] tails = new int[n];
+        final int[] predecessors = new int[n];
+        int length = 0;
+        for (int k = 0; k < n; k++) {
+            int lo = 0, hi = length;
+            while (lo < hi) {
+                final int mid = (lo + hi) >>> 1;
+                if (ys[tails[mid]] < ys[k])
+                    lo = mid + 1;
+                else
+                    hi = mid;
+            }
+            predecessors[k] = lo > 0 ? tails[lo - 1] : -1;
+            tails[lo] = k;
+            if (lo == length)
+                ++length;
+        }
+        final int[] anchors = new int[length];
+        for (int k = length > 0 ? tails[length - 1] : -1, m = length; k >= 0;
+             k = predecessors[k])
+            anchors[--m] = k;
+        int x = 0, y = 0;
+        for (int k = 0; k < length; k++) {
+            final int anchor = anchors[k];
+            compareSeq(x, xs[anchor], y, ys[anchor]);
+            x = xs[anchor] + 1;
+            y = ys[anchor] + 1;
+        }
+        compareSeq(x, xIds.length, y, yIds.length);
+    }
+
+    // Returns the indexes of the lines that occur in the other text, marking
+    // the rest as changed.
+    private static int[] keep(int[] ids, boolean[] changed, int[] otherCounts)
+    {
+        int[] indexes = new int[ids.length];
+        int n = 0;
+        for (int i = 0; i < ids.length; i++) {
+            final int id = ids[i];
+            if (id >= 0 && otherCounts[id] > 0)
+                indexes[n++] = i;
+            else
+                changed[i] = true;
+        }
+        return n == indexes.length ? indexes : Arrays.copyOf(indexes, n);
+    }
+
+    // Compares x[xoff, xlim) with y[yoff, ylim), marking the lines that are
+    // not part of the longest common subsequence.
+    private void compareSeq(int xoff, int xlim, int yoff, int ylim)
+    {
+        while (true) {
+            // Skip matching lines at the beginning and end.
+            while (xoff < xlim && yoff < ylim && xIds[xoff] == yIds[yoff]) {
+                ++xoff;
+                ++yoff;
+            }
+            while (xoff < xlim && yoff < ylim &&
+                   xIds[xlim - 1] == yIds[ylim - 1]) {
+                --xlim;
+                --ylim;
+            }
+            if (xoff == xlim) {
+                while (yoff < ylim)
+                    yChanged[yoff++] = true;
+                return;
+            }
+            if (yoff == ylim) {
+                while (xoff < xlim)
+                    xChanged[xoff++] = true;
+                return;
+            }
+            final long mid = findMiddle(xoff, xlim, yoff, ylim);
+            final int xmid = (int) (mid >>> 32);
+            final int ymid = (int) mid;
+            // Recurse on the first half and loop on the second.
+            compareSeq(xoff, xmid, yoff, ymid);
+            xoff = xmid;
+            yoff = ymid;
+        }
+    }
+
+    // Returns a point (x << 32 | y) on a shortest (or, if that is too
+    // expensive to find, a short) path through the edit graph of
+    // x[xoff, xlim) and y[yoff, ylim).
+    private long findMiddle(int xoff, int xlim, int yoff, int ylim)
+    {
+        final int offset = yIds.length + 1;
+        final int dmin = xoff - ylim;     // Minimum valid diagonal.
+        final int dmax = xlim - yoff;     // Maximum valid diagonal.
+        final int fmid = xoff - yoff;     // Center diagonal of forward search.
+        final int bmid = xlim - ylim;     // Center diagonal of backward search.
+        int fmin = fmid, fmax = fmid;
+        int bmin = bmid, bmax = bmid;
+        final boolean odd = ((fmid - bmid) & 1) != 0;
+        fd[fmid + offset] = xoff;
+        bd[bmid + offset] = xlim;
+        for (int c = 1; ; c++) {
+            // Extend the forward search by one edit in each diagonal.
+            if (fmin > dmin)
+                fd[--fmin - 1 + offset] = -1;
+            else
+                ++fmin;
+            if (fmax < dmax)
+                fd[++fmax + 1 + offset] = -1;
+            else
+                --fmax;
+            for (int d = fmax; d >= fmin; d -= 2) {
+                final int tlo = fd[d - 1 + offset];
+                final int thi = fd[d + 1 + offset];
+                int x = tlo < thi ? thi : tlo + 1;
+                int y = x - d;
+                while (x < xlim && y < ylim && xIds[x] == yIds[y]) {
+                    ++x;
+                    ++y;
+                }
+                fd[d + offset] = x;
+                if (odd && bmin <= d && d <= bmax && bd[d + offset] <= x)
+                    return (long) x << 32 | y;
+            }
+            // Extend the backward search.
+            if (bmin > dmin)
+                bd[--bmin - 1 + offset] = Integer.MAX_VALUE;
+            else
+                ++bmin;
+            if (bmax < dmax)
+                bd[++bmax + 1 + offset] = Integer.MAX_VALUE;
+            else
+                --bmax;
+            for (int d = bmax; d >= bmin; d -= 2) {
+                final int tlo = bd[d - 1 + offset];
+                final int thi = bd[d + 1 + offset];
+                int x = tlo < thi ? tlo : thi - 1;
+                int y = x - d;
+                while (xoff < x && yoff < y && xIds[x - 1] == yIds[y - 1]) {
+                    --x;
+                    --y;
+                }
+                bd[d + offset] = x;
+                if (!odd && fmin <= d && d <= fmax && x <= fd[d + offset])
+                    return (long) x << 32 | y;
+            }
+            if (c >= tooExpensive) {
+                // Settle for the point that has made the most progress.
+                int fxybest = -1, fxbest = 0;
+                for (int d = fmax; d >= fmin; d -= 2) {
+                    int x = Math.min(fd[d + offset], xlim);
+                    int y = x - d;
+                    if (ylim < y) {
+                        x = ylim + d;
+                        y = ylim;
+                    }
+                    if (fxybest < x + y) {
+                        fxybest = x + y;
+                        fxbest = x;
+                    }
+                }
+                int bxybest = Integer.MAX_VALUE, bxbest = 0;
+                for (int d = bmax; d >= bmin; d -= 2) {
+                    int x = Math.max(xoff, bd[d + offset]);
+                    int y = x - d;
+                    if (y < yoff) {
+                        x = yoff + d;
+                        y = yoff;
+                    }
+                    if (x + y < bxybest) {
+                        bxybest = x + y;
+                        bxbest = x;
+                    }
+                }
+                if ((xlim + ylim) - bxybest < fxybest - (xoff + yoff))
+                    return (long) fxbest << 32 | (fxybest - fxbest);
+                return (long) bxbest << 32 | (bxybest - bxbest);
+            }
+        }
+    }
+
+    /**
+     * Returns the differences in unified format, with three lines of
+     * context, or the empty string if there are no differences.
+     *
+     * @param header1   the name (and time) of the old text, for the "---"
+     *                  line
+     * @param header2   the name (and time) of the new text, for the "+++"
+     *                  line
+     */
+    public String toUnifiedString(String header1, String header2)
+    {
+        return toUnifiedString(header1, header2, DEFAULT_CONTEXT);
+    }
+
+    public String toUnifiedString(String header1, String header2, int context)
+    {
+        if (!changes)
+            return "";
+        StringBuilder sb = new StringBuilder();
+        sb.append("--- ");
+        sb.append(header1);
+        sb.append('\n');
+        sb.append("+++ ");
+        sb.append(header2);
+        sb.append('\n');
+        int i = 0, j = 0;
+        while (true) {
+            // Find the next change.
+            while (i < aCount && j < bCount && !aChanged[i] && !bChanged[j]) {
+                ++i;
+                ++j;
+            }
+            if (i == aCount && j == bCount)
+                break;
+            // Find the end of the hunk: the last change that is followed by
+            // no more than 2 * context unchanged lines before the next one.
+            final int hunkStartA = Math.max(i - context, 0);
+            final int hunkStartB = j - (i - hunkStartA);
+            int endA = i, endB = j;
+            int x = i, y = j;
+            while (true) {
+                while (x < aCount && aChanged[x])
+                    ++x;
+                while (y < bCount && bChanged[y])
+                    ++y;
+                endA = x;
+                endB = y;
+                int unchanged = 0;
+                while (x < aCount && y < bCount && !aChanged[x] && !bChanged[y] &&
+                       unchanged <= 2 * context) {
+                    ++x;
+                    ++y;
+                    ++unchanged;
+                }
+                if (unchanged > 2 * context || (x == aCount && y == bCount))
+                    break;
+            }
+            final int hunkEndA = Math.min(endA + context, aCount);
+            final int hunkEndB = endB + (hunkEndA - endA);
+            appendRange(sb.append("@@ -"), hunkStartA, hunkEndA - hunkStartA);
+            appendRange(sb.append(" +"), hunkStartB, hunkEndB - hunkStartB);
+            sb.append(" @@\n");
+            x = hunkStartA;
+            y = hunkStartB;
+            while (x < hunkEndA || y < hunkEndB) {
+                if (x < hunkEndA && y < hunkEndB && !aChanged[x] && !bChanged[y]) {
+                    appendLine(sb, ' ', a[x], aNoNewline && x == aCount - 1);
+                    ++x;
+                    ++y;
+                    continue;
+                }
+                while (x < hunkEndA && aChanged[x]) {
+                    appendLine(sb, '-', a[x], aNoNewline && x == aCount - 1);
+                    ++x;
+                }
+                while (y < hunkEndB && bChanged[y]) {
+                    appendLine(sb, '+', b[y], bNoNewline && y == bCount - 1);
+                    ++y;
+                }
+            }
+            i = hunkEndA;
+            j = hunkEndB;
+        }
+        return sb.toString();
+    }
+
+    // Appends a line range the way diff -u does: the line number only for a
+    // single line, and the number of the line before for an empty range.
+    private static void appendRange(StringBuilder sb, int start, int count)
+    {
+        if (count == 0) {
+            sb.append(start);
+            sb.append(",0");
+        } else {
+            sb.append(start + 1);
+            if (count != 1) {
+                sb.append(',');
+                sb.append(count);
+            }
+        }
+    }
+
+    private static void appendLine(StringBuilder sb, char c, String s,
+        boolean noNewline)
+    {
+        sb.append(c);
+        sb.append(s);
+        sb.append('\n');
+        if (noNewline)
+            sb.append("\\ No newline at end of file\n");
+    }
+}
@@ -22,7 +22,6 @@ package org.armedbear.j.mode.diff;
 
 import org.armedbear.j.AbstractMode;
 import org.armedbear.j.Buffer;
-import org.armedbear.j.ConfirmDialog;
 import org.armedbear.j.Constants;
 import org.armedbear.j.Mode;
 import java.lang.StringBuilder;
@@ -36,6 +35,7 @@ import org.armedbear.j.vcs.git.Git;
 import org.armedbear.j.KeyMap;
 import org.armedbear.j.Line;
 import org.armedbear.j.Log;
+import org.armedbear.j.MappedText;
 import org.armedbear.j.MessageDialog;
 import org.armedbear.j.Position;
 import org.armedbear.j.ShellCommand;
@@ -83,34 +83,51 @@ public final class DiffMode extends AbstractMode implements Constants, Mode
         File patchFile = buffer.getPatchFile();
         if (patchFile != null && patchFile.isFile())
           {
-            boolean save = false;
-            if (buffer.isModified())
+            // Compare the original file with the text of the buffer, saved
+            // or not.
+            editor.setWaitCursor();
+            MappedText text =
+              MappedText.map(patchFile, buffer.getSaveEncoding());
+            if (text == null)
               {
-                int response =
-                  ConfirmDialog.showConfirmDialogWithCancelButton(editor,
-                          CHECK_SAVE_PROMPT, "diff");
-                switch (response)
-                  {
-                  case RESPONSE_YES:
-                    save = true;
-                    break;
-                  case RESPONSE_NO:
-                    break;
-                  case RESPONSE_CANCEL:
-                    return;
-                  }
-                editor.repaintNow();
+                editor.setDefaultCursor();
+                return;
               }
-            editor.setWaitCursor();
-            if (!save || buffer.save())
+            final Diff diff;
+            try
+              {
+                buffer.lockRead();
+              }
+            catch (InterruptedException e)
+              {
+                Log.error(e);
+                editor.setDefaultCursor();
+                return;
+              }
+            try
+              {
+                diff = Diff.compare(text, buffer);
+              }
+            finally
               {
-                StringBuilder sb = new StringBuilder("-u \"");
-                sb.append(patchFile.canonicalPath());
-                sb.append("\" \"");
-                sb.append(file.canonicalPath());
-                sb.append('"');
-                diff(sb.toString());
+                buffer.unlockRead();
               }
+            editor.setDefaultCursor();
+            if (!diff.hasChanges())
+              {
+                MessageDialog.showMessageDialog(editor, "No changes", "diff");
+                return;
+              }
+            String output =
+              diff.toUnifiedString(Diff.getHeader(patchFile.canonicalPath(),
+                                                  patchFile.lastModified()),
+                                   Diff.getHeader(file.canonicalPath(),
+                                                  System.currentTimeMillis()));
+            DiffOutputBuffer buf = new DiffOutputBuffer(buffer, output, 0);
+            buf.setTitle("diff -u " + patchFile.getName() + " " +
+                         file.getName());
+            editor.makeNext(buf);
+            editor.activateInOtherWindow(buf);
             return;
           }
       }
@@ -589,9 +606,27 @@ public final class DiffMode extends AbstractMode implements Constants, Mode
         Buffer buf = editor.getBuffer(file);
         if (buf != null)
           {
+            final int offset = editor.getDotOffset();
+            if (filename == filename2 && filename2.equals(filename1)
+                && buf == diffOutputBuffer.getParentBuffer())
+              {
+                // The buffer compared with its own file: the new line
+                // numbers are the buffer's current ones.
+                Line target = buf.getLine(newLineNumber);
+                if (target != null)
+                  {
+                    editor.makeNext(buf);
+                    Editor ed = editor.activateInOtherWindow(buf);
+                    ed.moveDotTo(target,
+                                 Math.min(offset > 0 ? offset-1 : 0,
+                                          target.length()));
+                    ed.setUpdateFlag(REFRAME);
+                    ed.updateDisplay();
+                  }
+                return;
+              }
             int lineNumber =
               (filename == filename1) ? oldLineNumber : newLineNumber;
-            final int offset = editor.getDotOffset();
             gotoLocation(editor, buf, lineNumber,
                          offset > 0 ? offset-1 : 0);
           }
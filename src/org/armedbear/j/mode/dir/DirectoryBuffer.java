@@ -63,12 +63,14 @@ import java.util.regex.Matcher;
 import java.awt.AWTEvent;
 import java.awt.event.MouseEvent;
 import java.io.BufferedReader;
-import java.io.IOException;
 import java.io.InputStreamReader;
 import java.io.StringReader;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Vector;
 import javax.swing.Icon;
@@ -100,6 +102,10 @@ public final class DirectoryBuffer extends Buffer
 
     private boolean loadError;
 
+    // Lists the directory when it's local, and looks up the files that
+    // the directory watcher says have changed.
+    private DirectoryLister lister;
+
     static {
         // Letters.
         final String letter = "\\p{Alpha}";
@@ -438,58 +444,173 @@ public final class DirectoryBuffer extends Buffer
         }
     }
 
-    // Called only from synchronized methods.
-    private void addEntry(String name)
+    /**
+     * Brings the lines for the named files up to date, without listing the
+     * whole directory again. Called by the directory watcher.
+     */
+    public synchronized void update(Collection<String> names)
     {
-        Debug.assertTrue(!usingNativeFormat);
-        File f = File.getInstance(getFile(), name);
-        if (f == null)
+        if (lister == null || !isLoaded())
             return;
-        DirectoryEntry de;
-        if (f.isDirectory())
-            de = new DirectoryEntry(name, f.lastModified(), 0, true);
-        else
-            de = new DirectoryEntry(name, f.lastModified(), f.length());
-        if (!name.equals(".") && !name.equals("..")) {
-            try {
-                String cp = f.getCanonicalPath();
-                String ap = f.getAbsolutePath();
-                if (!cp.equals(ap)) {
-                    final String canonicalPath = getFile().canonicalPath();
-                    if (cp.startsWith(canonicalPath + LocalFile.getSeparator()))
-                        de.setLinkedTo(cp.substring(canonicalPath.length()+1));
-                    else
-                        de.setLinkedTo(cp);
+        // Only the files the watcher has heard about are looked at again.
+        HashMap<String, DirectoryLine> lines =
+            new HashMap<String, DirectoryLine>();
+        for (Line line = getFirstLine(); line != null; line = line.next()) {
+            if (line instanceof DirectoryLine) {
+                DirectoryEntry entry = ((DirectoryLine)line).getDirectoryEntry();
+                lines.put(entry.getName(), (DirectoryLine) line);
+            }
+        }
+        HashSet<DirectoryEntry> removed = new HashSet<DirectoryEntry>();
+        ArrayList<DirectoryEntry> added = new ArrayList<DirectoryEntry>();
+        try {
+            lockWrite();
+        }
+        catch (InterruptedException e) {
+            Log.error(e);
+            return;
+        }
+        try {
+            for (String name : names) {
+                DirectoryLine line = lines.get(name);
+                DirectoryEntry entry = lister.getEntry(name);
+                if (line != null) {
+                    DirectoryEntry old = line.getDirectoryEntry();
+                    removed.add(old);
+                    if (old.isMarked())
+                        --numMarked;
+                    if (entry != null) {
+                        if (old.isMarked()) {
+                            entry.setMarked(true);
+                            ++numMarked;
+                        }
+                        line.setDirectoryEntry(entry);
+                        added.add(entry);
+                    } else {
+                        removeLine(line);
+                    }
+                } else if (entry != null) {
+                    insertLine(new DirectoryLine(entry));
+                    added.add(entry);
                 }
             }
-            catch (IOException e) {
-                Log.error(e);
+            if (removed.isEmpty() && added.isEmpty())
+                return;
+            ArrayList<DirectoryEntry> list =
+                new ArrayList<DirectoryEntry>(entries.size() + added.size());
+            for (DirectoryEntry entry : entries) {
+                if (!removed.contains(entry))
+                    list.add(entry);
+            }
+            list.addAll(added);
+            entries = list;
+            // The total size comes last.
+            Line line = getLastLine();
+            while (line != null && !(line instanceof DirectoryLine))
+                line = line.previous();
+            if (line != null) {
+                Line next = line.next();
+                line.setNext(null);
+                setLastLine(line);
+                if (next != null)
+                    next.setPrevious(null);
+            } else {
+                setFirstLine(null);
+                setLastLine(null);
+            }
+            appendTotalSize();
+            if (getFirstLine() == null)
+                appendLine("");
+            renumber();
+        }
+        finally {
+            unlockWrite();
+        }
+        for (EditorIterator it = new EditorIterator(); it.hasNext();) {
+            Editor ed = it.next();
+            if (ed.getBuffer() == this) {
+                ed.setUpdateFlag(REPAINT);
+                ed.updateDisplay();
             }
         }
-        entries.add(de);
     }
 
-    private final void appendLine(DirectoryEntry entry)
+    // Called only from update(), with the write lock held.
+    private void insertLine(DirectoryLine newLine)
     {
-        appendLine(new DirectoryLine(entry));
+        final DirectoryEntry entry = newLine.getDirectoryEntry();
+        final Comparator<DirectoryEntry> comparator = getComparator();
+        final boolean directoriesFirst = isSortingDirectoriesFirst();
+        Line before = null;
+        Line after = null;
+        for (Line line = getFirstLine(); line != null; line = line.next()) {
+            if (!(line instanceof DirectoryLine)) {
+                before = line;
+                break;
+            }
+            DirectoryEntry e = ((DirectoryLine)line).getDirectoryEntry();
+            int result = 0;
+            if (directoriesFirst && entry.isDirectory() != e.isDirectory())
+                result = entry.isDirectory() ? -1 : 1;
+            else if (comparator != null)
+                result = comparator.compare(entry, e);
+            if (result < 0) {
+                before = line;
+                break;
+            }
+            after = line;
+        }
+        if (after != null) {
+            newLine.insertAfter(after);
+            if (getLastLine() == after)
+                setLastLine(newLine);
+        } else if (before != null) {
+            newLine.setNext(before);
+            before.setPrevious(newLine);
+            setFirstLine(newLine);
+        } else {
+            appendLine(newLine);
+        }
     }
 
-    private synchronized DirectoryEntry findEntry(String name)
+    // Called only from update(), with the write lock held.
+    private void removeLine(Line line)
     {
-        for (DirectoryEntry entry : entries) {
-            if (name.equals(entry.getName()))
-                return entry;
+        Line prev = line.previous();
+        Line next = line.next();
+        Line neighbor = next != null ? next : prev;
+        for (EditorIterator it = new EditorIterator(); it.hasNext();) {
+            Editor ed = it.next();
+            if (ed.getBuffer() == this) {
+                if (ed.getDotLine() == line && neighbor != null)
+                    ed.setDot(neighbor, getNameOffset(neighbor));
+                if (ed.getMark() != null && ed.getMark().getLine() == line)
+                    ed.setMark(null);
+                if (ed.getTopLine() == line && neighbor != null)
+                    ed.getDisplay().setTopLine(neighbor);
+            }
         }
-        return null;
+        if (prev != null)
+            prev.setNext(next);
+        else
+            setFirstLine(next);
+        if (next != null)
+            next.setPrevious(prev);
+        else
+            setLastLine(prev);
+        line.setPrevious(null);
+        line.setNext(null);
     }
 
-    private synchronized DirectoryEntry findNativeEntry(String string)
+    public void dispose()
     {
-        for (DirectoryEntry entry : entries) {
-            if (string.equals(entry.getString()))
-                return entry;
-        }
-        return null;
+        DirectoryWatcher.unwatch(this);
+        super.dispose();
+    }
+
+    private final void appendLine(DirectoryEntry entry)
+    {
+        appendLine(new DirectoryLine(entry));
     }
 
     private synchronized void sort()
@@ -498,19 +619,23 @@ public final class DirectoryBuffer extends Buffer
             Debug.bug();
             return;
         }
-        if (sortBy == SORT_BY_NAME)
-            sortByName();
-        else if (sortBy == SORT_BY_DATE)
-            sortByDate();
-        else if (sortBy == SORT_BY_SIZE)
-            sortBySize();
+        Collections.sort(entries, getComparator());
     }
 
-    // Called only from sort().
-    private void sortByName()
+    // Returns the order of the entries (not counting directories first).
+    private Comparator<DirectoryEntry> getComparator()
     {
-        Debug.assertTrue(!usingNativeFormat);
-        Comparator<DirectoryEntry> comparator = new Comparator<DirectoryEntry>() {
+        if (usingNativeFormat)
+            return lister != null ? lister.getComparator() : null;
+        if (sortBy == SORT_BY_DATE)
+            return BY_DATE;
+        if (sortBy == SORT_BY_SIZE)
+            return BY_SIZE;
+        return BY_NAME;
+    }
+
+    private static final Comparator<DirectoryEntry> BY_NAME =
+        new Comparator<DirectoryEntry>() {
             public int compare(DirectoryEntry o1, DirectoryEntry o2)
             {
                 String name1 = o1.getName();
@@ -518,12 +643,9 @@ public final class DirectoryBuffer extends Buffer
                 return name1.compareToIgnoreCase(name2);
             }
         };
-        Collections.sort(entries, comparator);
-    }
 
-    // Called only from sort().
-    private void sortByDate() {
-        Comparator<DirectoryEntry> comparator = new Comparator<DirectoryEntry>() {
+    private static final Comparator<DirectoryEntry> BY_DATE =
+        new Comparator<DirectoryEntry>() {
             public int compare(DirectoryEntry o1, DirectoryEntry o2)
             {
                 // Most recent dates first.
@@ -536,13 +658,9 @@ public final class DirectoryBuffer extends Buffer
                 return 0;
             }
         };
-        Collections.sort(entries, comparator);
-    }
 
-    // Called only from sort().
-    private void sortBySize()
-    {
-        Comparator<DirectoryEntry> comparator = new Comparator<DirectoryEntry>() {
+    private static final Comparator<DirectoryEntry> BY_SIZE =
+        new Comparator<DirectoryEntry>() {
             public int compare(DirectoryEntry o1, DirectoryEntry o2)
             {
                 // Biggest files first.
@@ -555,14 +673,17 @@ public final class DirectoryBuffer extends Buffer
                 return 0;
             }
         };
-        Collections.sort(entries, comparator);
+
+    private boolean isSortingDirectoriesFirst()
+    {
+        return preferences.getBooleanProperty(Property.DIR_SORT_DIRECTORIES_FIRST,
+                                              !usingNativeFormat);
     }
 
     // Called only from synchronized methods.
     private void addEntriesToBuffer()
     {
-        final int size = entries.size();
-        if (preferences.getBooleanProperty(Property.DIR_SORT_DIRECTORIES_FIRST, !usingNativeFormat)) {
+        if (isSortingDirectoriesFirst()) {
             // Add lines to the buffer in two passes so directories will always be on top.
             for (DirectoryEntry entry : entries) {
                 if (entry.isDirectory())
@@ -660,6 +781,7 @@ public final class DirectoryBuffer extends Buffer
                 useNativeFormat = false;
         }
         loadError = false;
+        lister = null;
         try {
             final DirectoryFilenameFilter dff;
             if (limitPattern != null)
@@ -690,6 +812,10 @@ public final class DirectoryBuffer extends Buffer
                         reader = new BufferedReader(new StringReader(getListing()));
                     else
                         loadError = true;
+                } else if (extraOptions == null &&
+                           DirectoryLister.isAvailable(file, true)) {
+                    lister = new DirectoryLister(file, true, sortBy, dff);
+                    entries.addAll(lister.list(true));
                 } else {
                     // Local file.
                     Process process = null;
@@ -728,27 +854,8 @@ public final class DirectoryBuffer extends Buffer
                     if (cp.length() == 3 && cp.endsWith(":\\")) // "C:\"
                         dirIsRoot = true;
                 }
-                if (!dirIsRoot) {
-                    addEntry(".");
-                    addEntry("..");
-                }
-                String[] names = file.list();
-                if (names != null) {
-                    if (dff == null) {
-                        for (String name : names)
-                            addEntry(name);
-                    } else {
-                        for (String name : names) {
-                            if (dff.accepts(name))
-                                addEntry(name);
-                            else {
-                                File f = File.getInstance(file, name);
-                                if (f != null && f.isDirectory())
-                                    addEntry(name);
-                            }
-                        }
-                    }
-                }
+                lister = new DirectoryLister(file, false, sortBy, dff);
+                entries.addAll(lister.list(!dirIsRoot));
                 sort();
             }
             try {
@@ -760,33 +867,7 @@ public final class DirectoryBuffer extends Buffer
             }
             try {
                 addEntriesToBuffer();
-                long totalSize = getTotalSize();
-                if (totalSize > 0) {
-                    int end;
-                    if (usingNativeFormat) {
-                        end = getFileSizeEndOffset();
-                        if (end <= 0)
-                            end = 45;
-                    } else {
-                        int nameOffset = getNameOffset();
-                        end = nameOffset - 19;
-                        if (end <= 0)
-                            end = 13;
-                    }
-                    String s = String.valueOf(totalSize);
-                    int begin = end - s.length();
-                    if (begin < 0)
-                        begin = 0;
-                    StringBuilder sb =  new StringBuilder(80);
-                    sb.append(Utilities.spaces(begin));
-                    for (int i = s.length(); i > 0; i--)
-                        sb.append('-');
-                    appendLine(sb.toString());
-                    sb.setLength(0);
-                    sb.append(Utilities.spaces(begin));
-                    sb.append(s);
-                    appendLine(sb.toString());
-                }
+                appendTotalSize();
                 renumber();
             }
             finally {
@@ -796,6 +877,42 @@ public final class DirectoryBuffer extends Buffer
         catch (Exception e) {
             Log.error(e);
         }
+        if (lister != null)
+            DirectoryWatcher.watch(this, lister.getDirectory());
+        else
+            DirectoryWatcher.unwatch(this);
+    }
+
+    // Called only from synchronized methods, with the write lock held.
+    private void appendTotalSize()
+    {
+        long totalSize = getTotalSize();
+        if (totalSize > 0) {
+            int end;
+            if (usingNativeFormat) {
+                end = getFileSizeEndOffset();
+                if (end <= 0)
+                    end = 45;
+            } else {
+                int nameOffset = getNameOffset();
+                end = nameOffset - 19;
+                if (end <= 0)
+                    end = 13;
+            }
+            String s = String.valueOf(totalSize);
+            int begin = end - s.length();
+            if (begin < 0)
+                begin = 0;
+            StringBuilder sb =  new StringBuilder(80);
+            sb.append(Utilities.spaces(begin));
+            for (int i = s.length(); i > 0; i--)
+                sb.append('-');
+            appendLine(sb.toString());
+            sb.setLength(0);
+            sb.append(Utilities.spaces(begin));
+            sb.append(s);
+            appendLine(sb.toString());
+        }
     }
 
     private long getTotalSize()
@@ -881,13 +998,7 @@ public final class DirectoryBuffer extends Buffer
             return;
         if (name.equals(".."))
             return;
-        DirectoryEntry de = null;
-        if (usingNativeFormat) {
-            // Text of line has "T " or "  " prepended to DirectoryEntry string.
-            de = findNativeEntry(line.substring(2));
-        } else {
-            de = findEntry(name);
-        }
+        DirectoryEntry de = ((DirectoryLine)line).getDirectoryEntry();
         if (de != null) {
             if (de.isMarked()) {
                 de.setMarked(false);
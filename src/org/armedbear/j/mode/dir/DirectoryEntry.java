@@ -58,6 +58,17 @@ public final class DirectoryEntry
         size = -1;
     }
 
+    // Constructor for native "ls -l" format, when the name, date and size
+    // are already known.
+    DirectoryEntry(String string, char firstChar, String name, long date,
+                   long size)
+    {
+        this(string, firstChar);
+        this.name = name;
+        this.date = date;
+        this.size = size;
+    }
+
     // Constructor for internal format.
     public DirectoryEntry(String name, long date, long size)
     {
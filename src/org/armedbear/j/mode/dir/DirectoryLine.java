@@ -37,4 +37,10 @@ public final class DirectoryLine extends TextLine implements Line
     {
         return entry;
     }
+
+    final void setDirectoryEntry(DirectoryEntry entry)
+    {
+        this.entry = entry;
+        setText(entry.toString());
+    }
 }
@@ -0,0 +1,453 @@
+/*
+ * DirectoryLister.java
+ *
+ * Copyright (C) 2026 Kevin Krouse
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.armedbear.j.mode.dir;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.util.ArrayList;
+import java.util.Calendar;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+
+import org.armedbear.j.DirectoryFilenameFilter;
+import org.armedbear.j.File;
+import org.armedbear.j.Log;
+
+/**
+ * Lists a local directory without running <code>ls</code>.
+ *
+ * The names come from one pass over a <code>DirectoryStream</code> and the
+ * attributes of each file from a single stat. In native format the lines
+ * are laid out the way <code>ls -la</code> lays them out in the C locale.
+ */
+public final class DirectoryLister
+{
+    private static final String UNIX_ATTRIBUTES =
+        "unix:mode,nlink,owner,group,size,lastModifiedTime";
+
+    private static final String[] MONTHS = {
+        "Jan", "Feb", "Mar", "Apr", "May", "Jun",
+        "Jul", "Aug", "Sep", "Oct", "Nov", "Dec"
+    };
+
+    // ls shows the year instead of the time for files older than this.
+    private static final long SIX_MONTHS = 182L * 24 * 60 * 60 * 1000;
+
+    private final File dir;
+    private final Path path;
+    private final boolean nativeFormat;
+    private final int sortBy;
+    private final DirectoryFilenameFilter filter;
+
+    private boolean haveUnixAttributes = true;
+    private final Calendar calendar = Calendar.getInstance();
+    private long now;
+
+    // Column widths, fixed by list() so entries looked up later line up
+    // with the rest of the listing.
+    private int linksWidth = 1;
+    private int ownerWidth = 1;
+    private int groupWidth = 1;
+    private int sizeWidth = 1;
+
+    public DirectoryLister(File dir, boolean nativeFormat, int sortBy,
+                           DirectoryFilenameFilter filter)
+    {
+        this.dir = dir;
+        path = Paths.get(dir.canonicalPath());
+        this.nativeFormat = nativeFormat;
+        this.sortBy = sortBy;
+        this.filter = filter;
+    }
+
+    public static boolean isAvailable(File dir, boolean nativeFormat)
+    {
+        if (dir == null || !dir.isLocal())
+            return false;
+        if (nativeFormat) {
+            return FileSystems.getDefault().supportedFileAttributeViews().contains(
+                "posix");
+        }
+        return true;
+    }
+
+    public final File getDirectory()
+    {
+        return dir;
+    }
+
+    /**
+     * Returns the entries of the directory, including "." and ".." if
+     * <code>dots</code> is true. In native format the entries are sorted
+     * the way <code>ls</code> would sort them.
+     */
+    public List<DirectoryEntry> list(boolean dots)
+    {
+        now = System.currentTimeMillis();
+        ArrayList<Stat> stats = new ArrayList<Stat>();
+        if (dots) {
+            addStat(stats, ".");
+            addStat(stats, "..");
+        }
+        try {
+            DirectoryStream<Path> stream = Files.newDirectoryStream(path);
+            try {
+                for (Path p : stream)
+                    addStat(stats, p.getFileName().toString());
+            }
+            finally {
+                stream.close();
+            }
+        }
+        catch (IOException e) {
+            Log.error(e);
+        }
+        ArrayList<DirectoryEntry> entries =
+            new ArrayList<DirectoryEntry>(stats.size());
+        if (nativeFormat) {
+            for (Stat stat : stats) {
+                linksWidth = Math.max(linksWidth, String.valueOf(stat.links).length());
+                ownerWidth = Math.max(ownerWidth, stat.owner.length());
+                groupWidth = Math.max(groupWidth, stat.group.length());
+                sizeWidth = Math.max(sizeWidth, String.valueOf(stat.size).length());
+            }
+            StringBuilder sb = new StringBuilder(128);
+            for (Stat stat : stats)
+                entries.add(createNativeEntry(stat, sb));
+            Collections.sort(entries, getComparator());
+        } else {
+            for (Stat stat : stats)
+                entries.add(createEntry(stat));
+        }
+        return entries;
+    }
+
+    /**
+     * Returns the entry for one file in the directory, or null if the file
+     * doesn't exist or is excluded by the filter.
+     */
+    public DirectoryEntry getEntry(String name)
+    {
+        now = System.currentTimeMillis();
+        ArrayList<Stat> stats = new ArrayList<Stat>(1);
+        addStat(stats, name);
+        if (stats.isEmpty())
+            return null;
+        Stat stat = stats.get(0);
+        if (nativeFormat)
+            return createNativeEntry(stat, new StringBuilder(128));
+        return createEntry(stat);
+    }
+
+    /**
+     * Returns the order of the entries in native format.
+     */
+    public Comparator<DirectoryEntry> getComparator()
+    {
+        if (sortBy == DirectoryBuffer.SORT_BY_DATE)
+            return BY_DATE;
+        if (sortBy == DirectoryBuffer.SORT_BY_SIZE)
+            return BY_SIZE;
+        return BY_NAME;
+    }
+
+    private static final Comparator<DirectoryEntry> BY_NAME =
+        new Comparator<DirectoryEntry>() {
+            public int compare(DirectoryEntry o1, DirectoryEntry o2)
+            {
+                return o1.getName().compareTo(o2.getName());
+            }
+        };
+
+    // Most recent first, like ls -t.
+    private static final Comparator<DirectoryEntry> BY_DATE =
+        new Comparator<DirectoryEntry>() {
+            public int compare(DirectoryEntry o1, DirectoryEntry o2)
+            {
+                long date1 = o1.getDate();
+                long date2 = o2.getDate();
+                if (date1 > date2)
+                    return -1;
+                if (date1 < date2)
+                    return 1;
+                return BY_NAME.compare(o1, o2);
+            }
+        };
+
+    // Biggest first, like ls -S.
+    private static final Comparator<DirectoryEntry> BY_SIZE =
+        new Comparator<DirectoryEntry>() {
+            public int compare(DirectoryEntry o1, DirectoryEntry o2)
+            {
+                long size1 = o1.getSize();
+                long size2 = o2.getSize();
+                if (size1 > size2)
+                    return -1;
+                if (size1 < size2)
+                    return 1;
+                return BY_NAME.compare(o1, o2);
+            }
+        };
+
+    private static final class Stat
+    {
+        String name;
+        char type;
+        String permissions;
+        long links;
+        String owner;
+        String group;
+        long size;
+        long date;
+        boolean isDirectory;
+        String linkedTo;
+    }
+
+    // Adds the attributes of a file to the list, unless the file has gone
+    // away or is excluded by the filter.
+    private void addStat(List<Stat> stats, String name)
+    {
+        final Path p = path.resolve(name);
+        try {
+            final Stat stat = nativeFormat ? statNative(p) : stat(p);
+            if (filter != null && !stat.isDirectory && !filter.accepts(name))
+                return;
+            stat.name = name;
+            stats.add(stat);
+        }
+        catch (IOException e) {
+            // Deleted since it was listed.
+        }
+    }
+
+    private Stat stat(Path p) throws IOException
+    {
+        Stat stat = new Stat();
+        BasicFileAttributes attributes =
+            Files.readAttributes(p, BasicFileAttributes.class,
+                                 LinkOption.NOFOLLOW_LINKS);
+        if (attributes.isSymbolicLink()) {
+            Path target = null;
+            try {
+                target = p.toRealPath();
+                attributes =
+                    Files.readAttributes(target, BasicFileAttributes.class);
+            }
+            catch (IOException e) {
+                // Dangling link.
+            }
+            if (target != null) {
+                final String targetPath = target.toString();
+                final String dirPath = path.toString();
+                final String separator = p.getFileSystem().getSeparator();
+                if (targetPath.startsWith(dirPath + separator))
+                    stat.linkedTo = targetPath.substring(dirPath.length() + 1);
+                else
+                    stat.linkedTo = targetPath;
+            }
+        }
+        stat.isDirectory = attributes.isDirectory();
+        stat.size = stat.isDirectory ? 0 : attributes.size();
+        stat.date = attributes.lastModifiedTime().toMillis();
+        return stat;
+    }
+
+    private Stat statNative(Path p) throws IOException
+    {
+        Stat stat = new Stat();
+        if (haveUnixAttributes) {
+            try {
+                Map<String, Object> map =
+                    Files.readAttributes(p, UNIX_ATTRIBUTES,
+                                         LinkOption.NOFOLLOW_LINKS);
+                final int mode = ((Integer) map.get("mode")).intValue();
+                stat.type = getType(mode);
+                stat.permissions = getPermissions(mode);
+                stat.links = ((Integer) map.get("nlink")).longValue();
+                stat.owner = ((UserPrincipal) map.get("owner")).getName();
+                stat.group = ((UserPrincipal) map.get("group")).getName();
+                stat.size = ((Long) map.get("size")).longValue();
+                stat.date = ((FileTime) map.get("lastModifiedTime")).toMillis();
+            }
+            catch (UnsupportedOperationException e) {
+                haveUnixAttributes = false;
+            }
+            catch (IllegalArgumentException e) {
+                haveUnixAttributes = false;
+            }
+        }
+        if (!haveUnixAttributes) {
+            PosixFileAttributes attributes =
+                Files.readAttributes(p, PosixFileAttributes.class,
+                                     LinkOption.NOFOLLOW_LINKS);
+            if (attributes.isDirectory())
+                stat.type = 'd';
+            else if (attributes.isSymbolicLink())
+                stat.type = 'l';
+            else
+                stat.type = '-';
+            stat.permissions =
+                PosixFilePermissions.toString(attributes.permissions());
+            stat.links = 1;
+            stat.owner = attributes.owner().getName();
+            stat.group = attributes.group().getName();
+            stat.size = attributes.size();
+            stat.date = attributes.lastModifiedTime().toMillis();
+        }
+        stat.isDirectory = stat.type == 'd';
+        if (stat.type == 'l') {
+            try {
+                stat.linkedTo = Files.readSymbolicLink(p).toString();
+            }
+            catch (IOException e) {
+                Log.debug(e);
+            }
+        }
+        return stat;
+    }
+
+    private static char getType(int mode)
+    {
+        switch (mode & 0170000) {
+            case 0040000:
+                return 'd';
+            case 0120000:
+                return 'l';
+            case 0020000:
+                return 'c';
+            case 0060000:
+                return 'b';
+            case 0140000:
+                return 's';
+            case 0010000:
+                return 'p';
+            default:
+                return '-';
+        }
+    }
+
+    private static String getPermissions(int mode)
+    {
+        char[] chars = new char[9];
+        chars[0] = (mode & 0400) != 0 ? 'r' : '-';
+        chars[1] = (mode & 0200) != 0 ? 'w' : '-';
+        chars[2] = getExecute(mode & 0100, mode & 04000, 's');
+        chars[3] = (mode & 040) != 0 ? 'r' : '-';
+        chars[4] = (mode & 020) != 0 ? 'w' : '-';
+        chars[5] = getExecute(mode & 010, mode & 02000, 's');
+        chars[6] = (mode & 04) != 0 ? 'r' : '-';
+        chars[7] = (mode & 02) != 0 ? 'w' : '-';
+        chars[8] = getExecute(mode & 01, mode & 01000, 't');
+        return new String(chars);
+    }
+
+    private static char getExecute(int execute, int special, char c)
+    {
+        if (special != 0)
+            return execute != 0 ? c : Character.toUpperCase(c);
+        return execute != 0 ? 'x' : '-';
+    }
+
+    private DirectoryEntry createEntry(Stat stat)
+    {
+        DirectoryEntry entry =
+            new DirectoryEntry(stat.name, stat.date, stat.size, stat.isDirectory);
+        if (stat.linkedTo != null)
+            entry.setLinkedTo(stat.linkedTo);
+        return entry;
+    }
+
+    private DirectoryEntry createNativeEntry(Stat stat, StringBuilder sb)
+    {
+        sb.setLength(0);
+        sb.append(stat.type);
+        sb.append(stat.permissions);
+        sb.append(' ');
+        padLeft(sb, String.valueOf(stat.links), linksWidth);
+        sb.append(' ');
+        padRight(sb, stat.owner, ownerWidth);
+        sb.append(' ');
+        padRight(sb, stat.group, groupWidth);
+        sb.append(' ');
+        padLeft(sb, String.valueOf(stat.size), sizeWidth);
+        sb.append(' ');
+        appendDate(sb, stat.date);
+        sb.append(' ');
+        sb.append(stat.name);
+        if (stat.linkedTo != null) {
+            sb.append(" -> ");
+            sb.append(stat.linkedTo);
+        }
+        return new DirectoryEntry(sb.toString(), stat.type, stat.name,
+                                  stat.date, stat.size);
+    }
+
+    // "Mmm dd HH:MM" for recent files, "Mmm dd  YYYY" otherwise.
+    private void appendDate(StringBuilder sb, long date)
+    {
+        calendar.setTimeInMillis(date);
+        sb.append(MONTHS[calendar.get(Calendar.MONTH)]);
+        sb.append(' ');
+        padLeft(sb, String.valueOf(calendar.get(Calendar.DAY_OF_MONTH)), 2);
+        sb.append(' ');
+        if (date > now - SIX_MONTHS && date <= now) {
+            append2(sb, calendar.get(Calendar.HOUR_OF_DAY));
+            sb.append(':');
+            append2(sb, calendar.get(Calendar.MINUTE));
+        } else {
+            sb.append(' ');
+            sb.append(calendar.get(Calendar.YEAR));
+        }
+    }
+
+    private static void append2(StringBuilder sb, int n)
+    {
+        if (n < 10)
+            sb.append('0');
+        sb.append(n);
+    }
+
+    private static void padLeft(StringBuilder sb, String s, int width)
+    {
+        for (int i = s.length(); i < width; i++)
+            sb.append(' ');
+        sb.append(s);
+    }
+
+    private static void padRight(StringBuilder sb, String s, int width)
+    {
+        sb.append(s);
+        for (int i = s.length(); i < width; i++)
+            sb.append(' ');
+    }
+}
@@ -0,0 +1,233 @@
+/*
+ * DirectoryWatcher.java
+ *
+ * Copyright (C) 2026 Kevin Krouse
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.armedbear.j.mode.dir;
+
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import javax.swing.Timer;
+
+import org.armedbear.j.File;
+import org.armedbear.j.Log;
+
+/**
+ * Watches the directories shown in directory buffers and tells the buffers
+ * which of their files have been created, deleted or changed.
+ *
+ * Changes are collected for a short while and then passed to
+ * <code>DirectoryBuffer.update()</code> on the event dispatch thread, so a
+ * burst of changes to the same files costs one update.
+ */
+public final class DirectoryWatcher implements ActionListener, Runnable
+{
+    private static final int DELAY = 200; // Milliseconds.
+
+    private static DirectoryWatcher watcher;
+    private static boolean failed;
+
+    private final WatchService service;
+
+    private final HashMap<WatchKey, ArrayList<DirectoryBuffer>> buffers =
+        new HashMap<WatchKey, ArrayList<DirectoryBuffer>>();
+    private final HashMap<DirectoryBuffer, WatchKey> keys =
+        new HashMap<DirectoryBuffer, WatchKey>();
+
+    // The names of the files that have changed in each buffer. A null set
+    // means too much has changed to keep track of.
+    private HashMap<DirectoryBuffer, HashSet<String>> changes =
+        new HashMap<DirectoryBuffer, HashSet<String>>();
+    private boolean scheduled;
+
+    private DirectoryWatcher(WatchService service)
+    {
+        this.service = service;
+    }
+
+    private static synchronized DirectoryWatcher getWatcher()
+    {
+        if (watcher == null && !failed) {
+            try {
+                watcher =
+                    new DirectoryWatcher(FileSystems.getDefault().newWatchService());
+                Thread thread = new Thread(watcher, "directory watcher");
+                thread.setDaemon(true);
+                thread.start();
+            }
+            catch (IOException e) {
+                Log.error(e);
+                failed = true;
+            }
+            catch (UnsupportedOperationException e) {
+                failed = true;
+            }
+        }
+        return watcher;
+    }
+
+    /**
+     * Starts watching the directory shown in a buffer, instead of the one
+     * it showed before (if any).
+     */
+    public static void watch(DirectoryBuffer buffer, File dir)
+    {
+        DirectoryWatcher w = getWatcher();
+        if (w != null)
+            w.add(buffer, Paths.get(dir.canonicalPath()));
+    }
+
+    /**
+     * Stops watching the directory shown in a buffer.
+     */
+    public static void unwatch(DirectoryBuffer buffer)
+    {
+        DirectoryWatcher w;
+        synchronized (DirectoryWatcher.class) {
+            w = watcher;
+        }
+        if (w != null)
+            w.remove(buffer);
+    }
+
+    private synchronized void add(DirectoryBuffer buffer, Path path)
+    {
+        remove(buffer);
+        try {
+            WatchKey key =
+                path.register(service, StandardWatchEventKinds.ENTRY_CREATE,
+                              StandardWatchEventKinds.ENTRY_DELETE,
+                              StandardWatchEventKinds.ENTRY_MODIFY);
+            ArrayList<DirectoryBuffer> list = buffers.get(key);
+            if (list == null) {
+                list = new ArrayList<DirectoryBuffer>();
+                buffers.put(key, list);
+            }
+            list.add(buffer);
+            keys.put(buffer, key);
+        }
+        catch (IOException e) {
+            Log.error(e);
+        }
+        catch (ClosedWatchServiceException e) {
+            Log.error(e);
+        }
+    }
+
+    private synchronized void remove(DirectoryBuffer buffer)
+    {
+        changes.remove(buffer);
+        WatchKey key = keys.remove(buffer);
+        if (key == null)
+            return;
+        ArrayList<DirectoryBuffer> list = buffers.get(key);
+        if (list != null) {
+            list.remove(buffer);
+            if (list.isEmpty()) {
+                buffers.remove(key);
+                key.cancel();
+            }
+        }
+    }
+
+    public void run()
+    {
+        while (true) {
+            WatchKey key;
+            try {
+                key = service.take();
+            }
+            catch (InterruptedException e) {
+                return;
+            }
+            catch (ClosedWatchServiceException e) {
+                return;
+            }
+            HashSet<String> names = new HashSet<String>();
+            boolean overflow = false;
+            for (WatchEvent<?> event : key.pollEvents()) {
+                if (event.kind() == StandardWatchEventKinds.OVERFLOW)
+                    overflow = true;
+                else
+                    names.add(event.context().toString());
+            }
+            boolean valid = key.reset();
+            synchronized (this) {
+                ArrayList<DirectoryBuffer> list = buffers.get(key);
+                if (list == null)
+                    continue;
+                if (!valid) {
+                    // The directory is gone.
+                    buffers.remove(key);
+                    for (DirectoryBuffer buffer : list)
+                        keys.remove(buffer);
+                    continue;
+                }
+                for (DirectoryBuffer buffer : list) {
+                    if (overflow) {
+                        changes.put(buffer, null);
+                    } else if (!changes.containsKey(buffer)) {
+                        changes.put(buffer, new HashSet<String>(names));
+                    } else {
+                        HashSet<String> set = changes.get(buffer);
+                        if (set != null)
+                            set.addAll(names);
+                    }
+                }
+                if (!scheduled && !changes.isEmpty()) {
+                    scheduled = true;
+                    Timer timer = new Timer(DELAY, this);
+                    timer.setRepeats(false);
+                    timer.start();
+                }
+            }
+        }
+    }
+
+    // Called by the timer on the event dispatch thread.
+    public void actionPerformed(ActionEvent e)
+    {
+        HashMap<DirectoryBuffer, HashSet<String>> map;
+        synchronized (this) {
+            map = changes;
+            changes = new HashMap<DirectoryBuffer, HashSet<String>>();
+            scheduled = false;
+        }
+        for (Map.Entry<DirectoryBuffer, HashSet<String>> entry : map.entrySet()) {
+            DirectoryBuffer buffer = entry.getKey();
+            HashSet<String> names = entry.getValue();
+            if (names != null)
+                buffer.update(names);
+            else
+                buffer.reload();
+        }
+    }
+}
@@ -291,64 +291,56 @@ public final class JavaFormatter extends Formatter implements Constants
 
     public boolean parseBuffer()
     {
-        int state = STATE_NEUTRAL;
-        Line line = buffer.getFirstLine();
-        boolean changed = false;
-        while (line != null) {
-            int oldflags = line.flags();
-            // Quoted strings can't span lines in Java.
-            if (state == STATE_QUOTE && language == LANGUAGE_JAVA)
-                state = STATE_NEUTRAL;
+        return parseBufferIncrementally(STATE_NEUTRAL);
+    }
 
-            if (state != oldflags) {
-                line.setFlags(state);
-                changed = true;
+    protected int scanLine(Line line, int state)
+    {
+        char quoteChar = state == STATE_QUOTE ? '"' : '\0';
+        final int limit = line.length();
+        for (int i = 0; i < limit; i++) {
+            char c = line.charAt(i);
+            if (c == '\\' && i < limit-1) {
+                // Escape.
+                ++i;
+                continue;
             }
-            char quoteChar = state == STATE_QUOTE ? '"' : '\0';
-            final int limit = line.length();
-            for (int i = 0; i < limit; i++) {
-                char c = line.charAt(i);
-                if (c == '\\' && i < limit-1) {
-                    // Escape.
-                    ++i;
-                    continue;
-                }
-                if (state == STATE_COMMENT) {
-                    if (c == '*' && i < limit-1) {
-                        c = line.charAt(i+1);
-                        if (c == '/') {
-                            ++i;
-                            state = STATE_NEUTRAL;
-                        }
-                    }
-                    continue;
-                }
-                if (state == STATE_QUOTE) {
-                    if (c == quoteChar) {
+            if (state == STATE_COMMENT) {
+                if (c == '*' && i < limit-1) {
+                    c = line.charAt(i+1);
+                    if (c == '/') {
+                        ++i;
                         state = STATE_NEUTRAL;
-                        quoteChar = '\0';
                     }
-                    continue;
                 }
-
-                // Not in comment or quoted string.
-                if (c == '/' && i < limit-1) {
-                    c = line.charAt(++i);
-                    if (c == '/') {
-                        // Single-line comment beginning.
-                        // Ignore rest of line.
-                        break;
-                    } else if (c == '*')
-                        state = STATE_COMMENT;
-                } else if (c == '"' || c == '\'') {
-                    state = STATE_QUOTE;
-                    quoteChar = c;
+                continue;
+            }
+            if (state == STATE_QUOTE) {
+                if (c == quoteChar) {
+                    state = STATE_NEUTRAL;
+                    quoteChar = '\0';
                 }
+                continue;
+            }
+
+            // Not in comment or quoted string.
+            if (c == '/' && i < limit-1) {
+                c = line.charAt(++i);
+                if (c == '/') {
+                    // Single-line comment beginning.
+                    // Ignore rest of line.
+                    break;
+                } else if (c == '*')
+                    state = STATE_COMMENT;
+            } else if (c == '"' || c == '\'') {
+                state = STATE_QUOTE;
+                quoteChar = c;
             }
-            line = line.next();
         }
-        buffer.setNeedsParsing(false);
-        return changed;
+        // Quoted strings can't span lines in Java.
+        if (state == STATE_QUOTE && language == LANGUAGE_JAVA)
+            state = STATE_NEUTRAL;
+        return state;
     }
 
     private static final boolean isOperatorChar(char c)
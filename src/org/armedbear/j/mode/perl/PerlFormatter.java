@@ -505,108 +505,103 @@ public final class PerlFormatter extends Formatter
 
     public boolean parseBuffer()
     {
-        int state = STATE_NEUTRAL;
-        Line line = buffer.getFirstLine();
-        boolean changed = false;
-        while (line != null) {
-            int oldflags = line.flags();
-            if (state == STATE_HERE_DOCUMENT) {
-                if (line.getText().equals(endOfText))
-                    state = STATE_NEUTRAL;
+        return parseBufferIncrementally(STATE_NEUTRAL);
+    }
+
+    protected int getLineState(Line line, int state)
+    {
+        if (state == STATE_HERE_DOCUMENT) {
+            if (line.getText().equals(endOfText))
+                state = STATE_NEUTRAL;
+        }
+        if (state == STATE_POD)
+            return state;
+        // Assume no multiline quotes.
+        if (state == STATE_QUOTE || state == STATE_SINGLEQUOTE)
+            state = STATE_NEUTRAL;
+        if (state == STATE_NEUTRAL)
+            if (line.getText().startsWith("="))
+                state = STATE_POD;
+        return state;
+    }
+
+    protected int scanLine(Line line, int state)
+    {
+        if (state == STATE_HERE_DOCUMENT)
+            return state;
+        if (state == STATE_POD)
+            return line.getText().startsWith("=cut") ? STATE_NEUTRAL : state;
+        final int limit = line.length();
+        for (int i = 0; i < limit; i++) {
+            char c = line.charAt(i);
+            if (c == '\\' && i < limit-1) {
+                // Escape.
+                ++i;
+                continue;
             }
-            if (state == STATE_POD) {
-                if (line.getText().startsWith("=cut")) {
-                    if (state != oldflags) {
-                        line.setFlags(state);
-                        changed = true;
-                    }
+            if (state == STATE_QUOTE) {
+                if (c == '"')
                     state = STATE_NEUTRAL;
-                    line = line.next();
-                    continue;
-                }
+                continue;
             }
-            // Assume no multiline quotes.
-            if (state == STATE_QUOTE || state == STATE_SINGLEQUOTE)
-                state = STATE_NEUTRAL;
-            if (state == STATE_NEUTRAL)
-                if (line.getText().startsWith("="))
-                    state = STATE_POD;
-            if (state != oldflags) {
-                line.setFlags(state);
-                changed = true;
+            if (state == STATE_SINGLEQUOTE) {
+                if (c == '\'')
+                    state = STATE_NEUTRAL;
+                continue;
             }
-            if (state == STATE_HERE_DOCUMENT || state == STATE_POD) {
-                line = line.next();
+            // Not in comment or quoted string.
+            if (c == '$' && i < limit-1) {
+                // In effect, another kind of escape.
+                // Next char can be quote or single quote but should be ignored.
+                ++i;
                 continue;
             }
-            final int limit = line.length();
-            for (int i = 0; i < limit; i++) {
-                char c = line.charAt(i);
-                if (c == '\\' && i < limit-1) {
-                    // Escape.
-                    ++i;
-                    continue;
-                }
-                if (state == STATE_QUOTE) {
-                    if (c == '"')
-                        state = STATE_NEUTRAL;
-                    continue;
-                }
-                if (state == STATE_SINGLEQUOTE) {
-                    if (c == '\'')
-                        state = STATE_NEUTRAL;
-                    continue;
-                }
-                // Not in comment or quoted string.
-                if (c == '$' && i < limit-1) {
-                    // In effect, another kind of escape.
-                    // Next char can be quote or single quote but should be ignored.
-                    ++i;
-                    continue;
-                }
-                if (c == '<' && i < limit-2) {
-                    if (line.charAt(i+1) == '<') {
-                        // Line must have semicolon at end.
-                        if (line.trim().endsWith(";")) {
-                            endOfText = line.substring(i+2).trim();
-                            int length = endOfText.length();
-                            // Remove ';' at end of line.
-                            if (length > 0 && endOfText.charAt(length-1) == ';')
-                                endOfText = endOfText.substring(0, --length);
-                            // Remove ')' if any.
-                            if (length > 0 && endOfText.charAt(length-1) == ')')
-                                endOfText = endOfText.substring(0, --length);
-                            if (length > 2) {
-                                if (endOfText.charAt(0) == '"' && endOfText.charAt(length-1) == '"')
-                                    // Removed enclosing double quotes.
-                                    endOfText = endOfText.substring(1, length - 1);
-                                else if (endOfText.charAt(0) == '\'' && endOfText.charAt(length-1) == '\'')
-                                    // Removed enclosing single quotes.
-                                    endOfText = endOfText.substring(1, length - 1);
-                            }
-                            if (endOfText.length() > 0) {
-                                // Make sure "<<" is not shift operator.
-                                if (Character.isLetter(endOfText.charAt(0))) {
-                                    state = STATE_HERE_DOCUMENT;
-                                    break;
-                                }
+            if (c == '<' && i < limit-2) {
+                if (line.charAt(i+1) == '<') {
+                    // Line must have semicolon at end.
+                    if (line.trim().endsWith(";")) {
+                        endOfText = line.substring(i+2).trim();
+                        int length = endOfText.length();
+                        // Remove ';' at end of line.
+                        if (length > 0 && endOfText.charAt(length-1) == ';')
+                            endOfText = endOfText.substring(0, --length);
+                        // Remove ')' if any.
+                        if (length > 0 && endOfText.charAt(length-1) == ')')
+                            endOfText = endOfText.substring(0, --length);
+                        if (length > 2) {
+                            if (endOfText.charAt(0) == '"' && endOfText.charAt(length-1) == '"')
+                                // Removed enclosing double quotes.
+                                endOfText = endOfText.substring(1, length - 1);
+                            else if (endOfText.charAt(0) == '\'' && endOfText.charAt(length-1) == '\'')
+                                // Removed enclosing single quotes.
+                                endOfText = endOfText.substring(1, length - 1);
+                        }
+                        if (endOfText.length() > 0) {
+                            // Make sure "<<" is not shift operator.
+                            if (Character.isLetter(endOfText.charAt(0))) {
+                                state = STATE_HERE_DOCUMENT;
+                                break;
                             }
                         }
                     }
-                    continue;
                 }
-                if (c == '#')
-                    // Single-line comment beginning. Ignore rest of line.
-                    break;
-                else if (c == '"')
-                    state = STATE_QUOTE;
-                else if (c == '\'')
-                    state = STATE_SINGLEQUOTE;
+                continue;
             }
-            line = line.next();
+            if (c == '#')
+                // Single-line comment beginning. Ignore rest of line.
+                break;
+            else if (c == '"')
+                state = STATE_QUOTE;
+            else if (c == '\'')
+                state = STATE_SINGLEQUOTE;
         }
-        buffer.setNeedsParsing(false);
-        return changed;
+        return state;
+    }
+
+    // The here document terminator is not recorded in the line flags.
+    protected boolean isResumable(int state)
+    {
+        return state != STATE_HERE_DOCUMENT;
     }
 
     private static final String[] perlFunctions =
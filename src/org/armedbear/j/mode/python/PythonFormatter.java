@@ -341,81 +341,75 @@ public final class PythonFormatter extends Formatter
 
     public boolean parseBuffer()
     {
-        int state = PYTHON_STATE_NEUTRAL;
-        Line line = buffer.getFirstLine();
-        boolean changed = false;
-        while (line != null) {
-            if (state != line.flags()) {
-                line.setFlags(state);
-                changed = true;
+        return parseBufferIncrementally(PYTHON_STATE_NEUTRAL);
+    }
+
+    protected int scanLine(Line line, int state)
+    {
+        final String text = line.getText();
+        final int limit = line.length();
+        int i = 0;
+        while (i < limit) {
+            char c = text.charAt(i);
+            if (c == '\\') {
+                // Escape.
+                i += 2;
+                continue;
             }
-            final String text = line.getText();
-            final int limit = line.length();
-            int i = 0;
-            while (i < limit) {
-                char c = text.charAt(i);
-                if (c == '\\') {
-                    // Escape.
-                    i += 2;
-                    continue;
-                }
-                if (state == PYTHON_STATE_SINGLE_QUOTE) {
-                    if (c == '\'')
-                        state = PYTHON_STATE_NEUTRAL;
+            if (state == PYTHON_STATE_SINGLE_QUOTE) {
+                if (c == '\'')
+                    state = PYTHON_STATE_NEUTRAL;
+                ++i;
+                continue;
+            }
+            if (state == PYTHON_STATE_DOUBLE_QUOTE) {
+                if (c == '"')
+                    state = PYTHON_STATE_NEUTRAL;
+                ++i;
+                continue;
+            }
+            if (state == PYTHON_STATE_TRIPLE_SINGLE) {
+                if (c == '\'' && text.regionMatches(i, "'''", 0, 3)) {
+                    state = PYTHON_STATE_NEUTRAL;
+                    i += 3;
+                } else
                     ++i;
-                    continue;
-                }
-                if (state == PYTHON_STATE_DOUBLE_QUOTE) {
-                    if (c == '"')
-                        state = PYTHON_STATE_NEUTRAL;
+                continue;
+            }
+            if (state == PYTHON_STATE_TRIPLE_DOUBLE) {
+                if (c == '"' && text.regionMatches(i, "\"\"\"", 0, 3)) {
+                    state = PYTHON_STATE_NEUTRAL;
+                    i += 3;
+                } else
+                    ++i;
+                continue;
+            }
+            // Not in quoted string.
+            if (c == '\'') {
+                if (text.regionMatches(i, "'''", 0, 3)) {
+                    state = PYTHON_STATE_TRIPLE_SINGLE;
+                    i += 3;
+                } else {
+                    state = PYTHON_STATE_SINGLE_QUOTE;
                     ++i;
-                    continue;
-                }
-                if (state == PYTHON_STATE_TRIPLE_SINGLE) {
-                    if (c == '\'' && text.regionMatches(i, "'''", 0, 3)) {
-                        state = PYTHON_STATE_NEUTRAL;
-                        i += 3;
-                    } else
-                        ++i;
-                    continue;
-                }
-                if (state == PYTHON_STATE_TRIPLE_DOUBLE) {
-                    if (c == '"' && text.regionMatches(i, "\"\"\"", 0, 3)) {
-                        state = PYTHON_STATE_NEUTRAL;
-                        i += 3;
-                    } else
-                        ++i;
-                    continue;
-                }
-                // Not in quoted string.
-                if (c == '\'') {
-                    if (text.regionMatches(i, "'''", 0, 3)) {
-                        state = PYTHON_STATE_TRIPLE_SINGLE;
-                        i += 3;
-                    } else {
-                        state = PYTHON_STATE_SINGLE_QUOTE;
-                        ++i;
-                    }
-                    continue;
                 }
-                if (c == '"') {
-                    if (text.regionMatches(i, "\"\"\"", 0, 3)) {
-                        state = PYTHON_STATE_TRIPLE_DOUBLE;
-                        i += 3;
-                    } else {
-                        state = PYTHON_STATE_DOUBLE_QUOTE;
-                        ++i;
-                    }
-                    continue;
+                continue;
+            }
+            if (c == '"') {
+                if (text.regionMatches(i, "\"\"\"", 0, 3)) {
+                    state = PYTHON_STATE_TRIPLE_DOUBLE;
+                    i += 3;
+                } else {
+                    state = PYTHON_STATE_DOUBLE_QUOTE;
+                    ++i;
                 }
-                if (c == '#')
-                    break;
-                ++i;
+                continue;
             }
-            line = line.next();
+            if (c == '#')
+                break;
+            ++i;
         }
-        buffer.setNeedsParsing(false);
-        return changed;
+        return state;
     }
 
     private static final boolean isOperatorChar(char c)
@@ -384,123 +384,116 @@ public final class RubyFormatter extends Formatter
 
     public boolean parseBuffer()
     {
-        int state = RUBY_STATE_NEUTRAL;
-        Line line = buffer.getFirstLine();
-        boolean changed = false;
-        while (line != null) {
-            int oldflags = line.flags();
-            if (state == RUBY_STATE_HERE_DOCUMENT) {
-                if (line.getText().equals(endOfText))
+        return parseBufferIncrementally(RUBY_STATE_NEUTRAL);
+    }
+
+    protected int getLineState(Line line, int state)
+    {
+        if (state == RUBY_STATE_HERE_DOCUMENT) {
+            if (line.getText().equals(endOfText))
+                state = RUBY_STATE_NEUTRAL;
+        }
+        if (state == RUBY_STATE_NEUTRAL)
+            if (line.getText().startsWith("=begin"))
+                state = RUBY_STATE_POD;
+        return state;
+    }
+
+    protected int scanLine(Line line, int state)
+    {
+        if (state == RUBY_STATE_HERE_DOCUMENT)
+            return state;
+        if (state == RUBY_STATE_POD)
+            return line.getText().startsWith("=end") ? RUBY_STATE_NEUTRAL : state;
+        final String text = line.getText();
+        final int limit = line.length();
+        int i = 0;
+        while (i < limit) {
+            char c = text.charAt(i);
+            if (c == '\\') {
+                // Escape.
+                i += 2;
+                continue;
+            }
+            if (state == RUBY_STATE_SINGLE_QUOTE) {
+                if (c == '\'')
                     state = RUBY_STATE_NEUTRAL;
+                ++i;
+                continue;
             }
-            if (state == RUBY_STATE_POD) {
-                if (line.getText().startsWith("=end")) {
-                    if (state != oldflags) {
-                        line.setFlags(state);
-                        changed = true;
-                    }
+            if (state == RUBY_STATE_DOUBLE_QUOTE) {
+                if (c == '"')
                     state = RUBY_STATE_NEUTRAL;
-                    line = line.next();
-                    continue;
-                }
+                ++i;
+                continue;
             }
-            if (state == RUBY_STATE_NEUTRAL)
-                if (line.getText().startsWith("=begin"))
-                    state = RUBY_STATE_POD;
-            if (state != oldflags) {
-                line.setFlags(state);
-                changed = true;
+            if (state == RUBY_STATE_REGEXP) {
+                if (c == '/')
+                    state = RUBY_STATE_NEUTRAL;
+                ++i;
+                continue;
             }
-            if (state == RUBY_STATE_HERE_DOCUMENT || state == RUBY_STATE_POD) {
-                line = line.next();
+            // Not in quoted string or regexp.
+            if (c == '/') {
+                if (isRegExp(text, i))
+                    state = RUBY_STATE_REGEXP;
+                ++i;
                 continue;
             }
-            final String text = line.getText();
-            final int limit = line.length();
-            int i = 0;
-            while (i < limit) {
-                char c = text.charAt(i);
-                if (c == '\\') {
-                    // Escape.
-                    i += 2;
-                    continue;
-                }
-                if (state == RUBY_STATE_SINGLE_QUOTE) {
-                    if (c == '\'')
-                        state = RUBY_STATE_NEUTRAL;
-                    ++i;
-                    continue;
-                }
-                if (state == RUBY_STATE_DOUBLE_QUOTE) {
-                    if (c == '"')
-                        state = RUBY_STATE_NEUTRAL;
-                    ++i;
-                    continue;
-                }
-                if (state == RUBY_STATE_REGEXP) {
-                    if (c == '/')
-                        state = RUBY_STATE_NEUTRAL;
-                    ++i;
-                    continue;
-                }
-                // Not in quoted string or regexp.
-                if (c == '/') {
-                    if (isRegExp(text, i))
-                        state = RUBY_STATE_REGEXP;
-                    ++i;
-                    continue;
-                }
-                if (c == '<' && i < limit-3 && line.charAt(i+1) == '<') {
-                    // There must be no space between "<<" and the terminator.
-                    if (!Character.isWhitespace(line.charAt(i+2))) {
-                        endOfText = line.substring(i+2).trim();
-                        int length = endOfText.length();
-                        // Remove ';' at end of line.
-                        if (length > 0 && endOfText.charAt(length-1) == ';')
-                            endOfText = endOfText.substring(0, --length);
-                        // Remove leading '-'.
-                        if (length > 0 && endOfText.charAt(0) == '-') {
-                            endOfText = endOfText.substring(1);
-                            --length;
-                        }
-                        // Remove enclosing quotes.
-                        if (length > 2) {
-                            char firstChar = endOfText.charAt(0);
-                            if ("\"'`".indexOf(firstChar) >= 0)
-                                if (endOfText.charAt(length-1) == firstChar)
-                                    endOfText = endOfText.substring(1, length-1);
-                        }
-                        if (endOfText.length() > 0) {
-                            // Make sure "<<" is not shift operator.
-                            if (Character.isLetter(endOfText.charAt(0))) {
-                                state = RUBY_STATE_HERE_DOCUMENT;
-                                break;
-                            }
+            if (c == '<' && i < limit-3 && line.charAt(i+1) == '<') {
+                // There must be no space between "<<" and the terminator.
+                if (!Character.isWhitespace(line.charAt(i+2))) {
+                    endOfText = line.substring(i+2).trim();
+                    int length = endOfText.length();
+                    // Remove ';' at end of line.
+                    if (length > 0 && endOfText.charAt(length-1) == ';')
+                        endOfText = endOfText.substring(0, --length);
+                    // Remove leading '-'.
+                    if (length > 0 && endOfText.charAt(0) == '-') {
+                        endOfText = endOfText.substring(1);
+                        --length;
+                    }
+                    // Remove enclosing quotes.
+                    if (length > 2) {
+                        char firstChar = endOfText.charAt(0);
+                        if ("\"'`".indexOf(firstChar) >= 0)
+                            if (endOfText.charAt(length-1) == firstChar)
+                                endOfText = endOfText.substring(1, length-1);
+                    }
+                    if (endOfText.length() > 0) {
+                        // Make sure "<<" is not shift operator.
+                        if (Character.isLetter(endOfText.charAt(0))) {
+                            state = RUBY_STATE_HERE_DOCUMENT;
+                            break;
                         }
                     }
-                    ++i;
-                    continue;
-                }
-                if (c == '\'') {
-                    if (i == 0 || line.charAt(i-1) != '$')
-                        state = RUBY_STATE_SINGLE_QUOTE;
-                    ++i;
-                    continue;
-                }
-                if (c == '"') {
-                    if (i == 0 || line.charAt(i-1) != '$')
-                        state = RUBY_STATE_DOUBLE_QUOTE;
-                    ++i;
-                    continue;
                 }
-                if (c == '#')
-                    break;
                 ++i;
+                continue;
+            }
+            if (c == '\'') {
+                if (i == 0 || line.charAt(i-1) != '$')
+                    state = RUBY_STATE_SINGLE_QUOTE;
+                ++i;
+                continue;
+            }
+            if (c == '"') {
+                if (i == 0 || line.charAt(i-1) != '$')
+                    state = RUBY_STATE_DOUBLE_QUOTE;
+                ++i;
+                continue;
             }
-            line = line.next();
+            if (c == '#')
+                break;
+            ++i;
         }
-        buffer.setNeedsParsing(false);
-        return changed;
+        return state;
+    }
+
+    // The here document terminator is not recorded in the line flags.
+    protected boolean isResumable(int state)
+    {
+        return state != RUBY_STATE_HERE_DOCUMENT;
     }
 
     private static final boolean isOperatorChar(char c)
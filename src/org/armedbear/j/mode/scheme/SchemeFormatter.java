@@ -250,54 +250,47 @@ public final class SchemeFormatter extends Formatter
 
     public boolean parseBuffer()
     {
-        int state = STATE_NEUTRAL;
-        boolean changed = false;
-        Line line = buffer.getFirstLine();
-        while (line != null) {
-            int oldflags = line.flags();
-            if (state != oldflags) {
-                line.setFlags(state);
-                changed = true;
+        return parseBufferIncrementally(STATE_NEUTRAL);
+    }
+
+    protected int scanLine(Line line, int state)
+    {
+        final int limit = line.length();
+        for (int i = 0; i < limit; i++) {
+            char c = line.charAt(i);
+            if (c == '\\' && i < limit-1) {
+                // Escape.
+                ++i;
+                continue;
             }
-            final int limit = line.length();
-            for (int i = 0; i < limit; i++) {
-                char c = line.charAt(i);
-                if (c == '\\' && i < limit-1) {
-                    // Escape.
+            if (state == STATE_COMMENT) {
+                if (c == '|' && i < limit-1 && line.charAt(i+1) == '#') {
                     ++i;
-                    continue;
-                }
-                if (state == STATE_COMMENT) {
-                    if (c == '|' && i < limit-1 && line.charAt(i+1) == '#') {
-                        ++i;
-                        state = STATE_NEUTRAL;
-                    }
-                    continue;
-                }
-                if (state == STATE_QUOTE) {
-                    if (c == '"')
-                        state = STATE_NEUTRAL;
-                    continue;
-                }
-                // Not in comment or quoted string.
-                if (c == ';') {
-                    // Single-line comment beginning. Ignore rest of line.
-                    break;
-                }
-                if (c == '#') {
-                    if (i < limit-1 && line.charAt(i+1) == '|') {
-                        state = STATE_COMMENT;
-                        ++i;
-                    }
-                    continue;
+                    state = STATE_NEUTRAL;
                 }
+                continue;
+            }
+            if (state == STATE_QUOTE) {
                 if (c == '"')
-                    state = STATE_QUOTE;
+                    state = STATE_NEUTRAL;
+                continue;
             }
-            line = line.next();
+            // Not in comment or quoted string.
+            if (c == ';') {
+                // Single-line comment beginning. Ignore rest of line.
+                break;
+            }
+            if (c == '#') {
+                if (i < limit-1 && line.charAt(i+1) == '|') {
+                    state = STATE_COMMENT;
+                    ++i;
+                }
+                continue;
+            }
+            if (c == '"')
+                state = STATE_QUOTE;
         }
-        buffer.setNeedsParsing(false);
-        return changed;
+        return state;
     }
 
     public FormatTable getFormatTable()
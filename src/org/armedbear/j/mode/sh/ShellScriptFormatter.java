@@ -328,85 +328,86 @@ public final class ShellScriptFormatter extends Formatter
 
     public boolean parseBuffer()
     {
-        int state = STATE_NEUTRAL;
-        Line line = buffer.getFirstLine();
-        boolean changed = false;
-        char quoteChar = '\0';
-        while (line != null) {
-            int oldflags = line.flags();
-            if (state == STATE_HERE_DOCUMENT) {
-                if (line.getText().equals(endOfText))
-                    state = STATE_NEUTRAL;
+        return parseBufferIncrementally(STATE_NEUTRAL);
+    }
+
+    protected int getLineState(Line line, int state)
+    {
+        if (state == STATE_HERE_DOCUMENT) {
+            if (line.getText().equals(endOfText))
+                state = STATE_NEUTRAL;
+        }
+        return state;
+    }
+
+    protected int scanLine(Line line, int state)
+    {
+        if (state == STATE_HERE_DOCUMENT)
+            return state;
+        final int limit = line.length();
+        for (int i = 0; i < limit; i++) {
+            char c = line.charAt(i);
+            if (c == '\\' && i < limit - 1) {
+                // Escape.
+                ++i;
+                continue;
             }
-            if (state != oldflags) {
-                line.setFlags(state);
-                changed = true;
+            if (state == STATE_QUOTE) {
+                if (c == '"')
+                    state = STATE_NEUTRAL;
+                continue;
             }
-            if (state == STATE_HERE_DOCUMENT) {
-                line = line.next();
+            if (state == STATE_SINGLEQUOTE) {
+                if (c == '\'')
+                    state = STATE_NEUTRAL;
                 continue;
             }
-            final int limit = line.length();
-            for (int i = 0; i < limit; i++) {
-                char c = line.charAt(i);
-                if (c == '\\' && i < limit - 1) {
-                    // Escape.
-                    ++i;
-                    continue;
-                }
-                if (state == STATE_QUOTE) {
-                    if (c == '"')
-                        state = STATE_NEUTRAL;
-                    continue;
-                }
-                if (state == STATE_SINGLEQUOTE) {
-                    if (c == '\'')
-                        state = STATE_NEUTRAL;
-                    continue;
-                }
-                // Not in comment or quoted string.
-                if (c == '<' && i < limit-2) {
-                    if (line.charAt(i + 1) == '<') {
-                        endOfText = line.substring(i + 2).trim();
-                        if (endOfText.startsWith("-"))
-                            endOfText = endOfText.substring(1);
-                        int length = endOfText.length();
-                        if (length > 2) {
-                            if (endOfText.charAt(0) == '"' &&
-                                endOfText.charAt(length - 1) == '"') {
-                                // Removed enclosing double quotes.
-                                endOfText = endOfText.substring(1, length-1);
-                            } else if (endOfText.charAt(0) == '\'' &&
-                                endOfText.charAt(length - 1) == '\'') {
-                                // Removed enclosing single quotes.
-                                endOfText = endOfText.substring(1, length-1);
-                            }
+            // Not in comment or quoted string.
+            if (c == '<' && i < limit-2) {
+                if (line.charAt(i + 1) == '<') {
+                    endOfText = line.substring(i + 2).trim();
+                    if (endOfText.startsWith("-"))
+                        endOfText = endOfText.substring(1);
+                    int length = endOfText.length();
+                    if (length > 2) {
+                        if (endOfText.charAt(0) == '"' &&
+                            endOfText.charAt(length - 1) == '"') {
+                            // Removed enclosing double quotes.
+                            endOfText = endOfText.substring(1, length-1);
+                        } else if (endOfText.charAt(0) == '\'' &&
+                            endOfText.charAt(length - 1) == '\'') {
+                            // Removed enclosing single quotes.
+                            endOfText = endOfText.substring(1, length-1);
                         }
-                        if (endOfText.length() > 0) {
-                            // Make sure "<<" is not shift operator.
-                            if (Character.isLetter(endOfText.charAt(0))) {
-                                state = STATE_HERE_DOCUMENT;
-                                break;
-                            }
+                    }
+                    if (endOfText.length() > 0) {
+                        // Make sure "<<" is not shift operator.
+                        if (Character.isLetter(endOfText.charAt(0))) {
+                            state = STATE_HERE_DOCUMENT;
+                            break;
                         }
                     }
-                    continue;
-                }
-                if (c == '#') {
-                    // BUG!! Could be inside ${ ... }
-                    // Single-line comment beginning.
-                    // Ignore rest of line.
-                    break;
                 }
-                if (c == '"')
-                    state = STATE_QUOTE;
-                else if (c == '\'')
-                    state = STATE_SINGLEQUOTE;
+                continue;
+            }
+            if (c == '#') {
+                // BUG!! Could be inside ${ ... }
+                // Single-line comment beginning.
+                // Ignore rest of line.
+                break;
             }
-            line = line.next();
+            if (c == '"')
+                state = STATE_QUOTE;
+            else if (c == '\'')
+                state = STATE_SINGLEQUOTE;
         }
-        buffer.setNeedsParsing(false);
-        return changed;
+        return state;
+    }
+
+    // The here document terminator is not recorded in the line flags.
+    protected boolean isResumable(int state)
+    {
+        return state != STATE_HERE_DOCUMENT;
     }
 
     public FormatTable getFormatTable()
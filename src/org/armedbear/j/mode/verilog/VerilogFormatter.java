@@ -289,57 +289,50 @@ public final class VerilogFormatter extends Formatter implements Constants
 
     public boolean parseBuffer()
     {
-        int state = STATE_NEUTRAL;
-        Line line = buffer.getFirstLine();
-        boolean changed = false;
-        while (line != null) {
-            int oldflags = line.flags();
-            // Quoted strings can't span lines.
-            if (state == STATE_QUOTE)
-                state = STATE_NEUTRAL;
-            if (state != oldflags) {
-                line.setFlags(state);
-                changed = true;
+        return parseBufferIncrementally(STATE_NEUTRAL);
+    }
+
+    protected int scanLine(Line line, int state)
+    {
+        final int limit = line.length();
+        for (int i = 0; i < limit; i++) {
+            char c = line.charAt(i);
+            if (c == '\\' && i < limit-1) {
+                // Escape.
+                ++i;
+                continue;
             }
-            final int limit = line.length();
-            for (int i = 0; i < limit; i++) {
-                char c = line.charAt(i);
-                if (c == '\\' && i < limit-1) {
-                    // Escape.
-                    ++i;
-                    continue;
-                }
-                if (state == STATE_COMMENT) {
-                    if (c == '*' && i < limit-1) {
-                        c = line.charAt(i+1);
-                        if (c == '/') {
-                            ++i;
-                            state = STATE_NEUTRAL;
-                        }
-                    }
-                    continue;
-                }
-                if (state == STATE_QUOTE) {
-                    if (c == '"')
+            if (state == STATE_COMMENT) {
+                if (c == '*' && i < limit-1) {
+                    c = line.charAt(i+1);
+                    if (c == '/') {
+                        ++i;
                         state = STATE_NEUTRAL;
-                    continue;
+                    }
                 }
-                // Not in comment or quoted string.
-                if (c == '/' && i < limit-1) {
-                    c = line.charAt(++i);
-                    if (c == '/') {
-                        // Single-line comment beginning.
-                        // Ignore rest of line.
-                        break;
-                    } else if (c == '*')
-                        state = STATE_COMMENT;
-                } else if (c == '"')
-                    state = STATE_QUOTE;
+                continue;
             }
-            line = line.next();
+            if (state == STATE_QUOTE) {
+                if (c == '"')
+                    state = STATE_NEUTRAL;
+                continue;
+            }
+            // Not in comment or quoted string.
+            if (c == '/' && i < limit-1) {
+                c = line.charAt(++i);
+                if (c == '/') {
+                    // Single-line comment beginning.
+                    // Ignore rest of line.
+                    break;
+                } else if (c == '*')
+                    state = STATE_COMMENT;
+            } else if (c == '"')
+                state = STATE_QUOTE;
         }
-        buffer.setNeedsParsing(false);
-        return changed;
+        // Quoted strings can't span lines.
+        if (state == STATE_QUOTE)
+            state = STATE_NEUTRAL;
+        return state;
     }
 
     private static final boolean isOperatorChar(char c)
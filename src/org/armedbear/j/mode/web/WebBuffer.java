@@ -68,6 +68,17 @@ public final class WebBuffer extends Buffer implements WebConstants
     private String contentType;
     private String errorText;
 
+    // HTML files at least this big are loaded in the background, and shown
+    // while they're loading.
+    private static final long STREAMING_THRESHOLD = 256 * 1024;
+
+    private StreamingLoad streamingLoad;
+
+    // Where to go when the streaming load finishes, if it wasn't loaded yet
+    // when it was asked for.
+    private int pendingOffset = -1;
+    private String pendingRef;
+
     private WebBuffer(File file, File cache, String ref)
     {
         super();
@@ -158,12 +169,25 @@ public final class WebBuffer extends Buffer implements WebConstants
 
     public Position findRef(String ref)
     {
-        if (ref != null && refs != null) {
-            Integer i = refs.get(ref);
-            Position pos = getPosition(i.intValue());
-            if (pos != null)
-                pos.skipWhitespace();
-            return pos;
+        if (ref == null)
+            return null;
+        // The loader's refs are a Hashtable, so we can look at them while
+        // it's still loading.
+        Hashtable<String, Integer> table =
+            streamingLoad != null ? streamingLoad.loader.getRefs() : refs;
+        if (table != null) {
+            Integer i = table.get(ref);
+            if (i != null) {
+                Position pos = getPosition(i.intValue());
+                if (pos != null) {
+                    pos.skipWhitespace();
+                    return pos;
+                }
+            }
+        }
+        if (streamingLoad != null) {
+            pendingRef = ref;
+            pendingOffset = -1;
         }
         return null;
     }
@@ -228,6 +252,14 @@ public final class WebBuffer extends Buffer implements WebConstants
 
     protected void loadFile(File localFile)
     {
+        cancelStreamingLoad();
+        // The batches after the first are appended by runnables on the event
+        // dispatch thread, so they can't get ahead of it.
+        if (localFile.length() >= STREAMING_THRESHOLD &&
+            SwingUtilities.isEventDispatchThread()) {
+            if (loadFileInBackground(localFile))
+                return;
+        }
         WebLoader loader = new WebLoader(localFile);
         LineSequence lines = loader.load();
         if (lines != null) {
@@ -255,6 +287,174 @@ public final class WebBuffer extends Buffer implements WebConstants
         setLoaded(true);
     }
 
+    // Loads an HTML file in a background thread. The first batch of lines
+    // goes straight into the buffer, and the rest are appended on the event
+    // dispatch thread as they arrive. Returns false if there's nothing to
+    // show.
+    private boolean loadFileInBackground(File localFile)
+    {
+        final StreamingLoad load = new StreamingLoad(localFile);
+        streamingLoad = load;
+        Thread thread = new Thread(load, "WebLoader " + localFile.getName());
+        thread.setDaemon(true);
+        thread.start();
+        Line first;
+        Line last;
+        try {
+            synchronized (load) {
+                while (load.first == null && !load.finished)
+                    load.wait();
+                first = load.first;
+                last = load.last;
+            }
+        }
+        catch (InterruptedException e) {
+            Log.debug(e);
+            first = last = null;
+        }
+        if (first == null) {
+            cancelStreamingLoad();
+            return false;
+        }
+        try {
+            lockWrite();
+        }
+        catch (InterruptedException e) {
+            Log.debug(e);
+            cancelStreamingLoad();
+            return false;
+        }
+        try {
+            setFirstLine(first);
+            setLastLine(last);
+            renumberOriginal();
+            empty = false;
+        }
+        finally {
+            unlockWrite();
+        }
+        refs = null;
+        pendingOffset = -1;
+        pendingRef = null;
+        final File file = getFile();
+        if (file != null && file.equals(localFile))
+            setLastModified(localFile.lastModified());
+        setLoaded(true);
+        return true;
+    }
+
+    private void appendLines(StreamingLoad load, Line first, Line last)
+    {
+        if (load != streamingLoad)
+            return; // Superseded.
+        try {
+            lockWrite();
+        }
+        catch (InterruptedException e) {
+            Log.debug(e);
+            return;
+        }
+        try {
+            Line lastLine = getLastLine();
+            lastLine.setNext(first);
+            first.setPrevious(lastLine);
+            setLastLine(last);
+            renumberOriginal();
+        }
+        finally {
+            unlockWrite();
+        }
+        for (EditorIterator it = new EditorIterator(); it.hasNext();) {
+            Editor ed = it.next();
+            if (ed.getBuffer() == this) {
+                ed.setUpdateFlag(REPAINT);
+                ed.updateDisplay();
+            }
+        }
+    }
+
+    private void streamingLoadFinished(StreamingLoad load)
+    {
+        if (load != streamingLoad)
+            return;
+        streamingLoad = null;
+        refs = load.loader.getRefs();
+        Position pos = null;
+        if (pendingRef != null)
+            pos = findRef(pendingRef);
+        else if (pendingOffset >= 0)
+            pos = getPosition(pendingOffset);
+        pendingOffset = -1;
+        pendingRef = null;
+        if (pos != null)
+            update(pos);
+        else if (Editor.currentEditor().getBuffer() == this)
+            Editor.currentEditor().status("Loading complete");
+    }
+
+    private void cancelStreamingLoad()
+    {
+        if (streamingLoad != null) {
+            streamingLoad.loader.cancel();
+            streamingLoad = null;
+        }
+    }
+
+    public void dispose()
+    {
+        cancelStreamingLoad();
+        super.dispose();
+    }
+
+    private final class StreamingLoad implements WebLoader.Listener, Runnable
+    {
+        final WebLoader loader;
+
+        // The first batch of lines, for loadFileInBackground().
+        Line first;
+        Line last;
+        boolean finished;
+
+        StreamingLoad(File file)
+        {
+            loader = new WebLoader(file);
+            loader.setListener(this);
+        }
+
+        public void linesLoaded(final Line first, final Line last)
+        {
+            synchronized (this) {
+                if (this.first == null) {
+                    this.first = first;
+                    this.last = last;
+                    notifyAll();
+                    return;
+                }
+            }
+            SwingUtilities.invokeLater(new Runnable() {
+                public void run()
+                {
+                    appendLines(StreamingLoad.this, first, last);
+                }
+            });
+        }
+
+        public void run()
+        {
+            loader.load();
+            synchronized (this) {
+                finished = true;
+                notifyAll();
+            }
+            SwingUtilities.invokeLater(new Runnable() {
+                public void run()
+                {
+                    streamingLoadFinished(StreamingLoad.this);
+                }
+            });
+        }
+    }
+
     public Cursor getDefaultCursor(Position pos)
     {
         if (pos != null && pos.getLine() instanceof WebLine) {
@@ -883,8 +1083,14 @@ public final class WebBuffer extends Buffer implements WebConstants
     private void update(int offset)
     {
         Position pos = getPosition(offset);
-        if (pos == null)
+        if (pos == null) {
+            if (streamingLoad != null) {
+                // Not loaded yet.
+                pendingOffset = offset;
+                pendingRef = null;
+            }
             pos = new Position(getFirstLine(), 0);
+        }
         setBusy(false);
         update(pos);
     }
@@ -906,7 +1112,8 @@ public final class WebBuffer extends Buffer implements WebConstants
         }
         Sidebar.setUpdateFlagInAllFrames(SIDEBAR_BUFFER_LIST_CHANGED);
         Sidebar.repaintBufferListInAllFrames();
-        Editor.currentEditor().status("Loading complete");
+        Editor.currentEditor().status(
+            streamingLoad != null ? "Loading..." : "Loading complete");
     }
 
     public boolean isTransient()
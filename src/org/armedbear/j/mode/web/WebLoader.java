@@ -35,11 +35,9 @@ import org.armedbear.j.util.Tuple2;
 import org.armedbear.j.util.Utilities;
 import org.armedbear.j.mode.html.HtmlLineSegment;
 
-import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
-import java.io.PushbackReader;
 import java.io.Reader;
 import java.util.ArrayList;
 import java.util.Hashtable;
@@ -48,7 +46,32 @@ import java.util.Stack;
 
 public final class WebLoader implements WebConstants
 {
-    private PushbackReader reader;
+    /**
+     * Receives the lines of a document in batches while it's being loaded,
+     * on the thread that called load().
+     */
+    public interface Listener
+    {
+        /**
+         * Called with the next lines of the document, linked from first to
+         * last. The loader doesn't touch them again.
+         */
+        void linesLoaded(Line first, Line last);
+    }
+
+    // Lines in the first batch passed to a listener. Each batch after that
+    // is twice as big as the one before, up to MAX_BATCH lines.
+    private static final int FIRST_BATCH = 256;
+    private static final int MAX_BATCH = 65536;
+
+    private Reader reader;
+    private final char[] buf = new char[16384];
+    private int pos;
+    private int limit;
+    private Listener listener;
+    private int batchSize = FIRST_BATCH;
+    private boolean published;
+    private volatile boolean cancelled;
     private final StringBuilder textBuffer = new StringBuilder();
     private final Stack<String> indentStack = new Stack<String>();
     private final Stack<Table> tableStack = new Stack<Table>();
@@ -72,7 +95,7 @@ public final class WebLoader implements WebConstants
 
     public WebLoader(Reader reader)
     {
-        this.reader = new PushbackReader(new BufferedReader(reader));
+        this.reader = reader;
     }
 
     public final Hashtable<String, Integer> getRefs()
@@ -80,6 +103,27 @@ public final class WebLoader implements WebConstants
         return refs;
     }
 
+    /**
+     * Passes the lines to a listener in batches as they're loaded, instead
+     * of returning them all from load().
+     */
+    public void setListener(Listener listener)
+    {
+        this.listener = listener;
+    }
+
+    /**
+     * Stops loading. Can be called from any thread.
+     */
+    public void cancel()
+    {
+        cancelled = true;
+    }
+
+    /**
+     * Returns the lines of the document, or null if a listener has been set,
+     * in which case all the lines have been passed to it.
+     */
     public LineSequence load()
     {
         try {
@@ -98,13 +142,20 @@ public final class WebLoader implements WebConstants
             }
         }
         // Handle zero length files.
-        if (lines.getFirstLine() == null)
+        if (lines.getFirstLine() == null && !published)
             lines.appendLine(new WebLine(sourceOffset));
+        if (listener != null) {
+            publish(true);
+            return null;
+        }
         return lines;
     }
 
     private void loadInternal() throws EncodingChangeException
     {
+        lines = new LineSequence();
+        sourceOffset = 0;
+        pos = limit = 0;
         if (reader == null) {
             Debug.assertTrue(file != null);
             String encoding = file.getEncoding();
@@ -112,18 +163,29 @@ public final class WebLoader implements WebConstants
                 encoding = Editor.preferences().getStringProperty(Property.DEFAULT_ENCODING);
             try {
                 InputStream inputStream = file.getInputStream();
-                reader = new PushbackReader(new BufferedReader(new InputStreamReader(inputStream, encoding)));
+                reader = new InputStreamReader(inputStream, encoding);
             }
             catch (IOException e) {
                 Log.error(e);
                 return;
             }
         }
-        lines = new LineSequence();
-        sourceOffset = 0;
         try {
-            int c;
-            while ((c = reader.read()) >= 0) {
+            while (pos < limit || fill()) {
+                char c = buf[pos];
+                if (isText(c)) {
+                    // Handle a run of text in one go.
+                    final int start = pos;
+                    do {
+                        ++pos;
+                    } while (pos < limit && isText(buf[pos]));
+                    if (!preformatted)
+                        maybeIndent();
+                    textBuffer.append(buf, start, pos - start);
+                    sourceOffset += pos - start;
+                    continue;
+                }
+                ++pos;
                 // Line separator always counts as 1 char, so count '\n' but
                 // not '\r'.
                 if (c != '\r')
@@ -136,15 +198,88 @@ public final class WebLoader implements WebConstants
                         processEntity();
                         break;
                     default:
-                        doChar((char)c);
+                        doChar(c);
                         break;
                 }
+                if (listener != null && lines.size() > batchSize)
+                    publish(false);
             }
             flushLine();
         }
         catch (IOException e) {
             Log.error(e);
         }
+        finally {
+            try {
+                reader.close();
+            }
+            catch (IOException e) {
+                Log.error(e);
+            }
+        }
+    }
+
+    // Returns true if doChar() would just append c to the text buffer (after
+    // indenting, outside preformatted text).
+    private boolean isText(char c)
+    {
+        if (c < 128) {
+            if (c > ' ')
+                return c != '<' && c != '&';
+            return false;
+        }
+        if (preformatted)
+            return true;
+        return (c < 133 || c > 153) && !Character.isWhitespace(c);
+    }
+
+    private boolean fill() throws IOException
+    {
+        if (cancelled)
+            return false;
+        final int count = reader.read(buf, 0, buf.length);
+        pos = 0;
+        limit = count > 0 ? count : 0;
+        return limit > 0;
+    }
+
+    private int read() throws IOException
+    {
+        if (pos < limit || fill())
+            return buf[pos++];
+        return -1;
+    }
+
+    // Pushes back the character just read.
+    private void unread()
+    {
+        --pos;
+    }
+
+    // Passes the lines loaded so far to the listener, except for the last
+    // one if all is false, since newLine() may still look at it.
+    private void publish(boolean all)
+    {
+        Line first = lines.getFirstLine();
+        Line last = lines.getLastLine();
+        if (last == null)
+            return;
+        Line rest = null;
+        if (!all) {
+            rest = last;
+            last = rest.previous();
+            if (last == null)
+                return;
+            last.setNext(null);
+            rest.setPrevious(null);
+        }
+        lines = new LineSequence();
+        if (rest != null)
+            lines.appendLine(rest);
+        published = true;
+        listener.linesLoaded(first, last);
+        if (batchSize < MAX_BATCH)
+            batchSize *= 2;
     }
 
     private boolean bold;
@@ -570,6 +705,10 @@ public final class WebLoader implements WebConstants
             // process an HTML message.
             if (file == null)
                 return;
+            // Too late if some of the document has been passed to the
+            // listener already.
+            if (published)
+                return;
             String encoding = file.getEncoding();
             // Ignore the specified encoding if we have already determined the
             // encoding from the byte order mark.
@@ -606,7 +745,7 @@ public final class WebLoader implements WebConstants
         StringBuilder sb = new StringBuilder();
         try {
             int c;
-            while ((c = reader.read()) >= 0) {
+            while ((c = read()) >= 0) {
                 if (c != '\r')
                     ++sourceOffset;
                 if (c == '<') {
@@ -943,14 +1082,14 @@ public final class WebLoader implements WebConstants
         int ch;
 
         try {
-            while ((ch = reader.read()) >= 0) {
+            while ((ch = read()) >= 0) {
                 char c = (char) ch;
                 if (c == '<') {
                     // We only expect to see a '<' inside a quoted attribute value.
                     // An actual example from msnbc.com: <a href="<!--none-->">
                     if (state != ATTRIBUTE_VALUE || delim == 0) {
                         Log.error("unexpected '<' sourceOffset = " + sourceOffset);
-                        reader.unread(c);
+                        unread();
                         return sb.toString();
                     }
                 }
@@ -1083,9 +1222,9 @@ public final class WebLoader implements WebConstants
         sb.append('&');
         try {
             int c;
-            while ((c = reader.read()) >= 0) {
+            while ((c = read()) >= 0) {
                 if (c == '<' || c == '&') {
-                    reader.unread(c);
+                    unread();
                     break;
                 }
                 if (c != '\r')
@@ -1204,7 +1343,7 @@ public final class WebLoader implements WebConstants
         StringBuilder sb = new StringBuilder();
         try {
             int c;
-            while ((c = reader.read()) >= 0) {
+            while ((c = read()) >= 0) {
                 if (c != '\r')
                     ++sourceOffset;
                 sb.append((char) c);
@@ -1221,7 +1360,7 @@ public final class WebLoader implements WebConstants
     {
         try {
             int c;
-            while ((c = reader.read()) >= 0) {
+            while ((c = read()) >= 0) {
                 if (c != '\r')
                     ++sourceOffset;
                 if (c == '<') {
@@ -1240,7 +1379,7 @@ public final class WebLoader implements WebConstants
     {
         try {
             int c;
-            while ((c = reader.read()) >= 0) {
+            while ((c = read()) >= 0) {
                 if (c != '\r')
                     ++sourceOffset;
                 if (c == '<') {
@@ -1262,7 +1401,7 @@ public final class WebLoader implements WebConstants
         sb.append('<');
         try {
             int c;
-            while ((c = reader.read()) >= 0) {
+            while ((c = read()) >= 0) {
                 if (c != '\r')
                     ++sourceOffset;
                 sb.append(Character.toLowerCase((char)c));
@@ -32,7 +32,9 @@ import java.io.UnsupportedEncodingException;
 
 public class ReaderThread extends Thread
 {
-    private char[] buf = new char[4096];
+    private static final int MAX_CHUNK = 64 * 1024;
+
+    private char[] buf = new char[8192];
     private InputStream inputStream;
     private BufferedReader reader;
     private boolean done = false;
@@ -83,10 +85,16 @@ public class ReaderThread extends Thread
         }
     }
 
+    // Returns whatever output is available, waiting for at least one
+    // character. Reads until nothing more is ready or MAX_CHUNK characters
+    // have been read; if timeOut is not zero and nothing more is ready, waits
+    // that long once to give the rest of a burst of output a chance to
+    // arrive.
     private String read()
     {
-        StringBuffer sb = new StringBuffer();
+        StringBuilder sb = new StringBuilder();
         try {
+            boolean waited = false;
             do {
                 int numChars = reader.read(buf, 0, buf.length); // Blocks.
                 if (numChars < 0) {
@@ -95,10 +103,12 @@ public class ReaderThread extends Thread
                 }
                 if (numChars > 0)
                     sb.append(buf, 0, numChars);
-                if (timeOut > 0)
+                if (sb.length() >= MAX_CHUNK)
+                    break;
+                if (!waited && timeOut > 0 && !reader.ready()) {
                     Thread.sleep(timeOut);
-                else
-                    Thread.yield();
+                    waited = true;
+                }
             }
             while (reader.ready());
         }
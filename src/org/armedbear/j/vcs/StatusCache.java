@@ -0,0 +1,151 @@
+/*
+ * StatusCache.java
+ *
+ * Copyright (C) 2026 Kevin Krouse
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.armedbear.j.vcs;
+
+import java.util.HashMap;
+
+import org.armedbear.j.File;
+
+/**
+ * The version control status of the files in a working copy, got by running
+ * one status command for the whole working copy instead of one for each
+ * buffer.
+ *
+ * The statuses are read again when the stamp file changes. That is a file
+ * the version control system rewrites when it updates its own records, like
+ * .git/index. A file that has been changed since the statuses were read
+ * (when a buffer is saved, for instance) has its status looked up again by
+ * itself.
+ *
+ * @param <T>   the status of a file
+ */
+public abstract class StatusCache<T>
+{
+    // File systems may only keep modification times to the second.
+    private static final long TIME_SLOP = 2000;
+
+    protected final File root;
+    private final String rootPath;
+
+    // Statuses by path relative to the root, with '/' as the separator.
+    private HashMap<String, T> statuses;
+    private long stamp;
+    private long snapshotTime;
+
+    // Modification times of the files whose statuses have been looked up
+    // again since the snapshot.
+    private final HashMap<String, Long> refreshed = new HashMap<String, Long>();
+
+    protected StatusCache(File root)
+    {
+        this.root = root;
+        String path = root.canonicalPath();
+        if (!path.endsWith(root.getSeparator()))
+            path = path.concat(root.getSeparator());
+        rootPath = path;
+    }
+
+    public final File getRoot()
+    {
+        return root;
+    }
+
+    // Returns the file whose modification time tells when the statuses
+    // need to be read again.
+    protected abstract File getStampFile();
+
+    // Returns the statuses of the files in the working copy, or null if the
+    // status command failed.
+    protected abstract HashMap<String, T> loadAll();
+
+    // Returns the status of one file, or null if it doesn't have one.
+    protected abstract T load(String path);
+
+    // Returns the status of a file that isn't listed by itself. By default,
+    // files that aren't listed have no status.
+    protected T getDefaultStatus(HashMap<String, T> statuses, String path)
+    {
+        return null;
+    }
+
+    /**
+     * Returns the status of a file, or null if it doesn't have one or is not
+     * in this working copy.
+     */
+    public final synchronized T getStatus(File file)
+    {
+        final String path = getRelativePath(file);
+        if (path == null)
+            return null;
+        final File stampFile = getStampFile();
+        final long modified = stampFile != null ? stampFile.lastModified() : 0;
+        if (statuses == null || modified != stamp) {
+            stamp = modified;
+            snapshotTime = System.currentTimeMillis();
+            statuses = loadAll();
+            if (statuses == null) {
+                // Don't try again until the stamp file changes.
+                statuses = new HashMap<String, T>();
+            }
+            refreshed.clear();
+        } else {
+            final long lastModified = file.lastModified();
+            final Long previous = refreshed.get(path);
+            final boolean stale = previous != null ?
+                lastModified != previous.longValue() :
+                lastModified > snapshotTime - TIME_SLOP;
+            if (stale) {
+                refreshed.put(path, Long.valueOf(lastModified));
+                T status = load(path);
+                if (status != null)
+                    statuses.put(path, status);
+                else
+                    statuses.remove(path);
+            }
+        }
+        T status = statuses.get(path);
+        return status != null ? status : getDefaultStatus(statuses, path);
+    }
+
+    /**
+     * Forgets the statuses, so they are read again the next time they are
+     * needed.
+     */
+    public final synchronized void invalidate()
+    {
+        statuses = null;
+        refreshed.clear();
+    }
+
+    private String getRelativePath(File file)
+    {
+        if (file == null || file.isRemote())
+            return null;
+        final String path = file.canonicalPath();
+        if (path == null || !path.startsWith(rootPath))
+            return null;
+        final String relativePath = path.substring(rootPath.length());
+        final char separatorChar = root.getSeparatorChar();
+        if (separatorChar != '/')
+            return relativePath.replace(separatorChar, '/');
+        return relativePath;
+    }
+}
@@ -39,7 +39,9 @@ import org.armedbear.j.vcs.git.GitEntry;
 import org.armedbear.j.vcs.svn.SVNEntry;
 
 import javax.swing.SwingUtilities;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.ArrayList;
 
 public abstract class VersionControl implements Constants
@@ -67,6 +69,48 @@ public abstract class VersionControl implements Constants
       }
   }
 
+  // A guess, and the directories that were looked in to make it, with
+  // their last modified times. Creating or removing a CVS, .svn, _darcs or
+  // .git directory in any of them changes its time, so the guess is made
+  // again.
+  private static final class Guess
+  {
+      final int vc;
+      final File[] dirs;
+      final long[] times;
+
+      Guess(int vc, List<File> dirs)
+      {
+          this.vc = vc;
+          this.dirs = dirs.toArray(new File[dirs.size()]);
+          times = new long[this.dirs.length];
+          for (int i = 0; i < times.length; i++)
+              times[i] = this.dirs[i].lastModified();
+      }
+
+      boolean isCurrent()
+      {
+          for (int i = 0; i < dirs.length; i++) {
+              if (dirs[i].lastModified() != times[i])
+                  return false;
+          }
+          return true;
+      }
+  }
+
+  private static final int MAX_GUESSES = 100;
+
+  // Guesses by directory, for the directories used most recently.
+  private static final LinkedHashMap<String, Guess> guesses =
+    new LinkedHashMap<String, Guess>(16, 0.75f, true) {
+        private static final long serialVersionUID = 1L;
+
+        protected boolean removeEldestEntry(Map.Entry<String, Guess> eldest)
+        {
+            return size() > MAX_GUESSES;
+        }
+    };
+
   public static int guessVCS(Buffer buffer)
   {
       final File file = buffer.getFile();
@@ -75,6 +119,22 @@ public abstract class VersionControl implements Constants
       File parentDir = file.getParentFile();
       if (parentDir == null)
           return -1;
+      final String path = parentDir.canonicalPath();
+      synchronized (guesses) {
+          Guess guess = guesses.get(path);
+          if (guess == null || !guess.isCurrent()) {
+              List<File> dirs = new ArrayList<File>();
+              guess = new Guess(guessVCS(parentDir, dirs), dirs);
+              guesses.put(path, guess);
+          }
+          return guess.vc;
+      }
+  }
+
+  // Adds the directories it looks in to dirs.
+  private static int guessVCS(File parentDir, List<File> dirs)
+  {
+      dirs.add(parentDir);
       File dir = null;
       if (null != (dir = File.getInstance(parentDir, "CVS")) && dir.isDirectory())
           return VC_CVS;
@@ -82,6 +142,8 @@ public abstract class VersionControl implements Constants
           return VC_P4;
       do {
           assert parentDir != null;
+          if (dirs.get(dirs.size() - 1) != parentDir)
+              dirs.add(parentDir);
           if (null != (dir = File.getInstance(parentDir, ".svn")) && dir.isDirectory())
               return VC_SVN;
           if (null != (dir = File.getInstance(parentDir, "_darcs")) && dir.isDirectory())
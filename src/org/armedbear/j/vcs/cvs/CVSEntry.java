@@ -30,6 +30,7 @@ import org.armedbear.j.SystemBuffer;
 import org.armedbear.j.vcs.VersionControlEntry;
 
 import java.util.Calendar;
+import java.util.HashMap;
 import java.util.NoSuchElementException;
 import java.util.StringTokenizer;
 import java.util.TimeZone;
@@ -133,6 +134,12 @@ public final class CVSEntry extends VersionControlEntry
         return null;
     }
 
+    // Entries by CVS/Entries path, read again when the file changes.
+    private static final HashMap<String, HashMap<String, String>> entries =
+        new HashMap<String, HashMap<String, String>>();
+    private static final HashMap<String, Long> entriesModified =
+        new HashMap<String, Long>();
+
     private static String getEntryText(File file)
     {
         if (file == null)
@@ -148,14 +155,36 @@ public final class CVSEntry extends VersionControlEntry
         File entriesFile = File.getInstance(cvsDir, "Entries");
         if (entriesFile == null || !entriesFile.isFile())
             return null;
-        String lookFor = "/".concat(file.getName()).concat("/");
-        SystemBuffer buf = new SystemBuffer(entriesFile);
-        buf.load();
-        for (Line line = buf.getFirstLine(); line != null; line = line.next()) {
-            String entry = line.getText();
-            if (entry.startsWith(lookFor))
-                return entry;
+        HashMap<String, String> map = getEntries(entriesFile);
+        return map.get(file.getName());
+    }
+
+    private static synchronized HashMap<String, String> getEntries(
+        File entriesFile)
+    {
+        final String path = entriesFile.canonicalPath();
+        final long lastModified = entriesFile.lastModified();
+        HashMap<String, String> map = entries.get(path);
+        Long modified = entriesModified.get(path);
+        if (map == null || modified == null ||
+            modified.longValue() != lastModified) {
+            map = new HashMap<String, String>();
+            SystemBuffer buf = new SystemBuffer(entriesFile);
+            buf.load();
+            for (Line line = buf.getFirstLine(); line != null; line = line.next()) {
+                String entry = line.getText();
+                if (entry.length() > 0 && entry.charAt(0) == '/') {
+                    int end = entry.indexOf('/', 1);
+                    if (end > 0) {
+                        String name = entry.substring(1, end);
+                        if (!map.containsKey(name))
+                            map.put(name, entry);
+                    }
+                }
+            }
+            entries.put(path, map);
+            entriesModified.put(path, Long.valueOf(lastModified));
         }
-        return null;
+        return map;
     }
 }
@@ -77,8 +77,16 @@ public class Git extends VersionControl implements Constants
     }
 
     public static File findRoot(File dir)
+    {
+        return findRoot(dir, null);
+    }
+
+    // If dirs is not null, adds the directories it looks in to it.
+    public static File findRoot(File dir, List<File> dirs)
     {
         while (dir != null) {
+            if (dirs != null)
+                dirs.add(dir);
             File file = File.getInstance(dir, ".git");
             if (file != null && file.isDirectory())
                 return dir;
@@ -25,8 +25,6 @@ import org.armedbear.j.Constants;
 import java.lang.StringBuilder;
 import org.armedbear.j.File;
 import org.armedbear.j.Log;
-import org.armedbear.j.ShellCommand;
-import org.armedbear.j.util.Utilities;
 import org.armedbear.j.vcs.VersionControlEntry;
 
 public class GitEntry extends VersionControlEntry
@@ -79,24 +77,14 @@ public class GitEntry extends VersionControlEntry
             return null;
 
         final File file = buffer.getFile();
-        ShellCommand cmd = new ShellCommand(
-                "git status -z --porcelain --ignored --untracked -- " + Utilities.maybeQuote(file.getName()),
-                file.getParentFile());
-        cmd.run();
-        String output = cmd.getOutput();
-        if (output == null || output.length() == 0)
+        final GitStatusCache cache = GitStatusCache.getInstance(file);
+        if (cache == null)
             return null;
-
-        // We're expecting the format: XY<space>filename
-        if (output.length() < 4) {
-            Log.debug("Unexpected git status = |" + output + "|");
+        final String xy = cache.getStatus(file);
+        if (xy == null)
             return null;
-        }
-
-        String xy = output.substring(0, 2);
         char x = xy.charAt(0);
         char y = xy.charAt(1);
-        String filename = output.substring(2);
 
         String status;
         switch (x) {
@@ -110,7 +98,7 @@ public class GitEntry extends VersionControlEntry
                 else if (y == 'U')
                     status = "conflict";
                 else {
-                    Log.debug("Unexpected git xy status = |" + output + "|");
+                    Log.debug("Unexpected git xy status = |" + xy + "|");
                     return null;
                 }
                 break;
@@ -121,7 +109,7 @@ public class GitEntry extends VersionControlEntry
                 else if (y == 'D')
                     status = "deleted";
                 else {
-                    Log.debug("Unexpected git xy status = |" + output + "|");
+                    Log.debug("Unexpected git xy status = |" + xy + "|");
                     return null;
                 }
                 break;
@@ -132,7 +120,7 @@ public class GitEntry extends VersionControlEntry
                 else if (y == 'D')
                     status = "deleted";
                 else {
-                    Log.debug("Unexpected git xy status = |" + output + "|");
+                    Log.debug("Unexpected git xy status = |" + xy + "|");
                     return null;
                 }
                 break;
@@ -147,7 +135,7 @@ public class GitEntry extends VersionControlEntry
                 else if ( y == 'A')
                     status = "unmerged, both added";
                 else {
-                    Log.debug("Unexpected git xy status = |" + output + "|");
+                    Log.debug("Unexpected git xy status = |" + xy + "|");
                     return null;
                 }
                 break;
@@ -160,7 +148,7 @@ public class GitEntry extends VersionControlEntry
                 else if ( y == 'D')
                     status = "unmerged, both deleted";
                 else {
-                    Log.debug("Unexpected git xy status = |" + output + "|");
+                    Log.debug("Unexpected git xy status = |" + xy + "|");
                     return null;
                 }
                 break;
@@ -169,7 +157,7 @@ public class GitEntry extends VersionControlEntry
                 if (y == 'U' || y == 'A' || y == 'D' || y == 'T')
                     status = "conflict";
                 else {
-                    Log.debug("Unexpected git xy status = |" + output + "|");
+                    Log.debug("Unexpected git xy status = |" + xy + "|");
                     return null;
                 }
                 break;
@@ -180,7 +168,7 @@ public class GitEntry extends VersionControlEntry
                 else if (y == 'D')
                     status = "deleted";
                 else {
-                    Log.debug("Unexpected git xy status = |" + output + "|");
+                    Log.debug("Unexpected git xy status = |" + xy + "|");
                     return null;
                 }
                 break;
@@ -191,7 +179,7 @@ public class GitEntry extends VersionControlEntry
                 else if (y == 'D')
                     status = "deleted";
                 else {
-                    Log.debug("Unexpected git xy status = |" + output + "|");
+                    Log.debug("Unexpected git xy status = |" + xy + "|");
                     return null;
                 }
                 break;
@@ -205,7 +193,7 @@ public class GitEntry extends VersionControlEntry
                 break;
 
             default:
-                Log.debug("Unexpected git xy status = |" + output + "|");
+                Log.debug("Unexpected git xy status = |" + xy + "|");
                 return null;
         }
 
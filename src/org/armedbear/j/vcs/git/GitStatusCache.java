@@ -0,0 +1,202 @@
+/*
+ * GitStatusCache.java
+ *
+ * Copyright (C) 2026 Kevin Krouse
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.armedbear.j.vcs.git;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.armedbear.j.File;
+import org.armedbear.j.Log;
+import org.armedbear.j.ShellCommand;
+import org.armedbear.j.util.Utilities;
+import org.armedbear.j.vcs.StatusCache;
+
+/**
+ * The two-letter status codes (as in <code>git status --porcelain</code>) of
+ * the files in a Git working tree. Clean files have no status.
+ */
+public final class GitStatusCache extends StatusCache<String>
+{
+    private static final String COMMAND = "git status -z --porcelain --ignored";
+
+    private static final int MAX_CACHES = 20;
+    private static final int MAX_ROOTS = 100;
+
+    // By working tree root, for the working trees used most recently.
+    private static final LinkedHashMap<String, GitStatusCache> caches =
+        new LinkedHashMap<String, GitStatusCache>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            protected boolean removeEldestEntry(
+                Map.Entry<String, GitStatusCache> eldest)
+            {
+                return size() > MAX_CACHES;
+            }
+        };
+
+    // The working tree root of each directory used most recently.
+    private static final LinkedHashMap<String, Root> roots =
+        new LinkedHashMap<String, Root>(16, 0.75f, true) {
+            private static final long serialVersionUID = 1L;
+
+            protected boolean removeEldestEntry(Map.Entry<String, Root> eldest)
+            {
+                return size() > MAX_ROOTS;
+            }
+        };
+
+    // The root of the working tree that contains a directory (null if it
+    // isn't in one), and the directories that were looked in to find it,
+    // with their last modified times. Creating or removing a .git directory
+    // in any of them changes its time, so the root is looked for again.
+    private static final class Root
+    {
+        final File root;
+        final File[] dirs;
+        final long[] times;
+
+        Root(File root, List<File> dirs)
+        {
+            this.root = root;
+            this.dirs = dirs.toArray(new File[dirs.size()]);
+            times = new long[this.dirs.length];
+            for (int i = 0; i < times.length; i++)
+                times[i] = this.dirs[i].lastModified();
+        }
+
+        boolean isCurrent()
+        {
+            for (int i = 0; i < dirs.length; i++) {
+                if (dirs[i].lastModified() != times[i])
+                    return false;
+            }
+            return true;
+        }
+    }
+
+    private GitStatusCache(File root)
+    {
+        super(root);
+    }
+
+    /**
+     * Returns the cache for the working tree that contains a file, or null
+     * if the file isn't in a working tree.
+     */
+    public static synchronized GitStatusCache getInstance(File file)
+    {
+        final File dir = file.getParentFile();
+        if (dir == null)
+            return null;
+        final String dirPath = dir.canonicalPath();
+        Root r = roots.get(dirPath);
+        if (r == null || !r.isCurrent()) {
+            List<File> dirs = new ArrayList<File>();
+            r = new Root(Git.findRoot(dir, dirs), dirs);
+            roots.put(dirPath, r);
+        }
+        final File root = r.root;
+        if (root == null)
+            return null;
+        final String rootPath = root.canonicalPath();
+        GitStatusCache cache = caches.get(rootPath);
+        if (cache == null) {
+            cache = new GitStatusCache(root);
+            caches.put(rootPath, cache);
+        }
+        return cache;
+    }
+
+    protected File getStampFile()
+    {
+        return File.getInstance(root, ".git/index");
+    }
+
+    protected HashMap<String, String> loadAll()
+    {
+        ShellCommand cmd = new ShellCommand(COMMAND, root);
+        cmd.run();
+        if (cmd.exitValue() != 0) {
+            Log.debug("git status failed: |" + cmd.getOutput() + "|");
+            return null;
+        }
+        return parse(cmd.getOutput());
+    }
+
+    protected String load(String path)
+    {
+        ShellCommand cmd =
+            new ShellCommand(COMMAND + " -- " + Utilities.maybeQuote(path), root);
+        cmd.run();
+        if (cmd.exitValue() != 0)
+            return null;
+        return parse(cmd.getOutput()).get(path);
+    }
+
+    // Files in untracked or ignored directories are listed by directory.
+    protected String getDefaultStatus(HashMap<String, String> statuses,
+        String path)
+    {
+        int index = path.length();
+        while ((index = path.lastIndexOf('/', index - 1)) > 0) {
+            String status = statuses.get(path.substring(0, index + 1));
+            if (status != null && (status.equals("??") || status.equals("!!")))
+                return status;
+        }
+        return null;
+    }
+
+    // Parses the output of git status -z --porcelain: "XY path" entries,
+    // each followed by NUL, with the original path as an extra entry after
+    // a rename or copy.
+    public static HashMap<String, String> parse(String output)
+    {
+        HashMap<String, String> statuses = new HashMap<String, String>();
+        if (output == null)
+            return statuses;
+        final int limit = output.length();
+        int begin = 0;
+        while (begin < limit) {
+            int end = output.indexOf('\0', begin);
+            if (end < 0)
+                end = limit;
+            if (end - begin < 4 || output.charAt(begin + 2) != ' ') {
+                Log.debug("Unexpected git status = |" + output.substring(begin, end) + "|");
+            } else {
+                final String xy = output.substring(begin, begin + 2);
+                statuses.put(output.substring(begin + 3, end), xy);
+                final char x = xy.charAt(0);
+                final char y = xy.charAt(1);
+                if (x == 'R' || x == 'C' || y == 'R' || y == 'C') {
+                    // Skip the original path.
+                    end = output.indexOf('\0', end + 1);
+                    if (end < 0)
+                        end = limit;
+                }
+            }
+            begin = end + 1;
+        }
+        return statuses;
+    }
+}
@@ -24,18 +24,7 @@ import org.armedbear.j.Buffer;
 import org.armedbear.j.Constants;
 import java.lang.StringBuilder;
 import org.armedbear.j.File;
-import org.armedbear.j.Log;
-import org.armedbear.j.ShellCommand;
-import org.armedbear.j.util.Utilities;
 import org.armedbear.j.vcs.VersionControlEntry;
-import org.xml.sax.InputSource;
-import org.xml.sax.XMLReader;
-import org.xml.sax.Attributes;
-import org.xml.sax.SAXException;
-import org.xml.sax.helpers.DefaultHandler;
-
-import java.io.StringReader;
-import java.util.LinkedList;
 
 public final class SVNEntry extends VersionControlEntry
 {
@@ -98,65 +87,12 @@ public final class SVNEntry extends VersionControlEntry
             return null;
 
         final File file = buffer.getFile();
-        ShellCommand cmd = new ShellCommand(
-                "svn -v --xml st " + Utilities.maybeQuote(file.getName()),
-                file.getParentFile());
-        cmd.run();
-        String output = cmd.getOutput();
-        if (output == null || output.length() == 0)
+        final SVNStatusCache cache = SVNStatusCache.getInstance(file);
+        if (cache == null)
             return null;
-
-        XMLReader xmlReader = Utilities.getDefaultXMLReader();
-        if (xmlReader == null)
+        final SVNStatusCache.Status status = cache.getStatus(file);
+        if (status == null)
             return null;
-        Handler handler = new Handler();
-        xmlReader.setContentHandler(handler);
-        try {
-            InputSource source = new InputSource(new StringReader(output));
-            xmlReader.parse(source);
-        }
-        catch (Exception e) {
-            Log.warn(e.getMessage());
-            return null;
-        }
-        return new SVNEntry(buffer, handler.revision, handler.status, handler.author, handler.changelist);
-    }
-
-    private static class Handler extends DefaultHandler
-    {
-        private LinkedList<String> stack = new LinkedList<String>();
-
-        public String changelist = null;
-        public String revision = null;
-        public String date = null;
-        public String author = null;
-        public String status = null;
-
-        public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException {
-            stack.addFirst(localName);
-            if (localName.equals("changelist")) {
-                changelist = attributes.getValue("", "name");
-            }
-            else if (localName.equals("wc-status")) {
-                status = attributes.getValue("", "item");
-            }
-            else if (localName.equals("commit")) {
-                revision = attributes.getValue("", "revision");
-            }
-        }
-
-        @Override
-        public void characters(char[] ch, int start, int length) throws SAXException {
-            String curr = stack.peek();
-            if (curr.equals("author"))
-                author = new String(ch, start, length);
-            else if (curr.equals("date"))
-                date = new String(ch, start, length);
-        }
-
-        public void endElement(String uri, String localName, String qName) throws SAXException {
-            stack.removeFirst();
-            // since we only expect a single <entry>, we'll just ignore end elements
-        }
+        return new SVNEntry(buffer, status.revision, status.status, status.author, status.changelist);
     }
 }
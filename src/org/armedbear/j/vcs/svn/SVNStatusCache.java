@@ -0,0 +1,219 @@
+/*
+ * SVNStatusCache.java
+ *
+ * Copyright (C) 2026 Kevin Krouse
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.armedbear.j.vcs.svn;
+
+import java.io.StringReader;
+import java.util.HashMap;
+import java.util.LinkedList;
+
+import org.armedbear.j.File;
+import org.armedbear.j.Log;
+import org.armedbear.j.ShellCommand;
+import org.armedbear.j.util.Utilities;
+import org.armedbear.j.vcs.StatusCache;
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.XMLReader;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * The statuses of the files in a Subversion working copy, from
+ * <code>svn status -v --xml</code>.
+ */
+public final class SVNStatusCache extends StatusCache<SVNStatusCache.Status>
+{
+    private static final String COMMAND = "svn -v --xml --no-ignore st";
+
+    // By working copy root.
+    private static final HashMap<String, SVNStatusCache> caches =
+        new HashMap<String, SVNStatusCache>();
+
+    // Working copy roots by directory, null if the directory isn't in one.
+    private static final HashMap<String, File> roots = new HashMap<String, File>();
+
+    public static final class Status
+    {
+        public String status;
+        public String revision;
+        public String author;
+        public String changelist;
+    }
+
+    private SVNStatusCache(File root)
+    {
+        super(root);
+    }
+
+    /**
+     * Returns the cache for the working copy that contains a file, or null
+     * if the file isn't in a working copy.
+     */
+    public static synchronized SVNStatusCache getInstance(File file)
+    {
+        final File dir = file.getParentFile();
+        if (dir == null)
+            return null;
+        final String dirPath = dir.canonicalPath();
+        File root;
+        if (roots.containsKey(dirPath)) {
+            root = roots.get(dirPath);
+        } else {
+            root = findRoot(dir);
+            roots.put(dirPath, root);
+        }
+        if (root == null)
+            return null;
+        final String rootPath = root.canonicalPath();
+        SVNStatusCache cache = caches.get(rootPath);
+        if (cache == null) {
+            cache = new SVNStatusCache(root);
+            caches.put(rootPath, cache);
+        }
+        return cache;
+    }
+
+    // Since Subversion 1.7, only the root of a working copy has a .svn
+    // directory.
+    private static File findRoot(File dir)
+    {
+        while (dir != null) {
+            File file = File.getInstance(dir, ".svn");
+            if (file != null && file.isDirectory())
+                return dir;
+            dir = dir.getParentFile();
+        }
+        return null;
+    }
+
+    protected File getStampFile()
+    {
+        File file = File.getInstance(root, ".svn/wc.db");
+        if (file != null && file.isFile())
+            return file;
+        // Before Subversion 1.7.
+        return File.getInstance(root, ".svn/entries");
+    }
+
+    protected HashMap<String, Status> loadAll()
+    {
+        return run(COMMAND);
+    }
+
+    protected Status load(String path)
+    {
+        HashMap<String, Status> statuses =
+            run(COMMAND + " " + Utilities.maybeQuote(path));
+        return statuses != null ? statuses.get(path) : null;
+    }
+
+    // Files in unversioned or ignored directories are listed by directory.
+    protected Status getDefaultStatus(HashMap<String, Status> statuses,
+        String path)
+    {
+        int index = path.length();
+        while ((index = path.lastIndexOf('/', index - 1)) > 0) {
+            Status status = statuses.get(path.substring(0, index));
+            if (status != null && ("unversioned".equals(status.status) ||
+                                   "ignored".equals(status.status)))
+                return status;
+        }
+        return null;
+    }
+
+    private HashMap<String, Status> run(String command)
+    {
+        ShellCommand cmd = new ShellCommand(command, root);
+        cmd.run();
+        String output = cmd.getOutput();
+        if (cmd.exitValue() != 0 || output == null || output.length() == 0)
+            return null;
+        return parse(output);
+    }
+
+    public static HashMap<String, Status> parse(String output)
+    {
+        XMLReader xmlReader = Utilities.getDefaultXMLReader();
+        if (xmlReader == null)
+            return null;
+        Handler handler = new Handler();
+        xmlReader.setContentHandler(handler);
+        try {
+            xmlReader.parse(new InputSource(new StringReader(output)));
+        }
+        catch (Exception e) {
+            Log.warn(e.getMessage());
+            return null;
+        }
+        return handler.statuses;
+    }
+
+    private static class Handler extends DefaultHandler
+    {
+        private LinkedList<String> stack = new LinkedList<String>();
+
+        final HashMap<String, Status> statuses = new HashMap<String, Status>();
+
+        private String changelist;
+        private Status status;
+
+        public void startElement(String uri, String localName, String qName,
+            Attributes attributes) throws SAXException
+        {
+            stack.addFirst(localName);
+            if (localName.equals("changelist")) {
+                changelist = attributes.getValue("", "name");
+            } else if (localName.equals("entry")) {
+                String path = attributes.getValue("", "path");
+                if (path != null) {
+                    status = new Status();
+                    status.changelist = changelist;
+                    statuses.put(path.replace('\\', '/'), status);
+                }
+            } else if (status != null) {
+                if (localName.equals("wc-status"))
+                    status.status = attributes.getValue("", "item");
+                else if (localName.equals("commit"))
+                    status.revision = attributes.getValue("", "revision");
+            }
+        }
+
+        public void characters(char[] ch, int start, int length)
+            throws SAXException
+        {
+            if (status != null && "author".equals(stack.peek())) {
+                String s = new String(ch, start, length);
+                status.author =
+                    status.author == null ? s : status.author.concat(s);
+            }
+        }
+
+        public void endElement(String uri, String localName, String qName)
+            throws SAXException
+        {
+            stack.removeFirst();
+            if (localName.equals("entry"))
+                status = null;
+            else if (localName.equals("changelist"))
+                changelist = null;
+        }
+    }
+}
@@ -0,0 +1,222 @@
+/*
+ * Copyright (C) 2026 Kevin Krouse
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.armedbear.j;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.stream.Stream;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class CacheTest
+{
+    private Path tempDir;
+    private File dir;
+
+    // The document served by the stand-in server.
+    private volatile String body = "version 1";
+    private volatile String etag = "\"v1\"";
+    private volatile int requests;
+    private volatile int notModified;
+
+    @Before
+    public void setUp() throws IOException
+    {
+        tempDir = Files.createTempDirectory("cache");
+        dir = File.getInstance(tempDir.toString());
+    }
+
+    @After
+    public void tearDown() throws IOException
+    {
+        try (Stream<Path> paths = Files.walk(tempDir)) {
+            paths.sorted(Comparator.reverseOrder()).forEach(p -> p.toFile().delete());
+        }
+    }
+
+    private HttpServer startServer() throws IOException
+    {
+        HttpServer server =
+            HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        server.createContext("/doc", (HttpExchange exchange) -> {
+            ++requests;
+            String ifNoneMatch =
+                exchange.getRequestHeaders().getFirst("If-None-Match");
+            exchange.getResponseHeaders().set("ETag", etag);
+            if (etag.equals(ifNoneMatch)) {
+                ++notModified;
+                exchange.sendResponseHeaders(304, -1);
+            } else {
+                byte[] bytes = body.getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "text/plain");
+                exchange.sendResponseHeaders(200, bytes.length);
+                OutputStream out = exchange.getResponseBody();
+                out.write(bytes);
+                out.close();
+            }
+            exchange.close();
+        });
+        server.start();
+        return server;
+    }
+
+    private static String read(File file) throws IOException
+    {
+        return new String(Files.readAllBytes(new java.io.File(file.canonicalPath()).toPath()),
+                          StandardCharsets.UTF_8);
+    }
+
+    private File source(String name, String text) throws IOException
+    {
+        Path path = Files.createTempFile(name, "");
+        Files.write(path, text.getBytes(StandardCharsets.UTF_8));
+        path.toFile().deleteOnExit();
+        return File.getInstance(path.toString());
+    }
+
+    private static Headers headers(String s)
+    {
+        return Headers.parse(s + "\r\n\r\n");
+    }
+
+    @Test
+    public void revalidate() throws IOException
+    {
+        HttpServer server = startServer();
+        try {
+            String url = "http://127.0.0.1:" + server.getAddress().getPort() + "/doc";
+            Cache cache = new Cache(dir, 1024 * 1024);
+            assertTrue(cache.initialize());
+            assertNull(cache.get(url));
+            File file = cache.put(url);
+            assertEquals("version 1", read(file));
+            assertEquals(1, requests);
+            assertEquals("text/plain", cache.getEntry(url).getContentType());
+
+            // Unchanged: the server says so, and the cached copy is used.
+            assertEquals("version 1", read(cache.put(url)));
+            assertEquals(2, requests);
+            assertEquals(1, notModified);
+            assertEquals(1, cache.getRevalidations());
+
+            // Changed.
+            body = "version 2";
+            etag = "\"v2\"";
+            assertEquals("version 2", read(cache.put(url)));
+            assertEquals(1, notModified);
+            assertEquals(1, cache.getCount());
+            assertEquals("\"v2\"", cache.getEntry(url).getETag());
+            assertEquals("version 2", read(cache.get(url)));
+        }
+        finally {
+            server.stop(0);
+        }
+    }
+
+    @Test
+    public void store() throws IOException
+    {
+        Cache cache = new Cache(dir, 1024 * 1024);
+        assertTrue(cache.initialize());
+        File source = source("store", "text");
+        assertFalse(cache.store("http://a/none", source, headers("Content-Type: text/plain")));
+        assertFalse(cache.store("http://a/nostore", source,
+                                headers("ETag: \"x\"\r\nCache-Control: private, no-store")));
+        assertTrue(cache.store("http://a/etag", source, headers("ETag: \"x\"")));
+        assertTrue(cache.store("http://a/lm", source,
+                               headers("Last-Modified: Sat, 17 Oct 2026 10:00:00 GMT")));
+        assertEquals(2, cache.getCount());
+        assertEquals(8, cache.getSize());
+        Cache.Entry entry = cache.getEntry("http://a/lm");
+        assertNull(entry.getETag());
+        assertEquals("Sat, 17 Oct 2026 10:00:00 GMT", entry.getLastModified());
+        File dest = source("dest", "");
+        assertTrue(cache.copyTo(entry, dest));
+        assertEquals("text", read(dest));
+        assertEquals(1, cache.getRevalidations());
+    }
+
+    @Test
+    public void evict() throws IOException
+    {
+        // Room for two ten byte documents.
+        Cache cache = new Cache(dir, 25);
+        assertTrue(cache.initialize());
+        File source = source("evict", "0123456789");
+        Headers headers = headers("ETag: \"x\"");
+        assertTrue(cache.store("http://a/1", source, headers));
+        assertTrue(cache.store("http://a/2", source, headers));
+        // Use the first, so the second is the least recently used.
+        assertNotNull(cache.get("http://a/1"));
+        assertTrue(cache.store("http://a/3", source, headers));
+        assertEquals(2, cache.getCount());
+        assertEquals(20, cache.getSize());
+        assertEquals(1, cache.getEvictions());
+        assertNull(cache.get("http://a/2"));
+        assertNotNull(cache.get("http://a/1"));
+        assertNotNull(cache.get("http://a/3"));
+        // Too big to cache at all.
+        assertFalse(cache.store("http://a/big", source("big", "0123456789012345678901234567890"),
+                                headers));
+        assertEquals(2, cache.getCount());
+        // Two documents and the catalog.
+        cache.saveCatalog();
+        assertEquals(3, dir.list().length);
+    }
+
+    @Test
+    public void persist() throws IOException
+    {
+        Cache cache = new Cache(dir, 25);
+        assertTrue(cache.initialize());
+        File source = source("persist", "0123456789");
+        assertTrue(cache.store("http://a/1", source,
+                               headers("Last-Modified: Sat, 17 Oct 2026 10:00:00 GMT\r\n" +
+                                       "Content-Type: text/html; charset=utf-8")));
+        assertTrue(cache.store("http://a/2", source, headers("ETag: \"2\"")));
+        // Use the first, so the second is the least recently used.
+        assertNotNull(cache.get("http://a/1"));
+        cache.saveCatalog();
+        // Left over from a download that didn't finish.
+        File.getInstance(dir, "partial").getOutputStream().close();
+
+        Cache reloaded = new Cache(dir, 25);
+        assertTrue(reloaded.initialize());
+        assertEquals(2, reloaded.getCount());
+        assertEquals(20, reloaded.getSize());
+        assertFalse(File.getInstance(dir, "partial").exists());
+        // The order was saved too.
+        assertTrue(reloaded.store("http://a/3", source, headers("ETag: \"3\"")));
+        assertNull(reloaded.getEntry("http://a/2"));
+        Cache.Entry entry = reloaded.getEntry("http://a/1");
+        assertEquals("Sat, 17 Oct 2026 10:00:00 GMT", entry.getLastModified());
+        assertEquals("text/html; charset=utf-8", entry.getContentType());
+        assertEquals("\"3\"", reloaded.getEntry("http://a/3").getETag());
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2026 Kevin Krouse
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.armedbear.j;
+
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodType;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class KeyMapTest
+{
+    @Test
+    public void lookup()
+    {
+        KeyMap km = new KeyMap();
+        km.mapKey('a', "insertA");
+        km.mapKey(KeyEvent.VK_A, InputEvent.CTRL_MASK, "selectAll");
+        km.mapKey(KeyEvent.VK_F1, 0, "help");
+        assertEquals("insertA", km.lookup('a', 0, 0).getCommand());
+        assertEquals("selectAll",
+                     km.lookup('\0', KeyEvent.VK_A, InputEvent.CTRL_MASK).getCommand());
+        assertEquals("help", km.lookup('\0', KeyEvent.VK_F1, 0).getCommand());
+        assertNull(km.lookup('b', 0, 0));
+        assertNull(km.lookup('\0', KeyEvent.VK_A, InputEvent.ALT_MASK));
+        // Extended modifiers are ignored.
+        assertEquals("selectAll",
+                     km.lookup('\0', KeyEvent.VK_A,
+                               InputEvent.CTRL_MASK | InputEvent.CTRL_DOWN_MASK).getCommand());
+    }
+
+    @Test
+    public void remap()
+    {
+        KeyMap km = new KeyMap();
+        km.mapKey(KeyEvent.VK_F1, 0, "help");
+        assertEquals("help", km.lookup('\0', KeyEvent.VK_F1, 0).getCommand());
+        km.mapKey(KeyEvent.VK_F1, 0, "apropos");
+        assertEquals("apropos", km.lookup('\0', KeyEvent.VK_F1, 0).getCommand());
+        km.unmapKey(KeyEvent.VK_F1, 0);
+        assertNull(km.lookup('\0', KeyEvent.VK_F1, 0));
+        km.mapKey('x', "insertX");
+        assertEquals("insertX", km.lookup('x', 0, 0).getCommand());
+        km.unmapKey('x');
+        assertNull(km.lookup('x', 0, 0));
+    }
+
+    @Test
+    public void manyMappings()
+    {
+        KeyMap km = new KeyMap();
+        for (int i = 0; i < 500; i++)
+            km.mapKey((char) ('!' + i), "command" + i);
+        for (int i = 0; i < 500; i++)
+            assertEquals("command" + i,
+                         km.lookup((char) ('!' + i), 0, 0).getCommand());
+    }
+
+    @Test
+    public void handles() throws Exception
+    {
+        MethodHandle mh = new Command("keyLatency", "KeyLatency", "keyLatency").getHandle(false);
+        assertEquals(MethodType.methodType(void.class, Editor.class), mh.type());
+        mh = new Command("insertString").getHandle(true);
+        assertEquals(MethodType.methodType(void.class, Editor.class, String.class), mh.type());
+    }
+}
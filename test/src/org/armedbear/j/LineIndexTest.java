@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2026 Kevin Krouse
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.armedbear.j;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LineIndexTest
+{
+    private static Line makeLines(String... text)
+    {
+        Line first = null;
+        Line last = null;
+        for (int i = 0; i < text.length; i++) {
+            Line line = new TextLine(text[i]);
+            line.setLineNumber(i);
+            line.setOriginalLineNumber(i);
+            if (last == null)
+                first = line;
+            else
+                line.insertAfter(last);
+            last = line;
+        }
+        return first;
+    }
+
+    @Test
+    public void lineNumbers() throws Exception
+    {
+        Line first = makeLines("one", "two", "three");
+        LineIndex index = new LineIndex(first);
+        assertEquals(3, index.size());
+        assertSame(first, index.getLine(0));
+        assertSame(first.next().next(), index.getLine(2));
+        assertSame(first.next().next(), index.getLastLine());
+        assertNull(index.getLine(-1));
+        assertNull(index.getLine(3));
+    }
+
+    @Test
+    public void offsets() throws Exception
+    {
+        // Line separator always counts as 1.
+        Line first = makeLines("one", "", "three");
+        LineIndex index = new LineIndex(first);
+        assertEquals(0, index.getAbsoluteOffset(first));
+        assertEquals(4, index.getAbsoluteOffset(first.next()));
+        assertEquals(5, index.getAbsoluteOffset(first.next().next()));
+        assertEquals(-1, index.getAbsoluteOffset(new TextLine("other")));
+
+        Position pos = index.getPosition(2);
+        assertSame(first, pos.getLine());
+        assertEquals(2, pos.getOffset());
+
+        // End of line is the separator; the next offset starts the next line.
+        pos = index.getPosition(3);
+        assertSame(first, pos.getLine());
+        assertEquals(3, pos.getOffset());
+        pos = index.getPosition(4);
+        assertSame(first.next(), pos.getLine());
+        assertEquals(0, pos.getOffset());
+
+        pos = index.getPosition(10);
+        assertSame(first.next().next(), pos.getLine());
+        assertEquals(5, pos.getOffset());
+        assertNull(index.getPosition(11));
+    }
+
+    @Test
+    public void findOriginal() throws Exception
+    {
+        Line first = makeLines("a", "b", "c", "d");
+        // Remove "b" and insert a new line at the top.
+        Line b = first.next();
+        first.setNext(b.next());
+        b.next().setPrevious(first);
+        Line added = new TextLine("new");
+        added.setNext(first);
+        first.setPrevious(added);
+
+        LineIndex index = new LineIndex(added);
+        assertSame(first, index.findOriginal(0));
+        assertSame(first.next(), index.findOriginal(2));
+        assertNull(index.findOriginal(1));
+        assertSame(first.next(), index.findOriginalAtOrAfter(1));
+        assertNull(index.findOriginalAtOrAfter(4));
+    }
+}
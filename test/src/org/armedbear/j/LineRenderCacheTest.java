@@ -0,0 +1,136 @@
+/*
+ * Copyright (C) 2026 Kevin Krouse
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.armedbear.j;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LineRenderCacheTest
+{
+    private static class TestFormatter extends Formatter
+    {
+        public LineSegmentList formatLine(Line line)
+        {
+            clearSegmentList();
+            addSegment(line.getText(), 0);
+            return segmentList;
+        }
+
+        public FormatTable getFormatTable()
+        {
+            if (formatTable == null)
+                formatTable = new FormatTable("TestMode");
+            return formatTable;
+        }
+    }
+
+    private static LineRenderCache.Entry put(LineRenderCache cache, Line line)
+    {
+        String text = line.getText();
+        char[] ta = new char[80];
+        int[] fa = new int[80];
+        text.getChars(0, text.length(), ta, 0);
+        return cache.put(line, text, line.flags(), ta, fa, text.length());
+    }
+
+    @Test
+    public void lineChanges()
+    {
+        LineRenderCache cache = new LineRenderCache(16);
+        cache.setContext(new TestFormatter(), 0, 80, 8, false);
+        Line line = new TextLine("int x;");
+        LineRenderCache.Entry entry = put(cache, line);
+        assertSame(entry, cache.get(line));
+        // Same text in a different string.
+        line.setText(new String("int x;"));
+        assertSame(entry, cache.get(line));
+        line.setFlags(1);
+        assertNull(cache.get(line));
+        put(cache, line);
+        line.setText("int y;");
+        assertNull(cache.get(line));
+        assertEquals(0, cache.size());
+        put(cache, line);
+        cache.remove(line);
+        assertNull(cache.get(line));
+    }
+
+    @Test
+    public void contextChanges()
+    {
+        LineRenderCache cache = new LineRenderCache(16);
+        TestFormatter formatter = new TestFormatter();
+        cache.setContext(formatter, 0, 80, 8, false);
+        Line line = new TextLine("\tint x;");
+        LineRenderCache.Entry entry = put(cache, line);
+        cache.setContext(formatter, 0, 80, 8, false);
+        assertSame(entry, cache.get(line));
+        cache.setContext(formatter, 0, 80, 4, false);
+        assertNull(cache.get(line));
+        put(cache, line);
+        cache.setContext(formatter, 8, 80, 4, false);
+        assertNull(cache.get(line));
+        put(cache, line);
+        formatter.reset();
+        cache.setContext(formatter, 8, 80, 4, false);
+        assertNull(cache.get(line));
+        put(cache, line);
+        cache.setContext(new TestFormatter(), 8, 80, 4, false);
+        assertNull(cache.get(line));
+    }
+
+    @Test
+    public void copyTo()
+    {
+        LineRenderCache cache = new LineRenderCache(16);
+        cache.setContext(new TestFormatter(), 0, 80, 8, false);
+        Line line = new TextLine("abc");
+        char[] ta = new char[8];
+        int[] fa = new int[8];
+        "abc".getChars(0, 3, ta, 0);
+        fa[1] = 2;
+        LineRenderCache.Entry entry = cache.put(line, "abc", 0, ta, fa, 3);
+        char[] ta2 = "xxxxxxxx".toCharArray();
+        int[] fa2 = new int[] { 9, 9, 9, 9, 9, 9, 9, 9 };
+        entry.copyTo(ta2, fa2);
+        assertEquals("abc     ", new String(ta2));
+        assertArrayEquals(new int[] { 0, 2, 0, 0, 0, 0, 0, 0 }, fa2);
+    }
+
+    @Test
+    public void capacity()
+    {
+        LineRenderCache cache = new LineRenderCache(3);
+        cache.setContext(new TestFormatter(), 0, 80, 8, false);
+        Line[] lines = new Line[4];
+        for (int i = 0; i < lines.length; i++)
+            lines[i] = new TextLine("line " + i);
+        put(cache, lines[0]);
+        put(cache, lines[1]);
+        put(cache, lines[2]);
+        // Use the first line, so the second is the least recently used.
+        assertNotNull(cache.get(lines[0]));
+        put(cache, lines[3]);
+        assertEquals(3, cache.size());
+        assertNull(cache.get(lines[1]));
+        assertNotNull(cache.get(lines[0]));
+        assertNotNull(cache.get(lines[3]));
+    }
+}
@@ -0,0 +1,81 @@
+/*
+ * Copyright (C) 2026 Kevin Krouse
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.armedbear.j;
+
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class LogTest
+{
+    @Test
+    public void format()
+    {
+        assertEquals("<== * OK", Log.format("<== {}", 1, "* OK", null));
+        assertEquals("a 1 b 2 c", Log.format("a {} b {} c", 2, 1, 2));
+        assertEquals("a null", Log.format("a {}", 1, null, null));
+        // Extra placeholders are left alone.
+        assertEquals("a 1 {}", Log.format("a {} {}", 1, 1, null));
+        assertEquals("no placeholders", Log.format("no placeholders", 2, 1, 2));
+    }
+
+    @Test
+    public void dateTime()
+    {
+        SimpleDateFormat format = new SimpleDateFormat("MMM dd HH:mm:ss.SSS ");
+        long millis = 1234567890007L;
+        for (long t : new long[] { millis, millis + 40, millis + 993,
+                                   millis + 1000, millis - 1000 }) {
+            StringBuilder sb = new StringBuilder();
+            Log.appendDateTime(sb, t);
+            assertEquals(format.format(new Date(t)), sb.toString());
+        }
+    }
+
+    @Test
+    public void parseLevel()
+    {
+        assertEquals(0, Log.parseLevel(null));
+        assertEquals(0, Log.parseLevel("verbose"));
+        assertTrue(Log.parseLevel("debug") < Log.parseLevel("info"));
+        assertTrue(Log.parseLevel(" Info ") < Log.parseLevel("WARN"));
+        assertTrue(Log.parseLevel("error") < Log.parseLevel("fatal"));
+    }
+
+    @Test
+    public void disabled()
+    {
+        // Logging isn't enabled in tests.
+        assertFalse(Log.isDebugEnabled(Log.MAIL));
+        Object arg = new Object() {
+            public String toString()
+            {
+                fail("argument formatted");
+                return null;
+            }
+        };
+        Log.debug(Log.MAIL, "<== {}", arg);
+        Log.debug(Log.MAIL, () -> {
+            fail("supplier called");
+            return null;
+        });
+    }
+}
@@ -0,0 +1,130 @@
+/*
+ * Copyright (C) 2026 Kevin Krouse
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.armedbear.j;
+
+import java.io.FileOutputStream;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MappedTextTest
+{
+    private static MappedText map(byte[] bytes) throws Exception
+    {
+        return map(bytes, "ISO-8859-1");
+    }
+
+    private static MappedText map(byte[] bytes, String encoding)
+        throws Exception
+    {
+        java.io.File tmp = java.io.File.createTempFile("mapped", ".txt");
+        tmp.deleteOnExit();
+        FileOutputStream out = new FileOutputStream(tmp);
+        out.write(bytes);
+        out.close();
+        return MappedText.map(File.getInstance(tmp.getPath()), encoding);
+    }
+
+    private static void assertLines(MappedText text, String... lines)
+    {
+        assertEquals(lines.length, text.getLineCount());
+        for (int i = 0; i < lines.length; i++) {
+            // Before getText(), so the length isn't taken from the cache.
+            assertEquals(lines[i].length(), text.getLength(i));
+            assertEquals(lines[i], text.getText(i));
+        }
+    }
+
+    @Test
+    public void lineSeparators() throws Exception
+    {
+        MappedText text = map("one\r\ntwo\nthree".getBytes("ISO-8859-1"));
+        assertEquals("\r\n", text.getLineSeparator());
+        assertLines(text, "one", "two", "three");
+
+        // Line separator at the end of the file gives an empty last line.
+        text = map("one\rtwo\r".getBytes("ISO-8859-1"));
+        assertEquals("\r", text.getLineSeparator());
+        assertLines(text, "one", "two", "");
+
+        text = map("\n\none".getBytes("ISO-8859-1"));
+        assertEquals("\n", text.getLineSeparator());
+        assertLines(text, "", "", "one");
+    }
+
+    @Test
+    public void unicode() throws Exception
+    {
+        byte[] bytes = "\ufeffab\r\n\u00e9".getBytes("UTF-16BE");
+        MappedText text = map(bytes);
+        assertEquals("UnicodeBig", text.getEncoding());
+        assertEquals("\r\n", text.getLineSeparator());
+        assertLines(text, "ab", "\u00e9");
+
+        bytes = "\ufeffab\ncd".getBytes("UTF-16LE");
+        text = map(bytes);
+        assertEquals("UnicodeLittle", text.getEncoding());
+        assertLines(text, "ab", "cd");
+    }
+
+    @Test
+    public void utf8() throws Exception
+    {
+        MappedText text =
+            map("ascii\r\n\u00e9t\u00e9\n\ud83d\ude00".getBytes("UTF-8"), "UTF-8");
+        assertLines(text, "ascii", "\u00e9t\u00e9", "\ud83d\ude00");
+    }
+
+    @Test
+    public void truncated() throws Exception
+    {
+        java.io.File tmp = java.io.File.createTempFile("mapped", ".txt");
+        tmp.deleteOnExit();
+        FileOutputStream out = new FileOutputStream(tmp);
+        out.write("one\ntwo\n".getBytes("ISO-8859-1"));
+        out.close();
+        MappedText text =
+            MappedText.map(File.getInstance(tmp.getPath()), "ISO-8859-1");
+        assertEquals("one", text.getText(0));
+        assertTrue(text.isValid());
+
+        new FileOutputStream(tmp).close();
+        assertFalse(text.isValid());
+        // Lines already decoded are kept; the rest can't be read.
+        assertEquals("one", text.getText(0));
+        assertEquals("", text.getText(1));
+    }
+
+    @Test
+    public void materialize() throws Exception
+    {
+        MappedText text = map("one\ntwo\n".getBytes("ISO-8859-1"));
+        MappedLine line = new MappedLine(text, 1);
+        assertEquals("two", line.getText());
+        assertFalse(line.isModified());
+        line.setText("three");
+        assertEquals("three", line.getText());
+        assertEquals("two", line.getOriginalText());
+        assertTrue(line.isModified());
+
+        Line copy = new MappedLine(text, 0).copy();
+        assertEquals("one", copy.getText());
+    }
+}
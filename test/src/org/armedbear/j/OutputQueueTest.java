@@ -0,0 +1,148 @@
+/*
+ * Copyright (C) 2026 Kevin Krouse
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.armedbear.j;
+
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import javax.swing.SwingUtilities;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class OutputQueueTest
+{
+    @Test
+    public void coalesce() throws Exception
+    {
+        final List<String> out = new ArrayList<String>();
+        final OutputQueue queue = new OutputQueue() {
+            public void output(String s, boolean stderr)
+            {
+                out.add((stderr ? "E:" : "O:") + s);
+            }
+        };
+        // On the event dispatch thread, so the flush scheduled by put()
+        // can't run in between.
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run()
+            {
+                queue.put("a", false);
+                queue.put("b", false);
+                queue.put("", true);
+                queue.put("c", true);
+                queue.put("d", false);
+                queue.flush();
+            }
+        });
+        assertEquals("[O:ab, E:c, O:d]", out.toString());
+    }
+
+    @Test
+    public void backpressure() throws Exception
+    {
+        final StringBuffer out = new StringBuffer();
+        final OutputQueue queue = new OutputQueue(4) {
+            public void output(String s, boolean stderr)
+            {
+                out.append(s);
+            }
+        };
+        // Hold up the event dispatch thread.
+        final CountDownLatch latch = new CountDownLatch(1);
+        SwingUtilities.invokeLater(new Runnable() {
+            public void run()
+            {
+                try {
+                    latch.await();
+                }
+                catch (InterruptedException e) {}
+            }
+        });
+        queue.put("abc", false);
+        Thread writer = new Thread() {
+            public void run()
+            {
+                queue.put("de", false);
+            }
+        };
+        writer.start();
+        writer.join(200);
+        // The queue is full, so the writer is still waiting.
+        assertTrue(writer.isAlive());
+        assertEquals("", out.toString());
+        latch.countDown();
+        writer.join();
+        SwingUtilities.invokeAndWait(new Runnable() {
+            public void run()
+            {
+                queue.flush();
+            }
+        });
+        assertEquals("abcde", out.toString());
+    }
+
+    private static class OutputBuffer extends Buffer
+    {
+        OutputBuffer(File file)
+        {
+            super(file);
+        }
+
+        void appendText(String s) throws InterruptedException
+        {
+            lockWrite();
+            try {
+                Line last = findLastLine(null);
+                last = appendOutput(last, s);
+                assertSame(last, findLastLine(last));
+            }
+            finally {
+                unlockWrite();
+            }
+        }
+    }
+
+    @Test
+    public void appendOutput() throws Exception
+    {
+        java.io.File tmp = java.io.File.createTempFile("output", ".txt");
+        tmp.deleteOnExit();
+        try (FileOutputStream out = new FileOutputStream(tmp)) {
+            out.write("one\n".getBytes("US-ASCII"));
+        }
+        File file = File.getInstance(tmp.getPath());
+        OutputBuffer buffer = new OutputBuffer(file);
+        buffer.loadFile(file);
+        buffer.appendText("two");
+        buffer.appendText("\r\nthree\rfour\n\nfive");
+        StringBuilder sb = new StringBuilder();
+        int lineNumber = 0;
+        for (Line line = buffer.getFirstLine(); line != null; line = line.next()) {
+            assertEquals(lineNumber++, line.lineNumber());
+            sb.append(line.getText());
+            sb.append('|');
+        }
+        assertEquals("one|two|three|four||five|", sb.toString());
+        assertEquals(lineNumber, buffer.getLineCount());
+        assertFalse(buffer.needsRenumbering());
+    }
+}
@@ -0,0 +1,66 @@
+/*
+ * Copyright (C) 2026 Kevin Krouse
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.armedbear.j;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class SessionTest
+{
+    @Test
+    public void stat() throws IOException
+    {
+        Path dir = Files.createTempDirectory("session");
+        Path file = Files.createTempFile(dir, "file", ".txt");
+        try {
+            File[] files = new File[40];
+            for (int i = 0; i < files.length; i++) {
+                switch (i % 4) {
+                    case 0:
+                        files[i] = File.getInstance(dir.toString());
+                        break;
+                    case 1:
+                        files[i] = File.getInstance(file.toString());
+                        break;
+                    case 2:
+                        files[i] = File.getInstance(dir.resolve("missing" + i).toString());
+                        break;
+                    default:
+                        // Already has a buffer.
+                        break;
+                }
+            }
+            int[] kinds = Session.stat(files);
+            final int[] expected = {
+                Session.DIRECTORY, Session.FILE, Session.MISSING, Session.MISSING
+            };
+            for (int i = 0; i < kinds.length; i++)
+                assertEquals(String.valueOf(i), expected[i % 4], kinds[i]);
+            assertArrayEquals(new int[3], Session.stat(new File[3]));
+        }
+        finally {
+            Files.delete(file);
+            Files.delete(dir);
+        }
+    }
+}
@@ -0,0 +1,111 @@
+/*
+ * Copyright (C) 2026 Kevin Krouse
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.armedbear.j;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TagIndexTest
+{
+    private static TagIndex makeIndex() throws Exception
+    {
+        List<GlobalTag> tags = new ArrayList<GlobalTag>();
+        tags.add(new GlobalTag("Editor.getBuffer", "public Buffer getBuffer()",
+                               "/src/Editor.java", "getBuffer()"));
+        tags.add(new GlobalTag("Buffer", "public class Buffer", "/src/Buffer.java",
+                               null));
+        tags.add(new GlobalTag("Buffer.getFile", "public File getFile()",
+                               "/src/Buffer.java", "getFile()"));
+        tags.add(new GlobalTag("buffer-list", "(defun buffer-list ()",
+                               "/src/Buffer.java", null));
+        tags.add(new GlobalTag("Editor", "public class Editor", "/src/Editor.java",
+                               null));
+        java.io.File tmp = java.io.File.createTempFile("tags", "");
+        tmp.deleteOnExit();
+        File file = File.getInstance(tmp.getPath());
+        TagIndex.write(file, Arrays.asList("/src/Editor.java", "/src/Buffer.java"),
+                       new long[] { 100, 200 }, tags);
+        return TagIndex.read(file);
+    }
+
+    private static List<String> names(List<GlobalTag> tags)
+    {
+        List<String> names = new ArrayList<String>();
+        for (GlobalTag tag : tags)
+            names.add(tag.getName());
+        return names;
+    }
+
+    @Test
+    public void findByName() throws Exception
+    {
+        TagIndex index = makeIndex();
+        assertEquals(5, index.size());
+        assertEquals(Arrays.asList("Buffer"), names(index.findByName("Buffer", false)));
+        assertEquals(0, index.findByName("buffer", false).size());
+        assertEquals(1, index.findByName("buffer", true).size());
+        assertEquals(0, index.findByName("Buf", false).size());
+
+        List<GlobalTag> tags = index.findByName("Buffer.getFile", false);
+        assertEquals(1, tags.size());
+        GlobalTag tag = tags.get(0);
+        assertEquals("/src/Buffer.java", tag.getFileName());
+        assertEquals("public File getFile()", tag.getSignature());
+        assertEquals("getFile()", tag.getCanonicalSignature());
+    }
+
+    @Test
+    public void findByMethodName() throws Exception
+    {
+        TagIndex index = makeIndex();
+        assertEquals(Arrays.asList("Editor.getBuffer"),
+                     names(index.findByMethodName("getBuffer", false)));
+        assertEquals(0, index.findByMethodName("getbuffer", false).size());
+        assertEquals(1, index.findByMethodName("getbuffer", true).size());
+    }
+
+    @Test
+    public void findByPrefix() throws Exception
+    {
+        TagIndex index = makeIndex();
+        assertEquals(Arrays.asList("Buffer", "Buffer.getFile"),
+                     names(index.findByNamePrefix("Buf", false)));
+        assertEquals(3, index.findByNamePrefix("buf", true).size());
+        assertEquals(2, index.findByMethodNamePrefix("get", false).size());
+        assertEquals(0, index.findByNamePrefix("X", true).size());
+    }
+
+    @Test
+    public void files() throws Exception
+    {
+        TagIndex index = makeIndex();
+        assertEquals(2, index.getFileCount());
+        assertEquals(200, index.getLastModified("/src/Buffer.java"));
+        assertEquals(-1, index.getLastModified("/src/Other.java"));
+        Map<String, List<GlobalTag>> map = index.getTagsByFile();
+        assertEquals(2, map.get("/src/Editor.java").size());
+        assertEquals(3, map.get("/src/Buffer.java").size());
+    }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2026 Kevin Krouse
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.armedbear.j;
+
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TrigramIndexTest
+{
+    private static final String TEXT =
+        "public final class Buffer\n{\n    private String title;\n}\n";
+
+    private static TrigramIndex makeIndex(File file)
+    {
+        TrigramIndex index = new TrigramIndex(file, StandardCharsets.UTF_8);
+        index.add("/src/Buffer.java", 100, TEXT.length(), CharBuffer.wrap(TEXT));
+        index.addBinary("/src/Buffer.class", 100, 1000);
+        return index;
+    }
+
+    private static int lookup(TrigramIndex index, String pattern,
+        boolean regularExpression)
+    {
+        return index.lookup("/src/Buffer.java", 100, TEXT.length(),
+                            TrigramIndex.getTrigrams(pattern, regularExpression));
+    }
+
+    @Test
+    public void lookup() throws Exception
+    {
+        TrigramIndex index = makeIndex(null);
+        assertEquals(TrigramIndex.MIGHT_MATCH, lookup(index, "String title", false));
+        assertEquals(TrigramIndex.MIGHT_MATCH, lookup(index, "FINAL", false));
+        assertEquals(TrigramIndex.NO_MATCH, lookup(index, "getBuffer", false));
+        // No trigram spans a line separator.
+        assertEquals(TrigramIndex.NO_MATCH, lookup(index, "fer{", false));
+        assertEquals(TrigramIndex.MIGHT_MATCH, lookup(index, "ab", false));
+        assertEquals(TrigramIndex.MIGHT_MATCH, lookup(index, "private\\s+String", true));
+        assertEquals(TrigramIndex.NO_MATCH, lookup(index, "private\\s+int", true));
+        assertEquals(TrigramIndex.MIGHT_MATCH, lookup(index, "int|String", true));
+
+        // Out of date.
+        assertEquals(TrigramIndex.UNKNOWN,
+                     index.lookup("/src/Buffer.java", 101, TEXT.length(), null));
+        assertEquals(TrigramIndex.UNKNOWN,
+                     index.lookup("/src/Editor.java", 100, TEXT.length(), null));
+        assertEquals(TrigramIndex.BINARY,
+                     index.lookup("/src/Buffer.class", 100, 1000, null));
+    }
+
+    @Test
+    public void builder()
+    {
+        // A file read a line at a time gets the same filter.
+        TrigramIndex.Builder builder = new TrigramIndex.Builder();
+        for (String s : TEXT.split("\n"))
+            builder.append(s);
+        assertArrayEquals(TrigramIndex.makeFilter(TEXT), builder.makeFilter());
+    }
+
+    @Test
+    public void requiredLiterals()
+    {
+        assertEquals(Arrays.asList("private", "String"),
+                     TrigramIndex.getRequiredLiterals("private\\s+String"));
+        assertEquals(Arrays.asList("get", "Buffer"),
+                     TrigramIndex.getRequiredLiterals("gets?Buffer"));
+        assertEquals(Arrays.asList("ab", "c"),
+                     TrigramIndex.getRequiredLiterals("ab+c*c"));
+        assertEquals(Arrays.asList("x.y", "z"),
+                     TrigramIndex.getRequiredLiterals("x\\.y[a-z]*z"));
+        assertEquals(Arrays.asList("foo", "bar"),
+                     TrigramIndex.getRequiredLiterals("foo(a|b)?bar"));
+        assertEquals(Arrays.asList("a+b"),
+                     TrigramIndex.getRequiredLiterals("\\Qa+b\\E"));
+        assertEquals(0, TrigramIndex.getRequiredLiterals("foo|bar").size());
+    }
+
+    @Test
+    public void readAndWrite() throws Exception
+    {
+        java.io.File tmp = java.io.File.createTempFile("trigrams", "");
+        tmp.deleteOnExit();
+        File file = File.getInstance(tmp.getPath());
+        makeIndex(file).write();
+
+        TrigramIndex index = TrigramIndex.read(file, StandardCharsets.UTF_8);
+        assertEquals(2, index.size());
+        assertEquals(TrigramIndex.NO_MATCH, lookup(index, "getBuffer", false));
+        assertEquals(TrigramIndex.MIGHT_MATCH, lookup(index, "class Buffer", false));
+        assertEquals(TrigramIndex.BINARY,
+                     index.lookup("/src/Buffer.class", 100, 1000, null));
+
+        // An index written for another charset isn't used.
+        assertEquals(0, TrigramIndex.read(file, StandardCharsets.ISO_8859_1).size());
+    }
+
+    @Test
+    public void appendAndCompact() throws Exception
+    {
+        java.io.File tmp = java.io.File.createTempFile("trigrams", "");
+        tmp.deleteOnExit();
+        File file = File.getInstance(tmp.getPath());
+        TrigramIndex index = makeIndex(file);
+        index.write();
+        final long length = tmp.length();
+
+        // Only the new entry is written.
+        index.add("/src/Editor.java", 100, 3, CharBuffer.wrap("abc"));
+        index.write();
+        final long recordLength = tmp.length() - length;
+        assertTrue(recordLength > 0 && recordLength < length);
+        index = TrigramIndex.read(file, StandardCharsets.UTF_8);
+        assertEquals(3, index.size());
+        assertEquals(TrigramIndex.MIGHT_MATCH,
+                     index.lookup("/src/Editor.java", 100, 3,
+                                  TrigramIndex.getTrigrams("abc", false)));
+
+        // Replacing a large filter many times makes the file rewritten.
+        Random random = new Random(1);
+        char[] chars = new char[100000];
+        for (int i = 0; i < 40; i++) {
+            for (int j = 0; j < chars.length; j++)
+                chars[j] = (char) ('a' + random.nextInt(26));
+            index.add("/src/Large.java", i, chars.length, CharBuffer.wrap(chars));
+            index.write();
+        }
+        assertTrue(tmp.length() < 1024 * 1024);
+        index = TrigramIndex.read(file, StandardCharsets.UTF_8);
+        assertEquals(4, index.size());
+        assertEquals(TrigramIndex.MIGHT_MATCH,
+                     index.lookup("/src/Large.java", 39, chars.length,
+                                  TrigramIndex.getTrigrams(new String(chars, 0, 10), false)));
+        assertEquals(TrigramIndex.NO_MATCH, lookup(index, "getBuffer", false));
+
+        // Files that no longer exist are removed.
+        index.refresh();
+        assertEquals(0, TrigramIndex.read(file, StandardCharsets.UTF_8).size());
+    }
+}
@@ -0,0 +1,201 @@
+/*
+ * Copyright (C) 2026 Kevin Krouse
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.armedbear.j;
+
+import java.io.FileOutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import javax.swing.undo.CompoundEdit;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class UndoJournalTest
+{
+    @Test
+    public void appendAndRelease()
+    {
+        UndoJournal journal = new UndoJournal();
+        assertEquals(0, journal.getMemoryUsage());
+        long a = journal.append("alpha");
+        long b = journal.append("");
+        long c = journal.append("gamma");
+        assertEquals("alpha", journal.getString(a, 5));
+        assertEquals("", journal.getString(b, 0));
+        assertEquals("gamma", journal.getString(c, 5));
+        final long usage = journal.getMemoryUsage();
+        assertTrue(usage > 0);
+
+        // A string too big for the rest of the chunk starts a new one.
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 100000; i++)
+            sb.append((char) ('a' + i % 26));
+        final String big = sb.toString();
+        long d = journal.append(big);
+        assertEquals(big, journal.getString(d, big.length()));
+        assertTrue(journal.getMemoryUsage() > usage);
+
+        // The first chunk is dropped once everything in it is released.
+        journal.release(a, 5);
+        assertEquals("gamma", journal.getString(c, 5));
+        journal.release(c, 5);
+        assertEquals(big.length() * 2, journal.getMemoryUsage());
+        try {
+            journal.getString(a, 5);
+            fail();
+        }
+        catch (IllegalStateException e) {}
+    }
+
+    private static Buffer makeBuffer(String... lines) throws Exception
+    {
+        java.io.File tmp = java.io.File.createTempFile("undo", ".txt");
+        tmp.deleteOnExit();
+        try (Writer out = new OutputStreamWriter(new FileOutputStream(tmp),
+                                                 StandardCharsets.UTF_8)) {
+            for (String line : lines) {
+                out.write(line);
+                out.write('\n');
+            }
+        }
+        File file = File.getInstance(tmp.getPath());
+        Buffer buffer = new Buffer(file);
+        buffer.loadFile(file);
+        return buffer;
+    }
+
+    private static String text(Buffer buffer)
+    {
+        StringBuilder sb = new StringBuilder();
+        for (Line line = buffer.getFirstLine(); line != null; line = line.next()) {
+            sb.append(line.getText());
+            sb.append('|');
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void undoAndRedo() throws Exception
+    {
+        Buffer buffer = makeBuffer("one", "two", "three");
+        final String before = text(buffer);
+        final int modCount = buffer.getModCount();
+        buffer.lockWrite();
+        try {
+            UndoLineChanges changes = new UndoLineChanges(buffer);
+            Line line = buffer.getFirstLine();
+            changes.add(line);
+            line.setText("ONE");
+            // A line changed twice in a row is only recorded once.
+            changes.add(line);
+            line.setText("ONE!");
+            line = line.next().next();
+            changes.add(line);
+            line.setText("THREE");
+            buffer.incrementModCount();
+            assertEquals(2, changes.size());
+            // Successive edits are coalesced.
+            line = line.previous();
+            UndoLineChanges more = new UndoLineChanges(buffer, line);
+            line.setText("2");
+            assertTrue(changes.addEdit(more));
+            assertEquals(3, changes.size());
+            final String after = text(buffer);
+            assertEquals("ONE!|2|THREE||", after);
+
+            changes.undo();
+            assertEquals(before, text(buffer));
+            assertEquals(modCount, buffer.getModCount());
+            assertFalse(buffer.getFirstLine().isModified());
+
+            changes.redo();
+            assertEquals(after, text(buffer));
+            assertEquals("one", buffer.getFirstLine().getOriginalText());
+
+            changes.undo();
+            assertEquals(before, text(buffer));
+        }
+        finally {
+            buffer.unlockWrite();
+        }
+    }
+
+    @Test
+    public void coalesce() throws Exception
+    {
+        Buffer buffer = makeBuffer("one", "two");
+        UndoManager undoManager = buffer.getUndoManager();
+        buffer.lockWrite();
+        try {
+            final Line line = buffer.getFirstLine();
+            // Separate commands are undone separately.
+            undoManager.addEdit(new UndoLineChanges(buffer, line));
+            line.setText("1");
+            undoManager.addEdit(new UndoLineChanges(buffer, line.next()));
+            line.next().setText("2");
+            undoManager.undo();
+            assertEquals("1|two||", text(buffer));
+            undoManager.undo();
+            assertEquals("one|two||", text(buffer));
+
+            // Within a compound edit, they're coalesced.
+            CompoundEdit compoundEdit = buffer.beginCompoundEdit();
+            UndoLineChanges first = new UndoLineChanges(buffer, line);
+            undoManager.addEdit(first);
+            line.setText("1");
+            undoManager.addEdit(new UndoLineChanges(buffer, line.next()));
+            line.next().setText("2");
+            buffer.endCompoundEdit(compoundEdit);
+            assertEquals(2, first.size());
+            undoManager.undo();
+            assertEquals("one|two||", text(buffer));
+        }
+        finally {
+            buffer.unlockWrite();
+        }
+    }
+
+    @Test
+    public void memoryLimit() throws Exception
+    {
+        Buffer buffer = makeBuffer("one", "two");
+        UndoManager undoManager = buffer.getUndoManager();
+        undoManager.setMemoryLimit(1024 * 1024);
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 100000; i++)
+            sb.append('x');
+        final String text = sb.toString();
+        buffer.lockWrite();
+        try {
+            final Line line = buffer.getFirstLine();
+            for (int i = 0; i < 20; i++) {
+                buffer.addEdit(new UndoLineChanges(buffer, line));
+                line.setText(text + i);
+                buffer.addUndoBoundary();
+            }
+        }
+        finally {
+            buffer.unlockWrite();
+        }
+        assertTrue(undoManager.getJournal().getMemoryUsage() <= 1024 * 1024);
+        assertTrue(undoManager.canUndo());
+    }
+}
@@ -0,0 +1,53 @@
+/*
+ * Copyright (C) 2026 Kevin Krouse
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.armedbear.j.mail;
+
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ImapMailboxBufferTest
+{
+    private static List<MailboxEntry> entries(int... uids)
+    {
+        List<MailboxEntry> list = new ArrayList<MailboxEntry>();
+        for (int uid : uids)
+            list.add(new ImapMailboxEntry(uid));
+        return list;
+    }
+
+    @Test
+    public void messageSet()
+    {
+        assertEquals("", ImapMailboxBuffer.getMessageSet(entries(), null));
+        assertEquals("7", ImapMailboxBuffer.getMessageSet(entries(7), null));
+        // Sorted, even if the messages were sorted some other way.
+        assertEquals("1:3,5,9:10",
+                     ImapMailboxBuffer.getMessageSet(entries(10, 3, 2, 5, 1, 9, 2), null));
+        // Messages 4 and 6 through 8 have been expunged, so they don't need
+        // to be left out.
+        List<MailboxEntry> all = entries(1, 2, 3, 5, 9, 10, 11, 12);
+        assertEquals("1:10,12",
+                     ImapMailboxBuffer.getMessageSet(entries(10, 3, 2, 5, 1, 9, 12), all));
+        assertEquals("3,11",
+                     ImapMailboxBuffer.getMessageSet(entries(11, 3), all));
+    }
+}
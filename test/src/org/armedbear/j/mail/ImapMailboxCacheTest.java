@@ -0,0 +1,174 @@
+/*
+ * Copyright (C) 2026 Kevin Krouse
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.armedbear.j.mail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ImapMailboxCacheTest
+{
+    private static String selected(int exists, String highestModSeq)
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append("* ").append(exists).append(" EXISTS\r\n");
+        sb.append("* OK [UIDVALIDITY 42] UIDs valid\r\n");
+        if (highestModSeq != null)
+            sb.append("* OK [HIGHESTMODSEQ ").append(highestModSeq).append("] Highest\r\n");
+        return sb.toString();
+    }
+
+    private static ImapMailboxCache cache(int count, long highestModSeq)
+    {
+        List<MailboxEntry> entries = new ArrayList<MailboxEntry>();
+        for (int uid = 1; uid <= count; uid++)
+            entries.add(new ImapMailboxEntry(uid));
+        return new ImapMailboxCache("inbox", 42, highestModSeq, entries);
+    }
+
+    private static ImapSession select(ScriptedImapServer server)
+    {
+        ImapSession session =
+            ImapSession.getSession(server.getURL(), "user", "secret");
+        assertTrue(session.verifySelected("inbox"));
+        return session;
+    }
+
+    // UIDs of the entries that are left.
+    private static List<Integer> uids(ImapMailboxCache cache)
+    {
+        List<Integer> uids = new ArrayList<Integer>();
+        for (MailboxEntry entry : cache.getEntries()) {
+            if (entry != null)
+                uids.add(((ImapMailboxEntry) entry).getUid());
+        }
+        return uids;
+    }
+
+    @Test
+    public void qresync() throws IOException
+    {
+        final String[] highestModSeq = { "200" };
+        ScriptedImapServer server = new ScriptedImapServer(
+            "* OK ready",
+            (tag, command) -> {
+                if (command.startsWith("login "))
+                    return tag + " OK [CAPABILITY IMAP4rev1 CONDSTORE QRESYNC] Logged in";
+                if (command.equals("enable qresync"))
+                    return tag + " OK Enabled";
+                if (command.startsWith("select "))
+                    return selected(7, highestModSeq[0]) + tag + " OK Selected";
+                if (command.equals("uid fetch 1:10 (uid flags) (changedsince 100 vanished)"))
+                    return "* VANISHED (EARLIER) 2,4:5\r\n" +
+                        "* 3 FETCH (UID 7 MODSEQ (150) FLAGS (\\Seen \\Flagged))\r\n" +
+                        tag + " OK Fetched";
+                return tag + " BAD Unexpected";
+            });
+        try {
+            ImapSession session = select(server);
+            ImapMailboxCache cache = cache(10, 100);
+            assertTrue(cache.synchronize(session));
+            assertEquals(List.of(1, 3, 6, 7, 8, 9, 10), uids(cache));
+            List<MailboxEntry> entries = cache.getEntries();
+            assertEquals(MailboxEntry.SEEN | MailboxEntry.FLAGGED,
+                         entries.get(6).getFlags());
+            assertEquals(0, entries.get(7).getFlags());
+            assertFalse(server.getCommands().contains("uid fetch 1:* (uid flags)"));
+
+            // Nothing has changed since the cache was written.
+            int count = server.getCommands().size();
+            cache = cache(10, 200);
+            assertTrue(cache.synchronize(session));
+            assertEquals(10, uids(cache).size());
+            assertEquals(count, server.getCommands().size());
+            session.disconnect();
+        }
+        finally {
+            server.close();
+        }
+    }
+
+    @Test
+    public void condstore() throws IOException
+    {
+        ScriptedImapServer server = new ScriptedImapServer(
+            "* OK ready",
+            (tag, command) -> {
+                if (command.startsWith("login "))
+                    return tag + " OK Logged in";
+                if (command.equals("capability"))
+                    return "* CAPABILITY IMAP4rev1 CONDSTORE\r\n" + tag + " OK Done";
+                if (command.startsWith("select "))
+                    return selected(5, "200") + tag + " OK Selected";
+                if (command.equals("uid fetch 1:4 (uid flags) (changedsince 100)"))
+                    return "* 1 FETCH (UID 1 FLAGS (\\Seen) MODSEQ (120))\r\n" +
+                        tag + " OK Fetched";
+                if (command.equals("uid search uid 5:*"))
+                    return "* SEARCH 6 7\r\n" + tag + " OK Searched";
+                // Four cached messages and two new ones don't add up to five,
+                // so something was expunged.
+                if (command.equals("uid search all"))
+                    return "* SEARCH 1 2 4 6 7\r\n" + tag + " OK Searched";
+                return tag + " BAD Unexpected";
+            });
+        try {
+            ImapSession session = select(server);
+            ImapMailboxCache cache = cache(4, 100);
+            assertTrue(cache.synchronize(session));
+            assertEquals(List.of(1, 2, 4), uids(cache));
+            assertEquals(MailboxEntry.SEEN, cache.getEntries().get(0).getFlags());
+            session.disconnect();
+        }
+        finally {
+            server.close();
+        }
+    }
+
+    @Test
+    public void unsupported() throws IOException
+    {
+        ScriptedImapServer server = new ScriptedImapServer(
+            "* OK ready",
+            (tag, command) -> {
+                if (command.startsWith("login "))
+                    return tag + " OK Logged in";
+                if (command.equals("capability"))
+                    return "* CAPABILITY IMAP4rev1\r\n" + tag + " OK Done";
+                if (command.startsWith("select "))
+                    return selected(4, null) + tag + " OK Selected";
+                return tag + " BAD Unexpected";
+            });
+        try {
+            ImapSession session = select(server);
+            assertEquals(0, session.getHighestModSeq());
+            assertEquals("select \"inbox\"", server.getCommands().get(2));
+            int count = server.getCommands().size();
+            ImapMailboxCache cache = cache(4, 100);
+            assertFalse(cache.synchronize(session));
+            assertEquals(4, uids(cache).size());
+            assertEquals(count, server.getCommands().size());
+            session.disconnect();
+        }
+        finally {
+            server.close();
+        }
+    }
+}
@@ -151,4 +151,27 @@ public class ImapMailboxEntryTest
         assertEquals("kevin.krouse@example.com", entry.getTo()[0].getAddress());
     }
 
+    @Test
+    public void parseModSeq()
+    {
+        // Servers with CONDSTORE enabled include the mod-sequence.
+        String s = "* 12 FETCH (" +
+            "UID 340 " +
+            "MODSEQ (65402) " +
+            "RFC822.SIZE 1200 " +
+            "INTERNALDATE \"22-Jun-2011 17:31:09 +0000\" " +
+            "FLAGS (\\Seen) " +
+            "ENVELOPE (\"Wed, 22 Jun 2011 17:31:09 +0000\" " +
+            "\"mod-sequences\" " +
+            "((\"Hello World\" NIL \"helloworld\" \"example.com\")) " +
+            "NIL NIL NIL NIL NIL NIL \"<1@example.com>\")" +
+            ")";
+
+        ImapMailboxEntry entry = ImapMailboxEntry.parseEntry(s);
+        assertEquals(340, entry.getUid());
+        assertEquals(1200, entry.getSize());
+        assertEquals(MailboxEntry.SEEN, entry.getFlags());
+        assertEquals(340, ImapMailboxEntry.parseUid(s));
+    }
+
 }
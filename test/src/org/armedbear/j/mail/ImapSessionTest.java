@@ -0,0 +1,331 @@
+/*
+ * Copyright (C) 2026 Kevin Krouse
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.armedbear.j.mail;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ImapSessionTest
+{
+    private static final String SELECTED =
+        "* 5 EXISTS\r\n" +
+        "* 0 RECENT\r\n" +
+        "* OK [UIDVALIDITY 42] UIDs valid\r\n" +
+        "* OK [UIDNEXT 11] Predicted next UID\r\n";
+
+    @Test
+    public void parseUidSet()
+    {
+        List<Integer> list = new ArrayList<Integer>();
+        ImapSession.parseUidSet("2,4:6,9:8", list);
+        assertEquals(Arrays.asList(2, 4, 5, 6, 8, 9), list);
+    }
+
+    @Test
+    public void qresync() throws IOException
+    {
+        ScriptedImapServer server = new ScriptedImapServer(
+            "* OK [CAPABILITY IMAP4rev1] ready",
+            (tag, command) -> {
+                if (command.startsWith("login "))
+                    return tag + " OK [CAPABILITY IMAP4rev1 ENABLE CONDSTORE QRESYNC] Logged in";
+                if (command.equals("enable qresync"))
+                    return "* ENABLED QRESYNC\r\n" + tag + " OK Enabled";
+                if (command.startsWith("select "))
+                    return SELECTED + "* OK [HIGHESTMODSEQ 9000000000] Highest\r\n" +
+                        tag + " OK [READ-WRITE] Selected";
+                if (command.equals("noop"))
+                    return "* VANISHED 3:4\r\n" + tag + " OK Done";
+                return tag + " BAD Unexpected";
+            });
+        try {
+            ImapSession session =
+                ImapSession.getSession(server.getURL(), "user", "secret");
+            assertTrue(session.verifyConnected());
+            assertTrue(session.verifySelected("inbox"));
+            assertTrue(session.hasCapability("condstore"));
+            assertTrue(session.isQresyncEnabled());
+            assertEquals(9000000000L, session.getHighestModSeq());
+            assertEquals(42, session.getUidValidity());
+            assertEquals(5, session.getMessageCount());
+            // CONDSTORE is implied by ENABLE QRESYNC.
+            assertEquals("select \"inbox\"", server.getCommands().get(2));
+            // Expunged messages are reported with VANISHED instead of
+            // EXPUNGE.
+            assertTrue(session.verifyConnected());
+            assertEquals(3, session.getMessageCount());
+            session.disconnect();
+        }
+        finally {
+            server.close();
+        }
+    }
+
+    @Test
+    public void idle() throws IOException
+    {
+        final String[] idleTag = new String[1];
+        ScriptedImapServer server = new ScriptedImapServer(
+            "* OK ready",
+            (tag, command) -> {
+                if (command.startsWith("login "))
+                    return tag + " OK [CAPABILITY IMAP4rev1 IDLE QRESYNC] Logged in";
+                if (command.equals("enable qresync"))
+                    return tag + " OK Enabled";
+                if (command.startsWith("select "))
+                    return SELECTED + tag + " OK Selected";
+                if (command.equals("idle")) {
+                    idleTag[0] = tag;
+                    return "+ idling\r\n" +
+                        "* 6 EXISTS\r\n" +
+                        "* 3 FETCH (UID 7 MODSEQ (12) FLAGS (\\Seen \\Answered))\r\n" +
+                        "* VANISHED 2,4";
+                }
+                if (tag.equals("DONE"))
+                    return idleTag[0] + " OK IDLE terminated";
+                return tag + " BAD Unexpected";
+            });
+        try {
+            final ImapSession session =
+                ImapSession.getSession(server.getURL(), "user", "secret");
+            assertTrue(session.verifySelected("inbox"));
+            final List<String> events = new ArrayList<String>();
+            boolean succeeded = session.idle(new ImapSession.IdleListener() {
+                public void messageCountChanged(int messageCount)
+                {
+                    events.add("count " + messageCount);
+                }
+
+                public void messagesExpunged(List<Integer> uids)
+                {
+                    events.add("expunged " + uids);
+                    // The idler stops IDLE from its timer thread.
+                    new Thread(() -> session.stopIdle()).start();
+                }
+
+                public void flagsChanged(int messageNumber, int uid, int flags)
+                {
+                    events.add("flags " + messageNumber + " " + uid + " " + flags);
+                }
+            });
+            assertTrue(succeeded);
+            assertEquals(Arrays.asList("count 6",
+                                       "flags 3 7 " + (MailboxEntry.SEEN | MailboxEntry.ANSWERED),
+                                       "expunged [2, 4]"),
+                         events);
+            assertEquals(4, session.getMessageCount());
+            assertTrue(server.getCommands().contains("DONE"));
+            session.disconnect();
+        }
+        finally {
+            server.close();
+        }
+    }
+
+    @Test
+    public void fetchFlags() throws IOException
+    {
+        ScriptedImapServer server = new ScriptedImapServer(
+            "* OK ready",
+            (tag, command) -> {
+                if (command.startsWith("login "))
+                    return tag + " OK [CAPABILITY IMAP4rev1 CONDSTORE] Logged in";
+                if (command.startsWith("select "))
+                    return SELECTED + tag + " OK Selected";
+                if (command.equals("fetch 3,5 (uid flags)"))
+                    return "* 3 FETCH (UID 7 FLAGS (\\Seen))\r\n" +
+                        "* 5 FETCH (UID 10 FLAGS ())\r\n" + tag + " OK Done";
+                return tag + " BAD Unexpected";
+            });
+        try {
+            ImapSession session =
+                ImapSession.getSession(server.getURL(), "user", "secret");
+            assertTrue(session.verifySelected("inbox"));
+            Map<Integer, Integer> flags = session.fetchFlags("3,5");
+            assertEquals(2, flags.size());
+            assertEquals(Integer.valueOf(MailboxEntry.SEEN), flags.get(7));
+            assertEquals(Integer.valueOf(0), flags.get(10));
+            assertNull(session.fetchFlags("1"));
+            session.disconnect();
+        }
+        finally {
+            server.close();
+        }
+    }
+
+    @Test
+    public void condstore() throws IOException
+    {
+        ScriptedImapServer server = new ScriptedImapServer(
+            "* OK ready",
+            (tag, command) -> {
+                if (command.startsWith("login "))
+                    return tag + " OK Logged in";
+                if (command.equals("capability"))
+                    return "* CAPABILITY IMAP4rev1 CONDSTORE\r\n" + tag + " OK Done";
+                if (command.startsWith("select "))
+                    return SELECTED + "* OK [HIGHESTMODSEQ 200] Highest\r\n" +
+                        tag + " OK [READ-WRITE] Selected";
+                return tag + " BAD Unexpected";
+            });
+        try {
+            ImapSession session =
+                ImapSession.getSession(server.getURL(), "user", "secret");
+            assertTrue(session.verifySelected("inbox"));
+            assertFalse(session.isQresyncEnabled());
+            assertEquals(200, session.getHighestModSeq());
+            assertEquals(Arrays.asList("capability", "select \"inbox\" (condstore)"),
+                         server.getCommands().subList(1, 3));
+            session.disconnect();
+        }
+        finally {
+            server.close();
+        }
+    }
+
+    @Test
+    public void pipeline() throws IOException
+    {
+        final String[] storeTag = new String[1];
+        ScriptedImapServer server = new ScriptedImapServer(
+            "* OK ready",
+            (tag, command) -> {
+                if (command.startsWith("login "))
+                    return tag + " OK [CAPABILITY IMAP4rev1] Logged in";
+                if (command.startsWith("select "))
+                    return SELECTED + tag + " OK Selected";
+                // Hold back the answer to the first store until the second
+                // one arrives, then answer them out of order.
+                if (command.startsWith("uid store 1:3 ")) {
+                    storeTag[0] = tag;
+                    return "";
+                }
+                if (command.startsWith("uid store 7 "))
+                    return "* 2 FETCH (FLAGS (\\Flagged))\r\n" +
+                        tag + " NO Can't\r\n" + storeTag[0] + " OK Stored";
+                return tag + " BAD Unexpected";
+            });
+        try {
+            ImapSession session =
+                ImapSession.getSession(server.getURL(), "user", "secret");
+            // Don't hang if the commands aren't sent together.
+            session.setTimeout(5000);
+            assertTrue(session.verifySelected("inbox"));
+            int[] results = session.pipeline("uid store 1:3 +flags.silent (\\flagged)",
+                                             "uid store 7 -flags.silent (\\flagged)");
+            assertEquals(ImapSession.OK, results[0]);
+            assertEquals(ImapSession.NO, results[1]);
+            assertTrue(session.isConnected());
+            session.disconnect();
+            assertEquals(ImapSession.BYE, session.pipeline("noop")[0]);
+        }
+        finally {
+            server.close();
+        }
+    }
+
+    @Test
+    public void pool() throws IOException
+    {
+        ScriptedImapServer server = new ScriptedImapServer(
+            "* OK ready",
+            (tag, command) -> {
+                if (command.startsWith("login "))
+                    return tag + " OK [CAPABILITY IMAP4rev1] Logged in";
+                if (command.equals("noop"))
+                    return tag + " OK Done";
+                if (command.equals("logout"))
+                    return "* BYE Logging out\r\n" + tag + " OK Done";
+                return tag + " BAD Unexpected";
+            });
+        try {
+            ImapSession prototype =
+                ImapSession.getSession(server.getURL(), "user", "secret");
+            ImapSession session = ImapSessionPool.acquire(prototype);
+            assertNotSame(prototype, session);
+            assertFalse(session.isConnected());
+            assertTrue(session.verifyConnected());
+            ImapSessionPool.release(session);
+            // A connected session is reused.
+            assertSame(session, ImapSessionPool.acquire(prototype));
+            // But not shared.
+            ImapSession other = ImapSessionPool.acquire(prototype);
+            assertNotSame(session, other);
+            // A session that isn't connected isn't kept.
+            ImapSessionPool.release(other);
+            assertTrue(session.verifyConnected());
+            session.disconnect();
+            ImapSessionPool.release(session);
+            assertNotSame(session, ImapSessionPool.acquire(prototype));
+            assertEquals(Arrays.asList("login user secret", "noop"),
+                         server.getCommands());
+        }
+        finally {
+            server.close();
+        }
+    }
+
+    @Test
+    public void fetchMessages() throws IOException
+    {
+        final String first = "Subject: one\r\n\r\nBody\r\n";
+        // Not ending with a line separator.
+        final String second = "Subject: two\r\n\r\n{5}\r\n) caf\u00e9";
+        ScriptedImapServer server = new ScriptedImapServer(
+            "* OK ready",
+            (tag, command) -> {
+                if (command.startsWith("login "))
+                    return tag + " OK [CAPABILITY IMAP4rev1] Logged in";
+                if (command.startsWith("select "))
+                    return SELECTED + tag + " OK Selected";
+                if (command.equals("uid fetch 3,7 (uid body.peek[])"))
+                    return "* 1 FETCH (UID 3 BODY[] {" + first.length() + "}\r\n" +
+                        first + ")\r\n" +
+                        "* 2 FETCH (FLAGS (\\Seen))\r\n" +
+                        "* 4 FETCH (BODY[] {" + second.length() + "}\r\n" +
+                        second + " UID 7)\r\n" +
+                        tag + " OK Fetched";
+                if (command.equals("noop"))
+                    return tag + " OK Done";
+                return tag + " BAD Unexpected";
+            });
+        try {
+            ImapSession session =
+                ImapSession.getSession(server.getURL(), "user", "secret");
+            assertTrue(session.verifySelected("inbox"));
+            Map<Integer, String> messages = session.uidFetchMessages("3,7");
+            assertEquals(2, messages.size());
+            assertEquals(first, messages.get(3));
+            assertEquals(second, messages.get(7));
+            // Still in step with the server.
+            assertTrue(session.verifyConnected());
+            assertEquals("noop", server.getCommands().get(3));
+            assertNull(session.uidFetchMessages("9"));
+            session.disconnect();
+        }
+        finally {
+            server.close();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+/*
+ * Copyright (C) 2026 Kevin Krouse
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.armedbear.j.mail;
+
+import java.io.FileOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.armedbear.j.File;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class MboxSummaryTest
+{
+    private static final String HEADERS1 =
+        "From: \"Peter Graves\" <peter@armedbear.org>\n" +
+        "To: j@example.com\n" +
+        "Subject: First\n" +
+        "Date: Mon, 1 Jan 2024 10:00:00 +0000\n" +
+        "Message-ID: <1@example.com>\n" +
+        "X-J-Status: 1\n";
+
+    private static final String HEADERS2 =
+        "From: \"Peter Graves\" <peter@armedbear.org>\n" +
+        "To: j@example.com\n" +
+        "Subject: Re: First\n" +
+        "Message-ID: <2@example.com>\n" +
+        "In-Reply-To: <1@example.com>\n" +
+        "References: <1@example.com>\n";
+
+    private static File makeFile(String suffix, String contents)
+        throws Exception
+    {
+        java.io.File tmp = java.io.File.createTempFile("mbox", suffix);
+        tmp.deleteOnExit();
+        FileOutputStream out = new FileOutputStream(tmp);
+        out.write(contents.getBytes("ISO-8859-1"));
+        out.close();
+        return File.getInstance(tmp.getPath());
+    }
+
+    private static void assertSameEntry(LocalMailboxEntry expected,
+        LocalMailboxEntry actual)
+    {
+        assertEquals(expected.getMessageStart(), actual.getMessageStart());
+        assertEquals(expected.getNextMessageStart(), actual.getNextMessageStart());
+        assertEquals(expected.getSize(), actual.getSize());
+        assertEquals(expected.getFlags(), actual.getFlags());
+        assertEquals(expected.getDate().getTime(), actual.getDate().getTime());
+        assertEquals(expected.getSubject(), actual.getSubject());
+        assertEquals(expected.getMessageId(), actual.getMessageId());
+        assertEquals(expected.getInReplyTo(), actual.getInReplyTo());
+        assertArrayEquals(expected.getFrom(), actual.getFrom());
+        assertArrayEquals(expected.getTo(), actual.getTo());
+        assertArrayEquals(expected.getReferences(), actual.getReferences());
+    }
+
+    @Test
+    public void writeAndAppend() throws Exception
+    {
+        File mailbox = makeFile("", "0123456789");
+        LocalMailboxEntry entry1 = new LocalMailboxEntry(1, 0, HEADERS1);
+        entry1.setNextMessageStart(10);
+        entry1.setSize(10);
+        List<LocalMailboxEntry> entries = new ArrayList<LocalMailboxEntry>();
+        entries.add(entry1);
+
+        File summaryFile = makeFile(".summary", "");
+        new MboxSummary(mailbox, entries).write(summaryFile);
+        MboxSummary summary = MboxSummary.read(summaryFile);
+        assertNotNull(summary);
+        assertEquals(1, summary.getEntries().size());
+        assertSameEntry(entry1, summary.getEntries().get(0));
+        assertEquals("Peter Graves",
+                     summary.getEntries().get(0).getFrom()[0].getPersonal());
+
+        // Append a message to the mailbox and the summary.
+        final long oldLastModified = mailbox.lastModified();
+        FileOutputStream out = new FileOutputStream(mailbox.canonicalPath(), true);
+        out.write("abcde".getBytes("ISO-8859-1"));
+        out.close();
+        LocalMailboxEntry entry2 = new LocalMailboxEntry(2, 10, HEADERS2);
+        entry2.setNextMessageStart(15);
+        entry2.setSize(5);
+        MboxSummary.append(summaryFile, mailbox, oldLastModified, 10, entry2);
+
+        summary = MboxSummary.read(summaryFile);
+        assertNotNull(summary);
+        assertEquals(15, summary.length());
+        assertEquals(2, summary.getEntries().size());
+        assertSameEntry(entry1, summary.getEntries().get(0));
+        assertSameEntry(entry2, summary.getEntries().get(1));
+        assertEquals(2, summary.getEntries().get(1).getMessageNumber());
+
+        // A summary that's out of date isn't used.
+        out = new FileOutputStream(mailbox.canonicalPath(), true);
+        out.write("x".getBytes("ISO-8859-1"));
+        out.close();
+        assertNull(MboxSummary.read(summaryFile));
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * Copyright (C) 2026 Kevin Krouse
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+package org.armedbear.j.mail;
+
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A stand-in for an IMAP server that answers each command with whatever a
+ * test's script says, and remembers the commands.
+ */
+final class ScriptedImapServer implements Closeable
+{
+    interface Script
+    {
+        // Returns the lines to send back, separated by "\r\n", an empty
+        // string to send nothing yet, or null to close the connection.
+        String respond(String tag, String command);
+    }
+
+    private final ServerSocket serverSocket;
+    private final List<String> commands =
+        Collections.synchronizedList(new ArrayList<String>());
+
+    ScriptedImapServer(final String greeting, final Script script)
+        throws IOException
+    {
+        serverSocket = new ServerSocket(0, 1, InetAddress.getLoopbackAddress());
+        Thread thread = new Thread("scripted imap server") {
+            public void run()
+            {
+                try {
+                    while (true) {
+                        Socket socket = serverSocket.accept();
+                        try {
+                            serve(socket, greeting, script);
+                        }
+                        finally {
+                            socket.close();
+                        }
+                    }
+                }
+                catch (IOException e) {
+                    // Closed.
+                }
+            }
+        };
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void serve(Socket socket, String greeting, Script script)
+        throws IOException
+    {
+        BufferedReader reader = new BufferedReader(
+            new InputStreamReader(socket.getInputStream(), "iso-8859-1"));
+        Writer writer =
+            new OutputStreamWriter(socket.getOutputStream(), "iso-8859-1");
+        writer.write(greeting + "\r\n");
+        writer.flush();
+        String s;
+        while ((s = reader.readLine()) != null) {
+            int index = s.indexOf(' ');
+            String tag = index >= 0 ? s.substring(0, index) : s;
+            String command = index >= 0 ? s.substring(index + 1) : "";
+            // Lines like "DONE" have no tag.
+            commands.add(index >= 0 ? command : s);
+            String response = script.respond(tag, command);
+            if (response == null)
+                break;
+            if (response.length() > 0) {
+                writer.write(response + "\r\n");
+                writer.flush();
+            }
+        }
+    }
+
+    int getPort()
+    {
+        return serverSocket.getLocalPort();
+    }
+
+    ImapURL getURL()
+    {
+        return new ImapURL("inbox", "user", "127.0.0.1", getPort(), false,
+                           false, false, false);
+    }
+
+    // The commands received, without tags.
+    List<String> getCommands()
+    {
+        synchronized (commands) {
+            return new ArrayList<String>(commands);
+        }
+    }
+
+    public void close() throws IOException
+    {
+        serverSocket.close();
+    }
+}
@@ -0,0 +1,188 @@
+/*
+ * Copyright (C) 2026 Kevin Krouse
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.armedbear.j.mail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class ThreadIndexTest
+{
+    private static MailboxEntry entry(int n, String subject, String inReplyTo,
+        String... references)
+    {
+        MailboxEntry entry = new MailboxEntry() {};
+        entry.messageId = "<" + n + "@test>";
+        entry.subject = subject;
+        entry.date = new RFC822Date(new Date(1000000000000L + n * 60000L));
+        entry.inReplyTo = inReplyTo;
+        entry.references = references.length > 0 ? references : null;
+        return entry;
+    }
+
+    private static String id(int n)
+    {
+        return "<" + n + "@test>";
+    }
+
+    // The message IDs and depths, in order.
+    private static String dump(ThreadIndex index)
+    {
+        StringBuilder sb = new StringBuilder();
+        for (ThreadIndex.Conversation c : index.getConversations()) {
+            for (MailboxLine line : c.getLines(null)) {
+                sb.append(line.getMailboxEntry().getMessageId());
+                sb.append(' ');
+                sb.append(line.getDepth());
+                sb.append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    private static List<MailboxEntry> filler(int count)
+    {
+        List<MailboxEntry> list = new ArrayList<MailboxEntry>();
+        for (int i = 0; i < count; i++)
+            list.add(entry(1000 + i, "unrelated " + i, null));
+        return list;
+    }
+
+    @Test
+    public void thread()
+    {
+        List<MailboxEntry> entries = Arrays.asList(
+            entry(1, "plans", null),
+            entry(3, "Re: plans", id(1), id(1)),
+            entry(2, "Re: plans", id(1), id(1)),
+            // The message it replies to isn't in the mailbox.
+            entry(4, "Re: lost", id(99), id(99)),
+            entry(5, "Re: lost", id(99), id(99)),
+            // No references, so grouped by subject.
+            entry(6, "Re: plans", null));
+        ThreadIndex index = new ThreadIndex(entries);
+        assertEquals(id(1) + " 1\n" + id(2) + " 2\n" + id(3) + " 2\n" +
+                     id(6) + " 2\n" +
+                     id(4) + " 2\n" + id(5) + " 2\n",
+                     dump(index));
+        assertEquals(2, index.getConversations().size());
+    }
+
+    @Test
+    public void add()
+    {
+        List<MailboxEntry> entries = filler(100);
+        entries.add(entry(2, "Re: plans", id(1), id(1)));
+        ThreadIndex index = new ThreadIndex(entries);
+        List<ThreadIndex.Conversation> before = index.getConversations();
+        // The message that was replied to turns up.
+        entries.add(entry(1, "plans", null));
+        entries.add(entry(3, "Re: plans", id(2), id(1), id(2)));
+        assertTrue(index.update(entries));
+        assertEquals(dump(new ThreadIndex(entries)), dump(index));
+        List<ThreadIndex.Conversation> after = index.getConversations();
+        assertEquals(before.size(), after.size());
+        // Only the one conversation was replaced.
+        int same = 0;
+        for (ThreadIndex.Conversation c : after) {
+            if (before.contains(c))
+                ++same;
+        }
+        assertEquals(after.size() - 1, same);
+    }
+
+    @Test
+    public void remove()
+    {
+        List<MailboxEntry> entries = filler(100);
+        entries.add(entry(1, "plans", null));
+        entries.add(entry(2, "Re: plans", id(1), id(1)));
+        entries.add(entry(3, "Re: plans", id(2), id(1), id(2)));
+        ThreadIndex index = new ThreadIndex(entries);
+        entries.remove(entries.size() - 3);
+        assertTrue(index.update(entries));
+        assertEquals(dump(new ThreadIndex(entries)), dump(index));
+        assertTrue(index.update(entries));
+    }
+
+    @Test
+    public void filter()
+    {
+        List<MailboxEntry> entries = Arrays.asList(
+            entry(1, "plans", null),
+            entry(2, "Re: plans", id(1), id(1)));
+        ThreadIndex index = new ThreadIndex(entries);
+        MailboxFilter flagged = new MailboxFilter() {
+            public boolean accept(MailboxEntry entry)
+            {
+                return entry.isFlagged();
+            }
+        };
+        ThreadIndex.Conversation c = index.getConversations().get(0);
+        assertEquals(0, c.getLines(flagged).size());
+        // The same filter accepts more once a message is flagged, and the
+        // lines that were made before are reused.
+        MailboxLine line = c.getLines(null).get(1);
+        entries.get(1).flag();
+        assertEquals(1, c.getLines(flagged).size());
+        assertSame(line, c.getLines(flagged).get(0));
+        // With the flag shown.
+        assertEquals(entries.get(1).toString(2), line.getText());
+        assertEquals('!', line.getText().charAt(0));
+    }
+
+    @Test
+    public void random()
+    {
+        Random random = new Random(42);
+        List<MailboxEntry> all = new ArrayList<MailboxEntry>();
+        for (int n = 1; n <= 400; n++) {
+            String subject = "subject " + random.nextInt(150);
+            int parent = n > 1 && random.nextInt(3) > 0 ? 1 + random.nextInt(n - 1) : 0;
+            if (parent > 0 || random.nextBoolean())
+                subject = "Re: " + subject;
+            if (parent > 0 && random.nextInt(4) == 0) {
+                // Reply to a message that isn't in the mailbox.
+                all.add(entry(n, subject, id(parent + 10000), id(parent + 10000)));
+            } else if (parent > 0) {
+                all.add(entry(n, subject, id(parent), id(parent)));
+            } else {
+                all.add(entry(n, subject, null));
+            }
+        }
+        // Messages arrive out of order.
+        List<MailboxEntry> entries = new ArrayList<MailboxEntry>(all.subList(0, 200));
+        ThreadIndex index = new ThreadIndex(entries);
+        int incremental = 0;
+        for (int i = 200; i < all.size(); i += 1 + random.nextInt(3)) {
+            entries.add(all.get(i));
+            if (random.nextInt(4) == 0)
+                entries.remove(random.nextInt(entries.size()));
+            if (index.update(entries))
+                ++incremental;
+            assertEquals(dump(new ThreadIndex(entries)), dump(index));
+        }
+        assertTrue(incremental > 0);
+    }
+}
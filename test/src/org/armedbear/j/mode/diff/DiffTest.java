@@ -0,0 +1,176 @@
+/*
+ * Copyright (C) 2026 Kevin Krouse
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.armedbear.j.mode.diff;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DiffTest
+{
+    private static String unified(String a, String b)
+    {
+        return new Diff(a.split("\n", -1), b.split("\n", -1))
+            .toUnifiedString("a", "b");
+    }
+
+    @Test
+    public void noChanges()
+    {
+        Diff diff = new Diff(new String[] {"x", "y", ""},
+                             new String[] {"x", "y", ""});
+        assertFalse(diff.hasChanges());
+        assertEquals("", diff.toUnifiedString("a", "b"));
+    }
+
+    @Test
+    public void unifiedFormat()
+    {
+        assertEquals("--- a\n+++ b\n" +
+                     "@@ -1,3 +1,3 @@\n" +
+                     " one\n-two\n+TWO\n three\n",
+                     unified("one\ntwo\nthree\n", "one\nTWO\nthree\n"));
+        // Insertion into an empty file.
+        assertEquals("--- a\n+++ b\n" +
+                     "@@ -0,0 +1 @@\n" +
+                     "+one\n",
+                     unified("", "one\n"));
+        // Changes more than six lines apart get separate hunks.
+        assertEquals("--- a\n+++ b\n" +
+                     "@@ -1,4 +1,4 @@\n" +
+                     "-1\n+one\n 2\n 3\n 4\n" +
+                     "@@ -8,4 +8,4 @@\n" +
+                     " 8\n 9\n 10\n-11\n+eleven\n",
+                     unified("1\n2\n3\n4\n5\n6\n7\n8\n9\n10\n11\n",
+                             "one\n2\n3\n4\n5\n6\n7\n8\n9\n10\neleven\n"));
+    }
+
+    @Test
+    public void noNewlineAtEndOfFile()
+    {
+        assertEquals("--- a\n+++ b\n" +
+                     "@@ -1,2 +1,2 @@\n" +
+                     " one\n-two\n\\ No newline at end of file\n+two\n",
+                     unified("one\ntwo", "one\ntwo\n"));
+    }
+
+    // Applies the output of toUnifiedString() to a, checking the context
+    // lines along the way.
+    private static List<String> patch(List<String> a, String diff)
+    {
+        List<String> result = new ArrayList<String>();
+        String[] lines = diff.split("\n");
+        int i = 0;
+        for (int k = 2; k < lines.length; k++) {
+            String line = lines[k];
+            if (line.startsWith("@@")) {
+                String range = line.substring(4, line.indexOf(' ', 4));
+                int comma = range.indexOf(',');
+                int start = Integer.parseInt(comma >= 0 ? range.substring(0, comma) : range);
+                int count = comma >= 0 ? Integer.parseInt(range.substring(comma + 1)) : 1;
+                if (count > 0)
+                    --start;
+                while (i < start)
+                    result.add(a.get(i++));
+            } else if (line.startsWith(" ")) {
+                assertEquals(a.get(i++), line.substring(1));
+                result.add(line.substring(1));
+            } else if (line.startsWith("-")) {
+                assertEquals(a.get(i++), line.substring(1));
+            } else if (line.startsWith("+")) {
+                result.add(line.substring(1));
+            } else
+                fail(line);
+        }
+        while (i < a.size())
+            result.add(a.get(i++));
+        return result;
+    }
+
+    @Test
+    public void large()
+    {
+        // Big enough to be split at unique lines first.
+        Random random = new Random(2);
+        List<String> a = new ArrayList<String>();
+        List<String> b = new ArrayList<String>();
+        for (int i = 0; i < 20000; i++) {
+            String s = random.nextInt(3) == 0 ? "line " + i : "}";
+            a.add(s);
+            int r = random.nextInt(20);
+            if (r == 0)
+                b.add("new " + i);
+            else if (r == 1)
+                b.add("}");
+            if (r != 2)
+                b.add(s);
+        }
+        String[] aLines = a.toArray(new String[a.size() + 1]);
+        aLines[a.size()] = "";
+        String[] bLines = b.toArray(new String[b.size() + 1]);
+        bLines[b.size()] = "";
+        assertEquals(b, patch(a, new Diff(aLines, bLines).toUnifiedString("a", "b")));
+    }
+
+    private static int lcs(List<String> a, List<String> b)
+    {
+        int[][] t = new int[a.size() + 1][b.size() + 1];
+        for (int i = a.size() - 1; i >= 0; i--)
+            for (int j = b.size() - 1; j >= 0; j--)
+                t[i][j] = a.get(i).equals(b.get(j)) ? t[i + 1][j + 1] + 1
+                    : Math.max(t[i + 1][j], t[i][j + 1]);
+        return t[0][0];
+    }
+
+    @Test
+    public void random()
+    {
+        Random random = new Random(1);
+        for (int n = 0; n < 500; n++) {
+            List<String> a = new ArrayList<String>();
+            List<String> b = new ArrayList<String>();
+            for (int i = random.nextInt(30); i > 0; i--)
+                a.add(String.valueOf((char) ('a' + random.nextInt(5))));
+            for (String s : a) {
+                int r = random.nextInt(10);
+                if (r == 0)
+                    continue;
+                if (r == 1)
+                    b.add(String.valueOf((char) ('a' + random.nextInt(5))));
+                b.add(s);
+            }
+            String[] aLines = a.toArray(new String[a.size() + 1]);
+            aLines[a.size()] = "";
+            String[] bLines = b.toArray(new String[b.size() + 1]);
+            bLines[b.size()] = "";
+            String diff = new Diff(aLines, bLines).toUnifiedString("a", "b");
+            assertEquals(b, patch(a, diff));
+            // The edit script is as short as possible.
+            int removed = 0;
+            for (String line : diff.split("\n"))
+                if (line.startsWith("-") && !line.startsWith("---"))
+                    ++removed;
+            assertEquals(a.size() - lcs(a, b), removed);
+        }
+    }
+}
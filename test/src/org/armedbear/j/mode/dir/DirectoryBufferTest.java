@@ -0,0 +1,99 @@
+/*
+ * Copyright (C) 2026 Kevin Krouse
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.armedbear.j.mode.dir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import javax.swing.SwingUtilities;
+
+import org.armedbear.j.File;
+import org.armedbear.j.Line;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class DirectoryBufferTest
+{
+    private static List<String> getNames(DirectoryBuffer buffer)
+    {
+        ArrayList<String> names = new ArrayList<String>();
+        for (Line line = buffer.getFirstLine(); line != null; line = line.next()) {
+            assertEquals(names.size(), line.lineNumber());
+            if (line instanceof DirectoryLine)
+                names.add(((DirectoryLine)line).getDirectoryEntry().getName());
+            else
+                names.add(line.getText().trim());
+        }
+        return names;
+    }
+
+    @Test
+    public void update() throws Exception
+    {
+        final Path dir = Files.createTempDirectory("update");
+        try {
+            Files.write(dir.resolve("b"), new byte[5]);
+            Files.write(dir.resolve("d"), new byte[7]);
+            final DirectoryBuffer buffer =
+                new DirectoryBuffer(File.getInstance(dir.toString()));
+            SwingUtilities.invokeAndWait(new Runnable() {
+                public void run()
+                {
+                    buffer.load();
+                }
+            });
+            List<String> names = getNames(buffer);
+            assertTrue(names.contains("b"));
+            assertTrue(names.contains("d"));
+            assertFalse(names.contains("c"));
+
+            Files.write(dir.resolve("c"), new byte[3]);
+            Files.delete(dir.resolve("d"));
+            Files.write(dir.resolve("b"), new byte[50]);
+            SwingUtilities.invokeAndWait(new Runnable() {
+                public void run()
+                {
+                    buffer.update(Arrays.asList("b", "c", "d"));
+                }
+            });
+            names = getNames(buffer);
+            assertTrue(names.indexOf("b") >= 0);
+            assertEquals(names.indexOf("b") + 1, names.indexOf("c"));
+            assertFalse(names.contains("d"));
+            // The total size is still last.
+            String total = names.get(names.size() - 1);
+            long size = 0;
+            for (Line line = buffer.getFirstLine(); line != null; line = line.next()) {
+                if (line instanceof DirectoryLine)
+                    size += ((DirectoryLine)line).getDirectoryEntry().getSize();
+            }
+            assertEquals(String.valueOf(size), total);
+            buffer.dispose();
+        }
+        finally {
+            Files.deleteIfExists(dir.resolve("b"));
+            Files.deleteIfExists(dir.resolve("c"));
+            Files.deleteIfExists(dir.resolve("d"));
+            Files.delete(dir);
+        }
+    }
+}
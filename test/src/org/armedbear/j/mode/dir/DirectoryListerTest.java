@@ -0,0 +1,161 @@
+/*
+ * Copyright (C) 2026 Kevin Krouse
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.armedbear.j.mode.dir;
+
+import java.io.BufferedReader;
+import java.io.InputStreamReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.armedbear.j.DirectoryFilenameFilter;
+import org.armedbear.j.File;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+import static org.junit.Assume.*;
+
+public class DirectoryListerTest
+{
+    private Path dir;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        dir = Files.createTempDirectory("lister");
+        Files.write(dir.resolve("b.txt"), "hello\n".getBytes("US-ASCII"));
+        Files.write(dir.resolve("A.java"), new byte[12345]);
+        Files.createDirectory(dir.resolve("sub"));
+        Files.createSymbolicLink(dir.resolve("link"), Paths.get("b.txt"));
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        Files.deleteIfExists(dir.resolve("link"));
+        Files.deleteIfExists(dir.resolve("b.txt"));
+        Files.deleteIfExists(dir.resolve("c.txt"));
+        Files.deleteIfExists(dir.resolve("A.java"));
+        Files.deleteIfExists(dir.resolve("sub"));
+        Files.deleteIfExists(dir);
+    }
+
+    private File getDirectory()
+    {
+        return File.getInstance(dir.toString());
+    }
+
+    private static List<String> strings(List<DirectoryEntry> entries)
+    {
+        ArrayList<String> list = new ArrayList<String>();
+        for (DirectoryEntry entry : entries)
+            list.add(entry.getString());
+        return list;
+    }
+
+    @Test
+    public void sameAsLs() throws Exception
+    {
+        assumeTrue(DirectoryLister.isAvailable(getDirectory(), true));
+        assumeTrue(new java.io.File("/bin/ls").exists());
+        ProcessBuilder pb = new ProcessBuilder("/bin/ls", "-la", dir.toString());
+        pb.environment().put("LC_ALL", "C");
+        Process process = pb.start();
+        BufferedReader reader =
+            new BufferedReader(new InputStreamReader(process.getInputStream()));
+        ArrayList<String> expected = new ArrayList<String>();
+        String s;
+        while ((s = reader.readLine()) != null) {
+            if (!s.startsWith("total "))
+                expected.add(s);
+        }
+        assertEquals(0, process.waitFor());
+        // ls marks files with security contexts or ACLs.
+        assumeTrue(expected.get(0).charAt(10) == ' ');
+
+        DirectoryLister lister =
+            new DirectoryLister(getDirectory(), true,
+                                DirectoryBuffer.SORT_BY_NAME, null);
+        assertEquals(expected, strings(lister.list(true)));
+    }
+
+    @Test
+    public void nativeEntries()
+    {
+        assumeTrue(DirectoryLister.isAvailable(getDirectory(), true));
+        DirectoryLister lister =
+            new DirectoryLister(getDirectory(), true,
+                                DirectoryBuffer.SORT_BY_SIZE, null);
+        List<DirectoryEntry> entries = lister.list(false);
+        assertEquals(4, entries.size());
+        DirectoryEntry first = entries.get(0);
+        assertEquals("A.java", first.getName());
+        assertEquals("A.java", DirectoryEntry.getName(first.getString()));
+        assertEquals(12345, first.getSize());
+        for (DirectoryEntry entry : entries) {
+            if (entry.getName().equals("sub"))
+                assertTrue(entry.isDirectory());
+            if (entry.getName().equals("link")) {
+                assertTrue(entry.isLink());
+                assertTrue(entry.getString().endsWith(" link -> b.txt"));
+            }
+        }
+        assertNull(lister.getEntry("c.txt"));
+        DirectoryEntry entry = lister.getEntry("b.txt");
+        assertEquals(6, entry.getSize());
+        assertEquals("b.txt", DirectoryEntry.getName(entry.getString()));
+    }
+
+    @Test
+    public void internalEntries() throws Exception
+    {
+        DirectoryLister lister =
+            new DirectoryLister(getDirectory(), false,
+                                DirectoryBuffer.SORT_BY_NAME,
+                                new DirectoryFilenameFilter("*.java"));
+        List<DirectoryEntry> entries = lister.list(true);
+        ArrayList<String> names = new ArrayList<String>();
+        for (DirectoryEntry entry : entries)
+            names.add(entry.getName());
+        // Directories are never filtered out.
+        assertTrue(names.contains("."));
+        assertTrue(names.contains(".."));
+        assertTrue(names.contains("A.java"));
+        assertTrue(names.contains("sub"));
+        assertFalse(names.contains("b.txt"));
+        assertEquals(4, entries.size());
+
+        assertNull(lister.getEntry("c.txt"));
+        Files.write(dir.resolve("c.txt"), new byte[3]);
+        assertNull(lister.getEntry("c.txt"));
+        Files.write(dir.resolve("c.java"), new byte[3]);
+        try {
+            DirectoryEntry entry = lister.getEntry("c.java");
+            assertEquals(3, entry.getSize());
+            assertFalse(entry.isDirectory());
+        }
+        finally {
+            Files.delete(dir.resolve("c.java"));
+        }
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * Copyright (C) 2026 Kevin Krouse
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.armedbear.j.mode.web;
+
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.armedbear.j.Line;
+import org.armedbear.j.LineSequence;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class WebLoaderTest
+{
+    // Something like a page of generated API documentation.
+    private static String page(int entries)
+    {
+        StringBuilder sb = new StringBuilder();
+        sb.append("<html><head><title>All Classes</title></head>\n<body>\n");
+        sb.append("<h1>Index</h1>\n<table>\n");
+        for (int i = 0; i < entries; i++) {
+            sb.append("<tr><td width=\"30%\"><a name=\"m").append(i)
+                .append("\"></a><b>method").append(i).append("</b></td>\n");
+            sb.append("<td>Returns the &quot;value&quot; of entry ").append(i)
+                .append(" &amp; some\ttext that is long enough to need wrapping ")
+                .append("at eighty columns, more or less.</td></tr>\n");
+            if (i % 50 == 0) {
+                sb.append("</table>\n<pre>\tint x = ").append(i)
+                    .append(";\r\n\tif (x &lt; 0) return;\n</pre>\n<table>\n");
+            }
+        }
+        sb.append("</table>\n<p>End.\n</body></html>\n");
+        return sb.toString();
+    }
+
+    private static String dump(Line first, Line last)
+    {
+        StringBuilder sb = new StringBuilder();
+        for (Line line = first; line != null; line = line.next()) {
+            sb.append(((WebLine) line).getSourceOffset());
+            sb.append('|');
+            sb.append(line.getText());
+            sb.append('\n');
+            if (line == last)
+                break;
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void text()
+    {
+        WebLoader loader = new WebLoader(new StringReader(
+            "<p>Fish &amp; <b>chips</b><pre>a\tb\n</pre>"));
+        LineSequence lines = loader.load();
+        Line line = lines.getFirstLine();
+        while (line.isBlank())
+            line = line.next();
+        assertEquals("Fish & chips", line.getText());
+        line = line.next();
+        assertEquals("a       b", line.getText());
+    }
+
+    @Test
+    public void batches()
+    {
+        final String html = page(2000);
+        WebLoader loader = new WebLoader(new StringReader(html));
+        LineSequence lines = loader.load();
+        final String expected = dump(lines.getFirstLine(), lines.getLastLine());
+
+        final List<Line[]> batches = new ArrayList<Line[]>();
+        WebLoader streaming = new WebLoader(new StringReader(html));
+        streaming.setListener(new WebLoader.Listener() {
+            public void linesLoaded(Line first, Line last)
+            {
+                assertNull(first.previous());
+                assertNull(last.next());
+                batches.add(new Line[] { first, last });
+            }
+        });
+        assertNull(streaming.load());
+        assertTrue(batches.size() > 2);
+        StringBuilder sb = new StringBuilder();
+        for (Line[] batch : batches)
+            sb.append(dump(batch[0], batch[1]));
+        assertEquals(expected, sb.toString());
+        assertEquals(loader.getRefs(), streaming.getRefs());
+        assertEquals(2000, streaming.getRefs().size());
+    }
+
+    @Test
+    public void cancel()
+    {
+        final WebLoader loader = new WebLoader(new StringReader(page(20000)));
+        final int[] count = new int[1];
+        loader.setListener(new WebLoader.Listener() {
+            public void linesLoaded(Line first, Line last)
+            {
+                if (++count[0] == 1)
+                    loader.cancel();
+            }
+        });
+        loader.load();
+        // The rest of the buffer that was read, then the end.
+        assertTrue(count[0] <= 3);
+        assertTrue(loader.getRefs().size() < 20000);
+    }
+
+    @Test
+    public void empty()
+    {
+        final List<Line> lines = new ArrayList<Line>();
+        WebLoader loader = new WebLoader(new StringReader(""));
+        loader.setListener(new WebLoader.Listener() {
+            public void linesLoaded(Line first, Line last)
+            {
+                lines.add(first);
+                assertSame(first, last);
+            }
+        });
+        loader.load();
+        assertEquals(1, lines.size());
+        assertEquals("", lines.get(0).getText());
+    }
+}
@@ -0,0 +1,85 @@
+/*
+ * Copyright (C) 2026 Kevin Krouse
+ *
+ * This program is free software; you can redistribute it and/or
+ * modify it under the terms of the GNU General Public License
+ * as published by the Free Software Foundation; either version 2
+ * of the License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ * GNU General Public License for more details.
+ *
+ * You should have received a copy of the GNU General Public License
+ * along with this program; if not, write to the Free Software
+ * Foundation, Inc., 59 Temple Place - Suite 330, Boston, MA  02111-1307, USA.
+ */
+
+package org.armedbear.j.vcs.git;
+
+import java.util.HashMap;
+
+import org.armedbear.j.File;
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class GitStatusCacheTest
+{
+    @Test
+    public void parse()
+    {
+        HashMap<String, String> statuses = GitStatusCache.parse(
+            " M src/a.java\0A  b c.txt\0?? tmp/\0!! build/\0");
+        assertEquals(4, statuses.size());
+        assertEquals(" M", statuses.get("src/a.java"));
+        assertEquals("A ", statuses.get("b c.txt"));
+        assertEquals("??", statuses.get("tmp/"));
+        assertEquals("!!", statuses.get("build/"));
+    }
+
+    @Test
+    public void parseRename()
+    {
+        HashMap<String, String> statuses = GitStatusCache.parse(
+            "R  new.java\0old.java\0 D gone.java\0");
+        assertEquals(2, statuses.size());
+        assertEquals("R ", statuses.get("new.java"));
+        assertNull(statuses.get("old.java"));
+        assertEquals(" D", statuses.get("gone.java"));
+    }
+
+    @Test
+    public void nestedInit() throws Exception
+    {
+        java.io.File tmp = java.io.File.createTempFile("git", "");
+        tmp.delete();
+        java.io.File sub = new java.io.File(tmp, "sub");
+        assertTrue(sub.mkdirs());
+        java.io.File git = new java.io.File(tmp, ".git");
+        try {
+            File file = File.getInstance(new java.io.File(sub, "a.txt").getPath());
+            // So that the time changes even if times are only to the second.
+            tmp.setLastModified(tmp.lastModified() - 10000);
+            assertNull(GitStatusCache.getInstance(file));
+            // git init in a directory that was looked in.
+            assertTrue(git.mkdir());
+            GitStatusCache cache = GitStatusCache.getInstance(file);
+            assertNotNull(cache);
+            assertSame(cache, GitStatusCache.getInstance(file));
+        }
+        finally {
+            git.delete();
+            sub.delete();
+            tmp.delete();
+        }
+    }
+
+    @Test
+    public void parseEmpty()
+    {
+        assertTrue(GitStatusCache.parse("").isEmpty());
+        assertTrue(GitStatusCache.parse(null).isEmpty());
+    }
+}